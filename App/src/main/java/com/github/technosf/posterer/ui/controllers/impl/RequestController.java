@@ -156,8 +156,7 @@ public class RequestController
     @Override
     public void onStageClose(Stage stage)
     {
-        LOG.debug("Closing StatusController");
-        statusController.onStageClose(stage);
+        super.onStageClose(stage);
     }
 
 
@@ -252,6 +251,18 @@ public class RequestController
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.ui.controllers.impl.base.AbstractRequestController#getRequestModel()
+     */
+    @Override
+    protected RequestModel getRequestModel()
+    {
+        return requestModel;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -320,6 +331,7 @@ public class RequestController
         requestBean.setPayload(payload.getText().trim());
         requestBean.setContentType(mime.getValue());
         requestBean.setBase64(encode.isSelected());
+        requestBean.setGzip(gzip.isSelected());
         if (security.isDisabled())
         {
             requestBean.setSecurity("");
@@ -507,6 +519,7 @@ public class RequestController
         method.setValue(requestdata.getMethod());
         mime.setValue(requestdata.getContentType());
         encode.setSelected(requestdata.getBase64());
+        gzip.setSelected(requestdata.getGzip());
         status.append("Loaded request for endpoint:[%1$s]",
                 requestdata.getEndpoint());
     }
@@ -15,19 +15,27 @@ package com.github.technosf.posterer.ui.controllers.impl;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.technosf.posterer.models.BodyChunk;
+import com.github.technosf.posterer.models.DownloadModel;
 import com.github.technosf.posterer.models.ResponseModel;
 import com.github.technosf.posterer.models.StatusModel;
+import com.github.technosf.posterer.runners.LatencyHistogram;
 import com.github.technosf.posterer.ui.controllers.Controller;
 import com.github.technosf.posterer.ui.controllers.impl.base.AbstractController;
+import com.github.technosf.posterer.ui.models.ResponseModelTask;
 import com.github.technosf.posterer.utils.PrettyPrinters;
 
+import javafx.animation.AnimationTimer;
 import javafx.concurrent.Task;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
@@ -55,6 +63,11 @@ import javafx.stage.Stage;
  * <p>
  * The {@code Task} that performs the call is fired at the end of the stage
  * update
+ * <p>
+ * The body is shown as it arrives: chunks are queued by the thread reading
+ * them and drained once a frame, so that a fast stream costs a text update
+ * per frame rather than per chunk. The full body replaces what was streamed
+ * once the response completes.
  * 
  * @author technosf
  * @since 0.0.1
@@ -84,6 +97,34 @@ public class ResponseController
     private final static String FORMAT_TITLE =
             "Posterer :: Response #%1$d [%2$s %3$s]";
 
+    /**
+     * The most characters of a body shown as it streams
+     */
+    private final static int STREAM_CHARS =
+            Integer.getInteger("posterer.stream.chars", 1 << 20);
+
+    /**
+     * The least time between the status lines reporting chunks
+     */
+    private final static long STREAM_STATUS_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(Long.getLong("posterer.stream.status.millis", 500));
+
+    /**
+     * The most status lines reporting chunks, for each response
+     */
+    private final static int STREAM_STATUS_LINES =
+            Integer.getInteger("posterer.stream.status.lines", 40);
+
+    private final static String FORMAT_CHUNKS =
+            "Chunks %1$d-%2$d: %3$d bytes by %4$.1fms (gap %5$.1fms)";
+
+    private final static String INFO_CHUNKS_CAPPED =
+            "Further chunks are summarised on completion";
+
+    private final static String FORMAT_STREAMED =
+            "First byte in %1$.1fms; %2$d chunks, gaps p50 %3$.1fms, "
+                    + "p99 %4$.1fms, max %5$.1fms";
+
     /*
      * ------------ State -----------------
      */
@@ -93,11 +134,75 @@ public class ResponseController
      */
     private Task<?> responseModelTask;
 
+    /**
+     * The response being displayed
+     */
+    @Nullable
+    private ResponseModel responseModel;
+
+    /**
+     * Handler run in place of closing the stage, when hosted elsewhere
+     */
+    @Nullable
+    private Runnable closeHandler;
+
     /**
      * Is the task cancellable?
      */
     private boolean cancellable = true;
 
+    /**
+     * Body chunks arrived and not yet shown, replaced for each response so
+     * that a recycled response's stragglers are not shown
+     */
+    private Queue<BodyChunk> chunks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The gaps between the chunks shown, in micros
+     */
+    private LatencyHistogram chunkGaps = new LatencyHistogram();
+
+    /**
+     * Characters of the body shown as it streamed
+     */
+    private int streamedChars;
+
+    /**
+     * The first chunk shown and not yet reported in the status, or null
+     */
+    @Nullable
+    private BodyChunk unreportedFirst;
+
+    /**
+     * The last chunk shown and not yet reported in the status
+     */
+    @Nullable
+    private BodyChunk unreportedLast;
+
+    /**
+     * The bytes and largest gap of the chunks not yet reported
+     */
+    private long unreportedBytes, unreportedGap;
+
+    /**
+     * When chunks were last reported in the status, and how many times
+     */
+    private long reportedNanos;
+
+    private int reportedLines;
+
+    /**
+     * Shows the chunks arrived, once a frame
+     */
+    private final AnimationTimer chunkDrain = new AnimationTimer()
+    {
+        @Override
+        public void handle(final long now)
+        {
+            drainChunks(now, false);
+        }
+    };
+
     /*
      * ------------ FXML Components -----------------
      */
@@ -207,11 +312,14 @@ public class ResponseController
                 responseModel.getRequest().getEndpoint()));
 
         /*
-         * Ensure that the incoming {@code ResponseModel} is also a {@code Task}
+         * Ensure that the incoming {@code ResponseModel} can be run as a {@code Task}
          */
-        if (!Task.class.isInstance(responseModel))
+        Task<?> task = ResponseModelTask.wrap(responseModel);
+        if (task == null)
             return;
 
+        this.responseModel = responseModel;
+
         String requestPayload = responseModel.getRequest().getPayload();
         if (requestPayload.isEmpty())
         /*
@@ -230,9 +338,25 @@ public class ResponseController
         }
 
         /*
-         *  The ResponseModel is also a Task, so proceed
+         *  The ResponseModel is wrapped in a Task, so proceed
          */
-        responseModelTask = (Task<?>) responseModel;
+        responseModelTask = task;
+
+        if (responseModel instanceof DownloadModel)
+        /*
+         * Show how much of the download is in
+         */
+        {
+            progress.progressProperty().bind(task.progressProperty());
+        }
+        else
+        /*
+         * Show the body as it arrives
+         */
+        {
+            responseModel.setChunkListener(chunks::add);
+            chunkDrain.start();
+        }
 
         /*
          * Set the {@code OnSucceeded} Handler
@@ -360,6 +484,7 @@ public class ResponseController
          */
         {
             cancellable = false;
+            stopStreaming();
             status.append("Cancelling...");
             responseModelTask.cancel();
             progress.setVisible(false);
@@ -372,7 +497,11 @@ public class ResponseController
          */
         {
             Stage stage;
-            if ((stage = getStage()) != null)
+            if (closeHandler != null)
+            {
+                closeHandler.run();
+            }
+            else if ((stage = getStage()) != null)
             {
                 stage.close();
             }
@@ -380,6 +509,83 @@ public class ResponseController
     }
 
 
+    /**
+     * Resets the controller to its loaded state so that it, and its scene
+     * graph, can be reused for another response.
+     * <p>
+     * A running task is cancelled after its handlers are removed.
+     */
+    public void recycle()
+    {
+        if (responseModelTask != null)
+        {
+            responseModelTask.setOnSucceeded(null);
+            responseModelTask.setOnFailed(null);
+            responseModelTask.setOnCancelled(null);
+            if (!responseModelTask.isDone())
+            {
+                responseModelTask.cancel();
+            }
+        }
+
+        responseModelTask = null;
+        responseModel = null;
+        closeHandler = null;
+
+        stopStreaming();
+        chunks = new ConcurrentLinkedQueue<>();
+        chunkGaps = new LatencyHistogram();
+        streamedChars = 0;
+        unreportedFirst = null;
+        reportedLines = 0;
+
+        progress.progressProperty().unbind();
+        progress.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
+
+        headers.clear();
+        request.clear();
+        response.clear();
+        statusController.clear();
+
+        if (!requestResponse.getItems().contains(requestAnchor))
+        /*
+         * Restore the request payload pane
+         */
+        {
+            requestAnchor.setDisable(false);
+            requestResponse.getItems().add(0, requestAnchor);
+        }
+
+        progress.setVisible(true);
+        cancellable = true;
+        button.setText("Cancel");
+    }
+
+
+    /**
+     * Sets the handler run when the response is closed, in place of closing
+     * the stage
+     * 
+     * @param closeHandler
+     *            the close handler
+     */
+    public void setCloseHandler(final @Nullable Runnable closeHandler)
+    {
+        this.closeHandler = closeHandler;
+    }
+
+
+    /**
+     * Returns the response being displayed
+     * 
+     * @return the response, or null if none
+     */
+    public @Nullable ResponseModel getResponseModel()
+    {
+        return responseModel;
+    }
+
+
     /**
      * Handler for erring task events
      * <p>
@@ -387,6 +593,7 @@ public class ResponseController
      */
     private void requestFailed(final @Nullable String error)
     {
+        stopStreaming();
         status.append("Fail: " + Objects.toString(error, "Error not provided"));
         progress.setVisible(false);
         cancellable = false;
@@ -401,6 +608,7 @@ public class ResponseController
      */
     private void requestSucceeded(final @NonNull ResponseModel responseModel)
     {
+        stopStreaming();
         try
         {
             if (responseModel.isComplete())
@@ -409,6 +617,43 @@ public class ResponseController
                         + responseModel.getElaspedTimeMilli()
                         + "ms :\n\t"
                         + responseModel.getStatus().replaceAll("\n", "\n\t"));
+                if (responseModel.getFirstByteMicros() >= 0)
+                /*
+                 * Timed as it arrived
+                 */
+                {
+                    status.append(String.format(FORMAT_STREAMED,
+                            millis(responseModel.getFirstByteMicros()),
+                            chunkGaps.getCount(),
+                            millis(chunkGaps.getPercentile(50)),
+                            millis(chunkGaps.getPercentile(99)),
+                            millis(chunkGaps.getMax())));
+                }
+                status.append(String.format(
+                        "Body of %1$d bytes on the wire, %2$d decoded",
+                        responseModel.getWireBytes(),
+                        responseModel.getDecodedBytes()));
+                if (responseModel instanceof DownloadModel)
+                /*
+                 * Written to file rather than read
+                 */
+                {
+                    DownloadModel download = (DownloadModel) responseModel;
+                    status.append(String.format(
+                            "Downloaded into %1$s in %2$d segments, "
+                                    + "%3$d bytes resumed",
+                            download.getFile(), download.getSegments(),
+                            download.getResumed()));
+                }
+                if (responseModel.getStreamId() > 0)
+                /*
+                 * Multiplexed
+                 */
+                {
+                    status.append(String.format("Stream %1$d over %2$s",
+                            responseModel.getStreamId(),
+                            responseModel.getProtocol()));
+                }
                 headers.setText(responseModel.getHeaders());
                 response.setText(responseModel.getBody());
                 progress.setVisible(false);
@@ -423,6 +668,89 @@ public class ResponseController
     }
 
 
+    /**
+     * Shows the chunks arrived since the last frame, appending their text to
+     * the response, as far as the streamed display goes.
+     * <p>
+     * Their arrival goes to the status at most once each interval and for so
+     * many lines, the status otherwise growing a line each frame for as long
+     * as a body streams.
+     *
+     * @param now
+     *            the frame time, in nanos
+     * @param flush
+     *            true to report any chunks not yet reported regardless
+     */
+    private void drainChunks(final long now, final boolean flush)
+    {
+        StringBuilder text = new StringBuilder();
+        BodyChunk chunk;
+        while ((chunk = chunks.poll()) != null)
+        {
+            if (unreportedFirst == null)
+            {
+                unreportedFirst = chunk;
+                unreportedBytes = 0;
+                unreportedGap = 0;
+            }
+            unreportedLast = chunk;
+            unreportedBytes += chunk.getBytes();
+            unreportedGap = Math.max(unreportedGap, chunk.getGapMicros());
+            chunkGaps.record(chunk.getGapMicros());
+            if (streamedChars + text.length() < STREAM_CHARS)
+            {
+                text.append(chunk.getText());
+            }
+        }
+
+        int shown = Math.min(text.length(), STREAM_CHARS - streamedChars);
+        if (shown > 0)
+        {
+            response.appendText(text.substring(0, shown));
+            streamedChars += shown;
+        }
+
+        BodyChunk first = unreportedFirst, last = unreportedLast;
+        if (first == null || last == null
+                || !flush && now - reportedNanos < STREAM_STATUS_NANOS)
+        {
+            return;
+        }
+        unreportedFirst = null;
+        reportedNanos = now;
+        if (reportedLines < STREAM_STATUS_LINES)
+        {
+            status.append(String.format(FORMAT_CHUNKS, first.getIndex(),
+                    last.getIndex(), unreportedBytes,
+                    millis(last.getAtMicros()), millis(unreportedGap)));
+        }
+        else if (reportedLines == STREAM_STATUS_LINES)
+        {
+            status.append(INFO_CHUNKS_CAPPED);
+        }
+        reportedLines++;
+    }
+
+
+    /**
+     * Stops showing the body as it arrives, showing what has arrived
+     */
+    private void stopStreaming()
+    {
+        chunkDrain.stop();
+        drainChunks(System.nanoTime(), true);
+    }
+
+
+    /**
+     * Converts micros to millis, keeping the fraction
+     */
+    private static double millis(final long micros)
+    {
+        return micros / 1000d;
+    }
+
+
     /**
      * Open the stand alone status window on Status double click
      */
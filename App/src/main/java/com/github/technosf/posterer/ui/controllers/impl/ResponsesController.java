@@ -0,0 +1,399 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.ui.controllers.impl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.ui.controllers.Controller;
+import com.github.technosf.posterer.ui.controllers.impl.base.AbstractController;
+
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.fxml.FXML;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.Tooltip;
+import javafx.stage.Stage;
+
+/**
+ * Controller backing {@code Responses.fxml}.
+ * <p>
+ * Hosts each fired request's {@code ResponseController} as a tab in a single
+ * window. {@code ResponseController}s, and the scene graph parsed from their
+ * FXML, are pooled and recycled as tabs close so that rapid firing does not pay
+ * for a new {@code Stage} and FXML parse per request.
+ * <p>
+ * Only a bounded number of responses are kept open. When the limit is passed
+ * the oldest tab is retired and its {@code ResponseModel} released, leaving it
+ * to the garbage collector.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ResponsesController
+        extends AbstractController
+        implements Controller
+{
+
+    /**
+     * The FXML definition of the View
+     */
+    public final static String FXML = "/fxml/Responses.fxml";
+
+    /**
+     * Default number of responses kept open, overridden by the
+     * {@code posterer.responses.open} system property
+     */
+    public final static int DEFAULT_MAX_OPEN =
+            Integer.getInteger("posterer.responses.open", 16);
+
+    /**
+     * Default number of idle {@code ResponseController}s kept for reuse
+     */
+    public final static int DEFAULT_MAX_POOLED = 4;
+
+    /* ---- Constants ----- */
+
+    /**
+     * Logger
+     */
+    private final static Logger LOG = LoggerFactory
+            .getLogger(ResponsesController.class);
+
+    /**
+     * The window title
+     */
+    private final static String FORMAT_TITLE = "Posterer :: Responses";
+
+    /**
+     * The tab title formatter
+     */
+    private final static String FORMAT_TAB = "#%1$d %2$s";
+
+    /*
+     * ------------ State -----------------
+     */
+
+    /**
+     * Idle controllers ready for reuse
+     */
+    private final Deque<ResponseController> pool = new ArrayDeque<>();
+
+    /**
+     * Open tabs and their controllers, oldest first
+     */
+    private final Map<Tab, ResponseController> open = new LinkedHashMap<>();
+
+    /**
+     * Count of open responses
+     */
+    private final ReadOnlyIntegerWrapper openCount =
+            new ReadOnlyIntegerWrapper(this, "openCount", 0);
+
+    private int maxOpen = DEFAULT_MAX_OPEN;
+
+    private int maxPooled = DEFAULT_MAX_POOLED;
+
+    /*
+     * ------------ FXML Components -----------------
+     */
+
+    @FXML
+    private TabPane tabs;
+
+
+    /*
+     * ------------ Statics -----------------
+     */
+
+    /**
+     * Configure and load the JavaFX stage
+     *
+     * @return the controller
+     */
+    public static ResponsesController loadStage()
+    {
+        LOG.debug("Loading controller onto stage");
+        ResponsesController controller = null;
+        try
+        {
+            controller = (ResponsesController) ResponsesController
+                    .loadController(new Stage(), FXML);
+        }
+        catch (IOException e)
+        {
+            LOG.error("Cannot load Controller.", e);
+        }
+
+        return controller;
+    }
+
+
+    /*
+     * ------------ Code -----------------
+     */
+
+    /**
+     * Instantiate and set the title.
+     */
+    public ResponsesController()
+    {
+        super(FORMAT_TITLE);
+        LOG.debug("Instantiated.");
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.ui.controllers.Controller#initialize()
+     */
+    @Override
+    public void initialize()
+    {
+        LOG.debug("Initialize.");
+    }
+
+
+    /**
+     * Parses {@code ResponseController}s ahead of need and parks them in the
+     * pool, so that the first fired requests do not pay for FXML loading.
+     *
+     * @param count
+     *            the number of controllers to prepare
+     */
+    public void prime(final int count)
+    {
+        while (pool.size() < Math.min(count, maxPooled))
+        {
+            ResponseController controller = create();
+            if (controller == null)
+            {
+                return;
+            }
+            pool.push(controller);
+        }
+    }
+
+
+    /**
+     * Opens a tab for the given response, recycling a pooled controller if
+     * there is one, and starts the response task.
+     *
+     * @param responseModel
+     *            the response to display
+     * @param css
+     *            the style to apply
+     * @return the {@code Stage} the responses are shown on
+     */
+    public @Nullable Stage show(final @NonNull ResponseModel responseModel,
+            final @Nullable String css)
+    {
+        ResponseController controller = pool.poll();
+        if (controller == null)
+        /*
+         * Pool is empty, so parse a new one
+         */
+        {
+            controller = create();
+            if (controller == null)
+            {
+                return null;
+            }
+        }
+
+        controller.setStyle(css);
+
+        Tab tab = new Tab(String.format(FORMAT_TAB,
+                responseModel.getReferenceId(),
+                responseModel.getRequest().getMethod()),
+                controller.getRoot());
+        tab.setTooltip(new Tooltip(responseModel.getRequest().getEndpoint()));
+        tab.setOnClosed(event -> release(tab));
+
+        open.put(tab, controller);
+        controller.setCloseHandler(() -> release(tab));
+        controller.updateStage(responseModel);
+
+        tabs.getTabs().add(tab);
+        tabs.getSelectionModel().select(tab);
+
+        trim();
+        openCount.set(open.size());
+
+        return getStage();
+    }
+
+
+    /**
+     * Close all open responses, returning their controllers to the pool
+     */
+    public void closeAll()
+    {
+        for (Tab tab : new ArrayList<>(open.keySet()))
+        {
+            release(tab);
+        }
+    }
+
+
+    /**
+     * Sets the number of responses kept open before the oldest is retired
+     *
+     * @param maxOpen
+     *            the maximum number of open responses
+     */
+    public void setMaxOpen(final int maxOpen)
+    {
+        this.maxOpen = Math.max(1, maxOpen);
+        trim();
+        openCount.set(open.size());
+    }
+
+
+    /**
+     * Sets the number of idle controllers kept for reuse
+     *
+     * @param maxPooled
+     *            the maximum number of pooled controllers
+     */
+    public void setMaxPooled(final int maxPooled)
+    {
+        this.maxPooled = Math.max(0, maxPooled);
+        while (pool.size() > this.maxPooled)
+        {
+            pool.pop();
+        }
+    }
+
+
+    /**
+     * Returns the count of open responses property
+     *
+     * @return the open response count property
+     */
+    public ReadOnlyIntegerProperty openCountProperty()
+    {
+        return openCount.getReadOnlyProperty();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.ui.controllers.impl.base.AbstractController#onStageClose(javafx.stage.Stage)
+     */
+    @Override
+    public void onStageClose(Stage stage)
+    {
+        closeAll();
+        super.onStageClose(stage);
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Retire the oldest open responses until within the open limit
+     */
+    private void trim()
+    {
+        Iterator<Tab> i = open.keySet().iterator();
+        while (open.size() > maxOpen && i.hasNext())
+        {
+            Tab oldest = i.next();
+            ResponseController controller = open.get(oldest);
+            i.remove();
+            retire(oldest, controller);
+        }
+    }
+
+
+    /**
+     * Release the tab and its controller
+     *
+     * @param tab
+     *            the tab to release
+     */
+    private void release(final Tab tab)
+    {
+        if (open.containsKey(tab))
+        {
+            retire(tab, open.remove(tab));
+            openCount.set(open.size());
+        }
+    }
+
+
+    /**
+     * Removes the tab from view and recycles its controller
+     *
+     * @param tab
+     *            the tab to retire
+     * @param controller
+     *            the tab's controller, already taken from the open tabs
+     */
+    private void retire(final Tab tab,
+            final @Nullable ResponseController controller)
+    {
+        tabs.getTabs().remove(tab);
+        tab.setContent(null);
+        tab.setOnClosed(null);
+
+        if (controller == null)
+        {
+            return;
+        }
+
+        controller.recycle();
+        if (pool.size() < maxPooled)
+        {
+            pool.push(controller);
+        }
+    }
+
+
+    /**
+     * Parses a new {@code ResponseController} from its FXML
+     *
+     * @return the controller, or null if it could not be loaded
+     */
+    private @Nullable ResponseController create()
+    {
+        try
+        {
+            return (ResponseController) ResponseController
+                    .loadController(ResponseController.FXML);
+        }
+        catch (IOException e)
+        {
+            LOG.error("Cannot load Controller.", e);
+        }
+        return null;
+    }
+
+}
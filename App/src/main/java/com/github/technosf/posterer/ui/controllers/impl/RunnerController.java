@@ -0,0 +1,389 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.ui.controllers.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.RequestModel;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.runners.CollectionRunner;
+import com.github.technosf.posterer.runners.RunSummary;
+import com.github.technosf.posterer.ui.controllers.Controller;
+import com.github.technosf.posterer.ui.controllers.impl.base.AbstractController;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.Stage;
+
+/**
+ * Controller backing {@code Runner.fxml}.
+ * <p>
+ * Fires a collection of requests through a {@code CollectionRunner} in the
+ * background, adding each response to the results table as it completes and
+ * keeping a running summary of status codes and latency.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class RunnerController
+        extends AbstractController
+        implements Controller
+{
+
+    /**
+     * The FXML definition of the View
+     */
+    public final static String FXML = "/fxml/Runner.fxml";
+
+    /* ---- Constants ----- */
+
+    /**
+     * Logger
+     */
+    private final static Logger LOG = LoggerFactory
+            .getLogger(RunnerController.class);
+
+    /**
+     * The window title formatter
+     */
+    private final static String FORMAT_TITLE =
+            "Posterer :: Run %1$d requests";
+
+    private final static String FORMAT_PROGRESS = "%1$d of %2$d\n%3$s";
+
+    /*
+     * ------------ State -----------------
+     */
+
+    /**
+     * The results, one row per response
+     */
+    private final ObservableList<Row> rows =
+            FXCollections.observableArrayList();
+
+    /**
+     * Summary kept on the FX thread as results arrive
+     */
+    private RunSummary live = new RunSummary();
+
+    /**
+     * The runner
+     */
+    @Nullable
+    private CollectionRunner runner;
+
+    /**
+     * Is the run still going?
+     */
+    private boolean cancellable = true;
+
+    private int total;
+
+    /*
+     * ------------ FXML Components -----------------
+     */
+
+    @FXML
+    private TableView<Row> results;
+
+    @FXML
+    private TableColumn<Row, Integer> refColumn, statusColumn;
+
+    @FXML
+    private TableColumn<Row, Long> elapsedColumn;
+
+    @FXML
+    private TableColumn<Row, String> methodColumn, endpointColumn,
+            errorColumn;
+
+    @FXML
+    private TextArea summary;
+
+    @FXML
+    private ProgressIndicator progress;
+
+    @FXML
+    private Button button;
+
+
+    /*
+     * ------------ Statics -----------------
+     */
+
+    /**
+     * Configure and load the JavaFX stage, starting the run
+     *
+     * @param requestModel
+     *            the model to fire the requests with
+     * @param requests
+     *            the requests to fire
+     * @return the controller
+     */
+    public static @Nullable RunnerController loadStage(
+            final RequestModel requestModel, final List<Request> requests)
+    {
+        LOG.debug("Loading controller onto stage");
+        RunnerController controller = null;
+        try
+        {
+            controller = (RunnerController) RunnerController
+                    .loadController(new Stage(), FXML);
+            controller.updateStage(requestModel, requests);
+        }
+        catch (IOException e)
+        {
+            LOG.error("Cannot load Controller.", e);
+        }
+
+        return controller;
+    }
+
+
+    /*
+     * ------------ Code -----------------
+     */
+
+    /**
+     * Instantiate and set the title.
+     */
+    public RunnerController()
+    {
+        super(String.format(FORMAT_TITLE, 0));
+        LOG.debug("Instantiated.");
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.ui.controllers.Controller#initialize()
+     */
+    @Override
+    public void initialize()
+    {
+        LOG.debug("Initialize.");
+
+        refColumn.setCellValueFactory(new PropertyValueFactory<>("ref"));
+        methodColumn.setCellValueFactory(new PropertyValueFactory<>("method"));
+        endpointColumn
+                .setCellValueFactory(new PropertyValueFactory<>("endpoint"));
+        statusColumn.setCellValueFactory(new PropertyValueFactory<>("status"));
+        elapsedColumn
+                .setCellValueFactory(new PropertyValueFactory<>("elapsed"));
+        errorColumn.setCellValueFactory(new PropertyValueFactory<>("error"));
+
+        results.setItems(rows);
+    }
+
+
+    /**
+     * Starts the run in the background
+     *
+     * @param requestModel
+     *            the model to fire the requests with
+     * @param requests
+     *            the requests to fire
+     */
+    public void updateStage(final RequestModel requestModel,
+            final List<Request> requests)
+    {
+        total = requests.size();
+        setTitle(String.format(FORMAT_TITLE, total));
+
+        CollectionRunner collectionRunner = new CollectionRunner(requestModel);
+        runner = collectionRunner;
+        List<Request> collection = new ArrayList<>(requests);
+
+        Thread thread = new Thread(() -> {
+            try
+            {
+                RunSummary runSummary =
+                        collectionRunner.run(collection, this::onResponse);
+                Platform.runLater(() -> runComplete(runSummary));
+            }
+            catch (InterruptedException e)
+            {
+                LOG.debug("Run interrupted", e);
+            }
+        }, "posterer-run");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /* ----------------  Event Handlers  ---------------------- */
+
+    /**
+     * Cancel the run or close the window
+     */
+    public void cancelOrClose()
+    {
+        CollectionRunner collectionRunner = runner;
+        if (cancellable && collectionRunner != null)
+        /*
+         * Cancel, aborting requests in flight
+         */
+        {
+            collectionRunner.cancel();
+            button.setDisable(true);
+        }
+        else
+        /*
+         * Close
+         */
+        {
+            close();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.ui.controllers.impl.base.AbstractController#onStageClose(javafx.stage.Stage)
+     */
+    @Override
+    public void onStageClose(Stage stage)
+    {
+        CollectionRunner collectionRunner = runner;
+        if (collectionRunner != null)
+        {
+            collectionRunner.cancel();
+        }
+        super.onStageClose(stage);
+    }
+
+
+    /**
+     * Handler for each completed response, called on the runner threads
+     */
+    @SuppressWarnings("null")
+    private void onResponse(final Request request,
+            final ResponseModel response, final @Nullable Exception error)
+    {
+        Row row = new Row(response.getReferenceId(), request.getMethod(),
+                request.getEndpoint(),
+                error == null ? response.getStatusCode()
+                        : RunSummary.STATUS_ERROR,
+                response.getElaspedTimeMilli(),
+                error == null ? ""
+                        : Objects.toString(error.getMessage(),
+                                error.getClass().getName()));
+
+        Platform.runLater(() -> {
+            rows.add(row);
+            live.record(row.getStatus(), row.getElapsed());
+            progress.setProgress((double) rows.size() / Math.max(1, total));
+            summary.setText(String.format(FORMAT_PROGRESS, rows.size(), total,
+                    live));
+        });
+    }
+
+
+    /**
+     * Handler for run completion
+     */
+    private void runComplete(final RunSummary runSummary)
+    {
+        live = runSummary;
+        summary.setText(String.format(FORMAT_PROGRESS, runSummary.getCount(),
+                total, runSummary));
+        progress.setProgress(1);
+        cancellable = false;
+        button.setText("Close");
+        button.setDisable(false);
+    }
+
+    /**
+     * A row of the results table
+     *
+     * @author technosf
+     * @since 0.0.1
+     * @version 0.0.1
+     */
+    public static final class Row
+    {
+        private final int ref;
+        private final String method;
+        private final String endpoint;
+        private final int status;
+        private final long elapsed;
+        private final String error;
+
+
+        Row(final int ref, final String method, final String endpoint,
+                final int status, final long elapsed, final String error)
+        {
+            this.ref = ref;
+            this.method = method;
+            this.endpoint = endpoint;
+            this.status = status;
+            this.elapsed = elapsed;
+            this.error = error;
+        }
+
+
+        public int getRef()
+        {
+            return ref;
+        }
+
+
+        public String getMethod()
+        {
+            return method;
+        }
+
+
+        public String getEndpoint()
+        {
+            return endpoint;
+        }
+
+
+        public int getStatus()
+        {
+            return status;
+        }
+
+
+        public long getElapsed()
+        {
+            return elapsed;
+        }
+
+
+        public String getError()
+        {
+            return error;
+        }
+    }
+}
@@ -219,6 +219,16 @@ public class StatusController
     }
 
 
+    /**
+     * Clears the status so the controller can be reused
+     */
+    public void clear()
+    {
+        status.setLength(0);
+        statusWindow.clear();
+    }
+
+
     /*
      * ------------ Getters -----------------
      */
@@ -23,13 +23,17 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.technosf.posterer.models.DownloadModel;
 import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.RequestModel;
 import com.github.technosf.posterer.models.ResponseModel;
 import com.github.technosf.posterer.models.StatusModel;
 import com.github.technosf.posterer.models.impl.ProxyBean;
 import com.github.technosf.posterer.models.impl.RequestBean;
+import com.github.technosf.posterer.models.impl.WarmupBean;
 import com.github.technosf.posterer.ui.controllers.Controller;
-import com.github.technosf.posterer.ui.controllers.impl.ResponseController;
+import com.github.technosf.posterer.ui.controllers.impl.ResponsesController;
+import com.github.technosf.posterer.ui.controllers.impl.RunnerController;
 import com.github.technosf.posterer.ui.controllers.impl.StatusController;
 import com.github.technosf.posterer.ui.custom.controls.FileChooserComboBox;
 import com.github.technosf.posterer.ui.custom.controls.URLComboBox;
@@ -75,6 +79,7 @@ import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Paint;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.util.Callback;
 
@@ -141,7 +146,7 @@ public abstract class AbstractRequestController
     protected ChoiceBox<String> method, mime, security;
 
     @FXML
-    protected RadioButton encode;
+    protected RadioButton encode, gzip;
 
     @FXML
     protected TabPane tabs;
@@ -184,7 +189,10 @@ public abstract class AbstractRequestController
 
     protected StatusModel status;
 
-    private List<Stage> responseStages = new ArrayList<>();
+    /**
+     * The window holding the response tabs
+     */
+    protected ResponsesController responses;
 
     /* ---- Display Constants ----- */
 
@@ -204,6 +212,28 @@ public abstract class AbstractRequestController
     private static final String INFO_FIRED =
             "Fired request #%1$d:   Method [%2$s]   Endpoint [%3$s]  %4$s";
 
+    private static final String INFO_RUN =
+            "Running %1$d filtered requests";
+    private static final String INFO_RUN_NONE =
+            "No filtered requests to run";
+
+    private static final String INFO_DOWNLOAD =
+            "Downloading #%1$d:   Endpoint [%2$s]   into [%3$s]";
+
+    /**
+     * Most segments a download is fetched in, overridden by the
+     * {@code posterer.download.segments} system property
+     */
+    private static final int DOWNLOAD_SEGMENTS =
+            Integer.getInteger("posterer.download.segments", 4);
+
+    /**
+     * Connections to pre-warm when the endpoint is confirmed, none unless set
+     * by the {@code posterer.prewarm} system property
+     */
+    private static final int PREWARM_CONNECTIONS =
+            Integer.getInteger("posterer.prewarm", 0);
+
     private static final String LEGEND_PROXY_ON = "Proxy On";
     private static final String LEGEND_PROXY_OFF = "Proxy Off";
     private static final Paint CONST_PAINT_BLACK = Paint.valueOf("#292929");
@@ -293,6 +323,10 @@ public abstract class AbstractRequestController
         statusController.setStyle(getStyle());
         status = statusController.getStatusModel();
 
+        responses = ResponsesController.loadStage();
+        Platform.runLater(() -> responses
+                .prime(ResponsesController.DEFAULT_MAX_POOLED));
+
         /*
          * Bulk initializations
          */
@@ -341,6 +375,11 @@ public abstract class AbstractRequestController
                      */
                     {
                         fireDisabledProperty.set(!endpoint.isValid());
+                        if (endpoint.isValid())
+                        {
+                            requestUpdate();
+                            prewarm(requestBean.copy());
+                        }
                     }
                 });
 
@@ -429,6 +468,13 @@ public abstract class AbstractRequestController
         timeoutText.textProperty().bind(timeoutProperty.asString("%d"));
         timeoutProperty.bind(timeoutSlider.valueProperty());
 
+        /*
+         * Feed the timeout to the model
+         */
+        getRequestModel().setTimeout(timeoutProperty.get());
+        timeoutProperty.addListener((observable, oldValue,
+                newValue) -> getRequestModel().setTimeout(newValue.intValue()));
+
         /*
          * Disable fire buttons
          */
@@ -438,6 +484,12 @@ public abstract class AbstractRequestController
         fire4.disableProperty().bind(fireDisabledProperty);
         fire5.disableProperty().bind(fireDisabledProperty);
 
+        /*
+         * Close responses only when there are responses open
+         */
+        closeresponses.disableProperty()
+                .bind(responses.openCountProperty().isEqualTo(0));
+
         /*
          * Bidirectionally Bind the proxy buttons to a single property
          * so that when one button is clicked they all are
@@ -597,6 +649,13 @@ public abstract class AbstractRequestController
     {
         LOG.debug("Closing StatusController");
         statusController.onStageClose(stage);
+
+        LOG.debug("Closing ResponsesController");
+        Stage responsesStage = responses.getStage();
+        if (responsesStage != null)
+        {
+            responses.onStageClose(responsesStage);
+        }
     }
 
 
@@ -605,12 +664,72 @@ public abstract class AbstractRequestController
      */
 
     /**
-     * Close all open response windows
+     * Close all open responses
      */
     public final void closeResponses()
     {
-        responseStages.stream().forEach(stage -> stage.close());
-        closeresponses.setDisable(true);
+        responses.closeAll();
+    }
+
+
+    /**
+     * Pre-warms connections to the request endpoint in the background, if
+     * configured and not going through a proxy, reporting the outcome to the
+     * status panel
+     * 
+     * @param request
+     *            the request whose endpoint to warm
+     */
+    private void prewarm(final Request request)
+    {
+        if (PREWARM_CONNECTIONS <= 0 || proxyOnProperty.get())
+        {
+            return;
+        }
+
+        RequestModel requestModel = getRequestModel();
+        Thread thread = new Thread(() -> {
+            WarmupBean warmup =
+                    requestModel.prewarm(request, PREWARM_CONNECTIONS);
+            Platform.runLater(() -> {
+                status.append(warmup.toString());
+                statusWindow.setScrollTop(Double.MAX_VALUE);
+            });
+        }, "posterer-prewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Run event - User hits the {@code Run Filtered Requests} button
+     * <p>
+     * Fires the requests currently shown in the store table concurrently,
+     * streaming the results into a runner window.
+     */
+    public final void runRequests()
+    {
+        List<Request> requests = new ArrayList<>(sortedRequestPropertiesList);
+
+        if (requests.isEmpty())
+        {
+            status.append(INFO_RUN_NONE);
+            statusWindow.setScrollTop(Double.MAX_VALUE);
+            return;
+        }
+
+        status.append(INFO_RUN, requests.size());
+        statusWindow.setScrollTop(Double.MAX_VALUE);
+
+        RunnerController runner =
+                RunnerController.loadStage(getRequestModel(), requests);
+        if (runner == null)
+        {
+            LOG.error("Could not load runner");
+            return;
+        }
+        runner.setStyle(getStyle());
+        runner.getStage().show();
     }
 
 
@@ -657,14 +776,9 @@ public abstract class AbstractRequestController
             statusWindow.setScrollTop(Double.MAX_VALUE);
 
             /*
-             * Open the Response window managing this request instance
+             * Open a Response tab managing this request instance
              */
-            Controller controller = ResponseController.loadStage(response);
-            String style = this.getStyle();
-            controller.setStyle(style);
-            Stage stage = controller.getStage();
-            responseStages.add(stage);
-            closeresponses.setDisable(false);
+            Stage stage = responses.show(response, this.getStyle());
             if (stage == null)
             {
                 LOG.error("Could not get stage");
@@ -689,6 +803,61 @@ public abstract class AbstractRequestController
     }
 
 
+    /**
+     * Download event - User hits the {@code Download} button
+     * <p>
+     * Asks for the file to download the endpoint's {@code GET} body into, and
+     * opens a response tab following the download. Downloads go direct, not
+     * through the proxy.
+     */
+    @SuppressWarnings("null")
+    public final void download()
+    {
+        endpoint.updateValue();
+
+        if (!endpoint.isValid())
+        {
+            status.append(INFO_URI, endpoint.getValue());
+            statusWindow.setScrollTop(Double.MAX_VALUE);
+            return;
+        }
+
+        requestUpdate();
+        Request request = requestBean.copy();
+
+        FileChooser chooser = new FileChooser();
+        String path = request.getUri() == null ? null
+                : request.getUri().getPath();
+        if (path != null && path.lastIndexOf('/') < path.length() - 1)
+        {
+            chooser.setInitialFileName(
+                    path.substring(path.lastIndexOf('/') + 1));
+        }
+        File file = chooser.showSaveDialog(getStage());
+        if (file == null)
+        {
+            return;
+        }
+
+        DownloadModel download = getRequestModel().download(request,
+                file.toPath(), DOWNLOAD_SEGMENTS);
+
+        status.append(INFO_DOWNLOAD, download.getReferenceId(),
+                request.getUri(), file);
+        statusWindow.setScrollTop(Double.MAX_VALUE);
+
+        Stage stage = responses.show(download, this.getStyle());
+        if (stage == null)
+        {
+            LOG.error("Could not get stage");
+        }
+        else
+        {
+            stage.show();
+        }
+    }
+
+
     public final void toggleProtocolSecurity()
     {
         endpoint.toggleProtocolSecurity();
@@ -808,6 +977,14 @@ public abstract class AbstractRequestController
             final @NonNull Request request);
 
 
+    /**
+     * Returns the model requests are fired through
+     *
+     * @return the request model
+     */
+    protected abstract RequestModel getRequestModel();
+
+
     /**
      * Assures the existence of the certificate file selection and configures
      * the UI.
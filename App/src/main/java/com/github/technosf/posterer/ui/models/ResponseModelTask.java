@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.ui.models;
+
+import java.util.concurrent.Callable;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.DownloadModel;
+import com.github.technosf.posterer.models.ResponseModel;
+
+import javafx.concurrent.Task;
+
+/**
+ * JavaFX {@code Task} that runs a headless {@code ResponseModel} in the
+ * background, so that the UI can observe it through the usual {@code Worker}
+ * events.
+ * <p>
+ * Cancelling the task cancels the model, aborting its I/O rather than just
+ * interrupting the thread. A download reports its bytes as the task progress,
+ * which the task coalesces onto the FX thread.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <T>
+ *            the response type used by the model implementation
+ */
+public final class ResponseModelTask<T>
+        extends Task<T>
+{
+
+    /**
+     * The model run by this task
+     */
+    private final Callable<T> callable;
+
+    /**
+     * The model run by this task
+     */
+    private final ResponseModel responseModel;
+
+
+    /**
+     * Wraps the given {@code ResponseModel} in a {@code Task}, if it can be run
+     * 
+     * @param responseModel
+     *            the response model
+     * @return the task, or null if the model cannot be run
+     */
+    @Nullable
+    public static ResponseModelTask<?> wrap(final ResponseModel responseModel)
+    {
+        if (responseModel instanceof Callable)
+        {
+            return create((Callable<?>) responseModel, responseModel);
+        }
+        return null;
+    }
+
+
+    /**
+     * Captures the model value type
+     */
+    private static <V> ResponseModelTask<V> create(final Callable<V> callable,
+            final ResponseModel responseModel)
+    {
+        return new ResponseModelTask<V>(callable, responseModel);
+    }
+
+
+    /**
+     * Creates a task running the given model
+     * 
+     * @param callable
+     *            the response model, as a {@code Callable}
+     * @param responseModel
+     *            the response model
+     */
+    private ResponseModelTask(final Callable<T> callable,
+            final ResponseModel responseModel)
+    {
+        this.callable = callable;
+        this.responseModel = responseModel;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see javafx.concurrent.Task#call()
+     */
+    @Override
+    protected T call() throws Exception
+    {
+        if (responseModel instanceof DownloadModel)
+        /*
+         * Report the bytes downloaded as the task progress
+         */
+        {
+            ((DownloadModel) responseModel).setProgress(this::updateProgress);
+        }
+        return callable.call();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Cancels the model too, so that I/O in flight is aborted.
+     * 
+     * @see javafx.concurrent.Task#cancel(boolean)
+     */
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        responseModel.cancel();
+        return super.cancel(mayInterruptIfRunning);
+    }
+
+}
@@ -0,0 +1,1285 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.Factory;
+import com.github.technosf.posterer.models.BodyChunk;
+import com.github.technosf.posterer.models.ConsumptionPolicy;
+import com.github.technosf.posterer.models.DownloadModel;
+import com.github.technosf.posterer.models.HedgePolicy;
+import com.github.technosf.posterer.models.HedgeStats;
+import com.github.technosf.posterer.models.Properties;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.RequestModel;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.ResponseModel.CacheStatus;
+import com.github.technosf.posterer.models.ShapingProfile;
+import com.github.technosf.posterer.models.impl.RequestBean;
+import com.github.technosf.posterer.models.impl.ShapingProfileBean;
+import com.github.technosf.posterer.models.impl.WarmupBean;
+import com.github.technosf.posterer.runners.ArrivalSchedule;
+import com.github.technosf.posterer.runners.CapacityFinder;
+import com.github.technosf.posterer.runners.CollectionRunner;
+import com.github.technosf.posterer.runners.Feeder;
+import com.github.technosf.posterer.runners.LatencyHistogram;
+import com.github.technosf.posterer.runners.LoadGenerator;
+import com.github.technosf.posterer.runners.LoadStats;
+import com.github.technosf.posterer.runners.RunSummary;
+import com.github.technosf.posterer.runners.Scenario;
+import com.github.technosf.posterer.runners.ThinkTime;
+import com.github.technosf.posterer.utils.CachingDnsResolver;
+import com.github.technosf.posterer.utils.HttpCache;
+import com.github.technosf.posterer.utils.NetworkShaper;
+
+/**
+ * Headless command line entry point.
+ * <p>
+ * Works from the same saved request library as the App, through the
+ * {@code Factory}, and never touches JavaFX. Output is streamed to stdout as
+ * JSON lines, one per request listed or response received, so that it can be
+ * consumed by CI and perf pipelines.
+ * <p>
+ * Saved requests are identified by the id they are stored under in the
+ * properties file, or by their endpoint.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class Cli
+{
+    /**
+     * Properties prefix shared with the App
+     */
+    private static final String DEFAULT_PREFIX = "main.";
+
+    /* Exit codes */
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    /* Messages */
+    private static final String CONST_USAGE = "Usage: posterer-cli [options] <command> [targets...]\n"
+            + "Commands:\n"
+            + "  list                   List the saved requests\n"
+            + "  fire <id|endpoint>     Fire a single request\n"
+            + "  run [id|endpoint...]   Fire saved requests in parallel, all if none given\n"
+            + "  load <id|endpoint>     Fire a request repeatedly, reporting each second\n"
+            + "  load <id|endpoint>[@<weight>[@<think>]]...\n"
+            + "                         Fire a weighted mix of requests from virtual users\n"
+            + "  capacity <id|endpoint> Find the greatest rate that meets the objectives\n"
+            + "  download <id|endpoint> <file>\n"
+            + "                         GET into a file, in parallel ranges where accepted,\n"
+            + "                         resuming a download left part way\n"
+            + "Options:\n"
+            + "  --prefix <prefix>      Properties prefix, default \"main.\"\n"
+            + "  --timeout <seconds>    Request timeout\n"
+            + "  --parallel <n>         Concurrent requests for run and load, default 64\n"
+            + "  --per-host <n>         Concurrent requests to any one host, default 6\n"
+            + "  --prewarm              Open connections to each host before the run\n"
+            + "  --transport <name>     Transport, http1, h2 or load, default http1\n"
+            + "  --body                 Include response bodies in the output\n"
+            + "  --requests <n>         Requests to fire for load\n"
+            + "  --duration <seconds>   Length of load, default 10 if no requests given\n"
+            + "  --shards <n>           Load shards, default one per core\n"
+            + "  --rate <n>[-<m>]       Send load at n per second, stepping to m; capacity start rate\n"
+            + "  --step <seconds>       Length of each rate step, default 1, or capacity probe, 5\n"
+            + "  --poisson              Send load at Poisson rather than even intervals\n"
+            + "  --slo-p99 <millis>     Capacity 99th percentile latency objective, default 100\n"
+            + "  --slo-errors <percent> Capacity error rate objective, default 1\n"
+            + "  --users <n>            Virtual users for a mix, default the parallel requests\n"
+            + "  --think <spec>         Mix think time: none, fixed:ms, uniform:min-max, exp:mean\n"
+            + "  --feed <file>          CSV or JSON lines values for ${name} variables in load\n"
+            + "  --feed-once            End the load at the end of the feed, rather than repeat\n"
+            + "  --consume <policy>     Response bodies kept: full, digest, prefix:bytes or discard;\n"
+            + "                         default full for fire and with --body, else digest\n"
+            + "  --cache                Serve http1 GETs from the local HTTP cache, revalidating\n"
+            + "                         stale entries\n"
+            + "  --hedge <policy>       Send idempotent requests again past a percentile of recent\n"
+            + "                         latency: off, p95, or p99:budget percent\n"
+            + "  --segments <n>         Most ranges a download is fetched in, default 4\n"
+            + "  --stream               Report each response body chunk as it arrives\n"
+            + "  --shape <name|spec>    Shape http1 connections by a saved profile, or by a\n"
+            + "                         profile saved from name=n,route=host[:port],latency=ms,\n"
+            + "                         jitter=ms,kbps=n,reset=percent; repeat per route";
+    private static final String CONST_ERR_NO_MATCH =
+            "No saved request or valid endpoint matches";
+    private static final String CONST_ERR_OPTION = "Bad option: %1$s";
+    private static final String CONST_ERR_NO_PROFILE =
+            "No saved shaping profile: %1$s";
+
+    /**
+     * A mix target: the target, its weight and its think time
+     */
+    private static final Pattern MIX_TARGET =
+            Pattern.compile("(.+?)@(\\d+)(?:@(.+))?");
+
+    /**
+     * Length of a load run given neither requests nor duration
+     */
+    private static final int DEFAULT_LOAD_SECONDS = 10;
+
+    /**
+     * Capacity objectives given none
+     */
+    private static final int DEFAULT_SLO_P99_MILLIS = 100;
+    private static final double DEFAULT_SLO_ERRORS_PERCENT = 1;
+
+    /**
+     * Most ranges a download is fetched in, given none
+     */
+    private static final int DEFAULT_SEGMENTS = 4;
+
+    /**
+     * Where JSON lines go
+     */
+    private final PrintStream out;
+
+    /**
+     * Where usage and errors go
+     */
+    private final PrintStream err;
+
+    private String prefix = DEFAULT_PREFIX;
+
+    private int timeout = -1;
+
+    private int parallel = CollectionRunner.DEFAULT_THREADS;
+
+    private int perHost = CollectionRunner.DEFAULT_PER_HOST;
+
+    private boolean includeBody = false;
+
+    private boolean prewarm = CollectionRunner.DEFAULT_PREWARM;
+
+    private String transport =
+            System.getProperty("posterer.transport", Factory.TRANSPORT_HTTP1);
+
+    private long loadRequests = 0;
+
+    private int loadSeconds = 0;
+
+    private int shards = LoadGenerator.DEFAULT_SHARDS;
+
+    private @Nullable String rate;
+
+    private int stepSeconds = 0;
+
+    private boolean poisson = false;
+
+    private int sloP99Millis = DEFAULT_SLO_P99_MILLIS;
+
+    private double sloErrorsPercent = DEFAULT_SLO_ERRORS_PERCENT;
+
+    private int users = 0;
+
+    private ThinkTime think = ThinkTime.NONE;
+
+    private @Nullable String feed;
+
+    private boolean feedOnce = false;
+
+    private @Nullable Feeder feeder;
+
+    private @Nullable ConsumptionPolicy consumption;
+
+    private @Nullable HedgePolicy hedging;
+
+    private int segments = DEFAULT_SEGMENTS;
+
+    private boolean stream = false;
+
+    private final List<String> shapes = new ArrayList<>();
+
+    /**
+     * The models that hedge, whose counts are reported
+     */
+    private final Set<RequestModel> hedgingModels =
+            Collections.synchronizedSet(
+                    Collections.newSetFromMap(new IdentityHashMap<>()));
+
+
+    /**
+     * Runs the command line and exits with its status
+     *
+     * @param args
+     *            the command line
+     */
+    public static void main(final String[] args)
+    {
+        System.exit(new Cli(System.out, System.err).run(args));
+    }
+
+
+    /**
+     * Creates a command line writing to the given streams
+     *
+     * @param out
+     *            stream for JSON lines
+     * @param err
+     *            stream for usage and errors
+     */
+    public Cli(final PrintStream out, final PrintStream err)
+    {
+        this.out = out;
+        this.err = err;
+    }
+
+
+    /**
+     * Parses and runs the command line
+     *
+     * @param args
+     *            the command line
+     * @return the exit status
+     */
+    @SuppressWarnings("null")
+    public int run(final String[] args)
+    {
+        List<String> operands = new ArrayList<>();
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                switch (args[i])
+                {
+                    case "--prefix":
+                        prefix = args[++i];
+                        break;
+                    case "--timeout":
+                        timeout = Integer.parseInt(args[++i]);
+                        break;
+                    case "--parallel":
+                        parallel = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--per-host":
+                        perHost = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--prewarm":
+                        prewarm = true;
+                        break;
+                    case "--transport":
+                        transport = args[++i];
+                        if (!Factory.TRANSPORT_HTTP1.equals(transport)
+                                && !Factory.TRANSPORT_H2.equals(transport)
+                                && !Factory.TRANSPORT_LOAD.equals(transport))
+                        {
+                            err.println(String.format(CONST_ERR_OPTION,
+                                    transport));
+                            return usage();
+                        }
+                        break;
+                    case "--body":
+                        includeBody = true;
+                        break;
+                    case "--requests":
+                        loadRequests = Long.parseLong(args[++i]);
+                        break;
+                    case "--duration":
+                        loadSeconds = Integer.parseInt(args[++i]);
+                        break;
+                    case "--shards":
+                        shards = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--rate":
+                        rate = args[++i];
+                        break;
+                    case "--step":
+                        stepSeconds = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--poisson":
+                        poisson = true;
+                        break;
+                    case "--slo-p99":
+                        sloP99Millis = Integer.parseInt(args[++i]);
+                        break;
+                    case "--slo-errors":
+                        sloErrorsPercent = Double.parseDouble(args[++i]);
+                        break;
+                    case "--users":
+                        users = Integer.parseInt(args[++i]);
+                        break;
+                    case "--think":
+                        think = ThinkTime.parse(args[++i]);
+                        break;
+                    case "--feed":
+                        feed = args[++i];
+                        break;
+                    case "--feed-once":
+                        feedOnce = true;
+                        break;
+                    case "--consume":
+                        consumption = ConsumptionPolicy.parse(args[++i]);
+                        break;
+                    case "--cache":
+                        HttpCache.getInstance().setEnabled(true);
+                        break;
+                    case "--segments":
+                        segments = Integer.parseInt(args[++i]);
+                        break;
+                    case "--stream":
+                        stream = true;
+                        break;
+                    case "--shape":
+                        shapes.add(args[++i]);
+                        break;
+                    case "--hedge":
+                        hedging = HedgePolicy.parse(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--"))
+                        {
+                            err.println(String.format(CONST_ERR_OPTION, args[i]));
+                            return usage();
+                        }
+                        operands.add(args[i]);
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e)
+        {
+            err.println(String.format(CONST_ERR_OPTION, e.getMessage()));
+            return usage();
+        }
+
+        if (operands.isEmpty())
+        {
+            return usage();
+        }
+
+        String file = feed;
+        if (file != null)
+        {
+            try
+            {
+                feeder = Feeder.open(Paths.get(file), !feedOnce);
+            }
+            catch (IOException e)
+            {
+                out.println(new JsonLine("error")
+                        .add("feed", file)
+                        .add("error", e.toString()));
+                out.flush();
+                return EXIT_FAILED;
+            }
+        }
+
+        if (!shapes.isEmpty() && !shape(new Factory(prefix).getProperties()))
+        {
+            return EXIT_USAGE;
+        }
+
+        String command = operands.remove(0);
+        switch (command)
+        {
+            case "list":
+                return list(new Factory(prefix).getProperties());
+            case "fire":
+                if (operands.size() != 1)
+                {
+                    return usage();
+                }
+                parallel = 1;
+                if (consumption == null)
+                {
+                    consumption = ConsumptionPolicy.FULL;
+                }
+                return run(new Factory(prefix, transport), operands);
+            case "run":
+                return run(new Factory(prefix, transport), operands);
+            case "load":
+                if (operands.isEmpty())
+                {
+                    return usage();
+                }
+                if (operands.size() > 1 || users > 0)
+                {
+                    return mix(new Factory(prefix, transport), operands);
+                }
+                return load(new Factory(prefix, transport), operands);
+            case "capacity":
+                if (operands.size() != 1)
+                {
+                    return usage();
+                }
+                return capacity(new Factory(prefix, transport), operands);
+            case "download":
+                if (operands.size() != 2)
+                {
+                    return usage();
+                }
+                return download(new Factory(prefix, transport),
+                        operands.subList(0, 1), operands.get(1));
+            default:
+                return usage();
+        }
+    }
+
+
+    /* ---------------- Commands ------------------ */
+
+    /**
+     * Lists the saved requests
+     *
+     * @param properties
+     *            the saved library
+     * @return the exit status
+     */
+    private int list(final Properties properties)
+    {
+        for (Request request : properties.getRequests())
+        {
+            out.println(new JsonLine("request")
+                    .add("id", request.hashCode())
+                    .add("method", request.getMethod())
+                    .add("endpoint", request.getEndpoint())
+                    .add("contentType", request.getContentType())
+                    .add("security", request.getSecurity())
+                    .add("payloadChars", request.getPayload().length()));
+        }
+        for (ShapingProfile profile : properties.getShapingProfiles())
+        {
+            out.println(shaping(new JsonLine("shaping"), profile));
+        }
+        out.flush();
+        return EXIT_OK;
+    }
+
+
+    /**
+     * Fires the selected requests, streaming each response as it completes
+     *
+     * @param factory
+     *            the model factory
+     * @param targets
+     *            saved request ids or endpoints, all saved requests if empty
+     * @return the exit status
+     */
+    private int run(final Factory factory, final List<String> targets)
+    {
+        int unmatched = 0;
+
+        List<Request> requests = new ArrayList<>();
+        for (String target : select(factory.getProperties(), targets,
+                requests))
+        {
+            unmatched++;
+            out.println(new JsonLine("error")
+                    .add("target", target)
+                    .add("error", CONST_ERR_NO_MATCH));
+        }
+
+        RequestModel requestModel = hedging(factory.getRequestModel());
+        if (timeout > 0)
+        {
+            requestModel.setTimeout(timeout);
+        }
+
+        CollectionRunner runner =
+                new CollectionRunner(requestModel, perHost, parallel);
+        runner.setPrewarm(prewarm);
+        if (stream)
+        {
+            runner.setStreamListener(this::print);
+        }
+        ConsumptionPolicy policy = consumption;
+        runner.setConsumption(policy != null ? policy
+                : includeBody ? ConsumptionPolicy.FULL
+                        : ConsumptionPolicy.DIGEST);
+
+        RunSummary summary;
+        try
+        {
+            summary = runner.run(requests, this::print);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        }
+
+        for (WarmupBean warmup : summary.getWarmups())
+        {
+            out.println(new JsonLine("warmup")
+                    .add("route", warmup.getRoute())
+                    .add("requested", warmup.getRequested())
+                    .add("opened", warmup.getOpened())
+                    .add("elapsedMs", warmup.getElapsedMillis())
+                    .add("slowestMs", warmup.getSlowestMillis())
+                    .add("error", warmup.getError()));
+        }
+
+        JsonLine line = new JsonLine("summary")
+                .add("requests", requests.size())
+                .add("failed", summary.getFailures() + unmatched)
+                .add("elapsedMs", summary.getElapsedMillis())
+                .add("p50Ms", summary.getLatencyPercentile(50))
+                .add("p90Ms", summary.getLatencyPercentile(90))
+                .add("p99Ms", summary.getLatencyPercentile(99))
+                .add("maxMs", summary.getLatencyPercentile(100))
+                .add("dnsHits", CachingDnsResolver.getInstance().getHits())
+                .add("dnsMisses", CachingDnsResolver.getInstance().getMisses())
+                .add("dnsMs",
+                        CachingDnsResolver.getInstance().getResolveMillis());
+        summary.getStatusCounts().forEach((status, count) -> line
+                .add(status == RunSummary.STATUS_ERROR ? "error"
+                        : status.toString(), count));
+        out.println(hedges(shaped(line)));
+        out.flush();
+
+        return summary.getFailures() + unmatched == 0 ? EXIT_OK
+                : EXIT_FAILED;
+    }
+
+
+    /**
+     * Fires the selected request repeatedly, streaming the outcomes of each
+     * interval
+     *
+     * @param factory
+     *            the model factory
+     * @param targets
+     *            the saved request id or endpoint
+     * @return the exit status
+     */
+    private int load(final Factory factory, final List<String> targets)
+    {
+        List<Request> requests = new ArrayList<>();
+        if (!select(factory.getProperties(), targets, requests).isEmpty())
+        {
+            out.println(new JsonLine("error")
+                    .add("target", targets.get(0))
+                    .add("error", CONST_ERR_NO_MATCH));
+            out.flush();
+            return EXIT_FAILED;
+        }
+
+        LoadGenerator generator = generator(factory);
+
+        LoadGenerator.Reporter reporter = (interval, sofar, elapsedMillis) -> {
+            out.println(stats(new JsonLine("interval")
+                    .add("elapsedMs", elapsedMillis), interval));
+            out.flush();
+        };
+
+        LoadStats total;
+        ArrivalSchedule schedule = null;
+        try
+        {
+            if (rate == null)
+            {
+                total = generator.run(requests.get(0), loadRequests,
+                        TimeUnit.SECONDS.toMillis(loadRequests <= 0
+                                && loadSeconds <= 0 ? DEFAULT_LOAD_SECONDS
+                                        : loadSeconds),
+                        reporter);
+            }
+            else
+            {
+                int seconds = loadSeconds <= 0 ? DEFAULT_LOAD_SECONDS
+                        : loadSeconds;
+                schedule = schedule(rate, seconds);
+                total = generator.run(requests.get(0), schedule,
+                        TimeUnit.SECONDS.toMillis(seconds), reporter);
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            err.println(String.format(CONST_ERR_OPTION, e.getMessage()));
+            return usage();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        }
+
+        out.println(hedges(shaped(stats(new JsonLine("summary")
+                .add("endpoint", requests.get(0).getEndpoint())
+                .add("shards", shards)
+                .add("concurrency", parallel)
+                .add("schedule", schedule), total))));
+        out.flush();
+
+        return total.getFailures() == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+
+    /**
+     * Fires a weighted mix of the selected requests from virtual users,
+     * streaming the outcomes of each interval and then of each request
+     *
+     * @param factory
+     *            the model factory
+     * @param targets
+     *            the saved request ids or endpoints, each with an optional
+     *            weight and think time
+     * @return the exit status
+     */
+    private int mix(final Factory factory, final List<String> targets)
+    {
+        Properties properties = factory.getProperties();
+        List<Scenario.Step> steps = new ArrayList<>();
+        for (String target : targets)
+        {
+            Matcher matcher = MIX_TARGET.matcher(target);
+            boolean weighted = matcher.matches();
+            String label = weighted ? matcher.group(1) : target;
+            List<Request> requests = new ArrayList<>();
+            try
+            {
+                if (!select(properties, Collections.singletonList(label),
+                        requests).isEmpty())
+                {
+                    out.println(new JsonLine("error")
+                            .add("target", label)
+                            .add("error", CONST_ERR_NO_MATCH));
+                    out.flush();
+                    return EXIT_FAILED;
+                }
+                steps.add(new Scenario.Step(label, requests.get(0),
+                        weighted ? Integer.parseInt(matcher.group(2)) : 1,
+                        weighted && matcher.group(3) != null
+                                ? ThinkTime.parse(matcher.group(3)) : think));
+            }
+            catch (IllegalArgumentException e)
+            {
+                err.println(String.format(CONST_ERR_OPTION, target));
+                return usage();
+            }
+        }
+
+        Scenario scenario;
+        LoadStats total;
+        int visitors = users > 0 ? users : parallel;
+        try
+        {
+            scenario = new Scenario(steps);
+            total = generator(factory).run(scenario, visitors,
+                    TimeUnit.SECONDS.toMillis(loadSeconds <= 0
+                            ? DEFAULT_LOAD_SECONDS : loadSeconds),
+                    (interval, sofar, elapsedMillis) -> {
+                        out.println(stats(new JsonLine("interval")
+                                .add("elapsedMs", elapsedMillis), interval));
+                        out.flush();
+                    });
+        }
+        catch (IllegalArgumentException e)
+        {
+            err.println(String.format(CONST_ERR_OPTION, e.getMessage()));
+            return usage();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        }
+
+        for (Scenario.Step step : scenario.getSteps())
+        {
+            LoadStats outcomes = total.getSteps().get(step.getLabel());
+            if (outcomes != null)
+            {
+                out.println(stats(new JsonLine("step")
+                        .add("step", step.getLabel())
+                        .add("endpoint", step.getRequest().getEndpoint())
+                        .add("weight", step.getWeight())
+                        .add("think", step.getThink()), outcomes));
+            }
+        }
+        out.println(hedges(shaped(stats(new JsonLine("summary")
+                .add("steps", steps.size())
+                .add("users", visitors)
+                .add("shards", shards)
+                .add("concurrency", parallel), total))));
+        out.flush();
+
+        return total.getFailures() == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+
+    /**
+     * Finds the greatest rate at which the selected request meets the latency
+     * and error objectives, streaming each probe
+     *
+     * @param factory
+     *            the model factory
+     * @param targets
+     *            the saved request id or endpoint
+     * @return the exit status
+     */
+    private int capacity(final Factory factory, final List<String> targets)
+    {
+        List<Request> requests = new ArrayList<>();
+        if (!select(factory.getProperties(), targets, requests).isEmpty())
+        {
+            out.println(new JsonLine("error")
+                    .add("target", targets.get(0))
+                    .add("error", CONST_ERR_NO_MATCH));
+            out.flush();
+            return EXIT_FAILED;
+        }
+
+        CapacityFinder finder = new CapacityFinder(generator(factory),
+                TimeUnit.MILLISECONDS.toMicros(sloP99Millis),
+                sloErrorsPercent / 100);
+        if (stepSeconds > 0)
+        {
+            finder.setProbeMillis(TimeUnit.SECONDS.toMillis(stepSeconds));
+        }
+
+        CapacityFinder.Result result;
+        try
+        {
+            if (rate != null)
+            {
+                finder.setStartRate(Double.parseDouble(rate));
+            }
+            result = finder.find(requests.get(0), probe -> {
+                out.println(probe(new JsonLine("probe"), probe));
+                out.flush();
+            });
+        }
+        catch (IllegalArgumentException e)
+        {
+            err.println(String.format(CONST_ERR_OPTION, e.getMessage()));
+            return usage();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        }
+
+        CapacityFinder.@Nullable Probe knee = result.getKnee();
+        CapacityFinder.@Nullable Probe breach = result.getBreach();
+        out.println(new JsonLine("capacity")
+                .add("endpoint", requests.get(0).getEndpoint())
+                .add("sloP99Us", TimeUnit.MILLISECONDS.toMicros(sloP99Millis))
+                .add("sloErrorsPercent", sloErrorsPercent)
+                .add("probes", result.getCurve().size())
+                .add("ratePerSec", knee == null ? null : round(knee.getRate()))
+                .add("p99Us", knee == null ? null : knee.getP99Micros())
+                .add("breachPerSec",
+                        breach == null ? null : round(breach.getRate())));
+        out.flush();
+
+        return knee == null ? EXIT_FAILED : EXIT_OK;
+    }
+
+
+    /**
+     * Downloads a request's body into a file, reporting progress each second
+     *
+     * @param factory
+     *            the model factory
+     * @param targets
+     *            the saved request id or endpoint
+     * @param file
+     *            the file to download into
+     * @return the exit status
+     */
+    private int download(final Factory factory, final List<String> targets,
+            final String file)
+    {
+        List<Request> requests = new ArrayList<>();
+        if (!select(factory.getProperties(), targets, requests).isEmpty())
+        {
+            out.println(new JsonLine("error")
+                    .add("target", targets.get(0))
+                    .add("error", CONST_ERR_NO_MATCH));
+            out.flush();
+            return EXIT_FAILED;
+        }
+        Request request = requests.get(0);
+
+        DownloadModel download = factory.getRequestModel().download(request,
+                Paths.get(file), segments);
+
+        AtomicLong reported = new AtomicLong(System.nanoTime());
+        download.setProgress((received, length) -> {
+            long last = reported.get();
+            long now = System.nanoTime();
+            if (now - last >= TimeUnit.SECONDS.toNanos(1)
+                    && reported.compareAndSet(last, now))
+            {
+                out.println(new JsonLine("progress")
+                        .add("ref", download.getReferenceId())
+                        .add("received", received)
+                        .add("length", length));
+                out.flush();
+            }
+        });
+
+        JsonLine line = new JsonLine("download")
+                .add("ref", download.getReferenceId())
+                .add("id", request.hashCode())
+                .add("endpoint", request.getEndpoint())
+                .add("file", file);
+        int exit = EXIT_OK;
+        try
+        {
+            ((Callable<?>) download).call();
+            long millis = Math.max(1, download.getElaspedTimeMilli());
+            line.add("status", download.getStatusCode())
+                    .add("bytes", download.getReceived())
+                    .add("segments", download.getSegments())
+                    .add("resumed", download.getResumed())
+                    .add("ms", download.getElaspedTimeMilli())
+                    .add("mbPerSec", round((download.getReceived()
+                            - download.getResumed()) / 1000.0 / millis));
+        }
+        catch (Exception e)
+        {
+            exit = EXIT_FAILED;
+            line.add("status", download.getStatusCode())
+                    .add("bytes", download.getReceived())
+                    .add("error", e.toString());
+        }
+        out.println(line);
+        out.flush();
+        return exit;
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Returns a load generator whose models come from the factory, fed by
+     * the feed if given
+     *
+     * @param factory
+     *            the model factory
+     * @return the generator
+     */
+    private LoadGenerator generator(final Factory factory)
+    {
+        LoadGenerator generator = new LoadGenerator(() -> {
+            RequestModel requestModel = hedging(factory.getRequestModel());
+            if (timeout > 0)
+            {
+                requestModel.setTimeout(timeout);
+            }
+            return requestModel;
+        }, shards, parallel);
+        generator.setFeeder(feeder);
+        ConsumptionPolicy policy = consumption;
+        if (policy != null)
+        {
+            generator.setConsumption(policy);
+        }
+        return generator;
+    }
+
+
+    /**
+     * Sets a model to hedge, if hedging, keeping it to report its counts
+     *
+     * @param requestModel
+     *            the model
+     * @return the model
+     */
+    private RequestModel hedging(final RequestModel requestModel)
+    {
+        HedgePolicy policy = hedging;
+        if (policy != null)
+        {
+            requestModel.setHedging(policy);
+            hedgingModels.add(requestModel);
+        }
+        return requestModel;
+    }
+
+
+    /**
+     * Adds the counts of shaped connections to a line, if shaping
+     *
+     * @param line
+     *            the line
+     * @return the line
+     */
+    private JsonLine shaped(final JsonLine line)
+    {
+        NetworkShaper shaper = NetworkShaper.getInstance();
+        if (!shaper.isEnabled())
+        {
+            return line;
+        }
+        return line.add("shapedConnections", shaper.getShapedConnections())
+                .add("resets", shaper.getResets());
+    }
+
+
+    /**
+     * Applies the shaping profiles given, saving those specified in full
+     *
+     * @param properties
+     *            the properties holding the saved profiles
+     * @return true if every profile was applied
+     */
+    private boolean shape(final Properties properties)
+    {
+        NetworkShaper shaper = NetworkShaper.getInstance();
+        List<String> names = new ArrayList<>();
+        for (String shape : shapes)
+        {
+            if (!shape.contains("="))
+            {
+                names.add(shape);
+                continue;
+            }
+            ShapingProfileBean profile;
+            try
+            {
+                profile = ShapingProfileBean.parse(shape);
+            }
+            catch (IllegalArgumentException e)
+            {
+                err.println(String.format(CONST_ERR_OPTION, shape));
+                return false;
+            }
+            if (properties.addData(profile))
+            {
+                properties.save();
+            }
+            shaper.apply(profile);
+        }
+
+        for (String unknown : shaper.apply(properties.getShapingProfiles(),
+                String.join(",", names)))
+        {
+            err.println(String.format(CONST_ERR_NO_PROFILE, unknown));
+            return false;
+        }
+
+        for (ShapingProfile profile : shaper.getProfiles())
+        {
+            out.println(shaping(new JsonLine("shaping"), profile));
+        }
+        out.flush();
+        return true;
+    }
+
+
+    /**
+     * Adds a shaping profile to a line
+     *
+     * @param line
+     *            the line
+     * @param profile
+     *            the profile
+     * @return the line
+     */
+    private static JsonLine shaping(final JsonLine line,
+            final ShapingProfile profile)
+    {
+        return line.add("name", profile.getName())
+                .add("route", profile.getRoute())
+                .add("latencyMs", profile.getLatencyMillis())
+                .add("jitterMs", profile.getJitterMillis())
+                .add("kbps", profile.getKbps())
+                .add("resetPercent", profile.getResetPercent());
+    }
+
+
+    /**
+     * Adds the hedge counts of the models that hedged to a line, if hedging
+     *
+     * @param line
+     *            the line
+     * @return the line
+     */
+    private JsonLine hedges(final JsonLine line)
+    {
+        if (hedging == null)
+        {
+            return line;
+        }
+        HedgeStats total = new HedgeStats();
+        synchronized (hedgingModels)
+        {
+            hedgingModels.forEach(model -> total.add(model.getHedgeStats()));
+        }
+        return line.add("hedged", total.getHedged())
+                .add("hedgeRate",
+                        Math.round(total.getHedgeRate() * 10) / 10.0)
+                .add("hedgeWins", total.getWins())
+                .add("hedgeSavedMs", total.getSavedMillis());
+    }
+
+
+    /**
+     * Returns the arrival schedule of a rate, or of a range of rates stepped
+     * through over the run
+     *
+     * @param rate
+     *            the rate, or the first and last rates separated by a dash
+     * @param seconds
+     *            the length of the run
+     * @return the schedule
+     * @throws IllegalArgumentException
+     *             if the rate is not valid
+     */
+    private ArrivalSchedule schedule(final String rate, final int seconds)
+    {
+        String[] rates = rate.split("-", 2);
+        ArrivalSchedule schedule = rates.length == 1
+                ? ArrivalSchedule.constant(Double.parseDouble(rates[0]))
+                : ArrivalSchedule.ramp(Double.parseDouble(rates[0]),
+                        Double.parseDouble(rates[1]),
+                        Math.max(2, seconds / Math.max(1, stepSeconds)),
+                        TimeUnit.SECONDS.toMillis(Math.max(1, stepSeconds)));
+        return poisson ? schedule.poisson(System.nanoTime()) : schedule;
+    }
+
+
+    /**
+     * Adds load outcomes to a line
+     *
+     * @param line
+     *            the line
+     * @param stats
+     *            the outcomes
+     * @return the line
+     */
+    private static JsonLine stats(final JsonLine line, final LoadStats stats)
+    {
+        LatencyHistogram latencies = stats.getLatencies();
+        line.add("requests", stats.getCount())
+                .add("failed", stats.getFailures())
+                .add("late", stats.getLate())
+                .add("p50Us", latencies.getPercentile(50))
+                .add("p90Us", latencies.getPercentile(90))
+                .add("p99Us", latencies.getPercentile(99))
+                .add("p999Us", latencies.getPercentile(99.9))
+                .add("maxUs", latencies.getMax())
+                .add("meanUs", latencies.getMean());
+        stats.getStatusCounts().forEach((status, count) -> line
+                .add(status == RunSummary.STATUS_ERROR ? "error"
+                        : status.toString(), count));
+        return line;
+    }
+
+
+    /**
+     * Adds a capacity probe to a line
+     *
+     * @param line
+     *            the line
+     * @param probe
+     *            the probe
+     * @return the line
+     */
+    private static JsonLine probe(final JsonLine line,
+            final CapacityFinder.Probe probe)
+    {
+        return line.add("phase", probe.getPhase().toString().toLowerCase())
+                .add("ratePerSec", round(probe.getRate()))
+                .add("achievedPerSec", round(probe.getAchieved()))
+                .add("p50Us", probe.getP50Micros())
+                .add("p99Us", probe.getP99Micros())
+                .add("errorsPercent", round(probe.getErrorRate() * 100))
+                .add("late", probe.getLate())
+                .add("passed", probe.isPassed());
+    }
+
+
+    /**
+     * Rounds to one decimal place for output
+     */
+    private static double round(final double value)
+    {
+        return Math.round(value * 10) / 10.0;
+    }
+
+
+    /**
+     * Resolves targets against the saved library.
+     * <p>
+     * A target matches saved requests by id, then by endpoint. A target that
+     * matches nothing but is itself a valid endpoint, or with a feed an
+     * endpoint template, is fired as a GET.
+     *
+     * @param properties
+     *            the saved library
+     * @param targets
+     *            the targets, all saved requests if empty
+     * @param requests
+     *            receives the selected requests
+     * @return the targets that could not be resolved
+     */
+    private List<String> select(final Properties properties,
+            final List<String> targets, final List<Request> requests)
+    {
+        List<String> unmatched = new ArrayList<>();
+        List<Request> saved = properties.getRequests();
+
+        if (targets.isEmpty())
+        {
+            saved.forEach(request -> requests.add(new RequestBean(request)));
+            return unmatched;
+        }
+
+        for (String target : targets)
+        {
+            Request match = null;
+            for (Request request : saved)
+            {
+                if (target.equals(Integer.toString(request.hashCode()))
+                        || (match == null
+                                && target.equals(request.getEndpoint())))
+                {
+                    match = request;
+                }
+            }
+
+            if (match != null)
+            {
+                requests.add(new RequestBean(match));
+            }
+            else if (RequestBean.constructUri(target) != null
+                    || (feeder != null && target.contains("${")))
+            {
+                requests.add(
+                        new RequestBean(target, "", "GET", "", "", false));
+            }
+            else
+            {
+                unmatched.add(target);
+            }
+        }
+
+        return unmatched;
+    }
+
+
+    /**
+     * Prints the outcome of a request as it completes
+     *
+     * @param request
+     *            the request
+     * @param response
+     *            the response
+     * @param error
+     *            the error, if the request failed
+     */
+    @SuppressWarnings("null")
+    private void print(final Request request, final ResponseModel response,
+            final @Nullable Exception error)
+    {
+        JsonLine line = new JsonLine("response")
+                .add("ref", response.getReferenceId())
+                .add("id", request.hashCode())
+                .add("method", request.getMethod())
+                .add("endpoint", request.getEndpoint());
+
+        if (error == null)
+        {
+            int status = response.getStatusCode();
+            String body = response.getBody();
+            line.add("ok", status > 0 && status < 400)
+                    .add("status", status)
+                    .add("elapsedMs", response.getElaspedTimeMilli())
+                    .add("bodyChars", body.length())
+                    .add("wireBytes", response.getWireBytes())
+                    .add("decodedBytes", response.getDecodedBytes())
+                    .add("protocol", response.getProtocol())
+                    .add("streamId", response.getStreamId());
+            if (response.getFirstByteMicros() >= 0)
+            {
+                line.add("ttfbUs", response.getFirstByteMicros());
+            }
+            String digest = response.getDigest();
+            if (!digest.isEmpty())
+            {
+                line.add("crc32", digest);
+            }
+            if (response.getCacheStatus() != CacheStatus.UNCACHED)
+            {
+                line.add("cache", response.getCacheStatus().toString()
+                        .toLowerCase(Locale.ROOT));
+            }
+            if (includeBody)
+            {
+                line.add("body", body);
+            }
+        }
+        else
+        {
+            line.add("ok", false)
+                    .add("elapsedMs", response.getElaspedTimeMilli())
+                    .add("error", Objects.toString(error.getMessage(),
+                            error.getClass().getName()));
+        }
+
+        synchronized (out)
+        {
+            out.println(line);
+        }
+    }
+
+
+    /**
+     * Prints a response body chunk as it arrives
+     *
+     * @param response
+     *            the response the chunk belongs to
+     * @param chunk
+     *            the chunk
+     */
+    private void print(final ResponseModel response, final BodyChunk chunk)
+    {
+        JsonLine line = new JsonLine("chunk")
+                .add("ref", response.getReferenceId())
+                .add("index", chunk.getIndex())
+                .add("bytes", chunk.getBytes())
+                .add("atUs", chunk.getAtMicros())
+                .add("gapUs", chunk.getGapMicros());
+        synchronized (out)
+        {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+
+    /**
+     * Prints the usage
+     *
+     * @return the usage exit status
+     */
+    private int usage()
+    {
+        err.println(CONST_USAGE);
+        return EXIT_USAGE;
+    }
+}
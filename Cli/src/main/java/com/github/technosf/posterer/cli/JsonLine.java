@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.cli;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A single flat JSON object, written as one line.
+ * <p>
+ * Values are numbers, booleans or strings; anything else is written as its
+ * string form. Kept dependency free so the command line starts quickly.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class JsonLine
+{
+    /**
+     * The line under construction
+     */
+    private final StringBuilder line = new StringBuilder("{");
+
+
+    /**
+     * Starts a line of the given type
+     *
+     * @param type
+     *            the record type
+     */
+    public JsonLine(final String type)
+    {
+        add("type", type);
+    }
+
+
+    /**
+     * Adds a field to the line
+     *
+     * @param name
+     *            the field name
+     * @param value
+     *            the field value, null is written as JSON null
+     * @return this line
+     */
+    public JsonLine add(final String name, final @Nullable Object value)
+    {
+        if (line.length() > 1)
+        {
+            line.append(',');
+        }
+        quote(name);
+        line.append(':');
+
+        if (value == null)
+        {
+            line.append("null");
+        }
+        else if (value instanceof Number || value instanceof Boolean)
+        {
+            line.append(value);
+        }
+        else
+        {
+            quote(value.toString());
+        }
+        return this;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        return line.toString() + "}";
+    }
+
+
+    /**
+     * Appends the string quoted and escaped
+     *
+     * @param string
+     *            the string
+     */
+    private void quote(final String string)
+    {
+        line.append('"');
+        for (int i = 0; i < string.length(); i++)
+        {
+            char c = string.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                    {
+                        line.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
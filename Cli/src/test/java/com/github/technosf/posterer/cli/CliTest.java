@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.cli;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.Factory;
+import com.github.technosf.posterer.models.Properties;
+import com.github.technosf.posterer.models.impl.RequestBean;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the command line against a local server and a saved library of its
+ * own, checking the exit status and the JSON lines written
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings({ "null", "restriction" })
+public class CliTest
+{
+    private static final String PREFIX = "clitest.";
+
+    private static final byte[] BODY =
+            "Hello".getBytes(StandardCharsets.US_ASCII);
+
+    private HttpServer server;
+
+    private String origin;
+
+    private String userHome;
+
+    private RequestBean saved;
+
+    /**
+     * What the last run wrote
+     */
+    private final List<String> lines = new ArrayList<>();
+
+    private String errors;
+
+
+    @BeforeClass
+    public void beforeClass() throws IOException
+    {
+        server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(BODY);
+            }
+        });
+        server.start();
+        origin = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home",
+                Files.createTempDirectory("posterer-cli").toString());
+        saved = new RequestBean(origin + "/saved", "", "GET", "",
+                "text/plain", false);
+        Properties properties = new Factory(PREFIX).getProperties();
+        properties.addData(saved);
+        properties.save();
+    }
+
+
+    @AfterClass
+    public void afterClass()
+    {
+        server.stop(0);
+        System.setProperty("user.home", userHome);
+    }
+
+
+    /* ------------------ Argument parsing -------------------- */
+
+    @Test
+    public void unknownOption()
+    {
+        assertEquals(run("--bogus", "list"), 2);
+        assertTrue(errors.contains("Bad option: --bogus"), errors);
+    }
+
+
+    @Test
+    public void missingOptionValue()
+    {
+        assertEquals(run("list", "--timeout"), 2);
+        assertTrue(errors.contains("Bad option"), errors);
+    }
+
+
+    @Test
+    public void badOptionValue()
+    {
+        assertEquals(run("--parallel", "many", "list"), 2);
+        assertEquals(run("--transport", "h3", "list"), 2);
+        assertTrue(errors.contains("Bad option: h3"), errors);
+    }
+
+
+    @Test
+    public void badCommand()
+    {
+        assertEquals(run(), 2);
+        assertEquals(run("frobnicate"), 2);
+        assertEquals(run("--prefix", PREFIX, "fire"), 2);
+        assertTrue(errors.startsWith("Usage"), errors);
+    }
+
+
+    /* ------------------ Target resolution -------------------- */
+
+    @Test
+    public void listsSaved()
+    {
+        assertEquals(run("--prefix", PREFIX, "list"), 0);
+        assertEquals(lines.size(), 1);
+        assertTrue(lines.get(0).contains("\"id\":" + saved.hashCode()),
+                lines.get(0));
+        assertTrue(lines.get(0).contains(
+                "\"endpoint\":\"" + saved.getEndpoint() + "\""), lines.get(0));
+    }
+
+
+    @Test
+    public void firesSavedById()
+    {
+        assertEquals(
+                run("--prefix", PREFIX, "fire",
+                        Integer.toString(saved.hashCode())),
+                0);
+        assertEndpoints("response", saved.getEndpoint());
+    }
+
+
+    @Test
+    public void firesSavedByEndpoint()
+    {
+        assertEquals(run("--prefix", PREFIX, "fire", saved.getEndpoint()), 0);
+        assertEndpoints("response", saved.getEndpoint());
+    }
+
+
+    @Test
+    public void firesUnsavedEndpoint()
+    {
+        assertEquals(run("--prefix", PREFIX, "run", origin + "/a",
+                origin + "/b"), 0);
+        assertEndpoints("response", origin + "/a", origin + "/b");
+        assertTrue(lines.get(0).contains("\"status\":200"), lines.get(0));
+        assertTrue(lines.get(2).startsWith("{\"type\":\"summary\""));
+    }
+
+
+    @Test
+    public void unmatchedTarget()
+    {
+        assertEquals(run("--prefix", PREFIX, "run", "no where"), 1);
+        assertEquals(lines.get(0),
+                "{\"type\":\"error\",\"target\":\"no where\",\"error\":"
+                        + "\"No saved request or valid endpoint matches\"}");
+    }
+
+
+    @Test
+    public void mixTargets()
+    {
+        assertEquals(run("--prefix", PREFIX, "--duration", "1", "--parallel",
+                "2", "--shards", "1", "load", origin + "/a@3@fixed:10",
+                saved.hashCode() + "@1"), 0);
+
+        List<String> steps = ofType("step");
+        assertEquals(steps.size(), 2);
+        assertTrue(steps.get(0).contains("\"endpoint\":\"" + origin + "/a\""),
+                steps.get(0));
+        assertTrue(steps.get(0).contains("\"weight\":3"), steps.get(0));
+        assertTrue(steps.get(0).contains("\"think\":\"fixed:10"),
+                steps.get(0));
+        assertTrue(steps.get(1).contains(
+                "\"endpoint\":\"" + saved.getEndpoint() + "\""), steps.get(1));
+        assertTrue(steps.get(1).contains("\"weight\":1"), steps.get(1));
+    }
+
+
+    @Test
+    public void badMixThink()
+    {
+        assertEquals(run("--prefix", PREFIX, "load", origin + "/a@2@bogus",
+                origin + "/b@1"), 2);
+    }
+
+
+    /* ------------------ Output -------------------- */
+
+    @Test
+    public void jsonLines()
+    {
+        run("--prefix", PREFIX, "--stream", "run", origin + "/a");
+        assertEquals(ofType("chunk").size(), 1);
+        for (String line : lines)
+        {
+            assertTrue(line.startsWith("{\"type\":\"") && line.endsWith("}")
+                    && !line.contains("\n"), line);
+        }
+        assertTrue(ofType("chunk").get(0).startsWith(
+                "{\"type\":\"chunk\",\"ref\":"), ofType("chunk").get(0));
+    }
+
+
+    /* ------------------ Helpers -------------------- */
+
+    /**
+     * Runs the command line, keeping what it writes
+     */
+    private int run(final String... args)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status;
+        try (PrintStream o = new PrintStream(out, true, "UTF-8");
+                PrintStream e = new PrintStream(err, true, "UTF-8"))
+        {
+            status = new Cli(o, e).run(args);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        lines.clear();
+        String written = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        if (!written.isEmpty())
+        {
+            lines.addAll(Arrays.asList(written.split("\r?\n")));
+        }
+        errors = new String(err.toByteArray(), StandardCharsets.UTF_8);
+        return status;
+    }
+
+
+    /**
+     * Returns the lines written of the type
+     */
+    private List<String> ofType(final String type)
+    {
+        List<String> typed = new ArrayList<>();
+        for (String line : lines)
+        {
+            if (line.startsWith("{\"type\":\"" + type + "\""))
+            {
+                typed.add(line);
+            }
+        }
+        return typed;
+    }
+
+
+    /**
+     * Asserts the lines of the type are for the endpoints, in any order
+     */
+    private void assertEndpoints(final String type, final String... endpoints)
+    {
+        List<String> typed = ofType(type);
+        assertEquals(typed.size(), endpoints.length, lines.toString());
+        for (String endpoint : endpoints)
+        {
+            boolean found = false;
+            for (String line : typed)
+            {
+                found |= line.contains("\"endpoint\":\"" + endpoint + "\"");
+            }
+            assertTrue(found, endpoint + " not in " + typed);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.cli;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+/**
+ * JsonLine unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class JsonLineTest
+{
+    @Test
+    public void typeFirst()
+    {
+        assertEquals(new JsonLine("summary").toString(),
+                "{\"type\":\"summary\"}");
+    }
+
+
+    @Test
+    public void valueKinds()
+    {
+        assertEquals(new JsonLine("response")
+                .add("ref", 7)
+                .add("mean", 1.5)
+                .add("ok", true)
+                .add("error", null)
+                .add("think", new StringBuilder("fixed:10"))
+                .toString(),
+                "{\"type\":\"response\",\"ref\":7,\"mean\":1.5,\"ok\":true,"
+                        + "\"error\":null,\"think\":\"fixed:10\"}");
+    }
+
+
+    @Test
+    public void escaped()
+    {
+        assertEquals(new JsonLine("error")
+                .add("a\"b", "say \"hi\"\\\r\n\tend\u0001")
+                .toString(),
+                "{\"type\":\"error\",\"a\\\"b\":"
+                        + "\"say \\\"hi\\\"\\\\\\r\\n\\tend\\u0001\"}");
+    }
+}
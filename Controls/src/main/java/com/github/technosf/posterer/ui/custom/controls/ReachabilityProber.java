@@ -0,0 +1,324 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.technosf.posterer.ui.custom.controls;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Probes whether URLs are reachable with a lightweight TCP connect, in the
+ * background.
+ * <p>
+ * Probes are debounced: each request replaces the one pending, and only runs
+ * once requests pause, so typing in a URL probes just the URL the user
+ * settles on. Results are cached per host and port, unreachable hosts for a
+ * shorter time than reachable ones, and a host is connected to at most once
+ * per interval however many controls ask.
+ * <p>
+ * Going through an HTTP proxy the proxy itself is probed, as that is the only
+ * connection made. SOCKS proxies are connected through.
+ * <p>
+ * Timings are set by system properties, in millis: {@code posterer.probe.debounce},
+ * {@code posterer.probe.ttl}, {@code posterer.probe.negativeTtl},
+ * {@code posterer.probe.interval} and {@code posterer.probe.timeout}.
+ * <p>
+ * Results are delivered on the prober thread; callers updating a UI hand them
+ * to the UI thread.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ReachabilityProber
+{
+    /**
+     * Quiet time before a probe runs
+     */
+    private static final long DEBOUNCE_MILLIS =
+            Long.getLong("posterer.probe.debounce", 400);
+
+    /**
+     * Time a reachable result is cached
+     */
+    private static final long TTL_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(Long.getLong("posterer.probe.ttl", 30_000));
+
+    /**
+     * Time an unreachable result is cached
+     */
+    private static final long NEGATIVE_TTL_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(Long.getLong("posterer.probe.negativeTtl", 5_000));
+
+    /**
+     * Shortest time between connections to a host
+     */
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(Long.getLong("posterer.probe.interval", 2_000));
+
+    /**
+     * Connect timeout
+     */
+    private static final int TIMEOUT_MILLIS =
+            Integer.getInteger("posterer.probe.timeout", 2_000);
+
+    /**
+     * Probe threads, shared by all probers
+     */
+    private static final ScheduledExecutorService EXECUTOR =
+            Executors.newScheduledThreadPool(2, runnable -> {
+                Thread thread = new Thread(runnable, "posterer-prober");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Last probe per host, shared by all probers
+     */
+    private static final Map<String, Probe> PROBES = new ConcurrentHashMap<>();
+
+    /**
+     * The probe waiting to run
+     */
+    private @Nullable ScheduledFuture<?> pending;
+
+    /**
+     * Incremented per request, so that superseded probes deliver nothing
+     */
+    private long generation;
+
+
+    /**
+     * Probes the URL once requests pause, replacing any probe pending
+     *
+     * @param url
+     *            the URL to probe
+     * @param proxy
+     *            the proxy connections go through
+     * @param callback
+     *            receives the URL and whether it is reachable, on the prober
+     *            thread
+     */
+    public synchronized void probe(final URL url, final Proxy proxy,
+            final BiConsumer<URL, Boolean> callback)
+    {
+        cancel();
+        long current = generation;
+        pending = EXECUTOR.schedule(() -> run(current, url, proxy, callback),
+                DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Cancels the probe pending, if any
+     */
+    public synchronized void cancel()
+    {
+        generation++;
+        ScheduledFuture<?> future = pending;
+        if (future != null)
+        {
+            future.cancel(false);
+            pending = null;
+        }
+    }
+
+
+    /**
+     * Returns the cached result for the URL
+     *
+     * @param url
+     *            the URL
+     * @param proxy
+     *            the proxy connections go through
+     * @return true or false if cached and unexpired, otherwise null
+     */
+    public static @Nullable Boolean getCached(final URL url, final Proxy proxy)
+    {
+        Probe probe = PROBES.get(key(url, proxy));
+        return probe == null ? null : probe.get(System.nanoTime());
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Delivers the cached result, or probes the host if it has not been
+     * connected to within the interval, otherwise tries again once it has
+     */
+    private void run(final long requested, final URL url, final Proxy proxy,
+            final BiConsumer<URL, Boolean> callback)
+    {
+        Probe probe = PROBES.computeIfAbsent(key(url, proxy), k -> new Probe());
+        long now = System.nanoTime();
+
+        Boolean reachable = probe.get(now);
+        if (reachable == null)
+        {
+            long wait = probe.claim(now);
+            if (wait > 0)
+            /*
+             * Connected to recently, or being connected to
+             */
+            {
+                synchronized (this)
+                {
+                    if (requested == generation)
+                    {
+                        pending = EXECUTOR.schedule(
+                                () -> run(requested, url, proxy, callback),
+                                wait, TimeUnit.NANOSECONDS);
+                    }
+                }
+                return;
+            }
+            reachable = connect(url, proxy);
+            probe.set(reachable, System.nanoTime());
+        }
+
+        synchronized (this)
+        {
+            if (requested != generation)
+            /*
+             * Superseded while probing
+             */
+            {
+                return;
+            }
+        }
+        callback.accept(url, reachable);
+    }
+
+
+    /**
+     * Opens and closes a connection to the URL host, or its HTTP proxy
+     */
+    private static boolean connect(final URL url, final Proxy proxy)
+    {
+        SocketAddress address;
+        Socket socket;
+        if (proxy.type() == Proxy.Type.HTTP)
+        {
+            address = proxy.address();
+            socket = new Socket();
+        }
+        else if (proxy.type() == Proxy.Type.SOCKS)
+        /*
+         * Let the proxy resolve the host
+         */
+        {
+            address = InetSocketAddress.createUnresolved(url.getHost(),
+                    port(url));
+            socket = new Socket(proxy);
+        }
+        else
+        {
+            address = new InetSocketAddress(url.getHost(), port(url));
+            socket = new Socket();
+        }
+
+        try (Socket probe = socket)
+        {
+            probe.connect(address, TIMEOUT_MILLIS);
+            return true;
+        }
+        catch (IOException | IllegalArgumentException e)
+        /*
+         * Unresolved, refused, timed out or unsupported
+         */
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     * Returns the URL port or its protocol default
+     */
+    private static int port(final URL url)
+    {
+        return url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+    }
+
+
+    /**
+     * Returns the cache key for the URL host and port via the proxy
+     */
+    private static String key(final URL url, final Proxy proxy)
+    {
+        return url.getHost().toLowerCase(Locale.ROOT) + ":" + port(url) + " "
+                + proxy;
+    }
+
+    /**
+     * The last probe of a host
+     */
+    private static final class Probe
+    {
+        private @Nullable Boolean reachable;
+
+        private long expires;
+
+        private long started;
+
+        private boolean claimed;
+
+
+        /**
+         * @return the result if unexpired, or null
+         */
+        synchronized @Nullable Boolean get(final long now)
+        {
+            return reachable != null && now - expires < 0 ? reachable : null;
+        }
+
+
+        /**
+         * Claims the host to connect to
+         *
+         * @return zero if claimed, otherwise nanos to wait before asking again
+         */
+        synchronized long claim(final long now)
+        {
+            if (claimed && now - started < INTERVAL_NANOS)
+            {
+                return INTERVAL_NANOS - (now - started);
+            }
+            claimed = true;
+            started = now;
+            return 0;
+        }
+
+
+        synchronized void set(final boolean result, final long now)
+        {
+            reachable = result;
+            expires = now + (result ? TTL_NANOS : NEGATIVE_TTL_NANOS);
+        }
+    }
+}
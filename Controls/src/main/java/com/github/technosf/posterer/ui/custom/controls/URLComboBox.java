@@ -25,6 +25,7 @@ import java.util.Map;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyBooleanWrapper;
@@ -544,6 +545,11 @@ public class URLComboBox
      * ================================================================
      */
 
+    /**
+     * Probes reachability of the URL being entered when connection testing
+     */
+    private final ReachabilityProber prober = new ReachabilityProber();
+
 
     /* ================================================================
      * 
@@ -599,6 +605,15 @@ public class URLComboBox
         getItems().addListener(
                 (ListChangeListener.Change<? extends String> c) -> change(c));
 
+        /*
+         * Re-test the connection when the way of testing changes
+         */
+        connectionTesting.addListener(
+                (observable, oldValue, newValue) -> probe(
+                        validate(getEditor().getText())));
+        proxy.addListener((observable, oldValue, newValue) -> probe(
+                validate(getEditor().getText())));
+
         updateProps(false, false, false, false, null);
 
         /*
@@ -648,6 +663,7 @@ public class URLComboBox
          */
         {
             processInputBackgroundOnKey(event.getCharacter().codePointAt(0));
+            probe(validate(getEditor().getText()));
         }
     }
 
@@ -871,6 +887,47 @@ public class URLComboBox
     }
 
 
+    /**
+     * Probes the URL in the background if connection testing, showing any
+     * cached result straight away and the probe result when it arrives, if
+     * the URL has not been edited since
+     * 
+     * @param url
+     *            the URL to probe, or null if the URL is invalid
+     */
+    private void probe(final @Nullable URL url)
+    {
+        if (url == null || !isConnectionTesting())
+        /*
+         * Nothing to test
+         */
+        {
+            prober.cancel();
+            urlReachable.set(false);
+            return;
+        }
+
+        Boolean cached = ReachabilityProber.getCached(url, getProxy());
+        urlReachable.set(cached != null && cached);
+
+        prober.probe(url, getProxy(),
+                (probed, reachable) -> Platform.runLater(() -> {
+                    /*
+                     * Compared as strings, as URL.equals resolves hosts
+                     */
+                    URL current = validate(getEditor().getText());
+                    if (current != null && probed.toExternalForm()
+                            .equals(current.toExternalForm()))
+                    /*
+                     * Still the URL in the editor
+                     */
+                    {
+                        urlReachable.set(reachable);
+                    }
+                }));
+    }
+
+
     /**
      * Validates a string as an URL, returning valid URLs
      * 
@@ -1001,6 +1058,7 @@ public class URLComboBox
                 updateProps(true, false, false, false,
                         getUrlValidBackground());
             }
+            probe(url);
             return;
         }
 
@@ -1008,7 +1066,7 @@ public class URLComboBox
          * Invalid url
          */
         updateProps(false, false, false, false, getUrlInvalidBackground());
-
+        prober.cancel();
     }
 
 }
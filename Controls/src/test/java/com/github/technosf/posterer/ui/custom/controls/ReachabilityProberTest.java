@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.ui.custom.controls;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * ReachabilityProber unit tests, against loopback listeners
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ReachabilityProberTest
+{
+    static
+    {
+        /*
+         * Shortened before the prober reads them
+         */
+        System.setProperty("posterer.probe.debounce", "100");
+        System.setProperty("posterer.probe.interval", "500");
+        System.setProperty("posterer.probe.negativeTtl", "300");
+    }
+
+    private ServerSocket listening;
+
+    private final AtomicInteger accepted = new AtomicInteger();
+
+
+    @BeforeClass
+    public void beforeClass() throws IOException
+    {
+        listening = listen(accepted);
+    }
+
+
+    @AfterClass
+    public void afterClass() throws IOException
+    {
+        listening.close();
+    }
+
+
+    @Test
+    public void debounced() throws Exception
+    {
+        int before = accepted.get();
+        List<URL> delivered = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        ReachabilityProber prober = new ReachabilityProber();
+
+        prober.probe(url("/typ"), Proxy.NO_PROXY, (url, reachable) -> {
+            delivered.add(url);
+            done.countDown();
+        });
+        prober.probe(url("/typed"), Proxy.NO_PROXY, (url, reachable) -> {
+            delivered.add(url);
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(delivered.size(), 1);
+        assertEquals(delivered.get(0).getPath(), "/typed");
+        assertEquals(accepted.get() - before, 1);
+        assertEquals(ReachabilityProber.getCached(url("/other"),
+                Proxy.NO_PROXY), Boolean.TRUE);
+    }
+
+
+    @Test
+    public void hostConnectedOnce() throws Exception
+    {
+        AtomicInteger connected = new AtomicInteger();
+        try (ServerSocket fresh = listen(connected))
+        {
+            URL url = new URL("http",
+                    InetAddress.getLoopbackAddress().getHostAddress(),
+                    fresh.getLocalPort(), "/");
+            List<Boolean> results = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(2);
+            for (int i = 0; i < 2; i++)
+            {
+                new ReachabilityProber().probe(url, Proxy.NO_PROXY,
+                        (probed, reachable) -> {
+                            results.add(reachable);
+                            done.countDown();
+                        });
+            }
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(results.size(), 2);
+            assertTrue(results.get(0) && results.get(1));
+            assertEquals(connected.get(), 1, "Host claimed by one probe");
+        }
+    }
+
+
+    @Test
+    public void unreachableCachedBriefly() throws Exception
+    {
+        int port;
+        try (ServerSocket closed = new ServerSocket(0, 1,
+                InetAddress.getLoopbackAddress()))
+        {
+            port = closed.getLocalPort();
+        }
+        URL url = new URL("http", InetAddress.getLoopbackAddress()
+                .getHostAddress(), port, "/");
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger reached = new AtomicInteger(-1);
+
+        new ReachabilityProber().probe(url, Proxy.NO_PROXY,
+                (probed, reachable) -> {
+                    reached.set(reachable ? 1 : 0);
+                    done.countDown();
+                });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(reached.get(), 0);
+        assertFalse(ReachabilityProber.getCached(url, Proxy.NO_PROXY));
+        Thread.sleep(400);
+        assertNull(ReachabilityProber.getCached(url, Proxy.NO_PROXY));
+    }
+
+
+    @Test
+    public void cancelled() throws Exception
+    {
+        AtomicInteger delivered = new AtomicInteger();
+        ReachabilityProber prober = new ReachabilityProber();
+        prober.probe(url("/gone"), Proxy.NO_PROXY,
+                (url, reachable) -> delivered.incrementAndGet());
+        prober.cancel();
+
+        Thread.sleep(300);
+        assertEquals(delivered.get(), 0);
+    }
+
+
+    /* ------------------ Helpers -------------------- */
+
+    /**
+     * Listens on loopback, counting the connections accepted
+     */
+    private static ServerSocket listen(final AtomicInteger accepted)
+            throws IOException
+    {
+        ServerSocket server =
+                new ServerSocket(0, 8, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed())
+            {
+                try (Socket socket = server.accept())
+                {
+                    accepted.incrementAndGet();
+                }
+                catch (IOException e)
+                {
+                    // Closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+
+    private URL url(final String path) throws IOException
+    {
+        return new URL("http",
+                InetAddress.getLoopbackAddress().getHostAddress(),
+                listening.getLocalPort(), path);
+    }
+}
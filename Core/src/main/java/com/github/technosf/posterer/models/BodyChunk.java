@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models;
+
+/**
+ * A piece of a response body as it arrived, with when it arrived.
+ * <p>
+ * A chunk is what one read of the body returned, so follows the body's
+ * arrival off the network rather than its chunked transfer coding exactly.
+ * Times are in micros since the request was fired.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class BodyChunk
+{
+    private final int index;
+
+    private final String text;
+
+    private final int bytes;
+
+    private final long atMicros;
+
+    private final long gapMicros;
+
+
+    /**
+     * @param index
+     *            the chunk's place in the body, from zero
+     * @param text
+     *            the chunk decoded, less any character split from the next
+     * @param bytes
+     *            the decoded bytes in the chunk
+     * @param atMicros
+     *            when the chunk arrived
+     * @param gapMicros
+     *            how long after the one before it, or after the headers, the
+     *            chunk arrived
+     */
+    public BodyChunk(final int index, final String text, final int bytes,
+            final long atMicros, final long gapMicros)
+    {
+        this.index = index;
+        this.text = text;
+        this.bytes = bytes;
+        this.atMicros = atMicros;
+        this.gapMicros = gapMicros;
+    }
+
+
+    /**
+     * @return the chunk's place in the body, from zero
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+
+    /**
+     * @return the chunk decoded
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+
+    /**
+     * @return the decoded bytes in the chunk
+     */
+    public int getBytes()
+    {
+        return bytes;
+    }
+
+
+    /**
+     * @return when the chunk arrived, in micros since the request was fired
+     */
+    public long getAtMicros()
+    {
+        return atMicros;
+    }
+
+
+    /**
+     * @return how long after the chunk before it, or after the headers, the
+     *         chunk arrived, in micros
+     */
+    public long getGapMicros()
+    {
+        return gapMicros;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        return String.format("#%1$d %2$d bytes at %3$dus (+%4$dus)", index,
+                bytes, atMicros, gapMicros);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models;
+
+/**
+ * How much of a response body is kept once read.
+ * <p>
+ * The body is always read to its end, so that its connection can be reused,
+ * but only {@code FULL} keeps all of it. The others read it through a small
+ * reused buffer, so the memory held per response does not grow with the body:
+ * <ul>
+ * <li>{@code full} - keep the whole body</li>
+ * <li>{@code digest} - keep only its size and CRC-32</li>
+ * <li>{@code prefix:1024} - keep the first bytes given</li>
+ * <li>{@code discard} - keep only its size</li>
+ * </ul>
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ConsumptionPolicy
+{
+    /**
+     * Keep the whole body
+     */
+    public static final ConsumptionPolicy FULL =
+            new ConsumptionPolicy("full", Integer.MAX_VALUE, false);
+
+    /**
+     * Keep the body size and checksum
+     */
+    public static final ConsumptionPolicy DIGEST =
+            new ConsumptionPolicy("digest", 0, true);
+
+    /**
+     * Keep the body size
+     */
+    public static final ConsumptionPolicy DISCARD =
+            new ConsumptionPolicy("discard", 0, false);
+
+    private final String spec;
+
+    /**
+     * The most body bytes kept
+     */
+    private final int keep;
+
+    /**
+     * Is the body checksummed?
+     */
+    private final boolean digest;
+
+
+    /**
+     * Keep the first bytes of the body
+     *
+     * @param bytes
+     *            the bytes to keep
+     * @return the policy
+     */
+    public static ConsumptionPolicy prefix(final int bytes)
+    {
+        return new ConsumptionPolicy("prefix:" + Math.max(0, bytes),
+                Math.max(0, bytes), false);
+    }
+
+
+    /**
+     * Parses a policy specification
+     *
+     * @param spec
+     *            the specification, e.g. {@code prefix:1024}
+     * @return the policy
+     * @throws IllegalArgumentException
+     *             if the specification is not understood
+     */
+    public static ConsumptionPolicy parse(final String spec)
+    {
+        String[] parts = spec.trim().split(":", 2);
+        switch (parts[0])
+        {
+            case "full":
+                return FULL;
+            case "digest":
+                return DIGEST;
+            case "discard":
+                return DISCARD;
+            case "prefix":
+                try
+                {
+                    return prefix(Integer.parseInt(
+                            parts.length > 1 ? parts[1] : ""));
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IllegalArgumentException(spec, e);
+                }
+            default:
+                throw new IllegalArgumentException(spec);
+        }
+    }
+
+
+    private ConsumptionPolicy(final String spec, final int keep,
+            final boolean digest)
+    {
+        this.spec = spec;
+        this.keep = keep;
+        this.digest = digest;
+    }
+
+
+    /**
+     * @return is the whole body kept?
+     */
+    public boolean isFull()
+    {
+        return keep == Integer.MAX_VALUE;
+    }
+
+
+    /**
+     * @return is the body checksummed?
+     */
+    public boolean isDigest()
+    {
+        return digest;
+    }
+
+
+    /**
+     * @return the most body bytes kept
+     */
+    public int getKeepBytes()
+    {
+        return keep;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return spec;
+    }
+}
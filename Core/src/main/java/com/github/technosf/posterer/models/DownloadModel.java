@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models;
+
+import java.nio.file.Path;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A response whose body is downloaded into a file rather than read into
+ * memory.
+ * <p>
+ * Where the server accepts byte ranges the body is split into segments
+ * fetched in parallel, each written straight into its place in the file, and
+ * a download that fails or is cancelled resumes from where each segment got
+ * to when downloaded into the same file again.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public interface DownloadModel extends ResponseModel
+{
+
+    /**
+     * Listens to the bytes downloaded
+     */
+    @FunctionalInterface
+    interface Progress
+    {
+        /**
+         * Bytes have been written to the file. Called on the threads
+         * downloading, so should be quick.
+         *
+         * @param received
+         *            the bytes in the file so far, including any resumed
+         * @param length
+         *            the body length, or -1 if not known
+         */
+        void progressed(long received, long length);
+    }
+
+
+    /**
+     * @return the file downloaded into
+     */
+    Path getFile();
+
+
+    /**
+     * @return the body length, or -1 if not yet known
+     */
+    long getLength();
+
+
+    /**
+     * @return the bytes in the file so far, including any resumed
+     */
+    long getReceived();
+
+
+    /**
+     * @return the bytes already in the file from an earlier download, resumed
+     */
+    long getResumed();
+
+
+    /**
+     * @return the segments downloaded in parallel, one if the body was not
+     *         ranged
+     */
+    int getSegments();
+
+
+    /**
+     * Sets the listener to the bytes downloaded
+     *
+     * @param progress
+     *            the listener, or null for none
+     */
+    void setProgress(@Nullable Progress progress);
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models;
+
+/**
+ * When an idempotent request is hedged: sent a second time, should the first
+ * be slow, taking whichever response comes first.
+ * <p>
+ * A request is hedged once it has waited longer than a percentile of the
+ * recent latency of its endpoint, so only the slowest are sent twice. The
+ * share of requests hedged is capped by a budget, in percent, so that a slow
+ * endpoint is not sent twice the load:
+ * <ul>
+ * <li>{@code off} - never hedge</li>
+ * <li>{@code p95} - hedge past the 95th percentile, within the default
+ * budget</li>
+ * <li>{@code p99:2} - hedge past the 99th percentile, at most 2% of
+ * requests</li>
+ * </ul>
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class HedgePolicy
+{
+    /**
+     * Default share of requests that may be hedged, in percent, overridden
+     * by the {@code posterer.hedge.budget} system property
+     */
+    public static final double DEFAULT_BUDGET_PERCENT =
+            Double.parseDouble(System.getProperty("posterer.hedge.budget", "5"));
+
+    /**
+     * Never hedge
+     */
+    public static final HedgePolicy OFF = new HedgePolicy("off", 0, 0);
+
+    private final String spec;
+
+    private final double percentile;
+
+    private final double budgetPercent;
+
+
+    /**
+     * Hedge past a percentile of recent latency
+     *
+     * @param percentile
+     *            the latency percentile, e.g. 95
+     * @param budgetPercent
+     *            the greatest share of requests hedged, in percent
+     * @return the policy
+     */
+    public static HedgePolicy at(final double percentile,
+            final double budgetPercent)
+    {
+        if (!(percentile > 0 && percentile <= 100 && budgetPercent >= 0))
+        {
+            throw new IllegalArgumentException(
+                    "p" + percentile + ":" + budgetPercent);
+        }
+        return new HedgePolicy(
+                "p" + format(percentile) + ":" + format(budgetPercent),
+                percentile, budgetPercent);
+    }
+
+
+    /**
+     * Parses a policy specification
+     *
+     * @param spec
+     *            the specification, e.g. {@code p99:2}
+     * @return the policy
+     * @throws IllegalArgumentException
+     *             if the specification is not understood
+     */
+    public static HedgePolicy parse(final String spec)
+    {
+        String trimmed = spec.trim();
+        if ("off".equals(trimmed))
+        {
+            return OFF;
+        }
+        if (!trimmed.startsWith("p"))
+        {
+            throw new IllegalArgumentException(spec);
+        }
+        String[] parts = trimmed.substring(1).split(":", 2);
+        try
+        {
+            return at(Double.parseDouble(parts[0]), parts.length > 1
+                    ? Double.parseDouble(parts[1]) : DEFAULT_BUDGET_PERCENT);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(spec, e);
+        }
+    }
+
+
+    private HedgePolicy(final String spec, final double percentile,
+            final double budgetPercent)
+    {
+        this.spec = spec;
+        this.percentile = percentile;
+        this.budgetPercent = budgetPercent;
+    }
+
+
+    /**
+     * @return are requests hedged?
+     */
+    public boolean isEnabled()
+    {
+        return percentile > 0;
+    }
+
+
+    /**
+     * @return the latency percentile past which a request is hedged
+     */
+    public double getPercentile()
+    {
+        return percentile;
+    }
+
+
+    /**
+     * @return the greatest share of requests hedged, in percent
+     */
+    public double getBudgetPercent()
+    {
+        return budgetPercent;
+    }
+
+
+    /**
+     * Formats a number without a needless fraction
+     */
+    private static String format(final double value)
+    {
+        return value == Math.rint(value) ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return spec;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the requests a {@code RequestModel} could hedge, those it hedged,
+ * and those where the hedge came back first, with the latency that saved.
+ * <p>
+ * The first request of a hedged pair is cancelled once the hedge wins, so how
+ * long it would have taken is not known; the latency saved is estimated from
+ * the endpoint's recent requests that took longer than it had already waited.
+ * Thread safe.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class HedgeStats
+{
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong hedged = new AtomicLong();
+
+    private final AtomicLong wins = new AtomicLong();
+
+    private final AtomicLong savedMicros = new AtomicLong();
+
+
+    /**
+     * Counts a request that could be hedged
+     */
+    public void request()
+    {
+        requests.incrementAndGet();
+    }
+
+
+    /**
+     * Counts a request hedged, if within a budget
+     *
+     * @param budgetPercent
+     *            the greatest share of requests hedged, in percent
+     * @return true if the request may be hedged, and is counted
+     */
+    public boolean hedge(final double budgetPercent)
+    {
+        long sent;
+        do
+        {
+            sent = hedged.get();
+            if (sent + 1 > requests.get() * budgetPercent / 100)
+            {
+                return false;
+            }
+        }
+        while (!hedged.compareAndSet(sent, sent + 1));
+        return true;
+    }
+
+
+    /**
+     * Counts a hedge that came back first
+     *
+     * @param saved
+     *            the latency the hedge is estimated to have saved, in micros
+     */
+    public void won(final long saved)
+    {
+        wins.incrementAndGet();
+        savedMicros.addAndGet(Math.max(0, saved));
+    }
+
+
+    /**
+     * Adds the counts of other stats, as of another model
+     *
+     * @param other
+     *            the other stats
+     */
+    public void add(final HedgeStats other)
+    {
+        requests.addAndGet(other.getRequests());
+        hedged.addAndGet(other.getHedged());
+        wins.addAndGet(other.getWins());
+        savedMicros.addAndGet(other.savedMicros.get());
+    }
+
+
+    /**
+     * @return the requests that could be hedged
+     */
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+
+    /**
+     * @return the requests hedged
+     */
+    public long getHedged()
+    {
+        return hedged.get();
+    }
+
+
+    /**
+     * @return the share of requests hedged, in percent
+     */
+    public double getHedgeRate()
+    {
+        long total = requests.get();
+        return total == 0 ? 0 : 100.0 * hedged.get() / total;
+    }
+
+
+    /**
+     * @return the hedges that came back first
+     */
+    public long getWins()
+    {
+        return wins.get();
+    }
+
+
+    /**
+     * @return the estimated latency saved by the hedges that came back first,
+     *         in total, in millis
+     */
+    public long getSavedMillis()
+    {
+        return TimeUnit.MICROSECONDS.toMillis(savedMicros.get());
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        return String.format(
+                "hedged %1$d of %2$d (%3$.1f%%), %4$d first, saved ~%5$dms",
+                getHedged(), getRequests(), getHedgeRate(), getWins(),
+                getSavedMillis());
+    }
+}
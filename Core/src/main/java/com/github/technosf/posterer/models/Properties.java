@@ -105,6 +105,25 @@ public interface Properties
     boolean addData(Proxy request);
 
 
+    /**
+     * Returns stored network shaping profiles as a {@code List}.
+     * 
+     * @return stored {@code ShapingProfile} objects
+     */
+    List<ShapingProfile> getShapingProfiles();
+
+
+    /**
+     * Adds a {@code ShapingProfile} to the properties to be maintained,
+     * replacing any stored under the same name.
+     * 
+     * @param profile
+     *            the {@code ShapingProfile} object to store
+     * @return true if the profile was stored
+     */
+    boolean addData(ShapingProfile profile);
+
+
     /**
      * Returns previously used local key stores
      * 
@@ -85,6 +85,14 @@ public interface Request
     Boolean getBase64();
 
 
+    /**
+     * Compress the payload with gzip, sent as {@code Content-Encoding: gzip}
+     * 
+     * @return true if gzip compressed
+     */
+    Boolean getGzip();
+
+
     /**
      * Test for {@code Request} actionability.
      * 
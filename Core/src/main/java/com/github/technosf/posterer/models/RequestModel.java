@@ -12,7 +12,10 @@
  */
 package com.github.technosf.posterer.models;
 
+import java.nio.file.Path;
+
 import com.github.technosf.posterer.models.impl.KeyStoreBean;
+import com.github.technosf.posterer.models.impl.WarmupBean;
 
 /**
  * Model for HTTP request definition and creation
@@ -102,4 +105,146 @@ public interface RequestModel
      */
     int getTimeout();
 
+
+    /**
+     * Sets how much of each response body is kept once read. Responses may
+     * override it before they are called.
+     * 
+     * @param policy
+     *            the consumption policy
+     */
+    default void setConsumption(final ConsumptionPolicy policy)
+    {
+        // Bodies kept in full
+    }
+
+
+    /**
+     * Returns how much of each response body is kept once read
+     * 
+     * @return the consumption policy
+     */
+    default ConsumptionPolicy getConsumption()
+    {
+        return ConsumptionPolicy.FULL;
+    }
+
+
+    /**
+     * Sets whether identical {@code GET} and {@code HEAD} requests fired at
+     * the same time share one response, so that only one goes out.
+     * <p>
+     * Runs that mean to load a backend should not coalesce.
+     * 
+     * @param coalescing
+     *            true to coalesce
+     */
+    default void setCoalescing(final boolean coalescing)
+    {
+        // Never coalesced
+    }
+
+
+    /**
+     * Are identical requests fired at the same time coalesced?
+     * 
+     * @return true if coalesced
+     */
+    default boolean isCoalescing()
+    {
+        return false;
+    }
+
+
+    /**
+     * Sets when idempotent requests are hedged: sent again should they take
+     * longer than a percentile of their endpoint's recent latency, taking
+     * whichever response returns first.
+     * 
+     * @param policy
+     *            the hedging policy for requests without one of their own
+     */
+    default void setHedging(final HedgePolicy policy)
+    {
+        // Never hedged
+    }
+
+
+    /**
+     * Sets when a request is hedged, overriding the model's policy
+     * 
+     * @param request
+     *            the request, as saved
+     * @param policy
+     *            the hedging policy for the request
+     */
+    default void setHedging(final Request request, final HedgePolicy policy)
+    {
+        // Never hedged
+    }
+
+
+    /**
+     * Returns when a request is hedged
+     * 
+     * @param request
+     *            the request
+     * @return the request's hedging policy, or else the model's
+     */
+    default HedgePolicy getHedging(final Request request)
+    {
+        return HedgePolicy.OFF;
+    }
+
+
+    /**
+     * Returns the counts of requests hedged, and of the latency saved
+     * 
+     * @return the hedge counts
+     */
+    default HedgeStats getHedgeStats()
+    {
+        return new HedgeStats();
+    }
+
+
+    /**
+     * Opens connections to the request's endpoint ahead of time, connecting
+     * and handshaking each, and parks them in the pool so that the requests
+     * that follow do not pay for it. Blocks until done.
+     * <p>
+     * Transports without a shared pool, or requests that would not use it,
+     * warm nothing.
+     * 
+     * @param request
+     *            the request whose endpoint to warm
+     * @param connections
+     *            the connections to open
+     * @return what was warmed
+     */
+    default WarmupBean prewarm(final Request request, final int connections)
+    {
+        return WarmupBean.skipped(request.getEndpoint(), "Not pooled");
+    }
+
+
+    /**
+     * Creates a download of the request's {@code GET} response body into a
+     * file, ready to be fired off.
+     * <p>
+     * Where the server accepts byte ranges the body is fetched as up to the
+     * given segments in parallel, each over its own connection. A file left
+     * part downloaded by an earlier download of the same body is resumed.
+     * 
+     * @param request
+     *            the request, downloaded as a {@code GET}
+     * @param file
+     *            the file to download into
+     * @param segments
+     *            the most segments to fetch in parallel
+     * @return the download
+     */
+    DownloadModel download(final Request request, final Path file,
+            final int segments);
+
 }
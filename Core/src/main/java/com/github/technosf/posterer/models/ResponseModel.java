@@ -14,6 +14,8 @@ package com.github.technosf.posterer.models;
 
 import java.util.concurrent.ExecutionException;
 
+import org.eclipse.jdt.annotation.Nullable;
+
 /**
  * Models the response attributes and actions expected from the HTTP Client
  * 
@@ -50,6 +52,23 @@ public interface ResponseModel
     boolean isComplete() throws InterruptedException, ExecutionException;
 
 
+    /**
+     * Cancels the request. A request not yet started will not start, and one
+     * in flight is aborted and its connection released.
+     * 
+     * @return true if cancelled by this call
+     */
+    boolean cancel();
+
+
+    /**
+     * Has the request been cancelled?
+     * 
+     * @return true if cancelled
+     */
+    boolean isCancelled();
+
+
     /**
      * Returns the time that the request/response was in-flight in milliseconds.
      * 
@@ -58,6 +77,14 @@ public interface ResponseModel
     long getElaspedTimeMilli();
 
 
+    /**
+     * Returns the Response status code
+     * 
+     * @return the status code, or zero if there is no response
+     */
+    int getStatusCode();
+
+
     /**
      * Return the Response Status line
      * 
@@ -90,10 +117,150 @@ public interface ResponseModel
     String getBody();
 
 
+    /**
+     * Returns the size of the response body as received on the wire, still
+     * content-encoded, excluding headers and any chunk framing.
+     * 
+     * @return the body bytes received
+     */
+    long getWireBytes();
+
+
+    /**
+     * Returns the size of the response body once content-decoded. The same as
+     * the wire bytes unless the body was compressed.
+     * 
+     * @return the decoded body bytes
+     */
+    long getDecodedBytes();
+
+
+    /**
+     * Sets how much of the response body is kept once read, overriding the
+     * request model's policy. Only effective before the call is made.
+     * 
+     * @param policy
+     *            the consumption policy
+     */
+    default void setConsumption(final ConsumptionPolicy policy)
+    {
+        // Bodies kept in full
+    }
+
+
+    /**
+     * Returns the checksum of the decoded response body, if the body was
+     * consumed by a digesting {@code ConsumptionPolicy}.
+     * 
+     * @return the body CRC-32 in hex, or an empty string if not digested
+     */
+    default String getDigest()
+    {
+        return "";
+    }
+
+
+    /**
+     * Returns how the response was served with regard to the local HTTP
+     * cache.
+     * 
+     * @return the cache status
+     */
+    default CacheStatus getCacheStatus()
+    {
+        return CacheStatus.UNCACHED;
+    }
+
+
+    /**
+     * Sets the listener to the body as it arrives. Set before the response
+     * is called, the body is then read as part of the call, each chunk handed
+     * to the listener as it is read, rather than once the response is first
+     * looked at.
+     * <p>
+     * Responses that cannot stream their body never call the listener.
+     * 
+     * @param listener
+     *            the listener, or null for none
+     */
+    default void setChunkListener(final @Nullable ChunkListener listener)
+    {
+        // Not streamed
+    }
+
+
+    /**
+     * Returns the time to first byte: from firing the request to its
+     * response headers arriving.
+     * 
+     * @return the time in micros, or -1 if not known
+     */
+    default long getFirstByteMicros()
+    {
+        return -1;
+    }
+
+
+    /**
+     * Returns the protocol the response came over, by its ALPN identifier,
+     * such as {@code http/1.1}, {@code h2} or {@code h2c}.
+     * 
+     * @return the protocol, or an empty string if there is no response
+     */
+    String getProtocol();
+
+
+    /**
+     * Returns the id of the HTTP/2 stream that carried the exchange.
+     * 
+     * @return the stream id, or zero if the exchange was not multiplexed
+     */
+    int getStreamId();
+
+
     /**
      * Did the server require client authentication to return a response?
      * 
      * @return true is server asked for client auth
      */
     boolean neededClientAuth();
+
+    /**
+     * Listens to a response body as it arrives
+     */
+    @FunctionalInterface
+    interface ChunkListener
+    {
+        /**
+         * A chunk of the body has arrived. Called on the thread reading the
+         * body, so should be quick.
+         * 
+         * @param chunk
+         *            the chunk
+         */
+        void chunk(BodyChunk chunk);
+    }
+
+    /**
+     * How a response was served with regard to the local HTTP cache
+     */
+    enum CacheStatus
+    {
+        /**
+         * The cache was not consulted
+         */
+        UNCACHED,
+        /**
+         * Not held, or not fresh and replaced, fetched from the origin
+         */
+        MISS,
+        /**
+         * Fresh, served from the cache
+         */
+        HIT,
+        /**
+         * Stale, confirmed by the origin and served from the cache
+         */
+        REVALIDATED
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models;
+
+/**
+ * Model of the network conditions simulated on connections to a route: the
+ * latency, jitter, bandwidth and resets a constrained link would add.
+ * <p>
+ * The route is a host, a {@code host:port}, or {@code *} for any route.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public interface ShapingProfile
+        extends Actionable
+{
+
+    /**
+     * Returns the profile name, by which it is saved
+     *
+     * @return the name
+     */
+    String getName();
+
+
+    /**
+     * Returns the route shaped: a host, a {@code host:port}, or {@code *}
+     *
+     * @return the route
+     */
+    String getRoute();
+
+
+    /**
+     * Returns the round trip time added on connecting, and on each turn from
+     * sending to receiving
+     *
+     * @return the added latency in millis
+     */
+    int getLatencyMillis();
+
+
+    /**
+     * Returns the most the added latency varies by, either way
+     *
+     * @return the jitter in millis
+     */
+    int getJitterMillis();
+
+
+    /**
+     * Returns the bandwidth each way
+     *
+     * @return the bandwidth in kilobits a second, unlimited if zero
+     */
+    int getKbps();
+
+
+    /**
+     * Returns the chance of a connection being reset part way through its
+     * response
+     *
+     * @return the chance in percent
+     */
+    double getResetPercent();
+
+
+    /**
+     * Test for {@code ShapingProfile} actionability.
+     *
+     * @return True if the profile can be applied
+     */
+    @Override
+    boolean isActionable();
+
+}
@@ -57,6 +57,8 @@ public final class RequestBean
 
     private boolean base64;
 
+    private boolean gzip;
+
     /*
      * Session and derived fields
      */
@@ -94,7 +96,8 @@ public final class RequestBean
                 request.getMethod(),
                 request.getSecurity(),
                 request.getContentType(),
-                request.getBase64());
+                request.getBase64(),
+                request.getGzip());
     }
 
 
@@ -153,6 +156,30 @@ public final class RequestBean
     }
 
 
+    /**
+     * Instantiates a bean from component values.
+     * 
+     * @param endpoint
+     * @param payload
+     * @param method
+     * @param security
+     * @param contentType
+     * @param base64
+     * @param gzip
+     */
+    public RequestBean(String endpoint,
+            String payload,
+            String method,
+            String security,
+            String contentType,
+            Boolean base64,
+            Boolean gzip)
+    {
+        this(endpoint, payload, method, security, contentType, base64);
+        this.gzip = gzip;
+    }
+
+
     /* -------------  Sessions and derived Getters ------------------ */
 
     /**
@@ -325,6 +352,28 @@ public final class RequestBean
     }
 
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.Request#getGzip()
+     */
+    @Override
+    public Boolean getGzip()
+    {
+        return gzip;
+    }
+
+
+    /**
+     * @param gzip
+     *            the gzip to set
+     */
+    public void setGzip(boolean gzip)
+    {
+        this.gzip = gzip;
+    }
+
+
     /* ------------------  Object functions  ------------------------ */
 
     /**
@@ -441,12 +490,16 @@ public final class RequestBean
                 request.getMethod(),
                 request.getSecurity(),
                 request.getContentType(),
-                request.getBase64());
+                request.getBase64(),
+                request.getGzip());
     }
 
 
     /**
      * Create a hashcode for the {@code Request}
+     * <p>
+     * gzip only perturbs the hash when set, so requests saved before it
+     * existed keep their ids.
      * 
      * @param request
      * @return
@@ -458,13 +511,14 @@ public final class RequestBean
             return 0;
         }
 
-        return Objects.hash(
+        int hash = Objects.hash(
                 Objects.toString(request.getEndpoint()),
                 Objects.toString(request.getPayload()),
                 Objects.toString(request.getMethod()),
                 Objects.toString(request.getSecurity()),
                 Objects.toString(request.getContentType()),
                 Objects.toString(request.getBase64()));
+        return Boolean.TRUE.equals(request.getGzip()) ? 31 * hash + 1 : hash;
     }
 
 
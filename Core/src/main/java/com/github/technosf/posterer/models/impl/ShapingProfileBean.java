@@ -0,0 +1,336 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models.impl;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.apache.commons.lang3.StringUtils.trimToEmpty;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.ShapingProfile;
+
+/**
+ * Implementation of a {@code ShapingProfile} as an immutable java bean.
+ * <p>
+ * A profile is specified as comma separated settings, of which only the name
+ * is needed, e.g.
+ * {@code name=3g,route=api.example.com,latency=300,jitter=50,kbps=1600,reset=1}
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ShapingProfileBean
+        implements ShapingProfile
+{
+    /**
+     * The route that matches any route
+     */
+    public static final String ANY_ROUTE = "*";
+
+    private final String name;
+
+    private final String route;
+
+    private final int latencyMillis;
+
+    private final int jitterMillis;
+
+    private final int kbps;
+
+    private final double resetPercent;
+
+
+    /**
+     * Instantiation of a {@code ShapingProfileBean} as a copy of a
+     * {@code ShapingProfile} implementation.
+     *
+     * @param profile
+     *            the {@code ShapingProfile} to copy
+     */
+    public ShapingProfileBean(final ShapingProfile profile)
+    {
+        this(profile.getName(), profile.getRoute(), profile.getLatencyMillis(),
+                profile.getJitterMillis(), profile.getKbps(),
+                profile.getResetPercent());
+    }
+
+
+    /**
+     * Instantiates a bean from component values.
+     *
+     * @param name
+     *            the profile name
+     * @param route
+     *            the route shaped, any if blank
+     * @param latencyMillis
+     *            the added round trip time
+     * @param jitterMillis
+     *            the most the latency varies by
+     * @param kbps
+     *            the bandwidth each way, unlimited if zero
+     * @param resetPercent
+     *            the chance of a connection being reset
+     */
+    @SuppressWarnings("null")
+    public ShapingProfileBean(final @Nullable String name,
+            final @Nullable String route, final int latencyMillis,
+            final int jitterMillis, final int kbps, final double resetPercent)
+    {
+        this.name = trimToEmpty(name);
+        this.route = isNotBlank(route) ? route.trim().toLowerCase(Locale.ROOT)
+                : ANY_ROUTE;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.kbps = kbps;
+        this.resetPercent = resetPercent;
+    }
+
+
+    /**
+     * Parses a profile specification
+     *
+     * @param spec
+     *            the specification, e.g. {@code name=dsl,latency=40,kbps=8000}
+     * @return the profile
+     * @throws IllegalArgumentException
+     *             if the specification is not understood or not actionable
+     */
+    public static ShapingProfileBean parse(final String spec)
+    {
+        String name = null;
+        String route = null;
+        int latency = 0;
+        int jitter = 0;
+        int kbps = 0;
+        double reset = 0;
+        try
+        {
+            for (String setting : spec.split(","))
+            {
+                String[] pair = setting.split("=", 2);
+                if (pair.length != 2)
+                {
+                    throw new IllegalArgumentException(spec);
+                }
+                String value = pair[1].trim();
+                switch (pair[0].trim())
+                {
+                    case "name":
+                        name = value;
+                        break;
+                    case "route":
+                        route = value;
+                        break;
+                    case "latency":
+                        latency = Integer.parseInt(value);
+                        break;
+                    case "jitter":
+                        jitter = Integer.parseInt(value);
+                        break;
+                    case "kbps":
+                        kbps = Integer.parseInt(value);
+                        break;
+                    case "reset":
+                        reset = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(spec);
+                }
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(spec, e);
+        }
+
+        ShapingProfileBean profile = new ShapingProfileBean(name, route,
+                latency, jitter, kbps, reset);
+        if (!profile.isActionable())
+        {
+            throw new IllegalArgumentException(spec);
+        }
+        return profile;
+    }
+
+
+    /* ------------- ShapingProfile Getters ------------------ */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ShapingProfile#getName()
+     */
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ShapingProfile#getRoute()
+     */
+    @Override
+    public String getRoute()
+    {
+        return route;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ShapingProfile#getLatencyMillis()
+     */
+    @Override
+    public int getLatencyMillis()
+    {
+        return latencyMillis;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ShapingProfile#getJitterMillis()
+     */
+    @Override
+    public int getJitterMillis()
+    {
+        return jitterMillis;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ShapingProfile#getKbps()
+     */
+    @Override
+    public int getKbps()
+    {
+        return kbps;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ShapingProfile#getResetPercent()
+     */
+    @Override
+    public double getResetPercent()
+    {
+        return resetPercent;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ShapingProfile#isActionable()
+     */
+    @Override
+    public boolean isActionable()
+    {
+        return isActionable(this);
+    }
+
+
+    /* ------------------ Object functions ------------------------ */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(name, route, latencyMillis, jitterMillis, kbps,
+                resetPercent);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (obj instanceof ShapingProfile)
+        {
+            ShapingProfile other = (ShapingProfile) obj;
+            return name.equals(other.getName())
+                    && route.equals(other.getRoute())
+                    && latencyMillis == other.getLatencyMillis()
+                    && jitterMillis == other.getJitterMillis()
+                    && kbps == other.getKbps()
+                    && Double.compare(resetPercent,
+                            other.getResetPercent()) == 0;
+        }
+        return false;
+    }
+
+
+    /**
+     * Returns the profile as its specification
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.ROOT,
+                "name=%1$s,route=%2$s,latency=%3$d,jitter=%4$d,kbps=%5$d,"
+                        + "reset=%6$s",
+                name, route, latencyMillis, jitterMillis, kbps,
+                resetPercent == Math.rint(resetPercent)
+                        ? Long.toString((long) resetPercent)
+                        : Double.toString(resetPercent));
+    }
+
+
+    /* ---------------- Static ---------------------- */
+
+    /**
+     * Test for {@code ShapingProfile} actionability.
+     *
+     * @return True if the {@code ShapingProfile} can be applied
+     */
+    public static boolean isActionable(final @Nullable ShapingProfile profile)
+    {
+        if (profile == null)
+        {
+            return false;
+        }
+
+        return isNotBlank(profile.getName())
+                && isNotBlank(profile.getRoute())
+                && profile.getLatencyMillis() >= 0
+                && profile.getJitterMillis() >= 0
+                && profile.getKbps() >= 0
+                && profile.getResetPercent() >= 0
+                && profile.getResetPercent() <= 100;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models.impl;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The outcome of pre-warming connections to a route: how many were asked for,
+ * how many were opened and parked in the pool, and how long that took.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class WarmupBean
+{
+    private final String route;
+
+    private final int requested;
+
+    private final int opened;
+
+    private final long elapsedMillis;
+
+    private final long slowestMillis;
+
+    @Nullable
+    private final String error;
+
+
+    /**
+     * Instantiates a bean from component values.
+     *
+     * @param route
+     *            the route warmed
+     * @param requested
+     *            connections asked for
+     * @param opened
+     *            connections opened, and parked in the pool
+     * @param elapsedMillis
+     *            the warm-up time
+     * @param slowestMillis
+     *            the longest time taken to connect and handshake one
+     *            connection
+     * @param error
+     *            the reason connections could not be opened, if any
+     */
+    public WarmupBean(final String route, final int requested,
+            final int opened, final long elapsedMillis,
+            final long slowestMillis, final @Nullable String error)
+    {
+        this.route = route;
+        this.requested = requested;
+        this.opened = opened;
+        this.elapsedMillis = elapsedMillis;
+        this.slowestMillis = slowestMillis;
+        this.error = error;
+    }
+
+
+    /**
+     * Returns a bean for a route that was not warmed
+     *
+     * @param route
+     *            the route
+     * @param reason
+     *            why it was not warmed
+     * @return the bean
+     */
+    public static WarmupBean skipped(final String route, final String reason)
+    {
+        return new WarmupBean(route, 0, 0, 0, 0, reason);
+    }
+
+
+    /**
+     * @return the route warmed
+     */
+    public String getRoute()
+    {
+        return route;
+    }
+
+
+    /**
+     * @return the connections asked for
+     */
+    public int getRequested()
+    {
+        return requested;
+    }
+
+
+    /**
+     * @return the connections opened and parked in the pool
+     */
+    public int getOpened()
+    {
+        return opened;
+    }
+
+
+    /**
+     * @return the warm-up time in millis
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+
+    /**
+     * @return the longest connect and handshake time of one connection, in
+     *         millis
+     */
+    public long getSlowestMillis()
+    {
+        return slowestMillis;
+    }
+
+
+    /**
+     * @return the reason connections could not be opened, if any
+     */
+    @Nullable
+    public String getError()
+    {
+        return error;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        String warmed = String.format(
+                "Pre-warmed %1$d/%2$d connections to %3$s in %4$dms, slowest %5$dms",
+                opened, requested, route, elapsedMillis, slowestMillis);
+        return error == null ? warmed : warmed + " - " + error;
+    }
+}
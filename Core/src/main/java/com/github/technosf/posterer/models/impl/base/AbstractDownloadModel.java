@@ -0,0 +1,886 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models.impl.base;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.DownloadModel;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.utils.Auditor;
+
+/**
+ * Basic implementation of {@code DownloadModel}: a {@code GET} whose body is
+ * written into a file, split into byte ranges fetched in parallel where the
+ * server accepts them.
+ * <p>
+ * The body is first probed for its length, whether ranges are accepted and a
+ * validator. A ranged body is split into up to the segments asked for, none
+ * smaller than the minimum segment, and the file extended to the body length
+ * up front. Each segment is fetched on a thread of its own and written
+ * straight into its place in the file with positional channel writes, through
+ * a small buffer, so the body never passes through memory whole. A segment
+ * that fails is fetched again from where it got to, a few times, before the
+ * download fails.
+ * <p>
+ * How far each segment got is checkpointed to a {@code .part} file beside the
+ * download, after the bytes it records are forced to disk. Downloading the
+ * same body into the same file again resumes from the checkpoint, if the
+ * validator, an ETag or Last-Modified date, shows the body has not changed;
+ * the ranges are asked for {@code If-Range} the validator, so a body that
+ * changes part way fails rather than being spliced. A body without ranges is
+ * downloaded as one stream and cannot be resumed.
+ * <p>
+ * The total deadline does not apply: a large download takes as long as it
+ * takes, each read being bounded by the transport's read timeout instead.
+ * Cancelling stops every segment, leaving the checkpoint to resume from.
+ * <p>
+ * Transports probe and open the ranges.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public abstract class AbstractDownloadModel
+        extends AbstractResponseModelTask<Long>
+        implements DownloadModel
+{
+    /**
+     * The least bytes in a segment, overridden by the
+     * {@code posterer.download.segment} system property
+     */
+    static final long MIN_SEGMENT =
+            Long.getLong("posterer.download.segment", 1 << 20);
+
+    /**
+     * Times a failed segment is fetched again, overridden by the
+     * {@code posterer.download.retries} system property
+     */
+    static final int RETRIES =
+            Integer.getInteger("posterer.download.retries", 2);
+
+    /**
+     * Least millis between checkpoints, overridden by the
+     * {@code posterer.download.checkpoint} system property
+     */
+    static final long CHECKPOINT_MILLIS =
+            Long.getLong("posterer.download.checkpoint", 1000);
+
+    /**
+     * Suffix of the checkpoint file
+     */
+    public static final String PART = ".part";
+
+    /**
+     * Bytes read and written at a time, per segment
+     */
+    private static final int BUFFER = 64 * 1024;
+
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_VALIDATOR = "validator";
+    private static final String KEY_SEGMENTS = "segments";
+    private static final String KEY_SEGMENT = "segment.";
+
+    private static final String CONST_PROBE =
+            "Probed %1$d: %2$d bytes, ranges %3$s";
+    private static final String CONST_SEGMENTS =
+            "Downloading %1$d segments of ~%2$d bytes";
+    private static final String CONST_RESUMED = "Resuming at %1$d of %2$d bytes";
+    private static final String CONST_SINGLE =
+            "Ranges not accepted, downloading as one stream";
+    private static final String CONST_RETRY =
+            "Segment %1$d failed at %2$d, fetching again: %3$s";
+    private static final String CONST_DONE =
+            "Downloaded %1$d bytes into %2$s";
+    private static final String CONST_ERR_STATUS =
+            "Unexpected status %1$d for bytes %2$d-%3$s";
+    private static final String CONST_ERR_SHORT =
+            "Body ended at %1$d bytes, short of %2$d";
+    private static final String CONST_ERR_STOPPED = "Download stopped";
+
+    /**
+     * Fetches the segments
+     */
+    private static final ExecutorService SEGMENTS;
+
+    static
+    {
+        AtomicInteger count = new AtomicInteger();
+        SEGMENTS = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable,
+                    "posterer-download-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * What the probe found of the body
+     */
+    protected static final class Probe
+    {
+        final int status;
+        final long length;
+        final boolean ranges;
+        final String validator;
+        final String headers;
+
+
+        /**
+         * @param status
+         *            the probe status code
+         * @param length
+         *            the body length, or -1 if not known
+         * @param ranges
+         *            are byte ranges accepted?
+         * @param validator
+         *            the strong ETag, or else Last-Modified date, if any
+         * @param headers
+         *            the probe headers, to display
+         */
+        public Probe(final int status, final long length, final boolean ranges,
+                final String validator, final String headers)
+        {
+            this.status = status;
+            this.length = length;
+            this.ranges = ranges;
+            this.validator = validator;
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * A body being received, closed once read or given up on
+     */
+    protected interface Transfer extends Closeable
+    {
+        /**
+         * @return the response status code
+         */
+        int getStatus();
+
+
+        /**
+         * @return the body, as sent
+         * @throws IOException
+         *             if the body cannot be read
+         */
+        InputStream getBody() throws IOException;
+    }
+
+    /**
+     * A byte range of the body and how much of it is in the file
+     */
+    static final class Segment
+    {
+        final long start;
+
+        /**
+         * The last byte, inclusive, or -1 if up to the end of the body
+         */
+        final long end;
+
+        volatile long done;
+
+
+        Segment(final long start, final long end, final long done)
+        {
+            this.start = start;
+            this.end = end;
+            this.done = done;
+        }
+
+
+        long position()
+        {
+            return start + done;
+        }
+
+
+        long remaining()
+        {
+            return end < 0 ? Long.MAX_VALUE : end - start + 1 - done;
+        }
+    }
+
+    private final Path file;
+
+    private final Path part;
+
+    private final int maxSegments;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    private volatile long length = -1;
+
+    private volatile long resumed;
+
+    private volatile int segments;
+
+    private volatile int statusCode;
+
+    private volatile @Nullable Progress progress;
+
+    private long checkpointed;
+
+
+    /**
+     * Creates a download of the request's body into a file
+     *
+     * @param requestId
+     *            the request id
+     * @param auditor
+     *            the call auditor
+     * @param request
+     *            the request, downloaded as a {@code GET}
+     * @param file
+     *            the file to download into
+     * @param segments
+     *            the most segments to fetch in parallel
+     */
+    protected AbstractDownloadModel(final int requestId, final Auditor auditor,
+            final Request request, final Path file, final int segments)
+    {
+        super(requestId, auditor, 0, request);
+        this.file = file;
+        this.part = file.resolveSibling(file.getFileName() + PART);
+        this.maxSegments = Math.max(1, segments);
+    }
+
+
+    /*
+     * ------------------------------------------------------------------------
+     * Abstract calls
+     * ------------------------------------------------------------------------
+     */
+
+    /**
+     * Probes the body for its length, whether ranges are accepted and its
+     * validator, without fetching it
+     *
+     * @return what was found
+     * @throws IOException
+     *             if the body cannot be probed
+     */
+    protected abstract Probe probe() throws IOException;
+
+
+    /**
+     * Opens a byte range of the body, or the whole of it
+     *
+     * @param from
+     *            the first byte
+     * @param to
+     *            the last byte, inclusive, or -1 to fetch the whole body
+     *            without a range
+     * @param validator
+     *            the validator to ask for the range {@code If-Range}, if not
+     *            empty
+     * @return the body being received
+     * @throws IOException
+     *             if the range cannot be opened
+     */
+    protected abstract Transfer open(long from, long to, String validator)
+            throws IOException;
+
+
+    /*
+     * ------------------------------------------------------------------------
+     * Download
+     * ------------------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#getReponse(com.github.technosf.posterer.utils.Auditor)
+     */
+    @Override
+    protected final Long getReponse(final Auditor auditor) throws Exception
+    {
+        long downloaded;
+        try
+        {
+            Probe probe = probe();
+            statusCode = probe.status;
+            responseHeaders = probe.headers;
+            audit(CONST_PROBE, probe.status, probe.length, probe.ranges);
+
+            if (probe.ranges && probe.length > 0)
+            {
+                downloaded = ranged(probe);
+            }
+            else
+            {
+                audit(CONST_SINGLE);
+                downloaded = single(probe);
+            }
+        }
+        finally
+        {
+            closeClient();
+        }
+
+        wireBytes = downloaded;
+        decodedBytes = downloaded;
+        audit(CONST_DONE, downloaded, file);
+        return downloaded;
+    }
+
+
+    /**
+     * Downloads the body as segments fetched in parallel, resuming any
+     * checkpoint
+     */
+    private long ranged(final Probe probe) throws Exception
+    {
+        length = probe.length;
+        List<Segment> plan = resume(probe);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+        {
+            if (plan == null)
+            /*
+             * Start afresh, extending the file to its length up front
+             */
+            {
+                plan = plan(length, maxSegments, MIN_SEGMENT);
+                if (channel.size() > length)
+                {
+                    channel.truncate(length);
+                }
+                if (channel.size() < length)
+                {
+                    channel.write(ByteBuffer.allocate(1), length - 1);
+                }
+                checkpoint(channel, plan, probe.validator, true);
+            }
+            else
+            {
+                resumed = plan.stream().mapToLong(s -> s.done).sum();
+                received.set(resumed);
+                audit(CONST_RESUMED, resumed, length);
+            }
+            segments = plan.size();
+            audit(CONST_SEGMENTS, plan.size(), length / plan.size());
+
+            List<Future<?>> fetches = new ArrayList<>();
+            for (Segment segment : plan)
+            {
+                if (segment.remaining() > 0)
+                {
+                    List<Segment> all = plan;
+                    fetches.add(SEGMENTS.submit(() -> {
+                        fetch(channel, segment, all, probe.validator);
+                        return null;
+                    }));
+                }
+            }
+
+            Exception failure = await(fetches);
+            if (failure != null)
+            {
+                checkpoint(channel, plan, probe.validator, true);
+                throw failure;
+            }
+            channel.force(false);
+        }
+        Files.deleteIfExists(part);
+        return length;
+    }
+
+
+    /**
+     * Downloads the body as one stream, from the start
+     */
+    private long single(final Probe probe) throws IOException
+    {
+        length = probe.length;
+        segments = 1;
+        Files.deleteIfExists(part);
+        Segment whole = new Segment(0, -1, 0);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                Transfer transfer = open(0, -1, ""))
+        {
+            statusCode = transfer.getStatus();
+            if (statusCode != 200)
+            {
+                throw new ProtocolException(String.format(CONST_ERR_STATUS,
+                        statusCode, 0, ""));
+            }
+            copy(transfer.getBody(), channel, whole, null, "");
+        }
+        if (probe.length > 0 && whole.done < probe.length)
+        {
+            throw new EOFException(
+                    String.format(CONST_ERR_SHORT, whole.done, probe.length));
+        }
+        length = whole.done;
+        return whole.done;
+    }
+
+
+    /**
+     * Fetches a segment into the file, fetching again from where it got to
+     * should it fail
+     */
+    private void fetch(final FileChannel channel, final Segment segment,
+            final List<Segment> plan, final String validator)
+            throws IOException
+    {
+        int failures = 0;
+        while (segment.remaining() > 0)
+        {
+            if (stopped.get())
+            {
+                throw new IOException(CONST_ERR_STOPPED);
+            }
+            try (Transfer transfer =
+                    open(segment.position(), segment.end, validator))
+            {
+                int status = transfer.getStatus();
+                if (status != 206)
+                /*
+                 * Ranges refused, or the body changed - fetching again won't help
+                 */
+                {
+                    statusCode = status;
+                    throw new ProtocolException(String.format(CONST_ERR_STATUS,
+                            status, segment.position(), segment.end));
+                }
+                copy(transfer.getBody(), channel, segment, plan, validator);
+                if (segment.remaining() > 0)
+                {
+                    throw new EOFException(String.format(CONST_ERR_SHORT,
+                            segment.position(), segment.end + 1));
+                }
+                statusCode = status;
+            }
+            catch (ProtocolException e)
+            {
+                stopped.set(true);
+                throw e;
+            }
+            catch (IOException e)
+            {
+                if (stopped.get() || isCancelled() || ++failures > RETRIES)
+                {
+                    stopped.set(true);
+                    throw e;
+                }
+                audit(CONST_RETRY, plan.indexOf(segment), segment.position(),
+                        e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Copies a body into its segment of the file, at most the bytes remaining
+     * in the segment
+     */
+    private void copy(final InputStream body, final FileChannel channel,
+            final Segment segment, final @Nullable List<Segment> plan,
+            final String validator) throws IOException
+    {
+        ReadableByteChannel in = Channels.newChannel(body);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+        while (segment.remaining() > 0)
+        {
+            if (stopped.get())
+            {
+                throw new IOException(CONST_ERR_STOPPED);
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(BUFFER, segment.remaining()));
+            int read = in.read(buffer);
+            if (read < 0)
+            {
+                break;
+            }
+            buffer.flip();
+            long position = segment.position();
+            while (buffer.hasRemaining())
+            {
+                position += channel.write(buffer, position);
+            }
+            segment.done += read;
+
+            long total = received.addAndGet(read);
+            Progress listener = progress;
+            if (listener != null)
+            {
+                listener.progressed(total, length);
+            }
+            if (plan != null)
+            {
+                checkpoint(channel, plan, validator, false);
+            }
+        }
+    }
+
+
+    /**
+     * Waits for the segments, stopping the rest once one fails
+     *
+     * @return the first failure, or null if none
+     */
+    private @Nullable Exception await(final List<Future<?>> fetches)
+    {
+        Exception failure = null;
+        for (Future<?> fetch : fetches)
+        {
+            try
+            {
+                fetch.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                abort();
+                failure = failure != null ? failure
+                        : new CancellationException(CONST_ERR_STOPPED);
+            }
+            catch (ExecutionException e)
+            {
+                abort();
+                if (failure == null)
+                {
+                    Throwable cause = e.getCause();
+                    failure = cause instanceof Exception ? (Exception) cause
+                            : e;
+                }
+            }
+        }
+        return failure;
+    }
+
+
+    /*
+     * ------------------------------------------------------------------------
+     * Checkpoints
+     * ------------------------------------------------------------------------
+     */
+
+    /**
+     * Splits a body into segments
+     *
+     * @param length
+     *            the body length
+     * @param most
+     *            the most segments
+     * @param least
+     *            the least bytes in a segment
+     * @return the segments
+     */
+    static List<Segment> plan(final long length, final int most,
+            final long least)
+    {
+        int count = (int) Math.max(1,
+                Math.min(most, length / Math.max(1, least)));
+        List<Segment> plan = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            plan.add(new Segment(length * i / count,
+                    length * (i + 1) / count - 1, 0));
+        }
+        return plan;
+    }
+
+
+    /**
+     * Reads the checkpoint of an earlier download of the same body into the
+     * same file
+     *
+     * @return the segments as checkpointed, or null if there is nothing to
+     *         resume
+     */
+    private @Nullable List<Segment> resume(final Probe probe)
+    {
+        if (probe.validator.isEmpty() || !Files.isRegularFile(part)
+                || !Files.isRegularFile(file))
+        {
+            return null;
+        }
+        Properties checkpoint = new Properties();
+        try (InputStream in = Files.newInputStream(part))
+        {
+            checkpoint.load(in);
+            if (!probe.validator.equals(checkpoint.getProperty(KEY_VALIDATOR))
+                    || !Long.toString(probe.length)
+                            .equals(checkpoint.getProperty(KEY_LENGTH))
+                    || Files.size(file) != probe.length)
+            {
+                return null;
+            }
+            int count = Integer.parseInt(checkpoint.getProperty(KEY_SEGMENTS));
+            List<Segment> plan = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                String[] fields =
+                        checkpoint.getProperty(KEY_SEGMENT + i).split(",");
+                plan.add(new Segment(Long.parseLong(fields[0]),
+                        Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+            }
+            return plan;
+        }
+        catch (IOException | RuntimeException e)
+        /*
+         * Unreadable - start afresh
+         */
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * Checkpoints how far each segment got, once the bytes are on disk, if
+     * forced or it is time to
+     */
+    private synchronized void checkpoint(final FileChannel channel,
+            final List<Segment> plan, final String validator,
+            final boolean force) throws IOException
+    {
+        long now = System.nanoTime();
+        if (validator.isEmpty() || (!force && now
+                - checkpointed < TimeUnit.MILLISECONDS.toNanos(CHECKPOINT_MILLIS)))
+        /*
+         * Without a validator there is nothing to resume
+         */
+        {
+            return;
+        }
+        checkpointed = now;
+
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(KEY_LENGTH, Long.toString(length));
+        checkpoint.setProperty(KEY_VALIDATOR, validator);
+        checkpoint.setProperty(KEY_SEGMENTS, Integer.toString(plan.size()));
+        for (int i = 0; i < plan.size(); i++)
+        {
+            Segment segment = plan.get(i);
+            checkpoint.setProperty(KEY_SEGMENT + i,
+                    segment.start + "," + segment.end + "," + segment.done);
+        }
+        /*
+         * Taken before forcing, so every byte recorded is on disk
+         */
+        channel.force(false);
+
+        Path temp = part.resolveSibling(part.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp))
+        {
+            checkpoint.store(out, null);
+        }
+        Files.move(temp, part, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    /**
+     * Audits, from whichever thread
+     */
+    private void audit(final String format, final Object... args)
+    {
+        synchronized (auditor)
+        {
+            auditor.append(true, format, args);
+        }
+    }
+
+
+    /*
+     * ------------------------------------------------------------------------
+     * ResponseModel calls
+     * ------------------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Stops every segment. Transports abort the ranges in flight too.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#abort()
+     */
+    @Override
+    protected void abort()
+    {
+        stopped.set(true);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#processResponse()
+     */
+    @Override
+    protected void processResponse()
+    {
+        // Written to the file as received
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#isResponseProcessed()
+     */
+    @Override
+    protected boolean isResponseProcessed()
+    {
+        return getValue() != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatusCode()
+     */
+    @Override
+    public int getStatusCode()
+    {
+        return statusCode;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatus()
+     */
+    @Override
+    public String getStatus()
+    {
+        synchronized (auditor)
+        {
+            return auditor.toString();
+        }
+    }
+
+
+    /**
+     * @return the most segments to fetch in parallel
+     */
+    protected final int getMaxSegments()
+    {
+        return maxSegments;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.DownloadModel#getFile()
+     */
+    @Override
+    public final Path getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.DownloadModel#getLength()
+     */
+    @Override
+    public final long getLength()
+    {
+        return length;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.DownloadModel#getReceived()
+     */
+    @Override
+    public final long getReceived()
+    {
+        return received.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.DownloadModel#getResumed()
+     */
+    @Override
+    public final long getResumed()
+    {
+        return resumed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.DownloadModel#getSegments()
+     */
+    @Override
+    public final int getSegments()
+    {
+        return segments;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.DownloadModel#setProgress(com.github.technosf.posterer.models.DownloadModel.Progress)
+     */
+    @Override
+    public final void setProgress(final @Nullable Progress progress)
+    {
+        this.progress = progress;
+    }
+
+}
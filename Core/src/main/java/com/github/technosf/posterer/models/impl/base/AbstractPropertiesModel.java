@@ -33,8 +33,10 @@ import org.eclipse.jdt.annotation.Nullable;
 import com.github.technosf.posterer.models.Properties;
 import com.github.technosf.posterer.models.Proxy;
 import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.ShapingProfile;
 import com.github.technosf.posterer.models.impl.ProxyBean;
 import com.github.technosf.posterer.models.impl.RequestBean;
+import com.github.technosf.posterer.models.impl.ShapingProfileBean;
 
 /**
  * Abstract implementation of basic {@code PreferencesModel} methods based
@@ -90,6 +92,12 @@ public abstract class AbstractPropertiesModel
     private final Map<Integer, ProxyBean> proxyProperties =
             new HashMap<Integer, ProxyBean>();
 
+    /**
+     * ShapingProfileBean map, by name
+     */
+    private final Map<String, ShapingProfileBean> shapingProperties =
+            new TreeMap<String, ShapingProfileBean>();
+
     /**
      * End point map - endpoint and ref count
      */
@@ -155,6 +163,18 @@ public abstract class AbstractPropertiesModel
     }
 
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.Properties#getShapingProfiles()
+     */
+    @Override
+    public final List<ShapingProfile> getShapingProfiles()
+    {
+        return new ArrayList<ShapingProfile>(shapingProperties.values());
+    }
+
+
     /**
      * {@inheritDoc}
      * 
@@ -378,6 +398,19 @@ public abstract class AbstractPropertiesModel
     }
 
 
+    /**
+     * Puts a shaping profile under its name, replacing any already there
+     * 
+     * @param profileBean
+     * @return the profile replaced, if any
+     */
+    protected final @Nullable ShapingProfileBean put(
+            ShapingProfileBean profileBean)
+    {
+        return shapingProperties.put(profileBean.getName(), profileBean);
+    }
+
+
     /**
      * @param requestBean
      * @return true if the RequestBean was added
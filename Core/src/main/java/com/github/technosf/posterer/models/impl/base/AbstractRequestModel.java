@@ -13,6 +13,19 @@
  */
 package com.github.technosf.posterer.models.impl.base;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.ConsumptionPolicy;
+import com.github.technosf.posterer.models.HedgePolicy;
+import com.github.technosf.posterer.models.HedgeStats;
 import com.github.technosf.posterer.models.Proxy;
 import com.github.technosf.posterer.models.Request;
 import com.github.technosf.posterer.models.RequestModel;
@@ -26,6 +39,16 @@ import com.github.technosf.posterer.utils.Auditor;
  * Timeout is designed to be maintained in state with the
  * implementing event driven container, whereas the request provided once when
  * fired.
+ * <p>
+ * Identical {@code GET} and {@code HEAD} requests - the same request, proxy,
+ * certificate and consumption policy - fired through the model at the same
+ * time are coalesced into one, each caller given its own
+ * {@code ResponseModel} view of the shared response. Coalescing is on by
+ * default, unless the {@code posterer.coalesce} system property is false.
+ * <p>
+ * Idempotent requests may be hedged, as their {@code HedgePolicy} has it,
+ * against the recent latency of their endpoint as seen by the model. A shared
+ * response is hedged once, for all of its flight.
  * 
  * @author technosf
  * @since 0.0.1
@@ -38,15 +61,69 @@ public abstract class AbstractRequestModel<T extends ResponseModel>
 {
 
     /**
-     * Request counter
+     * Coalesce identical requests by default?
+     */
+    public static final boolean DEFAULT_COALESCING = Boolean
+            .parseBoolean(System.getProperty("posterer.coalesce", "true"));
+
+    /**
+     * Methods whose identical requests may share a response
+     */
+    private static final List<String> COALESCED_METHODS =
+            Arrays.asList("GET", "HEAD");
+
+    /**
+     * Methods whose requests may be sent twice
+     */
+    private static final List<String> HEDGED_METHODS =
+            Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+
+    /**
+     * Request counter, shared by models firing from many threads
      */
-    protected static int requestId = 0;
+    protected static final AtomicInteger requestId = new AtomicInteger();
 
     /*
      * Default timeout
      */
     protected int timeout = 30;
 
+    /*
+     * How much of each response body to keep
+     */
+    private volatile ConsumptionPolicy consumption = ConsumptionPolicy.FULL;
+
+    /*
+     * Coalesce identical requests in flight?
+     */
+    private volatile boolean coalescing = DEFAULT_COALESCING;
+
+    /*
+     * Identical requests in flight, sharing a response
+     */
+    private final Map<List<Object>,
+            SharedResponse.Flight<ResponseModel>> flights =
+                    new ConcurrentHashMap<>();
+
+    /*
+     * When requests are hedged, but for those with their own policy
+     */
+    private volatile HedgePolicy hedging = HedgePolicy.OFF;
+
+    /*
+     * When saved requests are hedged, by request hash
+     */
+    private final Map<Integer, HedgePolicy> requestHedging =
+            new ConcurrentHashMap<>();
+
+    /*
+     * Recent latency by endpoint, for hedging
+     */
+    private final Map<String, HedgedResponse.Latency> latencies =
+            new ConcurrentHashMap<>();
+
+    private final HedgeStats hedgeStats = new HedgeStats();
+
 
     /**
      * {@inheritDoc}
@@ -56,7 +133,10 @@ public abstract class AbstractRequestModel<T extends ResponseModel>
     @Override
     public ResponseModel doRequest(final Request request)
     {
-        return createRequest(++requestId, new Auditor(), timeout, request);
+        int id = requestId.incrementAndGet();
+        int deadline = timeout;
+        return coalesced(id, request, null, null, "",
+                () -> createRequest(id, new Auditor(), deadline, request));
     }
 
 
@@ -69,8 +149,11 @@ public abstract class AbstractRequestModel<T extends ResponseModel>
     @Override
     public ResponseModel doRequest(final Request request, final Proxy proxy)
     {
-        return createRequest(++requestId, new Auditor(), timeout, request,
-                proxy);
+        int id = requestId.incrementAndGet();
+        int deadline = timeout;
+        return coalesced(id, request, proxy, null, "",
+                () -> createRequest(id, new Auditor(), deadline, request,
+                        proxy));
     }
 
 
@@ -85,8 +168,11 @@ public abstract class AbstractRequestModel<T extends ResponseModel>
     public ResponseModel doRequest(final Request request,
             final KeyStoreBean keyStoreBean, final String alias)
     {
-        return createRequest(++requestId, new Auditor(), timeout, request,
-                keyStoreBean, alias);
+        int id = requestId.incrementAndGet();
+        int deadline = timeout;
+        return coalesced(id, request, null, keyStoreBean, alias,
+                () -> createRequest(id, new Auditor(), deadline, request,
+                        keyStoreBean, alias));
     }
 
 
@@ -102,9 +188,81 @@ public abstract class AbstractRequestModel<T extends ResponseModel>
     public ResponseModel doRequest(final Request request, final Proxy proxy,
             final KeyStoreBean keyStoreBean, final String alias)
     {
-        return createRequest(++requestId, new Auditor(), timeout, request,
-                proxy,
-                keyStoreBean, alias);
+        int id = requestId.incrementAndGet();
+        int deadline = timeout;
+        return coalesced(id, request, proxy, keyStoreBean, alias,
+                () -> createRequest(id, new Auditor(), deadline, request,
+                        proxy, keyStoreBean, alias));
+    }
+
+
+    /**
+     * Returns a view of the response that coalesces it with identical
+     * requests in flight, if it may be, or else the response itself, in
+     * either case hedged if it may be
+     * 
+     * @param id
+     *            the request unique identifier
+     * @param request
+     *            the request
+     * @param proxy
+     *            the proxy used, if any
+     * @param keyStoreBean
+     *            the certificate store used, if any
+     * @param alias
+     *            the alias of the certificate used
+     * @param create
+     *            creates the response
+     * @return the response
+     */
+    @SuppressWarnings("null")
+    private ResponseModel coalesced(final int id, final Request request,
+            final @Nullable Proxy proxy,
+            final @Nullable KeyStoreBean keyStoreBean, final String alias,
+            final Supplier<T> create)
+    {
+        Supplier<ResponseModel> hedged = hedged(id, request, create);
+        if (!coalescing || !COALESCED_METHODS
+                .contains(request.getMethod().toUpperCase(Locale.ROOT)))
+        {
+            ResponseModel response = hedged.get();
+            response.setConsumption(consumption);
+            return response;
+        }
+        return new SharedResponse<>(id, request,
+                Arrays.asList(request.hashCode(), proxy,
+                        keyStoreBean == null ? null : keyStoreBean.getFile(),
+                        alias),
+                flights, hedged, consumption);
+    }
+
+
+    /**
+     * Wraps the creation of the response in a hedged view, if the request
+     * may be hedged
+     * 
+     * @param id
+     *            the request unique identifier
+     * @param request
+     *            the request
+     * @param create
+     *            creates the response, once per attempt
+     * @return creates the response or its hedged view
+     */
+    @SuppressWarnings("null")
+    private Supplier<ResponseModel> hedged(final int id, final Request request,
+            final Supplier<T> create)
+    {
+        HedgePolicy policy = getHedging(request);
+        if (!policy.isEnabled() || !HEDGED_METHODS
+                .contains(request.getMethod().toUpperCase(Locale.ROOT)))
+        {
+            return create::get;
+        }
+        HedgedResponse.Latency latency = latencies.computeIfAbsent(
+                request.getEndpoint(), e -> new HedgedResponse.Latency());
+        return () -> new HedgedResponse<>(id, request, create, policy,
+                latency, hedgeStats, consumption);
     }
 
 
@@ -211,4 +369,102 @@ public abstract class AbstractRequestModel<T extends ResponseModel>
         return timeout;
     }
 
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.RequestModel#setConsumption(com.github.technosf.posterer.models.ConsumptionPolicy)
+     */
+    @Override
+    public final void setConsumption(final ConsumptionPolicy policy)
+    {
+        consumption = policy;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.RequestModel#getConsumption()
+     */
+    @Override
+    public final ConsumptionPolicy getConsumption()
+    {
+        return consumption;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.RequestModel#setCoalescing(boolean)
+     */
+    @Override
+    public final void setCoalescing(final boolean coalescing)
+    {
+        this.coalescing = coalescing;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.RequestModel#isCoalescing()
+     */
+    @Override
+    public final boolean isCoalescing()
+    {
+        return coalescing;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.RequestModel#setHedging(com.github.technosf.posterer.models.HedgePolicy)
+     */
+    @Override
+    public final void setHedging(final HedgePolicy policy)
+    {
+        hedging = policy;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.RequestModel#setHedging(com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.HedgePolicy)
+     */
+    @Override
+    public final void setHedging(final Request request,
+            final HedgePolicy policy)
+    {
+        requestHedging.put(request.hashCode(), policy);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.RequestModel#getHedging(com.github.technosf.posterer.models.Request)
+     */
+    @Override
+    public final HedgePolicy getHedging(final Request request)
+    {
+        return requestHedging.getOrDefault(request.hashCode(), hedging);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.RequestModel#getHedgeStats()
+     */
+    @Override
+    public final HedgeStats getHedgeStats()
+    {
+        return hedgeStats;
+    }
+
 }
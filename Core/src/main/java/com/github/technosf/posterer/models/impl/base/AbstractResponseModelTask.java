@@ -13,20 +13,51 @@
  */
 package com.github.technosf.posterer.models.impl.base;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.IOUtils;
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.github.technosf.posterer.models.ConsumptionPolicy;
 import com.github.technosf.posterer.models.Request;
 import com.github.technosf.posterer.models.ResponseModel;
 import com.github.technosf.posterer.utils.Auditor;
-
-import javafx.concurrent.Task;
+import com.github.technosf.posterer.utils.BodyConsumer;
+import com.github.technosf.posterer.utils.ChunkTap;
+import com.github.technosf.posterer.utils.ResponseBufferManager;
+import com.github.technosf.posterer.utils.TimingWheel;
 
 /**
- * Basic implementation of {@code ResponseModel} common methods as a JavaFX
- * background executable {@code Task}
+ * Basic implementation of {@code ResponseModel} common methods as a background
+ * executable {@code Callable}
  * <p>
  * Specific implementation of the request/response calls is left for the
  * concrete class.
+ * <p>
+ * No UI toolkit is referenced here so that models can be run headless; a UI
+ * wraps the model in its own task type to run it.
+ * <p>
+ * The timeout is the total deadline for the call, body included. Deadlines
+ * are tracked on the shared {@code TimingWheel}; when one passes, the call is
+ * aborted so the calling thread is released rather than left waiting on a
+ * hung backend. Cancelling aborts the call the same way.
+ * <p>
+ * The body is read as the {@code ConsumptionPolicy} has it: in full, or
+ * through a {@code BodyConsumer} that keeps only its checksum or first bytes.
+ * <p>
+ * With a deadline or a {@code ChunkListener} set the body is read as part of
+ * the call, so within the deadline, rather than when first looked at. A body
+ * still arriving when the deadline passes fails the call as timed out. With
+ * a listener the body is tapped as it is read; transports that are pushed the
+ * body tap it as it arrives instead.
  * 
  * @author technosf
  * @since 0.0.1
@@ -35,10 +66,15 @@ import javafx.concurrent.Task;
  *            the response type used by the implementation
  */
 public abstract class AbstractResponseModelTask<T>
-        extends Task<T>
-        implements ResponseModel
+        implements Callable<T>, ResponseModel
 {
 
+    private static final String CONST_ERR_DEADLINE =
+            "Deadline of %1$ds exceeded";
+    private static final String CONST_ERR_BODY_ABORTED =
+            "Body read aborted";
+    private static final String CONST_ERR_CANCELLED = "Request cancelled";
+
     /**
      * The request identifier
      */
@@ -55,10 +91,50 @@ public abstract class AbstractResponseModelTask<T>
     protected @Nullable String responseHeaders;
 
     /**
-     * The response body
+     * The response body, until handed to the buffer manager
      */
     protected @Nullable String responseBody;
 
+    /**
+     * The response body held by the buffer manager
+     */
+    private ResponseBufferManager.@Nullable Buffer bodyBuffer;
+
+    /**
+     * The response body size as received, still content-encoded
+     */
+    protected long wireBytes;
+
+    /**
+     * The response body size once content-decoded
+     */
+    protected long decodedBytes;
+
+    /**
+     * How much of the body to keep
+     */
+    protected volatile ConsumptionPolicy consumption = ConsumptionPolicy.FULL;
+
+    /**
+     * The CRC-32 of the decoded body, if digested
+     */
+    protected String digest = "";
+
+    /**
+     * How the response was served with regard to the local HTTP cache
+     */
+    protected volatile CacheStatus cacheStatus = CacheStatus.UNCACHED;
+
+    /**
+     * The protocol the response came over
+     */
+    protected String protocol = "";
+
+    /**
+     * The HTTP/2 stream id, zero if not multiplexed
+     */
+    protected int streamId;
+
     /**
      * The response
      */
@@ -70,15 +146,50 @@ public abstract class AbstractResponseModelTask<T>
     protected Auditor auditor;
 
     /**
-     * The call timeout
+     * The call timeout, the total deadline in seconds, none if not positive
      */
     protected int timeout;
 
+    /**
+     * Has the deadline passed while the call was in flight?
+     */
+    private volatile boolean deadlineExceeded;
+
+    /**
+     * Has the call been cancelled?
+     */
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
     /**
      * the call elapsed time in millis
      */
     private long elapsedTimeMilli;
 
+    /**
+     * The value returned by the call
+     */
+    private volatile @Nullable T value;
+
+    /**
+     * The listener to the body as it arrives, if any
+     */
+    private volatile @Nullable ChunkListener chunkListener;
+
+    /**
+     * Has the body been tapped for the listener?
+     */
+    private boolean tapped;
+
+    /**
+     * When the call was fired, in {@code System.nanoTime()}
+     */
+    private volatile long startNanos;
+
+    /**
+     * When the response headers arrived, zero until they have
+     */
+    private volatile long firstByteNanos;
+
 
     /**
      * Creates a task to produce a response from the given request.
@@ -143,33 +254,264 @@ public abstract class AbstractResponseModelTask<T>
     protected abstract void closeClient();
 
 
+    /**
+     * Aborts the call in flight, releasing the thread blocked in
+     * {@code getReponse}.
+     * <p>
+     * Called on the timer thread when the deadline passes, or on the
+     * cancelling thread, so must be quick. It may be called before the call
+     * has started or after it has returned, in which case any response held
+     * should be released. Does nothing by default.
+     */
+    protected void abort()
+    {
+        // Nothing to abort
+    }
+
+
+    /**
+     * Hands the response body to the {@code ResponseBufferManager} so that it
+     * counts against the shared budget and can be spilled to disk.
+     * <p>
+     * Implementations should call this once the body has been read.
+     */
+    protected final synchronized void bufferBody()
+    {
+        String body = responseBody;
+        if (body != null)
+        {
+            if (bodyBuffer != null)
+            {
+                bodyBuffer.release();
+            }
+            bodyBuffer =
+                    ResponseBufferManager.getInstance().register(this, body);
+            responseBody = null;
+        }
+    }
+
+
+    /**
+     * Reads a decoded body to its end as the consumption policy has it,
+     * keeping its digest
+     * 
+     * @param decoded
+     *            the decoded body
+     * @param charset
+     *            the body charset
+     * @return the body kept
+     * @throws IOException
+     *             if the body cannot be read
+     */
+    protected final String consume(final InputStream decoded,
+            final Charset charset) throws IOException
+    {
+        InputStream body = decoded;
+        ChunkTap tap = tap(charset);
+        if (tap != null)
+        {
+            body = tap.wrap(decoded);
+        }
+
+        ConsumptionPolicy policy = consumption;
+        if (policy.isFull())
+        {
+            return IOUtils.toString(body, charset);
+        }
+        BodyConsumer consumer = new BodyConsumer(policy);
+        consumer.consume(body);
+        return consumed(consumer, charset);
+    }
+
+
+    /**
+     * Marks the response headers as arrived, if not already marked. The call
+     * marks them once the response is returned; transports that hear of them
+     * sooner mark them then.
+     */
+    protected final void firstByte()
+    {
+        if (firstByteNanos == 0)
+        {
+            firstByteNanos = System.nanoTime();
+        }
+    }
+
+
+    /**
+     * Returns a tap on the body for the chunk listener, if there is one. The
+     * body is tapped once: a transport taking a tap as the body arrives
+     * leaves nothing to tap when it is consumed.
+     * 
+     * @param charset
+     *            the body charset
+     * @return the tap, or null if there is no listener or the body is tapped
+     */
+    protected final synchronized @Nullable ChunkTap tap(final Charset charset)
+    {
+        ChunkListener listener = chunkListener;
+        if (listener == null || tapped)
+        {
+            return null;
+        }
+        tapped = true;
+        firstByte();
+        return new ChunkTap(listener, charset, startNanos, firstByteNanos);
+    }
+
+
+    /**
+     * Takes the digest of a consumed body
+     * 
+     * @param consumer
+     *            the consumer of the body
+     * @param charset
+     *            the body charset
+     * @return the body kept
+     */
+    protected final String consumed(final BodyConsumer consumer,
+            final Charset charset)
+    {
+        digest = consumer.getDigest();
+        return consumer.getBody(charset);
+    }
+
+
     /*
      * ------------------------------------------------------------------------
-     * Task calls
+     * Callable calls
      * ------------------------------------------------------------------------
      */
 
     /**
      * {@inheritDoc}
      * 
-     * @see javafx.concurrent.Task#call()
+     * @see java.util.concurrent.Callable#call()
      */
     @Override
-    protected final T call() throws Exception
+    public final T call() throws Exception
     {
+        if (isCancelled())
+        /*
+         * Cancelled while queued - don't start
+         */
+        {
+            throw new CancellationException(CONST_ERR_CANCELLED);
+        }
+
         prepareClient();
+
+        TimingWheel.Timeout deadline = null;
+        if (timeout > 0)
+        {
+            deadline = TimingWheel.getInstance().schedule(this::deadline,
+                    timeout, TimeUnit.SECONDS);
+        }
+
         auditor.start();
+        startNanos = System.nanoTime();
         try
         {
-            return getReponse(auditor);
+            T returned = value = getReponse(auditor);
+            firstByte();
+            if (chunkListener != null || deadline != null)
+            /*
+             * Read the body now, within the deadline, rather than when first
+             * looked at
+             */
+            {
+                processResponse();
+                if (deadlineExceeded)
+                {
+                    throw new InterruptedIOException(CONST_ERR_BODY_ABORTED);
+                }
+            }
+            return returned;
+        }
+        catch (Exception e)
+        {
+            if (isCancelled())
+            {
+                auditor.append(true, CONST_ERR_CANCELLED);
+                CancellationException ce =
+                        new CancellationException(CONST_ERR_CANCELLED);
+                ce.initCause(e);
+                throw ce;
+            }
+            else if (deadlineExceeded)
+            /*
+             * Report the abort as the timeout it is
+             */
+            {
+                auditor.append(true, CONST_ERR_DEADLINE, timeout);
+                TimeoutException te = new TimeoutException(
+                        String.format(CONST_ERR_DEADLINE, timeout));
+                te.initCause(e);
+                throw te;
+            }
+            throw e;
         }
         finally
         {
+            if (deadline != null)
+            {
+                deadline.cancel();
+            }
             elapsedTimeMilli = auditor.stop();
         }
     }
 
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#cancel()
+     */
+    @Override
+    public final boolean cancel()
+    {
+        if (!cancelled.compareAndSet(false, true))
+        {
+            return false;
+        }
+        abort();
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#isCancelled()
+     */
+    @Override
+    public final boolean isCancelled()
+    {
+        return cancelled.get();
+    }
+
+
+    /**
+     * The deadline has passed - abort the call
+     */
+    private void deadline()
+    {
+        deadlineExceeded = true;
+        abort();
+    }
+
+
+    /**
+     * Returns the value returned by the call, if it has returned
+     * 
+     * @return the call value or null
+     */
+    protected final @Nullable T getValue()
+    {
+        return value;
+    }
+
+
     /*
      * ------------------------------------------------------------------------
      * ResponseModel calls
@@ -251,14 +593,131 @@ public abstract class AbstractResponseModelTask<T>
     public String getBody()
     {
         processResponse();
-        if (responseBody != null)
+        bufferBody();
+        ResponseBufferManager.Buffer buffer = bodyBuffer;
+        if (buffer != null)
         {
-            return responseBody;
+            return buffer.get();
         }
         return "";
     }
 
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#getWireBytes()
+     */
+    @Override
+    public final long getWireBytes()
+    {
+        processResponse();
+        return wireBytes;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#getDecodedBytes()
+     */
+    @Override
+    public final long getDecodedBytes()
+    {
+        processResponse();
+        return decodedBytes;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#setConsumption(com.github.technosf.posterer.models.ConsumptionPolicy)
+     */
+    @Override
+    public final void setConsumption(final ConsumptionPolicy policy)
+    {
+        consumption = policy;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#getDigest()
+     */
+    @Override
+    public final String getDigest()
+    {
+        processResponse();
+        return digest;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#getCacheStatus()
+     */
+    @Override
+    public final CacheStatus getCacheStatus()
+    {
+        return cacheStatus;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#setChunkListener(com.github.technosf.posterer.models.ResponseModel.ChunkListener)
+     */
+    @Override
+    public final void setChunkListener(final @Nullable ChunkListener listener)
+    {
+        chunkListener = listener;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#getFirstByteMicros()
+     */
+    @Override
+    public final long getFirstByteMicros()
+    {
+        long first = firstByteNanos;
+        return first == 0 ? -1
+                : TimeUnit.NANOSECONDS.toMicros(first - startNanos);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#getProtocol()
+     */
+    @Override
+    public final String getProtocol()
+    {
+        processResponse();
+        return protocol;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see com.github.technosf.posterer.models.ResponseModel#getStreamId()
+     */
+    @Override
+    public final int getStreamId()
+    {
+        processResponse();
+        return streamId;
+    }
+
+
     /**
      * {@inheritDoc}
      * 
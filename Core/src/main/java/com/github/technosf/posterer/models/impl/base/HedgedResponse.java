@@ -0,0 +1,646 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models.impl.base;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.ConsumptionPolicy;
+import com.github.technosf.posterer.models.HedgePolicy;
+import com.github.technosf.posterer.models.HedgeStats;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.runners.LatencyHistogram;
+
+/**
+ * A view of a response that is hedged: should it take longer than a
+ * percentile of its endpoint's recent latency, an identical request is sent,
+ * over a connection of its own, and whichever returns first is taken. The
+ * other is cancelled, releasing its connection.
+ * <p>
+ * Each attempt is called, and its body read, on a thread of its own, the view
+ * waiting on the first to return. A failure does not prompt a hedge; the view
+ * fails once every attempt sent has failed. Hedges are counted against the
+ * {@code HedgePolicy} budget, and nothing is hedged until the endpoint has
+ * enough recent requests to take a percentile from.
+ * <p>
+ * Cancelling the view cancels every attempt.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <T>
+ *            the response type hedged
+ */
+final class HedgedResponse<T extends ResponseModel>
+        implements Callable<ResponseModel>, ResponseModel
+{
+    /**
+     * Requests to an endpoint before any are hedged, overridden by the
+     * {@code posterer.hedge.samples} system property
+     */
+    static final long MIN_SAMPLES = Long.getLong("posterer.hedge.samples", 20);
+
+    /**
+     * Requests to an endpoint in each window of recent latency, overridden by
+     * the {@code posterer.hedge.window} system property
+     */
+    static final long WINDOW = Long.getLong("posterer.hedge.window", 1000);
+
+    private static final String CONST_ERR_CANCELLED = "Request cancelled";
+    private static final String CONST_ERR_NOT_RUNNABLE =
+            "Response model cannot be run";
+    private static final String CONST_HEDGED =
+            "Hedged after %1$dms, the %2$s request returned first%n";
+
+    /**
+     * Runs the attempts
+     */
+    private static final ExecutorService ATTEMPTS;
+
+    static
+    {
+        AtomicInteger count = new AtomicInteger();
+        ATTEMPTS = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable,
+                    "posterer-hedge-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final int requestId;
+
+    private final Request request;
+
+    /**
+     * Creates each attempt
+     */
+    private final Supplier<T> create;
+
+    private final HedgePolicy policy;
+
+    /**
+     * The endpoint's recent latency
+     */
+    private final Latency latency;
+
+    private final HedgeStats stats;
+
+    private volatile ConsumptionPolicy consumption;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    /**
+     * Completed on cancelling, to stop the wait
+     */
+    private final CompletableFuture<Void> cancelling =
+            new CompletableFuture<>();
+
+    /**
+     * Completed with the first attempt to return, or the last to fail
+     */
+    private final CompletableFuture<T> won = new CompletableFuture<>();
+
+    /**
+     * Attempts sent that have not failed
+     */
+    private final AtomicInteger running = new AtomicInteger();
+
+    private volatile @Nullable T first;
+
+    private volatile @Nullable T hedge;
+
+    /**
+     * The millis waited before hedging, if hedged
+     */
+    private volatile long hedgedAfterMillis = -1;
+
+    private volatile long elapsedTimeMilli;
+
+
+    /**
+     * Creates a view
+     *
+     * @param requestId
+     *            the request reference id
+     * @param request
+     *            the request
+     * @param create
+     *            creates each attempt
+     * @param policy
+     *            when to hedge
+     * @param latency
+     *            the endpoint's recent latency
+     * @param stats
+     *            the model's hedge counts
+     * @param consumption
+     *            how much of the body to keep
+     */
+    HedgedResponse(final int requestId, final Request request,
+            final Supplier<T> create, final HedgePolicy policy,
+            final Latency latency, final HedgeStats stats,
+            final ConsumptionPolicy consumption)
+    {
+        this.requestId = requestId;
+        this.request = request;
+        this.create = create;
+        this.policy = policy;
+        this.latency = latency;
+        this.stats = stats;
+        this.consumption = consumption;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sends the request, and its hedge if slow, blocking until one returns.
+     *
+     * @see java.util.concurrent.Callable#call()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public ResponseModel call() throws Exception
+    {
+        if (isCancelled())
+        {
+            throw new CancellationException(CONST_ERR_CANCELLED);
+        }
+
+        long start = System.nanoTime();
+        stats.request();
+        T winner = null;
+        try
+        {
+            T sent = send();
+            first = sent;
+            long threshold = latency.threshold(policy.getPercentile());
+            if (threshold >= 0)
+            {
+                try
+                {
+                    CompletableFuture.anyOf(won, cancelling).get(threshold,
+                            TimeUnit.MICROSECONDS);
+                }
+                catch (TimeoutException e)
+                /*
+                 * Slower than most, so send it again if within budget
+                 */
+                {
+                    if (stats.hedge(policy.getBudgetPercent()))
+                    {
+                        hedgedAfterMillis =
+                                TimeUnit.MICROSECONDS.toMillis(threshold);
+                        hedge = send();
+                    }
+                }
+            }
+
+            CompletableFuture.anyOf(won, cancelling).get();
+            winner = won.get();
+            if (winner != sent)
+            {
+                long waited = TimeUnit.NANOSECONDS
+                        .toMicros(System.nanoTime() - start);
+                stats.won(latency.meanAbove(waited) - waited);
+            }
+            return winner;
+        }
+        catch (ExecutionException e)
+        {
+            if (isCancelled())
+            {
+                CancellationException ce =
+                        new CancellationException(CONST_ERR_CANCELLED);
+                ce.initCause(e.getCause());
+                throw ce;
+            }
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        finally
+        {
+            elapsedTimeMilli = TimeUnit.NANOSECONDS
+                    .toMillis(System.nanoTime() - start);
+            cancelAttempts(winner); // Release the loser's connection
+        }
+    }
+
+
+    /**
+     * Creates an attempt and calls it, reading its body, on an attempt
+     * thread
+     *
+     * @return the attempt
+     */
+    private T send()
+    {
+        T attempt = create.get();
+        attempt.setConsumption(consumption);
+        if (!(attempt instanceof Callable))
+        {
+            throw new IllegalStateException(CONST_ERR_NOT_RUNNABLE);
+        }
+        running.incrementAndGet();
+        if (isCancelled())
+        {
+            attempt.cancel();
+        }
+        ATTEMPTS.execute(() -> {
+            long begin = System.nanoTime();
+            try
+            {
+                ((Callable<?>) attempt).call();
+                attempt.isComplete(); // Read and buffer the body
+                latency.record(TimeUnit.NANOSECONDS
+                        .toMicros(System.nanoTime() - begin));
+                won.complete(attempt);
+            }
+            catch (Exception e)
+            {
+                if (running.decrementAndGet() == 0)
+                {
+                    won.completeExceptionally(e);
+                }
+            }
+        });
+        return attempt;
+    }
+
+
+    /**
+     * Cancels the attempts sent, but for one
+     *
+     * @param kept
+     *            the attempt not to cancel, if any
+     */
+    private void cancelAttempts(final @Nullable ResponseModel kept)
+    {
+        T sent = first;
+        if (sent != null && sent != kept)
+        {
+            sent.cancel();
+        }
+        T hedged = hedge;
+        if (hedged != null && hedged != kept)
+        {
+            hedged.cancel();
+        }
+    }
+
+
+    /**
+     * Returns the attempt that returned first, once read
+     */
+    private @Nullable ResponseModel read()
+    {
+        return won.isDone() && !won.isCompletedExceptionally()
+                ? won.getNow(null) : null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getReferenceId()
+     */
+    @Override
+    public int getReferenceId()
+    {
+        return requestId;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getRequest()
+     */
+    @Override
+    public Request getRequest()
+    {
+        return request;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#isComplete()
+     */
+    @Override
+    public boolean isComplete() throws InterruptedException, ExecutionException
+    {
+        ResponseModel response = read();
+        return response != null && response.isComplete();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#cancel()
+     */
+    @Override
+    public boolean cancel()
+    {
+        if (!cancelled.compareAndSet(false, true))
+        {
+            return false;
+        }
+        cancelling.completeExceptionally(
+                new CancellationException(CONST_ERR_CANCELLED));
+        cancelAttempts(null);
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#isCancelled()
+     */
+    @Override
+    public boolean isCancelled()
+    {
+        return cancelled.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The time until the first attempt returned.
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getElaspedTimeMilli()
+     */
+    @Override
+    public long getElaspedTimeMilli()
+    {
+        return elapsedTimeMilli;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatusCode()
+     */
+    @Override
+    public int getStatusCode()
+    {
+        ResponseModel response = read();
+        return response == null ? 0 : response.getStatusCode();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A hedged view says when it hedged, and which attempt returned first.
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatus()
+     */
+    @Override
+    public String getStatus()
+    {
+        ResponseModel response = read();
+        if (response == null)
+        {
+            response = first;
+        }
+        if (response == null)
+        {
+            return "";
+        }
+        if (hedgedAfterMillis < 0 || !won.isDone())
+        {
+            return response.getStatus();
+        }
+        return String.format(CONST_HEDGED, hedgedAfterMillis,
+                response == first ? "first" : "hedged")
+                + response.getStatus();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getResponse()
+     */
+    @Override
+    public String getResponse()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getResponse();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getHeaders()
+     */
+    @Override
+    public String getHeaders()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getHeaders();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getBody()
+     */
+    @Override
+    public String getBody()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getBody();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getWireBytes()
+     */
+    @Override
+    public long getWireBytes()
+    {
+        ResponseModel response = read();
+        return response == null ? 0 : response.getWireBytes();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getDecodedBytes()
+     */
+    @Override
+    public long getDecodedBytes()
+    {
+        ResponseModel response = read();
+        return response == null ? 0 : response.getDecodedBytes();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#setConsumption(com.github.technosf.posterer.models.ConsumptionPolicy)
+     */
+    @Override
+    public void setConsumption(final ConsumptionPolicy policy)
+    {
+        consumption = policy;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getDigest()
+     */
+    @Override
+    public String getDigest()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getDigest();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getCacheStatus()
+     */
+    @Override
+    public CacheStatus getCacheStatus()
+    {
+        ResponseModel response = read();
+        return response == null ? CacheStatus.UNCACHED
+                : response.getCacheStatus();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getProtocol()
+     */
+    @Override
+    public String getProtocol()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getProtocol();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStreamId()
+     */
+    @Override
+    public int getStreamId()
+    {
+        ResponseModel response = read();
+        return response == null ? 0 : response.getStreamId();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#neededClientAuth()
+     */
+    @Override
+    public boolean neededClientAuth()
+    {
+        ResponseModel response = read();
+        return response != null && response.neededClientAuth();
+    }
+
+    /**
+     * The recent latency of an endpoint: the requests of the current window
+     * and of the one before it
+     */
+    static final class Latency
+    {
+        private LatencyHistogram current = new LatencyHistogram();
+
+        private LatencyHistogram previous = new LatencyHistogram();
+
+
+        /**
+         * Records a request's latency
+         *
+         * @param micros
+         *            the latency in micros
+         */
+        synchronized void record(final long micros)
+        {
+            current.record(micros);
+            if (current.getCount() >= WINDOW)
+            {
+                previous = current;
+                current = new LatencyHistogram();
+            }
+        }
+
+
+        /**
+         * Returns the recent latency at a percentile
+         *
+         * @param percentile
+         *            the percentile
+         * @return the latency in micros, or -1 if too few requests are known
+         */
+        synchronized long threshold(final double percentile)
+        {
+            return previous.getCount() + current.getCount() < MIN_SAMPLES
+                    ? -1 : current.getPercentile(percentile, previous);
+        }
+
+
+        /**
+         * Returns the mean recent latency of the requests that took longer
+         * than given
+         *
+         * @param micros
+         *            the latency in micros
+         * @return the mean in micros, or zero if none took longer
+         */
+        synchronized long meanAbove(final long micros)
+        {
+            return current.getMeanAbove(micros, previous);
+        }
+    }
+}
@@ -0,0 +1,671 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models.impl.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.ConsumptionPolicy;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.ResponseModel;
+
+/**
+ * A view of a response that may be shared with identical requests in flight
+ * at the same time, so that only one of them goes out on the network.
+ * <p>
+ * When called, the view joins the flight of an identical request, or leads a
+ * new one: creating the response, calling it and reading its body before the
+ * members of the flight are released. Every member then sees the one
+ * response, its body buffered once, through its own view with its own
+ * reference id, elapsed time and cancellation. A failure is shared the same
+ * way.
+ * <p>
+ * The leader's view hands the call to a flight thread and waits on it like
+ * any other member, so cancelling a view, leader or not, stops its wait and
+ * its call throws {@code CancellationException}. The response itself is
+ * cancelled only once every member of its flight has cancelled; until then
+ * the flight thread carries the flight on for the others.
+ * <p>
+ * Only the leader's view streams the body to its chunk listener; a member
+ * sees the body once it has been read.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <T>
+ *            the response type shared
+ */
+final class SharedResponse<T extends ResponseModel>
+        implements Callable<ResponseModel>, ResponseModel
+{
+    private static final String CONST_ERR_CANCELLED = "Request cancelled";
+    private static final String CONST_ERR_NOT_RUNNABLE =
+            "Response model cannot be run";
+    private static final String CONST_SHARED =
+            "Shared the response to request %1$d%n";
+
+    /**
+     * Runs the flights
+     */
+    private static final ExecutorService FLIGHTS;
+
+    static
+    {
+        AtomicInteger count = new AtomicInteger();
+        FLIGHTS = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable,
+                    "posterer-flight-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final int requestId;
+
+    private final Request request;
+
+    /**
+     * What makes a request identical, but for its consumption policy
+     */
+    private final List<Object> identity;
+
+    /**
+     * The flights in progress, by identity
+     */
+    private final Map<List<Object>, Flight<T>> flights;
+
+    /**
+     * Creates the response, if this view leads its flight
+     */
+    private final Supplier<T> create;
+
+    private volatile ConsumptionPolicy consumption;
+
+    private volatile @Nullable ChunkListener chunkListener;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    /**
+     * Completed on cancelling, to stop the wait of a member
+     */
+    private final CompletableFuture<Void> cancelling =
+            new CompletableFuture<>();
+
+    /**
+     * Has this view left its flight?
+     */
+    private final AtomicBoolean left = new AtomicBoolean();
+
+    /**
+     * The flight joined, once called
+     */
+    private volatile @Nullable Flight<T> flight;
+
+    private volatile long elapsedTimeMilli;
+
+
+    /**
+     * Creates a view
+     *
+     * @param requestId
+     *            the request reference id
+     * @param request
+     *            the request
+     * @param identity
+     *            what makes the request identical to others
+     * @param flights
+     *            the flights in progress, shared by the views of a model
+     * @param create
+     *            creates the response
+     * @param consumption
+     *            how much of the body to keep
+     */
+    SharedResponse(final int requestId, final Request request,
+            final List<Object> identity, final Map<List<Object>, Flight<T>> flights,
+            final Supplier<T> create, final ConsumptionPolicy consumption)
+    {
+        this.requestId = requestId;
+        this.request = request;
+        this.identity = identity;
+        this.flights = flights;
+        this.create = create;
+        this.consumption = consumption;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Leads or joins the flight, blocking until the shared response is read
+     * or this view is cancelled.
+     *
+     * @see java.util.concurrent.Callable#call()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public ResponseModel call() throws Exception
+    {
+        if (isCancelled())
+        {
+            throw new CancellationException(CONST_ERR_CANCELLED);
+        }
+
+        long start = System.nanoTime();
+        List<Object> key = new ArrayList<>(identity);
+        key.add(consumption.toString());
+        try
+        {
+            Flight<T> joined;
+            do
+            /*
+             * Join the flight in progress, unless it has been abandoned
+             */
+            {
+                joined = flights.computeIfAbsent(key,
+                        k -> new Flight<>(requestId));
+                if (!joined.join())
+                {
+                    flights.remove(key, joined);
+                    joined = null;
+                }
+            }
+            while (joined == null);
+            flight = joined;
+            if (isCancelled())
+            {
+                leave(joined);
+            }
+
+            if (joined.leaderId == requestId)
+            {
+                Flight<T> led = joined;
+                FLIGHTS.execute(() -> lead(key, led));
+            }
+            CompletableFuture.anyOf(joined.result, cancelling).get();
+            if (isCancelled())
+            {
+                throw new CancellationException(CONST_ERR_CANCELLED);
+            }
+            return joined.result.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (isCancelled())
+            {
+                CancellationException ce =
+                        new CancellationException(CONST_ERR_CANCELLED);
+                ce.initCause(e.getCause());
+                throw ce;
+            }
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        finally
+        {
+            elapsedTimeMilli = TimeUnit.NANOSECONDS
+                    .toMillis(System.nanoTime() - start);
+        }
+    }
+
+
+    /**
+     * Creates and calls the response, reading its body, and releases the
+     * flight
+     */
+    private void lead(final List<Object> key, final Flight<T> led)
+    {
+        try
+        {
+            T response = create.get();
+            response.setConsumption(consumption);
+            response.setChunkListener(chunkListener);
+            led.response = response;
+            if (led.isAbandoned())
+            {
+                response.cancel();
+            }
+            if (!(response instanceof Callable))
+            {
+                throw new IllegalStateException(CONST_ERR_NOT_RUNNABLE);
+            }
+            ((Callable<?>) response).call();
+            response.isComplete(); // Read and buffer the body, once
+            led.result.complete(response);
+        }
+        catch (Exception e)
+        {
+            led.result.completeExceptionally(e);
+        }
+        finally
+        {
+            flights.remove(key, led);
+        }
+    }
+
+
+    /**
+     * Leaves the flight, once, cancelling the response if no one is left
+     * waiting
+     */
+    private void leave(final Flight<T> joined)
+    {
+        if (left.compareAndSet(false, true) && joined.leave())
+        {
+            ResponseModel response = joined.response;
+            if (response != null)
+            {
+                response.cancel();
+            }
+        }
+    }
+
+
+    /**
+     * Returns the shared response, once created
+     */
+    private @Nullable ResponseModel shared()
+    {
+        Flight<T> joined = flight;
+        return joined == null ? null : joined.response;
+    }
+
+
+    /**
+     * Returns the shared response, once read
+     */
+    private @Nullable ResponseModel read()
+    {
+        Flight<T> joined = flight;
+        return joined == null || !joined.result.isDone() ? null
+                : joined.response;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getReferenceId()
+     */
+    @Override
+    public int getReferenceId()
+    {
+        return requestId;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getRequest()
+     */
+    @Override
+    public Request getRequest()
+    {
+        return request;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#isComplete()
+     */
+    @Override
+    public boolean isComplete() throws InterruptedException, ExecutionException
+    {
+        ResponseModel response = read();
+        return response != null && response.isComplete();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#cancel()
+     */
+    @Override
+    public boolean cancel()
+    {
+        if (!cancelled.compareAndSet(false, true))
+        {
+            return false;
+        }
+        cancelling.completeExceptionally(
+                new CancellationException(CONST_ERR_CANCELLED));
+        Flight<T> joined = flight;
+        if (joined != null)
+        {
+            leave(joined);
+        }
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#isCancelled()
+     */
+    @Override
+    public boolean isCancelled()
+    {
+        return cancelled.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The time this view waited, whether leading or joining the flight.
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getElaspedTimeMilli()
+     */
+    @Override
+    public long getElaspedTimeMilli()
+    {
+        return elapsedTimeMilli;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatusCode()
+     */
+    @Override
+    public int getStatusCode()
+    {
+        ResponseModel response = read();
+        return response == null ? 0 : response.getStatusCode();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A view that joined another's flight says so.
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatus()
+     */
+    @Override
+    public String getStatus()
+    {
+        Flight<T> joined = flight;
+        ResponseModel response = shared();
+        if (joined == null || response == null)
+        {
+            return "";
+        }
+        if (joined.leaderId == requestId)
+        {
+            return response.getStatus();
+        }
+        return String.format(CONST_SHARED, joined.leaderId)
+                + response.getStatus();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getResponse()
+     */
+    @Override
+    public String getResponse()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getResponse();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getHeaders()
+     */
+    @Override
+    public String getHeaders()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getHeaders();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getBody()
+     */
+    @Override
+    public String getBody()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getBody();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getWireBytes()
+     */
+    @Override
+    public long getWireBytes()
+    {
+        ResponseModel response = read();
+        return response == null ? 0 : response.getWireBytes();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getDecodedBytes()
+     */
+    @Override
+    public long getDecodedBytes()
+    {
+        ResponseModel response = read();
+        return response == null ? 0 : response.getDecodedBytes();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#setConsumption(com.github.technosf.posterer.models.ConsumptionPolicy)
+     */
+    @Override
+    public void setConsumption(final ConsumptionPolicy policy)
+    {
+        consumption = policy;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getDigest()
+     */
+    @Override
+    public String getDigest()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getDigest();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getCacheStatus()
+     */
+    @Override
+    public CacheStatus getCacheStatus()
+    {
+        ResponseModel response = read();
+        return response == null ? CacheStatus.UNCACHED
+                : response.getCacheStatus();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#setChunkListener(com.github.technosf.posterer.models.ResponseModel.ChunkListener)
+     */
+    @Override
+    public void setChunkListener(final @Nullable ChunkListener listener)
+    {
+        chunkListener = listener;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getFirstByteMicros()
+     */
+    @Override
+    public long getFirstByteMicros()
+    {
+        ResponseModel response = read();
+        return response == null ? -1 : response.getFirstByteMicros();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getProtocol()
+     */
+    @Override
+    public String getProtocol()
+    {
+        ResponseModel response = read();
+        return response == null ? "" : response.getProtocol();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStreamId()
+     */
+    @Override
+    public int getStreamId()
+    {
+        ResponseModel response = read();
+        return response == null ? 0 : response.getStreamId();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#neededClientAuth()
+     */
+    @Override
+    public boolean neededClientAuth()
+    {
+        ResponseModel response = read();
+        return response != null && response.neededClientAuth();
+    }
+
+    /**
+     * The identical requests in flight, and the one response they share
+     *
+     * @param <T>
+     *            the response type shared
+     */
+    static final class Flight<T extends ResponseModel>
+    {
+        /**
+         * The view leading the flight
+         */
+        final int leaderId;
+
+        /**
+         * The response, once the leader has created it
+         */
+        volatile @Nullable T response;
+
+        /**
+         * Completed once the response has been read
+         */
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private int members;
+
+        private boolean abandoned;
+
+
+        Flight(final int leaderId)
+        {
+            this.leaderId = leaderId;
+        }
+
+
+        /**
+         * Joins the flight
+         *
+         * @return false if the flight was abandoned, and cannot be joined
+         */
+        synchronized boolean join()
+        {
+            if (abandoned)
+            {
+                return false;
+            }
+            members++;
+            return true;
+        }
+
+
+        /**
+         * Leaves the flight
+         *
+         * @return true if the last member left before the response was read,
+         *         abandoning the flight
+         */
+        synchronized boolean leave()
+        {
+            members--;
+            abandoned = members == 0 && !result.isDone();
+            return abandoned;
+        }
+
+
+        /**
+         * @return has the flight been abandoned?
+         */
+        synchronized boolean isAbandoned()
+        {
+            return abandoned;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When requests are to be sent in an open model load run, as a rate of
+ * arrivals that does not depend on how quickly responses return.
+ * <p>
+ * Arrivals are evenly spaced, or Poisson distributed, at a constant rate or
+ * at a rate that steps from one level to the next. The times are fixed
+ * before the run by the schedule and its seed, and generated as needed, so
+ * a long run at a high rate takes no memory.
+ * <p>
+ * A schedule is split between the shards of a run, each taking an equal part
+ * of the rate: even arrivals are staggered across shards, and Poisson
+ * arrivals, which remain Poisson when merged, are drawn independently.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ArrivalSchedule
+{
+    private static final String CONST_ERR_RATE = "Arrival rates must be positive";
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Arrivals per second of each step, the last holding after the steps
+     */
+    private final double[] rates;
+
+    /**
+     * Length of each step
+     */
+    private final long stepNanos;
+
+    /**
+     * Poisson arrivals?
+     */
+    private final boolean poisson;
+
+    private final long seed;
+
+
+    /**
+     * Returns a schedule of evenly spaced arrivals
+     *
+     * @param perSecond
+     *            the arrival rate
+     * @return the schedule
+     */
+    public static ArrivalSchedule constant(final double perSecond)
+    {
+        return new ArrivalSchedule(new double[] { perSecond }, 0, false, 0);
+    }
+
+
+    /**
+     * Returns a schedule of Poisson arrivals
+     *
+     * @param perSecond
+     *            the mean arrival rate
+     * @param seed
+     *            the seed of the arrival times
+     * @return the schedule
+     */
+    public static ArrivalSchedule poisson(final double perSecond,
+            final long seed)
+    {
+        return constant(perSecond).poisson(seed);
+    }
+
+
+    /**
+     * Returns a schedule of evenly spaced arrivals whose rate steps evenly
+     * from one level to another
+     *
+     * @param fromPerSecond
+     *            the rate of the first step
+     * @param toPerSecond
+     *            the rate of the last step
+     * @param steps
+     *            the number of steps
+     * @param stepMillis
+     *            the length of each step
+     * @return the schedule
+     */
+    public static ArrivalSchedule ramp(final double fromPerSecond,
+            final double toPerSecond, final int steps, final long stepMillis)
+    {
+        double[] rates = new double[Math.max(1, steps)];
+        for (int i = 0; i < rates.length; i++)
+        {
+            rates[i] = rates.length == 1 ? toPerSecond
+                    : fromPerSecond + (toPerSecond - fromPerSecond) * i
+                            / (rates.length - 1);
+        }
+        return new ArrivalSchedule(rates,
+                TimeUnit.MILLISECONDS.toNanos(stepMillis), false, 0);
+    }
+
+
+    private ArrivalSchedule(final double[] rates, final long stepNanos,
+            final boolean poisson, final long seed)
+    {
+        for (double rate : rates)
+        {
+            if (!(rate > 0))
+            {
+                throw new IllegalArgumentException(CONST_ERR_RATE);
+            }
+        }
+        this.rates = rates;
+        this.stepNanos = stepNanos;
+        this.poisson = poisson;
+        this.seed = seed;
+    }
+
+
+    /**
+     * Returns this schedule with Poisson arrivals at the same rates
+     *
+     * @param seed
+     *            the seed of the arrival times
+     * @return the Poisson schedule
+     */
+    public ArrivalSchedule poisson(final long seed)
+    {
+        return new ArrivalSchedule(rates, stepNanos, true, seed);
+    }
+
+
+    /**
+     * Returns the length of the steps of the schedule
+     *
+     * @return the length in millis, zero for a constant rate
+     */
+    public long getDurationMillis()
+    {
+        return rates.length == 1 ? 0
+                : TimeUnit.NANOSECONDS.toMillis(stepNanos * rates.length);
+    }
+
+
+    /**
+     * Returns the arrival rate at a time into the schedule
+     *
+     * @param offsetMillis
+     *            the time since the start
+     * @return the arrivals per second
+     */
+    public double getRate(final long offsetMillis)
+    {
+        return rate(TimeUnit.MILLISECONDS.toNanos(offsetMillis));
+    }
+
+
+    /**
+     * Returns the arrivals of one shard of a run
+     *
+     * @param shard
+     *            the shard, from zero
+     * @param shards
+     *            the number of shards
+     * @return the shard's arrivals
+     */
+    public Arrivals shard(final int shard, final int shards)
+    {
+        return new Arrivals(shard, shards);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        String kind = poisson ? "poisson " : "constant ";
+        if (rates.length == 1)
+        {
+            return kind + rates[0] + "/s";
+        }
+        return String.format("%1$s%2$s/s to %3$s/s in %4$d steps of %5$dms",
+                kind, rates[0], rates[rates.length - 1], rates.length,
+                TimeUnit.NANOSECONDS.toMillis(stepNanos));
+    }
+
+
+    /**
+     * Returns the rate at a time into the schedule
+     */
+    private double rate(final long offsetNanos)
+    {
+        if (rates.length == 1)
+        {
+            return rates[0];
+        }
+        return rates[(int) Math.min(rates.length - 1,
+                Math.max(0, offsetNanos) / stepNanos)];
+    }
+
+    /**
+     * The arrival times of one shard, in order. Not thread safe.
+     */
+    public final class Arrivals
+    {
+        private final int shards;
+
+        private final SplittableRandom random;
+
+        /**
+         * Time of the last arrival, from the start of the run
+         */
+        private double offset;
+
+
+        Arrivals(final int shard, final int shards)
+        {
+            this.shards = Math.max(1, shards);
+            random = new SplittableRandom(seed + shard);
+            if (!poisson)
+            /*
+             * Stagger the shards' even arrivals
+             */
+            {
+                offset = NANOS_PER_SECOND / rate(0) * (shard - this.shards);
+            }
+        }
+
+
+        /**
+         * Returns the next arrival
+         *
+         * @return the arrival time in nanos from the start of the run
+         */
+        public long next()
+        {
+            double interval = NANOS_PER_SECOND * shards
+                    / rate((long) Math.max(0, offset));
+            if (poisson)
+            {
+                interval *= -Math.log(1 - random.nextDouble());
+            }
+            offset += interval;
+            return (long) offset;
+        }
+    }
+}
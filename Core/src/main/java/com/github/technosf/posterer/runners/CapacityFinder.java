@@ -0,0 +1,539 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.posterer.models.Request;
+
+/**
+ * Finds the greatest rate a request can be sent at while its latency and
+ * errors stay within objectives.
+ * <p>
+ * Each probe sends the request at a constant rate for a fixed time on the
+ * {@code LoadGenerator}'s open model, and passes if its 99th percentile
+ * latency and error rate are within the objectives and the rate was
+ * sustained. The rate is increased additively while probes pass; on the first
+ * failure it is decreased multiplicatively until a probe passes again. The
+ * greatest passing and least failing rates then bracket the knee, which is
+ * found by binary search to the set precision.
+ * <p>
+ * Proxy and client certificate are those set on the generator.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class CapacityFinder
+{
+    /**
+     * Default length of each probe, overridden by the
+     * {@code posterer.capacity.probe} system property in millis
+     */
+    public static final int DEFAULT_PROBE_MILLIS =
+            Integer.getInteger("posterer.capacity.probe", 5000);
+
+    /**
+     * Share of the rate a probe must achieve to be sustained
+     */
+    private static final double SUSTAINED = 0.95;
+
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CapacityFinder.class);
+
+    /**
+     * Stage of the search a probe was made in
+     */
+    public enum Phase
+    {
+        /**
+         * Increasing the rate additively
+         */
+        INCREASE,
+        /**
+         * Decreasing the rate multiplicatively after a failure
+         */
+        DECREASE,
+        /**
+         * Searching between passing and failing rates
+         */
+        SEARCH
+    }
+
+    /**
+     * Receives each probe as it completes
+     */
+    public interface Listener
+    {
+        /**
+         * Called once a probe is over
+         *
+         * @param probe
+         *            the probe
+         */
+        void onProbe(Probe probe);
+    }
+
+    private final LoadGenerator generator;
+
+    /**
+     * Latency objective at the 99th percentile
+     */
+    private final long p99Micros;
+
+    /**
+     * Error rate objective, 0 to 1
+     */
+    private final double errorRate;
+
+    private double startRate = 10;
+
+    private double increment = 0;
+
+    private double decrease = 0.5;
+
+    private double precision = 0.05;
+
+    private long probeMillis = DEFAULT_PROBE_MILLIS;
+
+    private int maxProbes = 30;
+
+    private volatile boolean cancelled;
+
+
+    /**
+     * Creates a finder
+     *
+     * @param generator
+     *            the generator to probe with
+     * @param p99Micros
+     *            the 99th percentile latency objective
+     * @param errorRate
+     *            the error rate objective, 0 to 1
+     */
+    public CapacityFinder(final LoadGenerator generator, final long p99Micros,
+            final double errorRate)
+    {
+        this.generator = generator;
+        this.p99Micros = p99Micros;
+        this.errorRate = errorRate;
+    }
+
+
+    /**
+     * Sets the rate of the first probe
+     *
+     * @param startRate
+     *            requests per second
+     */
+    public void setStartRate(final double startRate)
+    {
+        this.startRate = startRate;
+    }
+
+
+    /**
+     * Sets the additive increase between passing probes
+     *
+     * @param increment
+     *            requests per second, the start rate if not positive
+     */
+    public void setIncrement(final double increment)
+    {
+        this.increment = increment;
+    }
+
+
+    /**
+     * Sets the multiplicative decrease after a failing probe
+     *
+     * @param decrease
+     *            the factor, between 0 and 1
+     */
+    public void setDecrease(final double decrease)
+    {
+        this.decrease = Math.max(0.01, Math.min(0.99, decrease));
+    }
+
+
+    /**
+     * Sets the precision of the search
+     *
+     * @param precision
+     *            the gap between passing and failing rates to stop at, as a
+     *            share of the failing rate
+     */
+    public void setPrecision(final double precision)
+    {
+        this.precision = precision;
+    }
+
+
+    /**
+     * Sets the length of each probe
+     *
+     * @param probeMillis
+     *            the length in millis
+     */
+    public void setProbeMillis(final long probeMillis)
+    {
+        this.probeMillis = Math.max(1, probeMillis);
+    }
+
+
+    /**
+     * Sets the most probes to make
+     *
+     * @param maxProbes
+     *            the number of probes
+     */
+    public void setMaxProbes(final int maxProbes)
+    {
+        this.maxProbes = Math.max(1, maxProbes);
+    }
+
+
+    /**
+     * Probes until the knee is found to the set precision, the probes run out
+     * or the search is cancelled
+     *
+     * @param request
+     *            the request to probe with
+     * @param listener
+     *            receives each probe
+     * @return the outcome of the search
+     * @throws InterruptedException
+     *             if interrupted while probing
+     */
+    public Result find(final Request request, final Listener listener)
+            throws InterruptedException
+    {
+        List<Probe> probes = new ArrayList<>();
+        double step = increment > 0 ? increment : startRate;
+
+        Probe passed = null;
+        Probe failed = null;
+        double rate = startRate;
+
+        /*
+         * Additive increase until a probe fails
+         */
+        while (failed == null && probes.size() < maxProbes && !cancelled)
+        {
+            Probe probe = probe(request, rate, Phase.INCREASE, listener);
+            probes.add(probe);
+            if (probe.isPassed())
+            {
+                passed = probe;
+                rate += step;
+            }
+            else
+            {
+                failed = probe;
+            }
+        }
+
+        /*
+         * Multiplicative decrease until a probe passes, unless one already has
+         */
+        rate = failed == null ? 0 : failed.getRate() * decrease;
+        while (passed == null && failed != null && probes.size() < maxProbes
+                && !cancelled)
+        {
+            Probe probe = probe(request, rate, Phase.DECREASE, listener);
+            probes.add(probe);
+            if (probe.isPassed())
+            {
+                passed = probe;
+            }
+            else
+            {
+                failed = probe;
+                rate *= decrease;
+            }
+        }
+
+        /*
+         * Binary search between the passing and failing rates
+         */
+        while (passed != null && failed != null && isWide(passed, failed)
+                && probes.size() < maxProbes && !cancelled)
+        {
+            Probe probe = probe(request,
+                    (passed.getRate() + failed.getRate()) / 2, Phase.SEARCH,
+                    listener);
+            probes.add(probe);
+            if (probe.isPassed())
+            {
+                passed = probe;
+            }
+            else
+            {
+                failed = probe;
+            }
+        }
+
+        Result result = new Result(passed, failed, probes);
+        LOG.debug("Capacity found: {}", result);
+        return result;
+    }
+
+
+    /**
+     * Cancels the search, and the probe in progress
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        generator.cancel();
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Is the gap between the passing and failing rates wider than the
+     * precision, taken as a share of the failing rate?
+     */
+    private boolean isWide(final Probe passed, final Probe failed)
+    {
+        double gap = failed.getRate() - passed.getRate();
+        return gap > precision * failed.getRate();
+    }
+
+
+    /**
+     * Sends the request at a rate for the probe time
+     */
+    private Probe probe(final Request request, final double rate,
+            final Phase phase, final Listener listener)
+            throws InterruptedException
+    {
+        AtomicLong elapsed = new AtomicLong();
+        LoadStats stats = generator.run(request,
+                ArrivalSchedule.constant(rate), probeMillis,
+                (interval, total, elapsedMillis) -> elapsed.set(elapsedMillis));
+
+        double seconds = Math.max(probeMillis, elapsed.get())
+                / (double) TimeUnit.SECONDS.toMillis(1);
+        Probe probe = new Probe(phase, rate, stats.getCount() / seconds,
+                stats, p99Micros, errorRate);
+        listener.onProbe(probe);
+        return probe;
+    }
+
+    /**
+     * The outcome of sending the request at one rate
+     */
+    public static final class Probe
+    {
+        private final Phase phase;
+
+        private final double rate;
+
+        private final double achieved;
+
+        private final long p50Micros;
+
+        private final long p99Micros;
+
+        private final double errorRate;
+
+        private final long late;
+
+        private final boolean passed;
+
+
+        Probe(final Phase phase, final double rate, final double achieved,
+                final LoadStats stats, final long p99Objective,
+                final double errorObjective)
+        {
+            this.phase = phase;
+            this.rate = rate;
+            this.achieved = achieved;
+            p50Micros = stats.getLatencies().getPercentile(50);
+            p99Micros = stats.getLatencies().getPercentile(99);
+            errorRate = stats.getCount() == 0 ? 1
+                    : stats.getFailures() / (double) stats.getCount();
+            late = stats.getLate();
+            passed = p99Micros <= p99Objective && errorRate <= errorObjective
+                    && achieved >= rate * SUSTAINED;
+        }
+
+
+        /**
+         * @return the stage of the search the probe was made in
+         */
+        public Phase getPhase()
+        {
+            return phase;
+        }
+
+
+        /**
+         * @return the rate probed, per second
+         */
+        public double getRate()
+        {
+            return rate;
+        }
+
+
+        /**
+         * @return the rate of responses achieved, per second
+         */
+        public double getAchieved()
+        {
+            return achieved;
+        }
+
+
+        /**
+         * @return the median latency
+         */
+        public long getP50Micros()
+        {
+            return p50Micros;
+        }
+
+
+        /**
+         * @return the 99th percentile latency
+         */
+        public long getP99Micros()
+        {
+            return p99Micros;
+        }
+
+
+        /**
+         * @return the share of requests that failed, 0 to 1
+         */
+        public double getErrorRate()
+        {
+            return errorRate;
+        }
+
+
+        /**
+         * @return the requests sent late to their schedule
+         */
+        public long getLate()
+        {
+            return late;
+        }
+
+
+        /**
+         * @return were the objectives met at this rate?
+         */
+        public boolean isPassed()
+        {
+            return passed;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#toString()
+         */
+        @SuppressWarnings("null")
+        @Override
+        public String toString()
+        {
+            return String.format(
+                    "%1$s %2$.1f/s: %3$.1f/s p50 %4$dus p99 %5$dus errors %6$.2f%% %7$s",
+                    phase, rate, achieved, p50Micros, p99Micros,
+                    errorRate * 100, passed ? "pass" : "fail");
+        }
+    }
+
+    /**
+     * The outcome of a search: the knee and the latency curve
+     */
+    public static final class Result
+    {
+        private final @Nullable Probe knee;
+
+        private final @Nullable Probe breach;
+
+        private final List<Probe> curve;
+
+
+        Result(final @Nullable Probe knee, final @Nullable Probe breach,
+                final List<Probe> probes)
+        {
+            this.knee = knee;
+            this.breach = breach;
+            List<Probe> sorted = new ArrayList<>(probes);
+            sorted.sort(Comparator.comparingDouble(Probe::getRate));
+            curve = Collections.unmodifiableList(sorted);
+        }
+
+
+        /**
+         * @return the greatest passing probe, null if none passed
+         */
+        public @Nullable Probe getKnee()
+        {
+            return knee;
+        }
+
+
+        /**
+         * @return the least failing probe, null if none failed
+         */
+        public @Nullable Probe getBreach()
+        {
+            return breach;
+        }
+
+
+        /**
+         * @return the probes made, in rate order
+         */
+        public List<Probe> getCurve()
+        {
+            return curve;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#toString()
+         */
+        @SuppressWarnings("null")
+        @Override
+        public String toString()
+        {
+            return "knee " + knee + " | breach " + breach + " | "
+                    + curve.size() + " probes";
+        }
+    }
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.posterer.models.BodyChunk;
+import com.github.technosf.posterer.models.ConsumptionPolicy;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.RequestModel;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.WarmupBean;
+
+/**
+ * Fires a collection of requests concurrently, bounding how many are in flight
+ * to any one host.
+ * <p>
+ * Requests are queued per host and dispatched as slots free up, so a slow host
+ * holds back only its own requests. Each response is handed to the
+ * {@code Listener} on the worker thread as it completes, and tallied in a
+ * {@code RunSummary}.
+ * <p>
+ * Requests are fired with the plain {@code RequestModel#doRequest(Request)},
+ * without proxy or client certificate. Their bodies are digested rather than
+ * kept by default, as listeners are handed the status and timings of
+ * responses, not their content.
+ * <p>
+ * Cancelling skips the queued requests and cancels those in flight, aborting
+ * their I/O, so a cancelled run returns promptly.
+ * <p>
+ * Optionally each host is pre-warmed before the run starts, opening as many
+ * connections as it will have requests in flight, so that the run is not
+ * skewed by its first requests connecting cold. Warm-up is not timed as part
+ * of the run.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class CollectionRunner
+{
+    /**
+     * Default requests in flight per host, overridden by the
+     * {@code posterer.runner.host} system property
+     */
+    public static final int DEFAULT_PER_HOST =
+            Integer.getInteger("posterer.runner.host", 6);
+
+    /**
+     * Default requests in flight in total, overridden by the
+     * {@code posterer.runner.threads} system property
+     */
+    public static final int DEFAULT_THREADS =
+            Integer.getInteger("posterer.runner.threads", 64);
+
+    /**
+     * Pre-warm hosts by default? Set by the {@code posterer.runner.prewarm}
+     * system property
+     */
+    public static final boolean DEFAULT_PREWARM =
+            Boolean.getBoolean("posterer.runner.prewarm");
+
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CollectionRunner.class);
+
+    private static final String CONST_ERR_NOT_RUNNABLE =
+            "Response model cannot be run";
+
+    /**
+     * Receives each response as it completes
+     */
+    public interface Listener
+    {
+        /**
+         * Called on the worker thread once the response is complete
+         *
+         * @param request
+         *            the request fired
+         * @param response
+         *            the response
+         * @param error
+         *            the error, if the request failed
+         */
+        void onResponse(Request request, ResponseModel response,
+                @Nullable Exception error);
+    }
+
+    /**
+     * Receives each response body chunk as it arrives
+     */
+    public interface StreamListener
+    {
+        /**
+         * Called on the reading thread as each chunk arrives
+         *
+         * @param response
+         *            the response the chunk belongs to
+         * @param chunk
+         *            the chunk
+         */
+        void onChunk(ResponseModel response, BodyChunk chunk);
+    }
+
+    /**
+     * The model that creates the responses
+     */
+    private final RequestModel requestModel;
+
+    /**
+     * Bound on requests in flight per host
+     */
+    private final int perHost;
+
+    /**
+     * Bound on requests in flight in total
+     */
+    private final int threads;
+
+    /**
+     * Requests waiting for a slot, per host
+     */
+    private final Map<String, Deque<Request>> queued = new LinkedHashMap<>();
+
+    /**
+     * Requests in flight, per host
+     */
+    private final Map<String, Integer> inflight = new HashMap<>();
+
+    /**
+     * Responses in flight, to cancel
+     */
+    private final Set<ResponseModel> running = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean cancelled;
+
+    /**
+     * Pre-warm each host before the run?
+     */
+    private boolean prewarm = DEFAULT_PREWARM;
+
+    /**
+     * How much of each response body to keep
+     */
+    private volatile ConsumptionPolicy consumption = ConsumptionPolicy.DIGEST;
+
+    /**
+     * Listens to each response body as it arrives, if set
+     */
+    private volatile @Nullable StreamListener streamListener;
+
+
+    /**
+     * Creates a runner with the default bounds
+     *
+     * @param requestModel
+     *            the model that creates the responses
+     */
+    public CollectionRunner(final RequestModel requestModel)
+    {
+        this(requestModel, DEFAULT_PER_HOST, DEFAULT_THREADS);
+    }
+
+
+    /**
+     * Creates a runner with the given bounds
+     *
+     * @param requestModel
+     *            the model that creates the responses
+     * @param perHost
+     *            requests in flight per host
+     * @param threads
+     *            requests in flight in total
+     */
+    public CollectionRunner(final RequestModel requestModel,
+            final int perHost, final int threads)
+    {
+        this.requestModel = requestModel;
+        this.perHost = Math.max(1, perHost);
+        this.threads = Math.max(1, threads);
+    }
+
+
+    /**
+     * Sets whether each host is pre-warmed before the run
+     *
+     * @param prewarm
+     *            true to pre-warm
+     */
+    public void setPrewarm(final boolean prewarm)
+    {
+        this.prewarm = prewarm;
+    }
+
+
+    /**
+     * Sets how much of each response body is kept, digesting by default
+     *
+     * @param consumption
+     *            the consumption policy
+     */
+    public void setConsumption(final ConsumptionPolicy consumption)
+    {
+        this.consumption = consumption;
+    }
+
+
+    /**
+     * Sets the listener to each response body as it arrives, so streaming the
+     * bodies. Chunks of responses in flight together interleave, so each comes
+     * with the response it belongs to.
+     *
+     * @param streamListener
+     *            the listener, or null for none
+     */
+    public void setStreamListener(final @Nullable StreamListener streamListener)
+    {
+        this.streamListener = streamListener;
+    }
+
+
+    /**
+     * Fires the requests, blocking until all have completed or the run is
+     * cancelled.
+     *
+     * @param requests
+     *            the requests to fire
+     * @param listener
+     *            receives each response
+     * @return the summary of the run
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public RunSummary run(final Collection<? extends Request> requests,
+            final Listener listener) throws InterruptedException
+    {
+        CountDownLatch done = new CountDownLatch(requests.size());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threads, requests.size())), runnable -> {
+                    Thread thread =
+                            new Thread(runnable, "posterer-runner");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        synchronized (this)
+        {
+            queued.clear();
+            inflight.clear();
+            for (Request request : requests)
+            {
+                queued.computeIfAbsent(host(request),
+                        k -> new ArrayDeque<>()).add(request);
+            }
+        }
+
+        List<WarmupBean> warmups =
+                prewarm ? prewarm(executor) : new ArrayList<>();
+        RunSummary summary = new RunSummary();
+        warmups.forEach(summary::warmed);
+
+        try
+        {
+            dispatch(executor, summary, listener, done);
+            done.await();
+        }
+        finally
+        {
+            executor.shutdownNow();
+            summary.stop();
+        }
+
+        LOG.debug("Run complete: {}", summary);
+        return summary;
+    }
+
+
+    /**
+     * Cancels the run. Requests in flight are cancelled, queued requests are
+     * skipped.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        running.forEach(ResponseModel::cancel);
+    }
+
+
+    /**
+     * Has the run been cancelled?
+     *
+     * @return true if cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Pre-warms each host, concurrently, with a connection for each request
+     * it will have in flight
+     */
+    private List<WarmupBean> prewarm(final ExecutorService executor)
+            throws InterruptedException
+    {
+        List<Future<WarmupBean>> warming = new ArrayList<>();
+        synchronized (this)
+        {
+            for (Deque<Request> waiting : queued.values())
+            {
+                Request request = waiting.peek();
+                int connections = Math.min(perHost, waiting.size());
+                if (request != null)
+                {
+                    warming.add(executor.submit(
+                            () -> requestModel.prewarm(request, connections)));
+                }
+            }
+        }
+
+        List<WarmupBean> warmups = new ArrayList<>();
+        for (Future<WarmupBean> warmup : warming)
+        {
+            try
+            {
+                warmups.add(warmup.get());
+            }
+            catch (ExecutionException e)
+            {
+                LOG.warn("Pre-warm failed", e.getCause());
+            }
+        }
+        return warmups;
+    }
+
+
+    /**
+     * Submits queued requests for each host with a free slot, skipping all
+     * queued requests if cancelled
+     */
+    private synchronized void dispatch(final ExecutorService executor,
+            final RunSummary summary, final Listener listener,
+            final CountDownLatch done)
+    {
+        for (Map.Entry<String, Deque<Request>> entry : queued.entrySet())
+        {
+            String host = entry.getKey();
+            Deque<Request> waiting = entry.getValue();
+
+            if (cancelled)
+            {
+                while (waiting.poll() != null)
+                {
+                    summary.skip();
+                    done.countDown();
+                }
+                continue;
+            }
+
+            while (!waiting.isEmpty()
+                    && inflight.getOrDefault(host, 0) < perHost)
+            {
+                Request request = waiting.poll();
+                inflight.merge(host, 1, Integer::sum);
+                executor.execute(() -> {
+                    try
+                    {
+                        fire(request, summary, listener);
+                    }
+                    finally
+                    {
+                        synchronized (this)
+                        {
+                            inflight.merge(host, -1, Integer::sum);
+                        }
+                        done.countDown();
+                        dispatch(executor, summary, listener, done);
+                    }
+                });
+            }
+        }
+    }
+
+
+    /**
+     * Fires a single request on the calling thread
+     */
+    @SuppressWarnings("null")
+    private void fire(final Request request, final RunSummary summary,
+            final Listener listener)
+    {
+        ResponseModel response = requestModel.doRequest(request);
+        response.setConsumption(consumption);
+        StreamListener stream = streamListener;
+        if (stream != null)
+        {
+            response.setChunkListener(chunk -> stream.onChunk(response, chunk));
+        }
+        running.add(response);
+        if (cancelled)
+        {
+            response.cancel();
+        }
+
+        Exception error = null;
+        try
+        {
+            if (!(response instanceof Callable))
+            {
+                throw new IllegalStateException(CONST_ERR_NOT_RUNNABLE);
+            }
+            ((Callable<?>) response).call();
+            response.isComplete(); // Consume the body, freeing the connection
+            summary.record(response.getStatusCode(),
+                    response.getElaspedTimeMilli());
+        }
+        catch (Exception e)
+        {
+            error = e;
+            if (response.isCancelled())
+            {
+                summary.skip();
+            }
+            else
+            {
+                summary.record(RunSummary.STATUS_ERROR,
+                        response.getElaspedTimeMilli());
+            }
+        }
+        finally
+        {
+            running.remove(response);
+        }
+
+        try
+        {
+            listener.onResponse(request, response, error);
+        }
+        catch (RuntimeException e)
+        {
+            LOG.warn("Listener failed", e);
+        }
+    }
+
+
+    /**
+     * Returns the host key the request is bounded under
+     */
+    private static String host(final Request request)
+    {
+        URI uri = request.getUri();
+        if (uri == null || uri.getHost() == null)
+        {
+            return "";
+        }
+        return uri.getHost() + ":" + uri.getPort();
+    }
+}
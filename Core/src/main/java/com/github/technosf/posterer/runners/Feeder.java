@@ -0,0 +1,886 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.utils.Template;
+
+/**
+ * Streams rows of template values from a CSV or JSON lines file.
+ * <p>
+ * A CSV file's first record names the columns; quoted fields may hold commas,
+ * line breaks and doubled quotes. In a JSON lines file each line is a flat
+ * object, whose values are strings, numbers, booleans or null; the keys of
+ * the first line name the columns, and keys not among them are ignored.
+ * <p>
+ * Records are read a buffer at a time and parsed as bytes straight into the
+ * caller's {@code Row}, which is reused, so rows cost no allocation however
+ * many are read. A circular feeder reopens the file at its end. Reading is
+ * thread safe, each row going to one caller.
+ * <p>
+ * Callers reading from many threads take rows through a {@code Batch}, which
+ * reads a number of rows from the feeder at once, so that the threads sharing
+ * a batch contend for the feeder once for all its rows.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class Feeder
+    implements Closeable
+{
+    private static final String CONST_ERR_EMPTY = "No columns in %1$s";
+    private static final String CONST_ERR_JSON = "Malformed JSON line %1$d";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default number of rows a batch reads at once, overridden by the
+     * {@code posterer.feed.batch} system property
+     */
+    public static final int DEFAULT_BATCH =
+            Integer.getInteger("posterer.feed.batch", 64);
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The record formats read
+     */
+    public enum Format
+    {
+        /**
+         * Comma separated values, with a header record
+         */
+        CSV,
+        /**
+         * One flat JSON object per line
+         */
+        JSONL
+    }
+
+    /**
+     * Opens the stream of records, each time the feeder starts over
+     */
+    @FunctionalInterface
+    public interface Source
+    {
+        /**
+         * Opens the stream
+         *
+         * @return the stream
+         * @throws IOException
+         *             if it cannot be opened
+         */
+        InputStream open() throws IOException;
+    }
+
+    private final Source source;
+
+    private final Format format;
+
+    private final boolean circular;
+
+    private final String name;
+
+    private final List<String> columns = new ArrayList<>();
+
+    /**
+     * The column names as bytes, to match JSON keys against
+     */
+    private final List<byte[]> keys = new ArrayList<>();
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    private int limit;
+
+    private InputStream in;
+
+    /**
+     * Records read since the stream was opened, and the current line
+     */
+    private long records;
+    private long line = 1;
+
+    /**
+     * The first JSON record, read to name the columns
+     */
+    private @Nullable Row pending;
+
+    /**
+     * Key and value being read, reused
+     */
+    private final Template.Output key = new Template.Output(64);
+    private final Template.Output value = new Template.Output(256);
+
+
+    /**
+     * Opens a file, reading JSON lines if its name ends {@code .jsonl} or
+     * {@code .ndjson}, else CSV
+     *
+     * @param path
+     *            the file
+     * @param circular
+     *            start over at the end of the file?
+     * @return the feeder
+     * @throws IOException
+     *             if the file cannot be read or names no columns
+     */
+    @SuppressWarnings("null")
+    public static Feeder open(final Path path, final boolean circular)
+            throws IOException
+    {
+        String file = path.getFileName() == null ? ""
+                : path.getFileName().toString().toLowerCase();
+        Format format = file.endsWith(".jsonl") || file.endsWith(".ndjson")
+                ? Format.JSONL : Format.CSV;
+        return new Feeder(() -> Files.newInputStream(path), format, circular,
+                path.toString());
+    }
+
+
+    /**
+     * Creates a feeder, reading the column names
+     *
+     * @param source
+     *            opens the stream of records
+     * @param format
+     *            the record format
+     * @param circular
+     *            start over at the end of the stream?
+     * @param name
+     *            the name of the stream, for messages
+     * @throws IOException
+     *             if the stream cannot be read or names no columns
+     */
+    public Feeder(final Source source, final Format format,
+            final boolean circular, final String name) throws IOException
+    {
+        this.source = source;
+        this.format = format;
+        this.circular = circular;
+        this.name = name;
+        in = source.open();
+
+        Row first = new Row();
+        if (format == Format.CSV ? csv(first, true) : json(first, true))
+        {
+            if (format == Format.CSV)
+            {
+                for (int c = 0; c < first.count; c++)
+                {
+                    addColumn(first.get(c));
+                }
+            }
+            else
+            {
+                pending = first;
+            }
+        }
+        if (columns.isEmpty())
+        {
+            in.close();
+            throw new IOException(String.format(CONST_ERR_EMPTY, name));
+        }
+    }
+
+
+    /**
+     * @return the column names, in index order
+     */
+    @SuppressWarnings("null")
+    public List<String> getColumns()
+    {
+        return Collections.unmodifiableList(columns);
+    }
+
+
+    /**
+     * Reads the next record
+     *
+     * @param row
+     *            the row to read into, reused
+     * @return false if there are no more records
+     * @throws IOException
+     *             if the stream cannot be read or is malformed
+     */
+    public synchronized boolean next(final Row row) throws IOException
+    {
+        Row first = pending;
+        if (first != null)
+        {
+            pending = null;
+            row.copy(first);
+            records++;
+            return true;
+        }
+        if (read(row))
+        {
+            return true;
+        }
+        if (!circular || records == 0)
+        {
+            return false;
+        }
+
+        /*
+         * Start over, past the CSV header
+         */
+        in.close();
+        in = source.open();
+        position = limit = 0;
+        line = 1;
+        records = 0;
+        if (format == Format.CSV)
+        {
+            csv(row, true);
+        }
+        return read(row);
+    }
+
+
+    /**
+     * Reads records into as many of the rows as there are records
+     *
+     * @param rows
+     *            the rows to read into, reused
+     * @return the number of rows read, zero if there are no more records
+     * @throws IOException
+     *             if the stream cannot be read or is malformed
+     */
+    public synchronized int next(final Row[] rows) throws IOException
+    {
+        int read = 0;
+        while (read < rows.length && next(rows[read]))
+        {
+            read++;
+        }
+        return read;
+    }
+
+
+    /**
+     * Creates a batch of the default size over the feeder
+     *
+     * @return the batch
+     */
+    public Batch batch()
+    {
+        return new Batch(this, DEFAULT_BATCH);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        in.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return name + " " + format + " " + columns;
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Reads a record into the row
+     */
+    private boolean read(final Row row) throws IOException
+    {
+        if (format == Format.CSV ? csv(row, false) : json(row, false))
+        {
+            records++;
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Adds a column
+     */
+    private int addColumn(final String column)
+    {
+        columns.add(column);
+        keys.add(column.getBytes(StandardCharsets.UTF_8));
+        return columns.size() - 1;
+    }
+
+
+    /**
+     * Reads the next byte
+     */
+    private int read() throws IOException
+    {
+        if (position == limit)
+        {
+            limit = in.read(buffer);
+            position = 0;
+            if (limit <= 0)
+            {
+                limit = 0;
+                return -1;
+            }
+        }
+        int b = buffer[position++] & 0xff;
+        if (b == '\n')
+        {
+            line++;
+        }
+        return b;
+    }
+
+
+    /**
+     * Reads a CSV record into the row, any number of fields if the header
+     */
+    private boolean csv(final Row row, final boolean header)
+            throws IOException
+    {
+        int c = read();
+        while (c == '\r' || c == '\n')
+        {
+            c = read();
+        }
+        if (c < 0)
+        {
+            return false;
+        }
+
+        row.begin(header ? 0 : columns.size());
+        int field = 0;
+        while (true)
+        {
+            row.start(field);
+            if (c == '"')
+            {
+                while ((c = read()) >= 0)
+                {
+                    if (c == '"' && (c = read()) != '"')
+                    {
+                        break;
+                    }
+                    row.put(c);
+                }
+                while (c >= 0 && c != ',' && c != '\n')
+                {
+                    c = read();
+                }
+            }
+            else
+            {
+                while (c >= 0 && c != ',' && c != '\n')
+                {
+                    if (c != '\r')
+                    {
+                        row.put(c);
+                    }
+                    c = read();
+                }
+            }
+            row.end(field++);
+            if (c != ',')
+            {
+                return true;
+            }
+            c = read();
+        }
+    }
+
+
+    /**
+     * Reads a JSON line into the row, adding columns if the first
+     */
+    private boolean json(final Row row, final boolean first)
+            throws IOException
+    {
+        int c = skipSpace(read());
+        if (c < 0)
+        {
+            return false;
+        }
+        if (c != '{')
+        {
+            throw malformed();
+        }
+
+        row.begin(columns.size());
+        c = skipSpace(read());
+        while (c != '}')
+        {
+            if (c != '"')
+            {
+                throw malformed();
+            }
+            key.reset();
+            string(key);
+            int column = column(first);
+            if (skipSpace(read()) != ':')
+            {
+                throw malformed();
+            }
+
+            c = skipSpace(read());
+            value.reset();
+            if (c == '"')
+            {
+                string(value);
+                c = skipSpace(read());
+            }
+            else
+            {
+                while (c >= 0 && c != ',' && c != '}' && c > ' ')
+                {
+                    value.write(c);
+                    c = read();
+                }
+                if (equals(value, NULL))
+                {
+                    value.reset();
+                }
+                c = skipSpace(c);
+            }
+            if (column >= 0)
+            {
+                row.start(column);
+                for (int i = 0; i < value.length(); i++)
+                {
+                    row.put(value.array()[i]);
+                }
+                row.end(column);
+            }
+
+            if (c == ',')
+            {
+                c = skipSpace(read());
+            }
+            else if (c != '}')
+            {
+                throw malformed();
+            }
+        }
+
+        while (c >= 0 && c != '\n')
+        {
+            c = read();
+        }
+        return true;
+    }
+
+
+    /**
+     * Returns the column of the key just read, -1 if none
+     */
+    private int column(final boolean add)
+    {
+        for (int i = 0; i < keys.size(); i++)
+        {
+            if (equals(key, keys.get(i)))
+            {
+                return i;
+            }
+        }
+        return add ? addColumn(key.toString()) : -1;
+    }
+
+
+    /**
+     * Does the output hold the bytes?
+     */
+    private static boolean equals(final Template.Output out,
+            final byte[] bytes)
+    {
+        if (out.length() != bytes.length)
+        {
+            return false;
+        }
+        byte[] array = out.array();
+        for (int i = 0; i < bytes.length; i++)
+        {
+            if (array[i] != bytes[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Reads the rest of a JSON string, unescaped as UTF-8
+     */
+    private void string(final Template.Output sink) throws IOException
+    {
+        int c;
+        while ((c = read()) != '"')
+        {
+            if (c < 0)
+            {
+                throw malformed();
+            }
+            if (c != '\\')
+            {
+                sink.write(c);
+                continue;
+            }
+            switch (c = read())
+            {
+                case 'b':
+                    sink.write('\b');
+                    break;
+                case 'f':
+                    sink.write('\f');
+                    break;
+                case 'n':
+                    sink.write('\n');
+                    break;
+                case 'r':
+                    sink.write('\r');
+                    break;
+                case 't':
+                    sink.write('\t');
+                    break;
+                case 'u':
+                    int code = hex();
+                    if (Character.isHighSurrogate((char) code))
+                    {
+                        if (read() != '\\' || read() != 'u')
+                        {
+                            throw malformed();
+                        }
+                        code = Character.toCodePoint((char) code,
+                                (char) hex());
+                    }
+                    utf8(code, sink);
+                    break;
+                default:
+                    if (c < 0)
+                    {
+                        throw malformed();
+                    }
+                    sink.write(c);
+            }
+        }
+    }
+
+
+    /**
+     * Reads four hex digits
+     */
+    private int hex() throws IOException
+    {
+        int code = 0;
+        for (int i = 0; i < 4; i++)
+        {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0)
+            {
+                throw malformed();
+            }
+            code = code << 4 | digit;
+        }
+        return code;
+    }
+
+
+    /**
+     * Skips white space other than the end of the line
+     */
+    private int skipSpace(final int from) throws IOException
+    {
+        int c = from;
+        while (c == ' ' || c == '\t' || c == '\r')
+        {
+            c = read();
+        }
+        return c;
+    }
+
+
+    private IOException malformed()
+    {
+        return new IOException(String.format(CONST_ERR_JSON, line));
+    }
+
+
+    /**
+     * Encodes a code point as UTF-8
+     */
+    private static void utf8(final int code, final Template.Output sink)
+    {
+        if (code < 0x80)
+        {
+            sink.write(code);
+        }
+        else if (code < 0x800)
+        {
+            sink.write(0xc0 | code >> 6);
+            sink.write(0x80 | code & 0x3f);
+        }
+        else if (code < 0x10000)
+        {
+            sink.write(0xe0 | code >> 12);
+            sink.write(0x80 | code >> 6 & 0x3f);
+            sink.write(0x80 | code & 0x3f);
+        }
+        else
+        {
+            sink.write(0xf0 | code >> 18);
+            sink.write(0x80 | code >> 12 & 0x3f);
+            sink.write(0x80 | code >> 6 & 0x3f);
+            sink.write(0x80 | code & 0x3f);
+        }
+    }
+
+    /**
+     * A record's values as UTF-8 bytes, reused from record to record
+     */
+    public static final class Row
+        implements Template.Values
+    {
+        private byte[] data = new byte[256];
+
+        private int length;
+
+        private int[] starts = new int[8];
+
+        private int[] ends = new int[8];
+
+        /**
+         * Number of fields
+         */
+        private int count;
+
+
+        /**
+         * Returns a value
+         *
+         * @param column
+         *            the column index
+         * @return the value, empty if there is none
+         */
+        public String get(final int column)
+        {
+            return column < count
+                    ? new String(data, starts[column],
+                            ends[column] - starts[column],
+                            StandardCharsets.UTF_8)
+                    : "";
+        }
+
+
+        /**
+         * @return the number of fields read
+         */
+        public int size()
+        {
+            return count;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see com.github.technosf.posterer.utils.Template.Values#writeTo(int,
+         *      com.github.technosf.posterer.utils.Template.Output)
+         */
+        @Override
+        public void writeTo(final int column, final Template.Output out)
+        {
+            if (column < count)
+            {
+                out.write(data, starts[column], ends[column] - starts[column]);
+            }
+        }
+
+
+        /**
+         * Starts a record of empty fields
+         */
+        void begin(final int fields)
+        {
+            length = 0;
+            count = 0;
+            grow(fields);
+            Arrays.fill(starts, 0, fields, 0);
+            Arrays.fill(ends, 0, fields, 0);
+            count = fields;
+        }
+
+
+        /**
+         * Starts a field
+         */
+        void start(final int field)
+        {
+            grow(field + 1);
+            count = Math.max(count, field + 1);
+            starts[field] = length;
+        }
+
+
+        /**
+         * Appends a byte to the field being read
+         */
+        void put(final int b)
+        {
+            if (length == data.length)
+            {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[length++] = (byte) b;
+        }
+
+
+        /**
+         * Ends a field
+         */
+        void end(final int field)
+        {
+            ends[field] = length;
+        }
+
+
+        /**
+         * Copies another row, reusing this row's arrays where they are big
+         * enough
+         */
+        void copy(final Row other)
+        {
+            if (data.length < other.length)
+            {
+                data = new byte[other.data.length];
+            }
+            System.arraycopy(other.data, 0, data, 0, other.length);
+            grow(other.count);
+            System.arraycopy(other.starts, 0, starts, 0, other.count);
+            System.arraycopy(other.ends, 0, ends, 0, other.count);
+            length = other.length;
+            count = other.count;
+        }
+
+
+        /**
+         * Makes room for a number of fields
+         */
+        private void grow(final int fields)
+        {
+            if (fields > starts.length)
+            {
+                int size = Math.max(fields, starts.length * 2);
+                starts = Arrays.copyOf(starts, size);
+                ends = Arrays.copyOf(ends, size);
+            }
+        }
+    }
+
+    /**
+     * Rows read from a feeder a number at a time, for the threads sharing the
+     * batch to take one by one.
+     * <p>
+     * A batch holds rows it has read until they are taken, so rows are not
+     * taken in quite the order of the feed when a feeder has many batches.
+     */
+    public static final class Batch
+    {
+        private final Feeder feeder;
+
+        private final Row[] rows;
+
+        /**
+         * The next row to take, and the number read
+         */
+        private int position;
+
+        private int limit;
+
+
+        /**
+         * @param feeder
+         *            the feeder to read from
+         * @param size
+         *            the number of rows to read at once
+         */
+        public Batch(final Feeder feeder, final int size)
+        {
+            this.feeder = feeder;
+            rows = new Row[Math.max(1, size)];
+            for (int i = 0; i < rows.length; i++)
+            {
+                rows[i] = new Row();
+            }
+        }
+
+
+        /**
+         * @return the feeder's column names, in index order
+         */
+        public List<String> getColumns()
+        {
+            return feeder.getColumns();
+        }
+
+
+        /**
+         * Takes the next row, reading the next batch of rows if needed
+         *
+         * @param row
+         *            the row to copy into, reused
+         * @return false if there are no more records
+         * @throws IOException
+         *             if the feeder's stream cannot be read or is malformed
+         */
+        public synchronized boolean next(final Row row) throws IOException
+        {
+            if (position == limit)
+            {
+                limit = feeder.next(rows);
+                position = 0;
+                if (limit == 0)
+                {
+                    return false;
+                }
+            }
+            row.copy(rows[position++]);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Fixed size histogram of latencies in microseconds.
+ * <p>
+ * Values below 64 are counted exactly; above that each power of two is split
+ * into 32 buckets, so a percentile is accurate to about 3%. Recording is a
+ * few arithmetic operations on a preallocated array, with no allocation, and
+ * histograms merge by adding their counts. Two histograms can also be read
+ * together in place, as if merged.
+ * <p>
+ * Not thread safe: each histogram should have a single writer, and be read
+ * or merged only once handed over.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class LatencyHistogram
+{
+    /**
+     * Values counted exactly
+     */
+    private static final int LINEAR = 64;
+
+    /**
+     * Buckets per power of two above the linear range
+     */
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+
+    /**
+     * Buckets to cover every positive long
+     */
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * SUB;
+
+    private final long[] counts = new long[BUCKETS];
+
+    private long count;
+
+    private long total;
+
+    private long min = Long.MAX_VALUE;
+
+    private long max;
+
+
+    /**
+     * Records a latency
+     *
+     * @param micros
+     *            the latency in microseconds, negative values count as zero
+     */
+    public void record(final long micros)
+    {
+        long value = Math.max(0, micros);
+        counts[index(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+
+    /**
+     * Adds the counts of another histogram to this one
+     *
+     * @param other
+     *            the histogram to add
+     */
+    public void merge(final LatencyHistogram other)
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * @return the least latency, zero if none recorded
+     */
+    public long getMin()
+    {
+        return count == 0 ? 0 : min;
+    }
+
+
+    /**
+     * @return the greatest latency, zero if none recorded
+     */
+    public long getMax()
+    {
+        return max;
+    }
+
+
+    /**
+     * @return the mean latency, zero if none recorded
+     */
+    public long getMean()
+    {
+        return count == 0 ? 0 : total / count;
+    }
+
+
+    /**
+     * Returns the mean of the latencies greater than a given latency, each
+     * taken as the upper bound of its bucket
+     *
+     * @param micros
+     *            the latency in microseconds
+     * @return the mean in microseconds, zero if none greater were recorded
+     */
+    public long getMeanAbove(final long micros)
+    {
+        return meanAbove(this, null, micros);
+    }
+
+
+    /**
+     * Returns the mean of the latencies greater than a given latency in this
+     * and another histogram together, as if merged
+     *
+     * @param micros
+     *            the latency in microseconds
+     * @param other
+     *            the other histogram, read in place
+     * @return the mean in microseconds, zero if none greater were recorded
+     */
+    public long getMeanAbove(final long micros, final LatencyHistogram other)
+    {
+        return meanAbove(this, other, micros);
+    }
+
+
+    /**
+     * Returns the latency at the given percentile, as the upper bound of its
+     * bucket
+     *
+     * @param percentile
+     *            the percentile, 0 to 100
+     * @return the latency in microseconds, zero if none recorded
+     */
+    public long getPercentile(final double percentile)
+    {
+        return percentile(this, null, percentile);
+    }
+
+
+    /**
+     * Returns the latency at the given percentile of this and another
+     * histogram together, as if merged
+     *
+     * @param percentile
+     *            the percentile, 0 to 100
+     * @param other
+     *            the other histogram, read in place
+     * @return the latency in microseconds, zero if none recorded
+     */
+    public long getPercentile(final double percentile,
+            final LatencyHistogram other)
+    {
+        return percentile(this, other, percentile);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        return String.format(
+                "p50 %1$dus p90 %2$dus p99 %3$dus p99.9 %4$dus max %5$dus | %6$d",
+                getPercentile(50), getPercentile(90), getPercentile(99),
+                getPercentile(99.9), max, count);
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Returns the latency at the percentile of one histogram, or of two read
+     * together
+     */
+    private static long percentile(final LatencyHistogram one,
+            final @Nullable LatencyHistogram two, final double percentile)
+    {
+        long count = one.count + (two == null ? 0 : two.count);
+        if (count == 0)
+        {
+            return 0;
+        }
+        long min = two == null ? one.min : Math.min(one.min, two.min);
+        long max = two == null ? one.max : Math.max(one.max, two.max);
+        long rank = Math.max(1,
+                (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += one.counts[i] + (two == null ? 0 : two.counts[i]);
+            if (seen >= rank)
+            {
+                return Math.max(min, Math.min(max, upper(i)));
+            }
+        }
+        return max;
+    }
+
+
+    /**
+     * Returns the mean above a latency of one histogram, or of two read
+     * together
+     */
+    private static long meanAbove(final LatencyHistogram one,
+            final @Nullable LatencyHistogram two, final long micros)
+    {
+        long max = two == null ? one.max : Math.max(one.max, two.max);
+        long above = 0;
+        long sum = 0;
+        for (int i = index(Math.max(0, micros)); i < BUCKETS; i++)
+        {
+            long counted = one.counts[i] + (two == null ? 0 : two.counts[i]);
+            long upper = Math.min(max, upper(i));
+            if (counted > 0 && upper > micros)
+            {
+                above += counted;
+                sum += counted * upper;
+            }
+        }
+        return above == 0 ? 0 : sum / above;
+    }
+
+
+    /**
+     * Returns the bucket of a value
+     */
+    static int index(final long value)
+    {
+        if (value < LINEAR)
+        {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return LINEAR + (shift - 1) * SUB + (int) (value >>> shift) - SUB;
+    }
+
+
+    /**
+     * Returns the greatest value of a bucket
+     */
+    static long upper(final int index)
+    {
+        if (index < LINEAR)
+        {
+            return index;
+        }
+        int bucket = index - LINEAR;
+        int shift = bucket / SUB + 1;
+        return ((long) (SUB + bucket % SUB + 1) << shift) - 1;
+    }
+}
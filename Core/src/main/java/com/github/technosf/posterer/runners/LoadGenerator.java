@@ -0,0 +1,919 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.posterer.models.ConsumptionPolicy;
+import com.github.technosf.posterer.models.Proxy;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.RequestModel;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.KeyStoreBean;
+import com.github.technosf.posterer.models.impl.ProxyBean;
+import com.github.technosf.posterer.models.impl.RequestBean;
+import com.github.technosf.posterer.models.impl.WarmupBean;
+
+/**
+ * Fires one request, or a scenario of requests, over and over, from a number
+ * of concurrent workers, for a number of requests or a length of time,
+ * through a proxy and with a client certificate if set.
+ * <p>
+ * The workers are split into shards, one per core by default. Each shard has
+ * its own {@code RequestModel}, and each of its workers its own copy of the
+ * request, its own share of the requests to fire and its own
+ * {@code LoadStats}, so nothing is shared between shards while firing. At
+ * each reporting interval a worker hands its outcomes over to its shard and
+ * starts afresh; the reporter merges what the shards have been handed.
+ * <p>
+ * Before the clock starts each shard's model is pre-warmed with a connection
+ * to each host of the run for each of the shard's workers, so that the first
+ * requests of the run do not pay for connecting.
+ * <p>
+ * In the closed model each worker fires its next request once the last has
+ * returned. In the open model requests are sent on an
+ * {@code ArrivalSchedule}, split between the shards, with the workers of a
+ * shard taking its arrivals in turn and waiting for each on a
+ * {@code Pacer}: the only state the workers of a shard share.
+ * <p>
+ * A scenario is fired by virtual users, split between the shards. A user
+ * visits, firing a step of the scenario, then thinks before visiting again;
+ * the workers of a shard take its users as they become due. Users are not
+ * threads but entries in the shard's {@code VirtualUsers}, so the number of
+ * users is bounded by memory, not by the concurrency.
+ * <p>
+ * Given a {@code Feeder}, requests with {@code ${name}} variables are
+ * rendered with the feed's next row each time they are fired, and the run
+ * ends if the feed does. Each shard takes rows from its own batch, so that
+ * the workers of a shard share the feed only a batch at a time.
+ * <p>
+ * Response bodies are digested rather than kept by default, so that the
+ * memory and time spent on each response do not grow with its body.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class LoadGenerator
+{
+    /**
+     * Default number of shards, overridden by the
+     * {@code posterer.load.shards} system property
+     */
+    public static final int DEFAULT_SHARDS = Integer.getInteger(
+            "posterer.load.shards", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Default interval between reports, overridden by the
+     * {@code posterer.load.report} system property
+     */
+    public static final int DEFAULT_REPORT_MILLIS =
+            Integer.getInteger("posterer.load.report", 1000);
+
+    /**
+     * Pre-warm each shard by default? Set by the
+     * {@code posterer.load.prewarm} system property
+     */
+    public static final boolean DEFAULT_PREWARM = Boolean.parseBoolean(
+            System.getProperty("posterer.load.prewarm", "true"));
+
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(LoadGenerator.class);
+
+    /**
+     * How late to its schedule a request must be sent to count as late, set
+     * by the {@code posterer.load.late} system property in microseconds
+     */
+    private static final long LATE_NANOS =
+            Integer.getInteger("posterer.load.late", 1000) * 1000L;
+
+    private static final String CONST_ERR_UNBOUNDED =
+            "A load run needs a number of requests or a duration";
+    private static final String CONST_ERR_NOT_RUNNABLE =
+            "Response model cannot be run";
+
+    /**
+     * Receives the outcomes of the run as it goes
+     */
+    public interface Reporter
+    {
+        /**
+         * Called on the thread running the load at each interval, and once
+         * the run is over
+         *
+         * @param interval
+         *            the outcomes handed over since the last report
+         * @param total
+         *            the outcomes so far
+         * @param elapsedMillis
+         *            the time since the run started
+         */
+        void onReport(LoadStats interval, LoadStats total, long elapsedMillis);
+    }
+
+    /**
+     * Supplier of a model to each shard
+     */
+    private final Supplier<RequestModel> models;
+
+    private final int shards;
+
+    private final int concurrency;
+
+    private int reportMillis = DEFAULT_REPORT_MILLIS;
+
+    /**
+     * Pre-warm each shard before the run?
+     */
+    private boolean prewarm = DEFAULT_PREWARM;
+
+    /**
+     * Proxy to fire through, if any
+     */
+    private @Nullable Proxy proxy;
+
+    /**
+     * Client certificate store, if any, and alias
+     */
+    private @Nullable KeyStoreBean keyStoreBean;
+    private String alias = "";
+
+    /**
+     * Values of templated requests, if any
+     */
+    private @Nullable Feeder feeder;
+
+    /**
+     * How much of each response body to keep
+     */
+    private ConsumptionPolicy consumption = ConsumptionPolicy.DIGEST;
+
+    /**
+     * Workers of the run in progress, to cancel
+     */
+    private final List<Worker> workers = new ArrayList<>();
+
+    private volatile boolean cancelled;
+
+
+    /**
+     * Creates a generator with the default number of shards
+     *
+     * @param models
+     *            supplies the model for each shard
+     * @param concurrency
+     *            requests in flight in total
+     */
+    public LoadGenerator(final Supplier<RequestModel> models,
+            final int concurrency)
+    {
+        this(models, DEFAULT_SHARDS, concurrency);
+    }
+
+
+    /**
+     * Creates a generator
+     *
+     * @param models
+     *            supplies the model for each shard
+     * @param shards
+     *            the number of shards, no more than the concurrency
+     * @param concurrency
+     *            requests in flight in total
+     */
+    public LoadGenerator(final Supplier<RequestModel> models,
+            final int shards, final int concurrency)
+    {
+        this.models = models;
+        this.concurrency = Math.max(1, concurrency);
+        this.shards = Math.max(1, Math.min(shards, this.concurrency));
+    }
+
+
+    /**
+     * Sets the interval between reports
+     *
+     * @param reportMillis
+     *            the interval in millis
+     */
+    public void setReportMillis(final int reportMillis)
+    {
+        this.reportMillis = Math.max(1, reportMillis);
+    }
+
+
+    /**
+     * Sets whether each shard is pre-warmed before the run
+     *
+     * @param prewarm
+     *            true to pre-warm
+     */
+    public void setPrewarm(final boolean prewarm)
+    {
+        this.prewarm = prewarm;
+    }
+
+
+    /**
+     * Sets the proxy to fire through
+     *
+     * @param proxy
+     *            the proxy, or null for none
+     */
+    public void setProxy(final @Nullable Proxy proxy)
+    {
+        this.proxy = ProxyBean.isActionable(proxy) ? proxy : null;
+    }
+
+
+    /**
+     * Sets the client certificate to present
+     *
+     * @param keyStoreBean
+     *            the certificate store, or null for none
+     * @param alias
+     *            the certificate alias
+     */
+    public void setKeyStore(final @Nullable KeyStoreBean keyStoreBean,
+            final String alias)
+    {
+        this.keyStoreBean = keyStoreBean;
+        this.alias = alias;
+    }
+
+
+    /**
+     * Sets the feed of values for templated requests
+     *
+     * @param feeder
+     *            the feed, or null for none
+     */
+    public void setFeeder(final @Nullable Feeder feeder)
+    {
+        this.feeder = feeder;
+    }
+
+
+    /**
+     * Sets how much of each response body is kept, digesting by default
+     *
+     * @param consumption
+     *            the consumption policy
+     */
+    public void setConsumption(final ConsumptionPolicy consumption)
+    {
+        this.consumption = consumption;
+    }
+
+
+    /**
+     * Fires the request until the given number have been fired or the
+     * duration has passed, whichever is first, blocking until the run is over
+     * or cancelled.
+     * <p>
+     * Each worker fires its next request as soon as the last returns.
+     *
+     * @param request
+     *            the request to fire
+     * @param requests
+     *            the number of requests to fire, unbounded if not positive
+     * @param durationMillis
+     *            the length of the run, unbounded if not positive
+     * @param reporter
+     *            receives the outcomes at each interval
+     * @return the outcomes of the run
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     * @throws IllegalArgumentException
+     *             if the run is unbounded, or a variable is not in the feed
+     */
+    public LoadStats run(final Request request, final long requests,
+            final long durationMillis, final Reporter reporter)
+            throws InterruptedException
+    {
+        if (requests <= 0 && durationMillis <= 0)
+        {
+            throw new IllegalArgumentException(CONST_ERR_UNBOUNDED);
+        }
+        return run(single(request), requests, durationMillis, null, 0,
+                reporter);
+    }
+
+
+    /**
+     * Fires the request on a schedule of arrivals for the given duration,
+     * blocking until the run is over or cancelled.
+     * <p>
+     * Requests are sent when the schedule says, whether or not earlier
+     * requests have returned, as long as a worker is free; the concurrency
+     * bounds the requests in flight. Latency is measured from when the
+     * schedule said the request should be sent, so time spent waiting for a
+     * worker counts, and a request sent late to its schedule is counted as
+     * late.
+     *
+     * @param request
+     *            the request to fire
+     * @param schedule
+     *            the arrivals
+     * @param durationMillis
+     *            the length of the run, that of the schedule if not positive
+     * @param reporter
+     *            receives the outcomes at each interval
+     * @return the outcomes of the run
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     * @throws IllegalArgumentException
+     *             if the run is unbounded, or a variable is not in the feed
+     */
+    public LoadStats run(final Request request, final ArrivalSchedule schedule,
+            final long durationMillis, final Reporter reporter)
+            throws InterruptedException
+    {
+        long duration =
+                durationMillis > 0 ? durationMillis : schedule.getDurationMillis();
+        if (duration <= 0)
+        {
+            throw new IllegalArgumentException(CONST_ERR_UNBOUNDED);
+        }
+        return run(single(request), -1, duration, schedule, 0, reporter);
+    }
+
+
+    /**
+     * Fires a scenario from virtual users for the given duration, blocking
+     * until the run is over or cancelled.
+     * <p>
+     * Each user's first visit comes at random within the scenario's mean
+     * think time, so the users are not in step. Visits are made when due as
+     * long as a worker is free; as in the open model, latency is measured
+     * from when the visit was due, and a visit made late is counted as late.
+     * Outcomes are broken down by step.
+     *
+     * @param scenario
+     *            the scenario
+     * @param users
+     *            the number of virtual users
+     * @param durationMillis
+     *            the length of the run
+     * @param reporter
+     *            receives the outcomes at each interval
+     * @return the outcomes of the run
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     * @throws IllegalArgumentException
+     *             if the run is unbounded or has no users, or a variable is
+     *             not in the feed
+     */
+    public LoadStats run(final Scenario scenario, final int users,
+            final long durationMillis, final Reporter reporter)
+            throws InterruptedException
+    {
+        if (durationMillis <= 0 || users <= 0)
+        {
+            throw new IllegalArgumentException(CONST_ERR_UNBOUNDED);
+        }
+        return run(scenario, -1, durationMillis, null, users, reporter);
+    }
+
+
+    /**
+     * Returns the scenario of a single request
+     */
+    @SuppressWarnings("null")
+    private static Scenario single(final Request request)
+    {
+        return new Scenario(Collections.singletonList(new Scenario.Step(
+                request.getEndpoint(), request, 1, ThinkTime.NONE)));
+    }
+
+
+    /**
+     * Starts the shards and reports on them until they are done
+     */
+    private LoadStats run(final Scenario scenario, final long requests,
+            final long durationMillis, final @Nullable ArrivalSchedule schedule,
+            final int users, final Reporter reporter)
+            throws InterruptedException
+    {
+        Feeder feed = feeder;
+        RequestTemplate[] templates = null;
+        if (feed != null)
+        {
+            templates = new RequestTemplate[scenario.getSteps().size()];
+            for (int i = 0; i < templates.length; i++)
+            {
+                templates[i] = new RequestTemplate(
+                        scenario.getSteps().get(i).getRequest());
+                templates[i].bind(feed.getColumns()); // Fail before starting
+            }
+        }
+
+        List<RequestModel> shardModels = new ArrayList<>();
+        for (int s = 0; s < shards; s++)
+        {
+            RequestModel model = models.get();
+            model.setCoalescing(false); // Every request is meant to go out
+            shardModels.add(model);
+        }
+        if (prewarm)
+        {
+            prewarm(scenario, shardModels);
+        }
+
+        long start = System.nanoTime();
+        long deadline = durationMillis > 0
+                ? start + TimeUnit.MILLISECONDS.toNanos(durationMillis)
+                : Long.MAX_VALUE;
+        long reportNanos = TimeUnit.MILLISECONDS.toNanos(reportMillis);
+
+        long seed = ThreadLocalRandom.current().nextLong();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        List<Queue<LoadStats>> handedOver = new ArrayList<>();
+        synchronized (workers)
+        {
+            workers.clear();
+            int worker = 0;
+            for (int s = 0; s < shards; s++)
+            {
+                RequestModel model = shardModels.get(s);
+                ArrivalSchedule.Arrivals arrivals =
+                        schedule == null ? null : schedule.shard(s, shards);
+                VirtualUsers visitors = users <= 0 ? null
+                        : new VirtualUsers(
+                                users / shards + (s < users % shards ? 1 : 0),
+                                seed + s, start,
+                                scenario.getMeanThinkNanos());
+                Feeder.@Nullable Batch batch = feed == null ? null : feed.batch();
+                Queue<LoadStats> shard = new ConcurrentLinkedQueue<>();
+                handedOver.add(shard);
+                for (int w = s; w < concurrency; w += shards, worker++)
+                {
+                    long quota = requests <= 0 ? -1
+                            : requests / concurrency
+                                    + (worker < requests % concurrency ? 1
+                                            : 0);
+                    Worker runner = new Worker(model, scenario, quota,
+                            arrivals, visitors, batch, templates, start,
+                            deadline, reportNanos, shard, done);
+                    workers.add(runner);
+                    runner.thread.setName("posterer-load-" + (s + 1));
+                    runner.thread.setDaemon(true);
+                }
+            }
+            workers.forEach(w -> w.thread.start());
+        }
+
+        LoadStats total = new LoadStats();
+        boolean over = false;
+        while (!over)
+        {
+            over = done.await(reportMillis, TimeUnit.MILLISECONDS);
+            LoadStats interval = new LoadStats();
+            for (Queue<LoadStats> shard : handedOver)
+            {
+                LoadStats stats;
+                while ((stats = shard.poll()) != null)
+                {
+                    interval.merge(stats);
+                }
+            }
+            total.merge(interval);
+            reporter.onReport(interval, total, TimeUnit.NANOSECONDS
+                    .toMillis(System.nanoTime() - start));
+        }
+
+        LOG.debug("Load run complete: {}", total);
+        return total;
+    }
+
+
+    /**
+     * Pre-warms each shard's model with a connection to each host of the
+     * scenario for each of the shard's workers
+     */
+    private void prewarm(final Scenario scenario,
+            final List<RequestModel> shardModels)
+    {
+        if (proxy != null || keyStoreBean != null)
+        /*
+         * Not fired over the shared pool
+         */
+        {
+            return;
+        }
+
+        Map<String, Request> hosts = new LinkedHashMap<>();
+        for (Scenario.Step step : scenario.getSteps())
+        {
+            URI uri = step.getRequest().getUri();
+            if (uri != null && uri.getHost() != null)
+            {
+                hosts.putIfAbsent(uri.getScheme() + "://" + uri.getAuthority(),
+                        step.getRequest());
+            }
+        }
+
+        for (int s = 0; s < shardModels.size() && !cancelled; s++)
+        {
+            int connections =
+                    concurrency / shards + (s < concurrency % shards ? 1 : 0);
+            for (Request request : hosts.values())
+            {
+                WarmupBean warmup =
+                        shardModels.get(s).prewarm(request, connections);
+                LOG.debug("Shard {} pre-warmed: {}", s + 1, warmup);
+            }
+        }
+    }
+
+
+    /**
+     * Cancels the run, cancelling the requests in flight
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        synchronized (workers)
+        {
+            workers.forEach(Worker::cancel);
+        }
+    }
+
+
+    /**
+     * Has the run been cancelled?
+     *
+     * @return true if cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Fires its share of the requests, one at a time
+     */
+    private final class Worker implements Runnable
+    {
+        private final Thread thread = new Thread(this);
+
+        private final RequestModel model;
+
+        private final Scenario scenario;
+
+        /**
+         * The worker's own copies of the scenario's requests
+         */
+        private final Request[] requests;
+
+        /**
+         * The shard's arrivals, shared by its workers, null to fire as soon
+         * as the last request returns
+         */
+        private final ArrivalSchedule.@Nullable Arrivals arrivals;
+
+        /**
+         * The shard's virtual users, shared by its workers, null if the
+         * scenario is not fired by users
+         */
+        private final @Nullable VirtualUsers users;
+
+        /**
+         * The shard's batch of the feed, shared by its workers, and the
+         * worker's own bindings of the templated requests, null for requests
+         * with no variables
+         */
+        private final Feeder.@Nullable Batch feed;
+        private final RequestTemplate.@Nullable Bound[] bound;
+
+        /**
+         * The row of values, reused
+         */
+        private final Feeder.Row row = new Feeder.Row();
+
+        private final long start;
+
+        private final long deadline;
+
+        private final long reportNanos;
+
+        private final Queue<LoadStats> handOver;
+
+        private final CountDownLatch done;
+
+        /**
+         * Requests left to fire, negative if unbounded
+         */
+        private long remaining;
+
+        private volatile @Nullable ResponseModel inflight;
+
+
+        Worker(final RequestModel model, final Scenario scenario,
+                final long quota,
+                final ArrivalSchedule.@Nullable Arrivals arrivals,
+                final @Nullable VirtualUsers users,
+                final Feeder.@Nullable Batch feed,
+                final RequestTemplate @Nullable [] templates, final long start,
+                final long deadline, final long reportNanos,
+                final Queue<LoadStats> handOver, final CountDownLatch done)
+        {
+            this.model = model;
+            this.scenario = scenario;
+            requests = new Request[scenario.getSteps().size()];
+            for (int i = 0; i < requests.length; i++)
+            {
+                requests[i] =
+                        new RequestBean(scenario.getSteps().get(i).getRequest());
+            }
+            this.remaining = quota;
+            this.arrivals = arrivals;
+            this.users = users;
+            this.feed = feed;
+            bound = new RequestTemplate.Bound[requests.length];
+            for (int i = 0; feed != null && templates != null
+                    && i < requests.length; i++)
+            {
+                if (!templates[i].isConstant())
+                {
+                    bound[i] = templates[i].bind(feed.getColumns());
+                }
+            }
+            this.start = start;
+            this.deadline = deadline;
+            this.reportNanos = reportNanos;
+            this.handOver = handOver;
+            this.done = done;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run()
+        {
+            LoadStats stats = new LoadStats();
+            try
+            {
+                long handOverAt = System.nanoTime() + reportNanos;
+                while (!cancelled && remaining != 0)
+                {
+                    if (users != null)
+                    {
+                        if (!visit(users, stats))
+                        {
+                            break;
+                        }
+                    }
+                    else
+                    {
+                        long sendAt = arrival(stats);
+                        if (sendAt >= deadline || cancelled)
+                        {
+                            break;
+                        }
+                        if (!fire(stats, 0, sendAt))
+                        {
+                            break;
+                        }
+                    }
+                    remaining--;
+                    long now = System.nanoTime();
+                    if (now >= handOverAt)
+                    {
+                        handOver.add(stats);
+                        stats = new LoadStats();
+                        handOverAt = now + reportNanos;
+                    }
+                }
+            }
+            finally
+            {
+                handOver.add(stats);
+                done.countDown();
+            }
+        }
+
+
+        /**
+         * Waits for the next arrival, if on a schedule
+         *
+         * @return when the request is to be sent
+         */
+        @SuppressWarnings("null")
+        private long arrival(final LoadStats stats)
+        {
+            if (arrivals == null)
+            {
+                return System.nanoTime();
+            }
+
+            long offset;
+            synchronized (arrivals)
+            {
+                offset = arrivals.next();
+            }
+            long sendAt = start + offset;
+            if (sendAt < deadline && Pacer.awaitNanos(sendAt) > LATE_NANOS)
+            {
+                stats.recordLate();
+            }
+            return sendAt;
+        }
+
+
+        /**
+         * Takes the virtual user due soonest, waits for its visit and fires
+         * the step it picks, then puts it back to think
+         *
+         * @return false if the run is over
+         */
+        private boolean visit(final VirtualUsers visitors,
+                final LoadStats stats)
+        {
+            int user = visitors.take();
+            if (user < 0)
+            {
+                return false;
+            }
+
+            long sendAt = visitors.getVisitAt(user);
+            if (sendAt >= deadline || cancelled)
+            {
+                visitors.release(user, sendAt);
+                return false;
+            }
+            if (Pacer.awaitNanos(sendAt) > LATE_NANOS)
+            {
+                stats.recordLate();
+            }
+
+            int step = scenario.pick(visitors.nextDouble(user));
+            boolean fired = !cancelled && fire(stats, step, sendAt);
+            visitors.release(user, System.nanoTime() + scenario.getSteps()
+                    .get(step).getThink().nextNanos(visitors.nextDouble(user)));
+            return fired && !cancelled;
+        }
+
+
+        /**
+         * Fires a step's request once, rendered with the next row of the feed
+         * if templated, recording the outcome and its latency from when it
+         * was to be sent
+         *
+         * @return false if the feed has ended
+         */
+        private boolean fire(final LoadStats stats, final int step,
+                final long sendAt)
+        {
+            Request request = requests[step];
+            RequestTemplate.Bound template = bound[step];
+            if (template != null && feed != null)
+            {
+                try
+                {
+                    if (!feed.next(row))
+                    {
+                        return false;
+                    }
+                }
+                catch (IOException e)
+                {
+                    LOG.warn("Feed failed: {}", e.getMessage());
+                    return false;
+                }
+                request = template.render(row);
+            }
+
+            ResponseModel response = doRequest(request);
+            inflight = response;
+            if (cancelled)
+            {
+                response.cancel();
+            }
+            try
+            {
+                if (!(response instanceof Callable))
+                {
+                    throw new IllegalStateException(CONST_ERR_NOT_RUNNABLE);
+                }
+                ((Callable<?>) response).call();
+                response.isComplete(); // Consume the body, freeing the connection
+                record(stats, step, response.getStatusCode(),
+                        TimeUnit.NANOSECONDS
+                                .toMicros(System.nanoTime() - sendAt));
+            }
+            catch (Exception e)
+            {
+                if (!response.isCancelled())
+                {
+                    LOG.debug("Load request failed", e);
+                    record(stats, step, RunSummary.STATUS_ERROR,
+                            TimeUnit.NANOSECONDS
+                                    .toMicros(System.nanoTime() - sendAt));
+                }
+            }
+            finally
+            {
+                inflight = null;
+            }
+            return true;
+        }
+
+
+        /**
+         * Records an outcome, by step if fired by virtual users
+         */
+        private void record(final LoadStats stats, final int step,
+                final int status, final long micros)
+        {
+            if (users == null)
+            {
+                stats.record(status, micros);
+            }
+            else
+            {
+                stats.record(scenario.getSteps().get(step).getLabel(), status,
+                        micros);
+            }
+        }
+
+
+        /**
+         * Creates the response, through the proxy and with the certificate
+         * if set, consuming its body as set
+         */
+        @SuppressWarnings("null")
+        private ResponseModel doRequest(final Request request)
+        {
+            Proxy through = proxy;
+            KeyStoreBean keyStore = keyStoreBean;
+            ResponseModel response;
+            if (through == null)
+            {
+                response = keyStore == null ? model.doRequest(request)
+                        : model.doRequest(request, keyStore, alias);
+            }
+            else
+            {
+                response = keyStore == null ? model.doRequest(request, through)
+                        : model.doRequest(request, through, keyStore, alias);
+            }
+            response.setConsumption(consumption);
+            return response;
+        }
+
+
+        /**
+         * Cancels the request in flight, or the wait for the next arrival or
+         * visit
+         */
+        void cancel()
+        {
+            ResponseModel response = inflight;
+            if (response != null)
+            {
+                response.cancel();
+            }
+            else if (arrivals != null || users != null)
+            {
+                thread.interrupt();
+            }
+        }
+    }
+}
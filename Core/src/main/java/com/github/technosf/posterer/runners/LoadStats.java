@@ -0,0 +1,219 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcomes of load generation: counts by status code and the latency
+ * histogram.
+ * <p>
+ * As with {@code RunSummary}, requests that fail without a response are
+ * counted under status code zero. Unlike it, this is not thread safe: each
+ * load worker records into its own, and they are merged for reporting.
+ * <p>
+ * Outcomes of a scenario are also broken down by step.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class LoadStats
+{
+    /**
+     * Status codes counted individually, others are counted as errors
+     */
+    private static final int STATUSES = 600;
+
+    private final long[] statusCounts = new long[STATUSES];
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Requests sent late to their schedule
+     */
+    private long late;
+
+    /**
+     * Outcomes by scenario step label
+     */
+    private final Map<String, LoadStats> steps = new TreeMap<>();
+
+
+    /**
+     * Records a response
+     *
+     * @param status
+     *            the status code, {@code RunSummary.STATUS_ERROR} if there
+     *            was none
+     * @param micros
+     *            the latency in microseconds
+     */
+    public void record(final int status, final long micros)
+    {
+        statusCounts[status > 0 && status < STATUSES ? status
+                : RunSummary.STATUS_ERROR]++;
+        latencies.record(micros);
+    }
+
+
+    /**
+     * Records a response to a scenario step
+     *
+     * @param step
+     *            the step's label
+     * @param status
+     *            the status code, {@code RunSummary.STATUS_ERROR} if there
+     *            was none
+     * @param micros
+     *            the latency in microseconds
+     */
+    @SuppressWarnings("null")
+    public void record(final String step, final int status, final long micros)
+    {
+        record(status, micros);
+        steps.computeIfAbsent(step, k -> new LoadStats()).record(status,
+                micros);
+    }
+
+
+    /**
+     * Records a request sent late to its schedule, as the client could not
+     * keep up
+     */
+    public void recordLate()
+    {
+        late++;
+    }
+
+
+    /**
+     * Adds other outcomes to these
+     *
+     * @param other
+     *            the outcomes to add
+     */
+    public void merge(final LoadStats other)
+    {
+        for (int i = 0; i < STATUSES; i++)
+        {
+            statusCounts[i] += other.statusCounts[i];
+        }
+        latencies.merge(other.latencies);
+        late += other.late;
+        other.steps.forEach((step, stats) -> steps
+                .computeIfAbsent(step, k -> new LoadStats()).merge(stats));
+    }
+
+
+    /**
+     * @return the number of responses recorded
+     */
+    public long getCount()
+    {
+        return latencies.getCount();
+    }
+
+
+    /**
+     * Returns the number of requests without a response, or with a status of
+     * 400 or more
+     *
+     * @return the failure count
+     */
+    public long getFailures()
+    {
+        long failures = statusCounts[RunSummary.STATUS_ERROR];
+        for (int i = 400; i < STATUSES; i++)
+        {
+            failures += statusCounts[i];
+        }
+        return failures;
+    }
+
+
+    /**
+     * @return the number of requests sent late to their schedule
+     */
+    public long getLate()
+    {
+        return late;
+    }
+
+
+    /**
+     * Returns the counts by status code, in status code order
+     *
+     * @return the status codes recorded and their counts
+     */
+    public Map<Integer, Long> getStatusCounts()
+    {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (int i = 0; i < STATUSES; i++)
+        {
+            if (statusCounts[i] > 0)
+            {
+                counts.put(i, statusCounts[i]);
+            }
+        }
+        return counts;
+    }
+
+
+    /**
+     * Returns the outcomes of each scenario step, in label order
+     *
+     * @return the outcomes by step label, empty if not a scenario
+     */
+    @SuppressWarnings("null")
+    public Map<String, LoadStats> getSteps()
+    {
+        return Collections.unmodifiableMap(steps);
+    }
+
+
+    /**
+     * @return the latency histogram
+     */
+    public LatencyHistogram getLatencies()
+    {
+        return latencies;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Long> entry : getStatusCounts().entrySet())
+        {
+            sb.append(entry.getKey() == RunSummary.STATUS_ERROR ? "error"
+                    : entry.getKey().toString())
+                    .append('=').append(entry.getValue()).append(' ');
+        }
+        if (late > 0)
+        {
+            sb.append("late=").append(late).append(' ');
+        }
+        return sb.append("| ").append(latencies).toString();
+    }
+}
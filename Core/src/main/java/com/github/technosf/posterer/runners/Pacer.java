@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits until a point in time with sub-millisecond precision.
+ * <p>
+ * Parking overshoots by tens of microseconds or more, so the thread parks
+ * until shortly before the time and spins the rest of the way. The spin is
+ * set by the {@code posterer.load.spin} system property, in microseconds.
+ * <p>
+ * Interrupting the waiting thread ends the wait early, leaving the thread
+ * interrupted.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class Pacer
+{
+    /**
+     * How long before the time to stop parking and spin
+     */
+    private static final long SPIN_NANOS =
+            Integer.getInteger("posterer.load.spin", 100) * 1000L;
+
+
+    private Pacer()
+    {
+    }
+
+
+    /**
+     * Waits until the given time
+     *
+     * @param deadline
+     *            the time, by {@code System.nanoTime()}
+     * @return how late the wait returned, in nanos, negative if interrupted
+     *         early
+     */
+    public static long awaitNanos(final long deadline)
+    {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > SPIN_NANOS)
+        {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+            remaining = deadline - System.nanoTime();
+            if (Thread.currentThread().isInterrupted())
+            {
+                return -remaining;
+            }
+        }
+        while (remaining > 0)
+        {
+            remaining = deadline - System.nanoTime();
+        }
+        return -remaining;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.impl.RequestBean;
+import com.github.technosf.posterer.utils.Template;
+
+/**
+ * A request whose endpoint, payload, security and content type are
+ * {@code Template}s, compiled once and rendered with each row of values.
+ * <p>
+ * The request is compiled on creation and bound to the columns of a feed at
+ * the start of a run. Each render writes the templated fields into the bound
+ * template's one reusable buffer; fields without variables are not rendered
+ * at all.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class RequestTemplate
+{
+    private final Request request;
+
+    private final Template endpoint;
+
+    private final Template payload;
+
+    private final Template security;
+
+    private final Template contentType;
+
+
+    /**
+     * Compiles a request's templates
+     *
+     * @param request
+     *            the request
+     */
+    public RequestTemplate(final Request request)
+    {
+        this.request = request;
+        endpoint = Template.compile(request.getEndpoint());
+        payload = Template.compile(request.getPayload());
+        security = Template.compile(request.getSecurity());
+        contentType = Template.compile(request.getContentType());
+    }
+
+
+    /**
+     * @return are there no variables in the request?
+     */
+    public boolean isConstant()
+    {
+        return endpoint.isConstant() && payload.isConstant()
+                && security.isConstant() && contentType.isConstant();
+    }
+
+
+    /**
+     * @return the distinct variable names, in order of appearance
+     */
+    public Set<String> getVariables()
+    {
+        Set<String> variables = new LinkedHashSet<>();
+        variables.addAll(endpoint.getVariables());
+        variables.addAll(payload.getVariables());
+        variables.addAll(security.getVariables());
+        variables.addAll(contentType.getVariables());
+        return variables;
+    }
+
+
+    /**
+     * Binds the templates to the columns of a feed
+     *
+     * @param columns
+     *            the column names, in index order
+     * @return the bound request, to render
+     * @throws IllegalArgumentException
+     *             if a variable has no column
+     */
+    public Bound bind(final List<String> columns)
+    {
+        return new Bound(columns);
+    }
+
+    /**
+     * A request template bound to the columns of a feed. Not thread safe.
+     */
+    public final class Bound
+    {
+        private final Template.@Nullable Bound endpoint;
+
+        private final Template.@Nullable Bound payload;
+
+        private final Template.@Nullable Bound security;
+
+        private final Template.@Nullable Bound contentType;
+
+        private final Template.Output output = new Template.Output(1024);
+
+
+        Bound(final List<String> columns)
+        {
+            endpoint = bind(RequestTemplate.this.endpoint, columns);
+            payload = bind(RequestTemplate.this.payload, columns);
+            security = bind(RequestTemplate.this.security, columns);
+            contentType = bind(RequestTemplate.this.contentType, columns);
+        }
+
+
+        /**
+         * Renders the request with a row of values
+         *
+         * @param values
+         *            the values
+         * @return the request
+         */
+        public Request render(final Template.Values values)
+        {
+            return new RequestBean(
+                    render(endpoint, values, request.getEndpoint()),
+                    render(payload, values, request.getPayload()),
+                    request.getMethod(),
+                    render(security, values, request.getSecurity()),
+                    render(contentType, values, request.getContentType()),
+                    request.getBase64(), request.getGzip());
+        }
+
+
+        /**
+         * Renders a field, if templated
+         */
+        private String render(final Template.@Nullable Bound template,
+                final Template.Values values, final String constant)
+        {
+            if (template == null)
+            {
+                return constant;
+            }
+            output.reset();
+            template.render(values, output);
+            return output.toString();
+        }
+    }
+
+
+    /**
+     * Binds a template, if it has variables
+     */
+    private static Template.@Nullable Bound bind(final Template template,
+            final List<String> columns)
+    {
+        return template.isConstant() ? null : template.bind(columns);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.github.technosf.posterer.models.impl.WarmupBean;
+
+/**
+ * Running tally of the outcomes of a collection run: counts by status code
+ * and the latency distribution.
+ * <p>
+ * Requests that fail without a response are counted under status code zero.
+ * Any pre-warming of connections before the run is kept alongside.
+ * Safe to record from many threads.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class RunSummary
+{
+    /**
+     * Status code counted for requests without a response
+     */
+    public static final int STATUS_ERROR = 0;
+
+    /**
+     * Counts by status code
+     */
+    private final Map<Integer, Integer> statusCounts = new TreeMap<>();
+
+    /**
+     * Latencies in millis, in recorded order
+     */
+    private long[] latencies = new long[64];
+
+    /**
+     * Number of latencies recorded
+     */
+    private int count;
+
+    /**
+     * Number of requests not fired
+     */
+    private int skipped;
+
+    /**
+     * Connection warm-ups before the run
+     */
+    private final List<WarmupBean> warmups = new ArrayList<>();
+
+    /**
+     * Run start
+     */
+    private final long tsStart = System.nanoTime();
+
+    /**
+     * Run stop, zero while running
+     */
+    private long tsStop;
+
+
+    /**
+     * Records a response
+     *
+     * @param status
+     *            the status code, {@code STATUS_ERROR} if there was none
+     * @param elapsedMillis
+     *            the request latency
+     */
+    public synchronized void record(final int status, final long elapsedMillis)
+    {
+        statusCounts.merge(status, 1, Integer::sum);
+        if (count == latencies.length)
+        {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = elapsedMillis;
+    }
+
+
+    /**
+     * Records a request that was not fired
+     */
+    public synchronized void skip()
+    {
+        skipped++;
+    }
+
+
+    /**
+     * Records a connection warm-up ahead of the run
+     *
+     * @param warmup
+     *            the warm-up
+     */
+    public synchronized void warmed(final WarmupBean warmup)
+    {
+        warmups.add(warmup);
+    }
+
+
+    /**
+     * Marks the run as stopped
+     */
+    public synchronized void stop()
+    {
+        if (tsStop == 0)
+        {
+            tsStop = System.nanoTime();
+        }
+    }
+
+
+    /**
+     * Returns the number of responses recorded
+     *
+     * @return the response count
+     */
+    public synchronized int getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * Returns the number of requests without a response, or with a status of
+     * 400 or more
+     *
+     * @return the failure count
+     */
+    public synchronized int getFailures()
+    {
+        int failures = 0;
+        for (Map.Entry<Integer, Integer> entry : statusCounts.entrySet())
+        {
+            if (entry.getKey() == STATUS_ERROR || entry.getKey() >= 400)
+            {
+                failures += entry.getValue();
+            }
+        }
+        return failures;
+    }
+
+
+    /**
+     * Returns the number of requests not fired
+     *
+     * @return the skipped count
+     */
+    public synchronized int getSkipped()
+    {
+        return skipped;
+    }
+
+
+    /**
+     * Returns the connection warm-ups made ahead of the run
+     *
+     * @return a copy of the warm-ups
+     */
+    public synchronized List<WarmupBean> getWarmups()
+    {
+        return new ArrayList<>(warmups);
+    }
+
+
+    /**
+     * Returns the counts by status code, in status code order
+     *
+     * @return a copy of the status counts
+     */
+    public synchronized Map<Integer, Integer> getStatusCounts()
+    {
+        return new TreeMap<>(statusCounts);
+    }
+
+
+    /**
+     * Returns the latency at the given percentile
+     *
+     * @param percentile
+     *            the percentile, 0 to 100
+     * @return the latency in millis, zero if nothing recorded
+     */
+    public synchronized long getLatencyPercentile(final double percentile)
+    {
+        if (count == 0)
+        {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+
+    /**
+     * Returns the mean latency
+     *
+     * @return the mean latency in millis, zero if nothing recorded
+     */
+    public synchronized long getLatencyMean()
+    {
+        if (count == 0)
+        {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < count; i++)
+        {
+            total += latencies[i];
+        }
+        return total / count;
+    }
+
+
+    /**
+     * Returns the run time so far, or the total if stopped
+     *
+     * @return the elapsed time in millis
+     */
+    public synchronized long getElapsedMillis()
+    {
+        return TimeUnit.NANOSECONDS
+                .toMillis((tsStop == 0 ? System.nanoTime() : tsStop)
+                        - tsStart);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Integer> entry : statusCounts.entrySet())
+        {
+            sb.append(entry.getKey() == STATUS_ERROR ? "error"
+                    : entry.getKey().toString())
+                    .append('=').append(entry.getValue()).append(' ');
+        }
+        if (skipped > 0)
+        {
+            sb.append("skipped=").append(skipped).append(' ');
+        }
+        sb.append(String.format(
+                "| p50 %1$dms p90 %2$dms p99 %3$dms max %4$dms mean %5$dms | %6$d in %7$dms",
+                getLatencyPercentile(50), getLatencyPercentile(90),
+                getLatencyPercentile(99), getLatencyPercentile(100),
+                getLatencyMean(), count, getElapsedMillis()));
+        if (!warmups.isEmpty())
+        {
+            sb.append(String.format(" | warmed %1$d/%2$d connections in %3$dms",
+                    warmups.stream().mapToInt(WarmupBean::getOpened).sum(),
+                    warmups.stream().mapToInt(WarmupBean::getRequested).sum(),
+                    warmups.stream().mapToLong(WarmupBean::getElapsedMillis)
+                            .max().getAsLong()));
+        }
+        return sb.toString();
+    }
+}
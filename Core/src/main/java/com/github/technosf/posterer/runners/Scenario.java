@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.technosf.posterer.models.Request;
+
+/**
+ * A weighted mix of requests for virtual users to fire.
+ * <p>
+ * At each visit a virtual user picks a step at random in proportion to the
+ * steps' weights, fires its request, then thinks for the step's think time
+ * before its next visit.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class Scenario
+{
+    private static final String CONST_ERR_EMPTY = "A scenario needs steps";
+    private static final String CONST_ERR_WEIGHT =
+            "Scenario step weights must be positive";
+
+    private final List<Step> steps;
+
+    /**
+     * Running total of the weights, by step
+     */
+    private final long[] cumulative;
+
+
+    /**
+     * Creates a scenario
+     *
+     * @param steps
+     *            the steps
+     * @throws IllegalArgumentException
+     *             if there are no steps, or a weight is not positive
+     */
+    public Scenario(final List<Step> steps)
+    {
+        if (steps.isEmpty())
+        {
+            throw new IllegalArgumentException(CONST_ERR_EMPTY);
+        }
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        cumulative = new long[steps.size()];
+        long total = 0;
+        for (int i = 0; i < cumulative.length; i++)
+        {
+            if (steps.get(i).weight <= 0)
+            {
+                throw new IllegalArgumentException(CONST_ERR_WEIGHT);
+            }
+            total += steps.get(i).weight;
+            cumulative[i] = total;
+        }
+    }
+
+
+    /**
+     * @return the steps
+     */
+    public List<Step> getSteps()
+    {
+        return steps;
+    }
+
+
+    /**
+     * Picks a step in proportion to the weights
+     *
+     * @param uniform
+     *            a uniform variate, from zero up to one
+     * @return the index of the step
+     */
+    public int pick(final double uniform)
+    {
+        long point = (long) (uniform * cumulative[cumulative.length - 1]);
+        int index = Arrays.binarySearch(cumulative, point + 1);
+        return Math.min(cumulative.length - 1,
+                index >= 0 ? index : -index - 1);
+    }
+
+
+    /**
+     * @return the mean think time over the mix, in nanos
+     */
+    public long getMeanThinkNanos()
+    {
+        double mean = 0;
+        for (Step step : steps)
+        {
+            mean += step.think.getMeanNanos() * (double) step.weight
+                    / cumulative[cumulative.length - 1];
+        }
+        return (long) mean;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        return steps.toString();
+    }
+
+    /**
+     * A request of the mix, its weight and the think time after it
+     */
+    public static final class Step
+    {
+        private final String label;
+
+        private final Request request;
+
+        private final int weight;
+
+        private final ThinkTime think;
+
+
+        /**
+         * Creates a step
+         *
+         * @param label
+         *            the name the step's outcomes are reported under
+         * @param request
+         *            the request
+         * @param weight
+         *            the relative frequency of the step
+         * @param think
+         *            the think time after the step
+         */
+        public Step(final String label, final Request request,
+                final int weight, final ThinkTime think)
+        {
+            this.label = label;
+            this.request = request;
+            this.weight = weight;
+            this.think = think;
+        }
+
+
+        /**
+         * @return the name the step's outcomes are reported under
+         */
+        public String getLabel()
+        {
+            return label;
+        }
+
+
+        /**
+         * @return the request
+         */
+        public Request getRequest()
+        {
+            return request;
+        }
+
+
+        /**
+         * @return the relative frequency of the step
+         */
+        public int getWeight()
+        {
+            return weight;
+        }
+
+
+        /**
+         * @return the think time after the step
+         */
+        public ThinkTime getThink()
+        {
+            return think;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return label + "@" + weight + "@" + think;
+        }
+    }
+}
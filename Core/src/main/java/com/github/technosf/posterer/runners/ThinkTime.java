@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of the time a virtual user waits after a response before its
+ * next request.
+ * <p>
+ * Distributions are given as {@code name:args} in millis, as for the stub
+ * server's latency:
+ * <ul>
+ * <li>{@code none}</li>
+ * <li>{@code fixed:500}</li>
+ * <li>{@code uniform:200-800}</li>
+ * <li>{@code exp:500} - exponential with the given mean</li>
+ * </ul>
+ * Think times are sampled from a uniform variate the caller draws, so each
+ * virtual user can keep its own random state.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ThinkTime
+{
+    /**
+     * No think time
+     */
+    public static final ThinkTime NONE = new ThinkTime("none", 0, 0, false);
+
+    private final String spec;
+
+    private final long minNanos;
+
+    private final long maxNanos;
+
+    /**
+     * Exponential with a mean of the minimum?
+     */
+    private final boolean exponential;
+
+
+    /**
+     * The same think time every time
+     *
+     * @param millis
+     *            the think time
+     * @return the distribution
+     */
+    public static ThinkTime fixed(final double millis)
+    {
+        return new ThinkTime("fixed:" + millis, nanos(millis), nanos(millis),
+                false);
+    }
+
+
+    /**
+     * Think time uniformly distributed between the bounds
+     *
+     * @param minMillis
+     *            the lower bound
+     * @param maxMillis
+     *            the upper bound
+     * @return the distribution
+     */
+    public static ThinkTime uniform(final double minMillis,
+            final double maxMillis)
+    {
+        long min = nanos(minMillis);
+        return new ThinkTime("uniform:" + minMillis + "-" + maxMillis, min,
+                Math.max(min, nanos(maxMillis)), false);
+    }
+
+
+    /**
+     * Exponentially distributed think time
+     *
+     * @param meanMillis
+     *            the mean
+     * @return the distribution
+     */
+    public static ThinkTime exponential(final double meanMillis)
+    {
+        return new ThinkTime("exp:" + meanMillis, nanos(meanMillis),
+                nanos(meanMillis), true);
+    }
+
+
+    /**
+     * Parses a distribution specification
+     *
+     * @param spec
+     *            the specification, e.g. {@code exp:500}
+     * @return the distribution
+     * @throws IllegalArgumentException
+     *             if the specification is not understood
+     */
+    public static ThinkTime parse(final String spec)
+    {
+        String[] parts = spec.trim().split(":", 2);
+        String args = parts.length > 1 ? parts[1] : "";
+        try
+        {
+            switch (parts[0])
+            {
+                case "none":
+                    return NONE;
+                case "fixed":
+                    return fixed(Double.parseDouble(args));
+                case "uniform":
+                    String[] range = args.split("-");
+                    return uniform(Double.parseDouble(range[0]),
+                            Double.parseDouble(range[1]));
+                case "exp":
+                    return exponential(Double.parseDouble(args));
+                default:
+                    break;
+            }
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+        {
+            throw new IllegalArgumentException(spec, e);
+        }
+        throw new IllegalArgumentException(spec);
+    }
+
+
+    private ThinkTime(final String spec, final long minNanos,
+            final long maxNanos, final boolean exponential)
+    {
+        this.spec = spec;
+        this.minNanos = minNanos;
+        this.maxNanos = maxNanos;
+        this.exponential = exponential;
+    }
+
+
+    /**
+     * Samples a think time
+     *
+     * @param uniform
+     *            a uniform variate, from zero up to one
+     * @return the think time in nanos
+     */
+    public long nextNanos(final double uniform)
+    {
+        if (exponential)
+        {
+            return (long) (-minNanos * Math.log(1 - uniform));
+        }
+        return minNanos + (long) ((maxNanos - minNanos) * uniform);
+    }
+
+
+    /**
+     * @return the mean think time in nanos
+     */
+    public long getMeanNanos()
+    {
+        return exponential ? minNanos : (minNanos + maxNanos) / 2;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return spec;
+    }
+
+
+    /**
+     * Converts millis to nanos
+     */
+    private static long nanos(final double millis)
+    {
+        return (long) (Math.max(0, millis) * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+/**
+ * The virtual users of one load shard, waiting for their next visit.
+ * <p>
+ * A user is no more than an index into parallel arrays of its next visit time
+ * and its random state, twenty bytes a user with the heap ordering them, so a
+ * hundred thousand users take a couple of megabytes and no threads. The
+ * shard's workers take the user due soonest, fire its request, and put it
+ * back with its next visit time; a user taken by a worker belongs to it until
+ * put back.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+final class VirtualUsers
+{
+    /**
+     * Increment of the SplitMix64 generator
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Next visit by {@code System.nanoTime()}, by user
+     */
+    private final long[] visitAt;
+
+    /**
+     * Random state, by user
+     */
+    private final long[] random;
+
+    /**
+     * Users waiting for their visit, a binary heap by visit time
+     */
+    private final int[] heap;
+
+    private int waiting;
+
+
+    /**
+     * Creates the users, their first visits spread at random over a period
+     *
+     * @param users
+     *            the number of users
+     * @param seed
+     *            the seed of the users' random states
+     * @param start
+     *            the earliest first visit, by {@code System.nanoTime()}
+     * @param spreadNanos
+     *            the period the first visits are spread over
+     */
+    VirtualUsers(final int users, final long seed, final long start,
+            final long spreadNanos)
+    {
+        visitAt = new long[users];
+        random = new long[users];
+        heap = new int[users];
+        for (int user = 0; user < users; user++)
+        {
+            random[user] = mix(seed + user * GOLDEN_GAMMA);
+            visitAt[user] = start + (long) (nextDouble(user) * spreadNanos);
+            heap[user] = user;
+        }
+        waiting = users;
+        for (int i = waiting / 2 - 1; i >= 0; i--)
+        {
+            siftDown(i);
+        }
+    }
+
+
+    /**
+     * @return the number of users
+     */
+    int size()
+    {
+        return visitAt.length;
+    }
+
+
+    /**
+     * Takes the user due soonest, waiting while all are taken
+     *
+     * @return the user, or -1 if there are none or the thread was
+     *         interrupted
+     */
+    synchronized int take()
+    {
+        while (waiting == 0)
+        {
+            if (visitAt.length == 0)
+            {
+                return -1;
+            }
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        int user = heap[0];
+        heap[0] = heap[--waiting];
+        siftDown(0);
+        return user;
+    }
+
+
+    /**
+     * Puts a taken user back
+     *
+     * @param user
+     *            the user
+     * @param nextVisit
+     *            its next visit, by {@code System.nanoTime()}
+     */
+    synchronized void release(final int user, final long nextVisit)
+    {
+        visitAt[user] = nextVisit;
+        int i = waiting++;
+        heap[i] = user;
+        while (i > 0 && visitAt[heap[(i - 1) / 2]] - nextVisit > 0)
+        {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = user;
+        notify();
+    }
+
+
+    /**
+     * Returns the time of a taken user's visit
+     *
+     * @param user
+     *            the user
+     * @return the visit time, by {@code System.nanoTime()}
+     */
+    long getVisitAt(final int user)
+    {
+        return visitAt[user];
+    }
+
+
+    /**
+     * Draws from a taken user's random state
+     *
+     * @param user
+     *            the user
+     * @return a uniform variate, from zero up to one
+     */
+    double nextDouble(final int user)
+    {
+        return (mix(random[user] += GOLDEN_GAMMA) >>> 11) * 0x1.0p-53;
+    }
+
+
+    /**
+     * The SplitMix64 finalizer, so that neighbouring states give unrelated
+     * values
+     */
+    private static long mix(final long state)
+    {
+        long z = (state ^ (state >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+
+    /**
+     * Moves the user at a heap position down to its place
+     */
+    private void siftDown(final int from)
+    {
+        int i = from;
+        int user = heap[i];
+        int child;
+        while ((child = 2 * i + 1) < waiting)
+        {
+            if (child + 1 < waiting
+                    && visitAt[heap[child + 1]] - visitAt[heap[child]] < 0)
+            {
+                child++;
+            }
+            if (visitAt[heap[child]] - visitAt[user] >= 0)
+            {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = user;
+    }
+}
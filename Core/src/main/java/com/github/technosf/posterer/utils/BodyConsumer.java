@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.ConsumptionPolicy;
+
+/**
+ * Consumes a response body as a {@code ConsumptionPolicy} has it, counting
+ * its bytes and keeping only its checksum or its first bytes.
+ * <p>
+ * Bodies are either read through from a stream, via a read buffer reused by
+ * each thread, or pushed to the consumer as they arrive. Either way the
+ * memory held does not grow with the body beyond what the policy keeps. Not
+ * thread safe.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class BodyConsumer
+{
+    /**
+     * Size of the read buffer
+     */
+    private static final int READ_BYTES = 16 * 1024;
+
+    /**
+     * The read buffer, one per thread
+     */
+    private static final ThreadLocal<byte[]> READ_BUFFER =
+            ThreadLocal.withInitial(() -> new byte[READ_BYTES]);
+
+    private final ConsumptionPolicy policy;
+
+    private final @Nullable CRC32 crc;
+
+    /**
+     * The bytes kept, grown up to the policy's limit
+     */
+    private byte[] kept = new byte[0];
+
+    private int keptBytes;
+
+    private long bytes;
+
+
+    /**
+     * Creates a consumer
+     *
+     * @param policy
+     *            how much of the body to keep
+     */
+    public BodyConsumer(final ConsumptionPolicy policy)
+    {
+        this.policy = policy;
+        crc = policy.isDigest() ? new CRC32() : null;
+    }
+
+
+    /**
+     * Reads a body to its end
+     *
+     * @param in
+     *            the body
+     * @return the bytes read
+     * @throws IOException
+     *             if the body cannot be read
+     */
+    public long consume(final InputStream in) throws IOException
+    {
+        byte[] buffer = READ_BUFFER.get();
+        int read;
+        while ((read = in.read(buffer)) >= 0)
+        {
+            update(buffer, 0, read);
+        }
+        return bytes;
+    }
+
+
+    /**
+     * Consumes body bytes
+     *
+     * @param source
+     *            the bytes
+     * @param offset
+     *            where in the bytes to start
+     * @param count
+     *            the number of bytes
+     */
+    public void update(final byte[] source, final int offset,
+            final int count)
+    {
+        bytes += count;
+        CRC32 checksum = crc;
+        if (checksum != null)
+        {
+            checksum.update(source, offset, count);
+        }
+        int keep = Math.min(count, policy.getKeepBytes() - keptBytes);
+        if (keep > 0)
+        {
+            if (keptBytes + keep > kept.length)
+            {
+                kept = Arrays.copyOf(kept, (int) Math.min(
+                        policy.getKeepBytes(),
+                        Math.max(keptBytes + keep, 2L * kept.length)));
+            }
+            System.arraycopy(source, offset, kept, keptBytes, keep);
+            keptBytes += keep;
+        }
+    }
+
+
+    /**
+     * Consumes the remaining body bytes of a buffer
+     *
+     * @param source
+     *            the bytes
+     */
+    public void update(final ByteBuffer source)
+    {
+        if (source.hasArray())
+        {
+            update(source.array(), source.arrayOffset() + source.position(),
+                    source.remaining());
+            source.position(source.limit());
+            return;
+        }
+        byte[] buffer = READ_BUFFER.get();
+        while (source.hasRemaining())
+        {
+            int count = Math.min(buffer.length, source.remaining());
+            source.get(buffer, 0, count);
+            update(buffer, 0, count);
+        }
+    }
+
+
+    /**
+     * @return the body bytes consumed
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+
+    /**
+     * @return the CRC-32 of the body in hex, or an empty string if not
+     *         checksummed
+     */
+    @SuppressWarnings("null")
+    public String getDigest()
+    {
+        CRC32 checksum = crc;
+        return checksum == null ? ""
+                : String.format("%1$08x", checksum.getValue());
+    }
+
+
+    /**
+     * Decodes the bytes kept
+     *
+     * @param charset
+     *            the body charset
+     * @return the bytes kept as text
+     */
+    public String getBody(final Charset charset)
+    {
+        return new String(kept, 0, keptBytes, charset);
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Host name resolver with its own cache, independent of the JVM's
+ * {@code networkaddress.cache.ttl}.
+ * <p>
+ * Successful lookups are cached for the TTL, and failures for the negative
+ * TTL so that a bad host does not stall every request to it. Concurrent
+ * lookups of the same host share a single resolution. Hosts can be resolved
+ * ahead of use in the background, such as the saved endpoints at start up.
+ * <p>
+ * The shared resolver is configured by system properties:
+ * {@code posterer.dns.ttl} and {@code posterer.dns.negativeTtl} in seconds,
+ * {@code posterer.dns.hosts} naming a hosts file whose entries take
+ * precedence over the system resolver, and {@code posterer.dns.stub} naming
+ * an address that every host resolves to, for local testing.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class CachingDnsResolver
+{
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CachingDnsResolver.class);
+
+    private static final String CONST_ERR_HOSTS = "Cannot read hosts file: {}";
+    private static final String CONST_ERR_STUB = "Bad stub address: {}";
+
+    /**
+     * The shared resolver
+     */
+    private static final CachingDnsResolver INSTANCE = configure();
+
+    private final Lookup lookup;
+
+    private final long ttlNanos;
+
+    private final long negativeTtlNanos;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder resolveNanos = new LongAdder();
+
+    /**
+     * Pool for background resolution, created on first use
+     */
+    private volatile @Nullable ExecutorService pool;
+
+    /**
+     * A source of host addresses
+     */
+    @FunctionalInterface
+    public interface Lookup
+    {
+        /**
+         * Looks up the addresses of a host
+         *
+         * @param host
+         *            the host name
+         * @return the addresses, never empty
+         * @throws UnknownHostException
+         *             if the host cannot be resolved
+         */
+        InetAddress[] lookup(String host) throws UnknownHostException;
+    }
+
+
+    /**
+     * Returns the shared resolver
+     *
+     * @return the shared resolver
+     */
+    public static CachingDnsResolver getInstance()
+    {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Creates a resolver
+     *
+     * @param lookup
+     *            the lookup to cache
+     * @param ttl
+     *            how long to cache addresses
+     * @param negativeTtl
+     *            how long to cache failures
+     * @param unit
+     *            the TTL unit
+     */
+    public CachingDnsResolver(final Lookup lookup, final long ttl,
+            final long negativeTtl, final TimeUnit unit)
+    {
+        this.lookup = lookup;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.negativeTtlNanos = unit.toNanos(negativeTtl);
+    }
+
+
+    /**
+     * Resolves a host, from the cache if it holds an unexpired entry
+     *
+     * @param host
+     *            the host name
+     * @return the host addresses
+     * @throws UnknownHostException
+     *             if the host cannot be resolved
+     */
+    public InetAddress[] resolve(final String host) throws UnknownHostException
+    {
+        String key = host.toLowerCase(Locale.ROOT);
+        long now = System.nanoTime();
+
+        Entry entry = cache.get(key);
+        if (entry != null && !entry.isExpired(now))
+        {
+            hits.increment();
+            return entry.get(host);
+        }
+
+        Entry resolving = new Entry();
+        if (entry == null ? cache.putIfAbsent(key, resolving) == null
+                : cache.replace(key, entry, resolving))
+        /*
+         * This thread resolves, others wait on it
+         */
+        {
+            misses.increment();
+            resolving.resolve(host, now);
+            return resolving.get(host);
+        }
+
+        /*
+         * Another thread got there first
+         */
+        hits.increment();
+        Entry current = cache.get(key);
+        return current == null ? resolve(host) : current.get(host);
+    }
+
+
+    /**
+     * Is the host held in the cache and unexpired?
+     *
+     * @param host
+     *            the host name
+     * @return true if resolving the host will not look it up
+     */
+    public boolean isCached(final String host)
+    {
+        Entry entry = cache.get(host.toLowerCase(Locale.ROOT));
+        return entry != null && !entry.isExpired(System.nanoTime());
+    }
+
+
+    /**
+     * Resolves the hosts in the background, so that later requests find them
+     * cached. Failures are cached too, and otherwise ignored.
+     *
+     * @param hosts
+     *            the host names
+     */
+    public void preResolve(final Collection<String> hosts)
+    {
+        ExecutorService executor = pool();
+        hosts.stream().distinct().forEach(host -> executor.execute(() -> {
+            try
+            {
+                resolve(host);
+            }
+            catch (UnknownHostException e)
+            {
+                LOG.debug("Pre-resolution failed: {}", host);
+            }
+        }));
+    }
+
+
+    /**
+     * Empties the cache
+     */
+    public void clear()
+    {
+        cache.clear();
+    }
+
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+
+    /**
+     * @return the number of lookups that had to resolve the host
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+
+    /**
+     * @return the total time spent resolving cache misses, in millis
+     */
+    public long getResolveMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(resolveNanos.sum());
+    }
+
+
+    /* ---------------- Lookups ------------------ */
+
+    /**
+     * Returns the system resolver lookup
+     *
+     * @return the system lookup
+     */
+    @SuppressWarnings("null")
+    public static Lookup system()
+    {
+        return InetAddress::getAllByName;
+    }
+
+
+    /**
+     * Returns a lookup resolving hosts from a hosts file, in the usual
+     * {@code address name [aliases]} format, deferring to the fallback for
+     * hosts not in the file
+     *
+     * @param hostsFile
+     *            the hosts file
+     * @param fallback
+     *            the lookup for other hosts
+     * @return the hosts file lookup
+     * @throws IOException
+     *             if the hosts file cannot be read
+     */
+    public static Lookup hosts(final Path hostsFile, final Lookup fallback)
+            throws IOException
+    {
+        Map<String, List<InetAddress>> hosts = new HashMap<>();
+        for (String line : Files.readAllLines(hostsFile,
+                StandardCharsets.UTF_8))
+        {
+            int comment = line.indexOf('#');
+            String[] fields = (comment < 0 ? line : line.substring(0, comment))
+                    .trim().split("\\s+");
+            if (fields.length < 2)
+            {
+                continue;
+            }
+            InetAddress address = InetAddress.getByName(fields[0]);
+            for (int i = 1; i < fields.length; i++)
+            {
+                hosts.computeIfAbsent(fields[i].toLowerCase(Locale.ROOT),
+                        k -> new ArrayList<>()).add(
+                                InetAddress.getByAddress(fields[i],
+                                        address.getAddress()));
+            }
+        }
+
+        return host -> {
+            List<InetAddress> addresses =
+                    hosts.get(host.toLowerCase(Locale.ROOT));
+            return addresses == null ? fallback.lookup(host)
+                    : addresses.toArray(new InetAddress[addresses.size()]);
+        };
+    }
+
+
+    /**
+     * Returns a lookup resolving every host to the one address
+     *
+     * @param address
+     *            the address
+     * @return the stub lookup
+     */
+    public static Lookup stub(final InetAddress address)
+    {
+        return host -> new InetAddress[] {
+                InetAddress.getByAddress(host, address.getAddress()) };
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Returns the background resolution pool, creating it if needed
+     */
+    private ExecutorService pool()
+    {
+        ExecutorService executor = pool;
+        if (executor == null)
+        {
+            synchronized (this)
+            {
+                executor = pool;
+                if (executor == null)
+                {
+                    AtomicInteger count = new AtomicInteger();
+                    pool = executor = Executors.newFixedThreadPool(
+                            Integer.getInteger("posterer.dns.threads", 4),
+                            runnable -> {
+                                Thread thread = new Thread(runnable,
+                                        "posterer-dns-"
+                                                + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                }
+            }
+        }
+        return executor;
+    }
+
+
+    /**
+     * Configures the shared resolver from system properties
+     */
+    private static CachingDnsResolver configure()
+    {
+        Lookup lookup = system();
+
+        String stub = System.getProperty("posterer.dns.stub");
+        String hostsFile = System.getProperty("posterer.dns.hosts");
+        if (stub != null)
+        {
+            try
+            {
+                lookup = stub(InetAddress.getByName(stub));
+            }
+            catch (UnknownHostException e)
+            {
+                LOG.error(CONST_ERR_STUB, stub);
+            }
+        }
+        else if (hostsFile != null)
+        {
+            try
+            {
+                lookup = hosts(Paths.get(hostsFile), lookup);
+            }
+            catch (IOException e)
+            {
+                LOG.error(CONST_ERR_HOSTS, hostsFile, e);
+            }
+        }
+
+        return new CachingDnsResolver(lookup,
+                Integer.getInteger("posterer.dns.ttl", 60),
+                Integer.getInteger("posterer.dns.negativeTtl", 5),
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * A cached resolution, completed by the thread that looked it up
+     */
+    private final class Entry
+    {
+        private final CompletableFuture<InetAddress[]> addresses =
+                new CompletableFuture<>();
+
+        private volatile long expires;
+
+
+        /**
+         * An entry still resolving has not expired
+         */
+        boolean isExpired(final long now)
+        {
+            return addresses.isDone() && now - expires >= 0;
+        }
+
+
+        void resolve(final String host, final long start)
+        {
+            try
+            {
+                InetAddress[] resolved = lookup.lookup(host);
+                expires = System.nanoTime() + ttlNanos;
+                addresses.complete(resolved);
+            }
+            catch (UnknownHostException | RuntimeException e)
+            {
+                expires = System.nanoTime() + negativeTtlNanos;
+                addresses.completeExceptionally(e);
+            }
+            finally
+            {
+                resolveNanos.add(System.nanoTime() - start);
+            }
+        }
+
+
+        @SuppressWarnings("null")
+        InetAddress[] get(final String host) throws UnknownHostException
+        {
+            try
+            {
+                return addresses.get().clone();
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof UnknownHostException)
+                {
+                    throw (UnknownHostException) e.getCause();
+                }
+                UnknownHostException uhe = new UnknownHostException(host);
+                uhe.initCause(e.getCause());
+                throw uhe;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new UnknownHostException(host);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.TimeUnit;
+
+import com.github.technosf.posterer.models.BodyChunk;
+import com.github.technosf.posterer.models.ResponseModel.ChunkListener;
+
+/**
+ * Taps a decoded response body as it is read, handing each piece read to a
+ * {@code ChunkListener} as a {@code BodyChunk}, timed from when the request
+ * was fired.
+ * <p>
+ * The body is either read through the tap, as a stream, or pushed to it as
+ * it arrives. Text is decoded as it goes, a character split across pieces
+ * being held back for the next. Not thread safe: a body is tapped by the one
+ * thread reading it.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ChunkTap
+{
+    private final ChunkListener listener;
+
+    private final CharsetDecoder decoder;
+
+    private final long startNanos;
+
+    private long lastNanos;
+
+    private int index;
+
+    /**
+     * Bytes of a character split across pieces
+     */
+    private ByteBuffer carried = ByteBuffer.allocate(0);
+
+
+    /**
+     * Creates a tap
+     *
+     * @param listener
+     *            the listener to the chunks
+     * @param charset
+     *            the body charset
+     * @param startNanos
+     *            when the request was fired, in {@code System.nanoTime()}
+     * @param headersNanos
+     *            when the response headers arrived, from which the first
+     *            chunk's gap is timed
+     */
+    public ChunkTap(final ChunkListener listener, final Charset charset,
+            final long startNanos, final long headersNanos)
+    {
+        this.listener = listener;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.startNanos = startNanos;
+        this.lastNanos = headersNanos;
+    }
+
+
+    /**
+     * Wraps a body stream so that each read is tapped
+     *
+     * @param in
+     *            the decoded body
+     * @return the body, tapped
+     */
+    public InputStream wrap(final InputStream in)
+    {
+        return new FilterInputStream(in)
+        {
+            @Override
+            public int read() throws IOException
+            {
+                int read = super.read();
+                if (read >= 0)
+                {
+                    tap(ByteBuffer.wrap(new byte[] { (byte) read }));
+                }
+                return read;
+            }
+
+
+            @Override
+            public int read(final byte[] b, final int off, final int len)
+                    throws IOException
+            {
+                int read = super.read(b, off, len);
+                if (read > 0)
+                {
+                    tap(ByteBuffer.wrap(b, off, read));
+                }
+                return read;
+            }
+        };
+    }
+
+
+    /**
+     * Taps a piece of the body that has arrived, leaving the buffer as it is
+     *
+     * @param piece
+     *            the piece
+     */
+    public void tap(final ByteBuffer piece)
+    {
+        int bytes = piece.remaining();
+        if (bytes == 0)
+        {
+            return;
+        }
+        long now = System.nanoTime();
+
+        ByteBuffer in = piece.duplicate();
+        if (carried.hasRemaining())
+        {
+            ByteBuffer joined =
+                    ByteBuffer.allocate(carried.remaining() + bytes);
+            joined.put(carried).put(in);
+            joined.flip();
+            in = joined;
+        }
+        CharBuffer out = CharBuffer.allocate(
+                (int) (in.remaining() * decoder.maxCharsPerByte()) + 1);
+        decoder.decode(in, out, false);
+        out.flip();
+        carried = ByteBuffer.allocate(in.remaining());
+        carried.put(in);
+        carried.flip();
+
+        listener.chunk(new BodyChunk(index++, out.toString(), bytes,
+                TimeUnit.NANOSECONDS.toMicros(now - startNanos),
+                TimeUnit.NANOSECONDS.toMicros(now - lastNanos)));
+        lastNanos = now;
+    }
+}
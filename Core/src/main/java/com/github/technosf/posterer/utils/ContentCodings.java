@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP content codings the client can accept, and their stream decoders.
+ * <p>
+ * gzip and deflate are always available. Brotli is offered only if a Brotli
+ * decoder ({@code org.brotli.dec.BrotliInputStream}) is on the class path, so
+ * there is no hard dependency on it.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ContentCodings
+{
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ContentCodings.class);
+
+    private static final String BROTLI_DECODER =
+            "org.brotli.dec.BrotliInputStream";
+
+    /**
+     * The Brotli decoder constructor, if one is available
+     */
+    @Nullable
+    private static final Constructor<?> BROTLI = brotli();
+
+    /**
+     * The {@code Accept-Encoding} header value
+     */
+    public static final String ACCEPT_ENCODING =
+            BROTLI == null ? "gzip, deflate" : "gzip, deflate, br";
+
+
+    /**
+     * Static only
+     */
+    private ContentCodings()
+    {
+    }
+
+
+    /**
+     * Is a Brotli decoder available?
+     *
+     * @return true if Brotli can be decoded
+     */
+    public static boolean isBrotliAvailable()
+    {
+        return BROTLI != null;
+    }
+
+
+    /**
+     * Wraps the stream in a decoder for the content coding.
+     * <p>
+     * Identity, missing and unsupported codings return the stream as is.
+     *
+     * @param coding
+     *            the {@code Content-Encoding} header value
+     * @param in
+     *            the encoded stream
+     * @return the decoded stream
+     * @throws IOException
+     *             if the stream cannot be read to set up the decoder
+     */
+    public static InputStream decode(final @Nullable String coding,
+            final InputStream in) throws IOException
+    {
+        if (coding == null)
+        {
+            return in;
+        }
+
+        switch (coding.trim().toLowerCase(Locale.ROOT))
+        {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(in);
+            case "deflate":
+                return inflate(in);
+            case "br":
+                return brotli(in);
+            default:
+                return in;
+        }
+    }
+
+
+    /**
+     * Inflates deflate content, which servers send both zlib wrapped, as the
+     * RFC says, and raw
+     */
+    private static InputStream inflate(final InputStream in) throws IOException
+    {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        int b0 = pushback.read();
+        if (b0 < 0)
+        {
+            return pushback;
+        }
+        int b1 = pushback.read();
+        if (b1 >= 0)
+        {
+            pushback.unread(b1);
+        }
+        pushback.unread(b0);
+
+        boolean zlib = b1 >= 0 && (b0 & 0x0F) == 8
+                && ((b0 << 8) | b1) % 31 == 0;
+        return new InflaterInputStream(pushback, new Inflater(!zlib));
+    }
+
+
+    /**
+     * Decodes Brotli content if a decoder is available
+     */
+    private static InputStream brotli(final InputStream in) throws IOException
+    {
+        Constructor<?> constructor = BROTLI;
+        if (constructor == null)
+        {
+            return in;
+        }
+        try
+        {
+            return (InputStream) constructor.newInstance(in);
+        }
+        catch (InvocationTargetException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        catch (InstantiationException | IllegalAccessException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+
+    /**
+     * Finds the Brotli decoder
+     */
+    @Nullable
+    private static Constructor<?> brotli()
+    {
+        try
+        {
+            return Class.forName(BROTLI_DECODER)
+                    .getConstructor(InputStream.class);
+        }
+        catch (ClassNotFoundException | NoSuchMethodException e)
+        {
+            LOG.debug("No Brotli decoder available");
+            return null;
+        }
+    }
+}
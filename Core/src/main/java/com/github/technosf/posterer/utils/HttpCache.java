@@ -0,0 +1,1032 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A private HTTP response cache, after RFC 7234, stored on disk and bounded in
+ * size with the least recently used entries evicted first.
+ * <p>
+ * The cache holds what a transport needs to serve or revalidate a response:
+ * its status, headers and body as received, still content-encoded, along with
+ * when it was requested and received. Freshness is taken from
+ * {@code Cache-Control: max-age}, else {@code Expires}, else a tenth of the
+ * time since {@code Last-Modified}, up to a day. {@code no-cache} responses
+ * are stored but always revalidated; {@code no-store} responses, and those
+ * that {@code Vary: *}, are not stored.
+ * <p>
+ * Each entry is a head file, naming its body file, so that revalidating an
+ * entry rewrites only its head. Entries are written to temporary files and
+ * moved into place, so readers see whole entries.
+ * <p>
+ * The shared cache is off unless the {@code posterer.cache} system property is
+ * true, and lives in {@code posterer.cache.dir}, by default {@code cache} in
+ * the properties directory, bounded by {@code posterer.cache.bytes}.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class HttpCache
+{
+    /**
+     * Default size bound in bytes, overridden by the
+     * {@code posterer.cache.bytes} system property
+     */
+    public static final long DEFAULT_BYTES =
+            Long.getLong("posterer.cache.bytes", 256L * 1024 * 1024);
+
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG = LoggerFactory.getLogger(HttpCache.class);
+
+    /* Messages */
+    private static final String CONST_ERR_READ = "Cannot read cache entry: {}";
+    private static final String CONST_ERR_DELETE =
+            "Cannot delete cache file: {}";
+    private static final String CONST_ERR_DIR = "Cannot open cache in: {}";
+
+    private static final String CONST_HEAD = ".head";
+    private static final String CONST_BODY = ".body";
+    private static final String CONST_TEMP = ".tmp";
+
+    private static final int VERSION = 1;
+
+    /**
+     * Heuristic freshness is a tenth of the time since last modified, up to a
+     * day
+     */
+    private static final int HEURISTIC_FRACTION = 10;
+    private static final long HEURISTIC_MAX_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Statuses that may be stored without explicit freshness
+     */
+    private static final Set<Integer> CACHEABLE_BY_DEFAULT =
+            new HashSet<>(Arrays.asList(200, 203, 204, 300, 301, 404, 405,
+                    410, 414, 501));
+
+    /**
+     * The shared cache
+     */
+    private static final HttpCache INSTANCE = configure();
+
+    private final Path dir;
+
+    private final long maxBytes;
+
+    private volatile boolean enabled;
+
+    /**
+     * Bytes held by each entry, by file stem, least recently used first
+     */
+    private final Map<String, Long> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    private final AtomicLong sequence = new AtomicLong(System.nanoTime());
+
+
+    /**
+     * Returns the shared cache
+     *
+     * @return the shared cache
+     */
+    public static HttpCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Opens a cache, taking in the entries already in its directory, least
+     * recently used first, and removing any partly written
+     *
+     * @param dir
+     *            the cache directory, created if need be
+     * @param maxBytes
+     *            the size bound in bytes
+     */
+    public HttpCache(final Path dir, final long maxBytes)
+    {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        enabled = true;
+
+        List<Path> heads = new ArrayList<>();
+        try
+        {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+            {
+                for (Path file : files)
+                {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(CONST_TEMP))
+                    {
+                        delete(file);
+                    }
+                    else if (name.endsWith(CONST_HEAD))
+                    {
+                        heads.add(file);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOG.warn(CONST_ERR_DIR, dir, e);
+        }
+
+        heads.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+        for (Path head : heads)
+        {
+            Entry entry = read(head);
+            if (entry != null)
+            {
+                String stem = stem(head);
+                long size = size(head) + size(entry.body);
+                entries.put(stem, size);
+                bytes += size;
+            }
+        }
+        evict();
+    }
+
+
+    /**
+     * @return is the cache used?
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+
+    /**
+     * Sets whether the cache is used
+     *
+     * @param enabled
+     *            true to use the cache
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * @return the bytes held on disk
+     */
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+
+    /**
+     * @return the number of entries held
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+
+    /**
+     * Looks up the entry for a key, marking it used
+     *
+     * @param key
+     *            the entry key
+     * @return the entry, or null if none is held
+     */
+    public @Nullable Entry lookup(final String key)
+    {
+        String stem = stem(key);
+        synchronized (this)
+        {
+            if (entries.get(stem) == null)
+            {
+                return null;
+            }
+        }
+        Path head = dir.resolve(stem + CONST_HEAD);
+        Entry entry = read(head);
+        if (entry == null || !entry.key.equals(key))
+        {
+            return null;
+        }
+        try
+        {
+            Files.setLastModifiedTime(head,
+                    FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException e)
+        {
+            // Recency is kept in memory regardless
+        }
+        return entry;
+    }
+
+
+    /**
+     * Starts storing a response, if it may be stored. The body is written to
+     * the store returned, and the entry is held once committed.
+     *
+     * @param key
+     *            the entry key
+     * @param protocol
+     *            the response protocol, e.g. {@code HTTP/1.1}
+     * @param status
+     *            the response status code
+     * @param reason
+     *            the response reason phrase
+     * @param headers
+     *            the response headers
+     * @param requestMillis
+     *            when the request was sent
+     * @param responseMillis
+     *            when the response was received
+     * @return the store, or null if the response may not be stored
+     * @throws IOException
+     *             if the store cannot be created
+     */
+    public @Nullable Store store(final String key, final String protocol,
+            final int status, final String reason,
+            final List<Map.Entry<String, String>> headers,
+            final long requestMillis, final long responseMillis)
+            throws IOException
+    {
+        if (!isStorable(status, headers))
+        {
+            return null;
+        }
+        return new Store(new Entry(key, protocol, status, reason, headers,
+                requestMillis, responseMillis,
+                dir.resolve(stem(key) + "-" + sequence.incrementAndGet()
+                        + CONST_BODY)));
+    }
+
+
+    /**
+     * Refreshes an entry with the headers of a {@code 304 Not Modified}
+     * response to its revalidation, keeping its body
+     *
+     * @param entry
+     *            the entry revalidated
+     * @param headers
+     *            the headers of the 304 response
+     * @param requestMillis
+     *            when the revalidation was sent
+     * @param responseMillis
+     *            when the 304 was received
+     * @return the refreshed entry
+     * @throws IOException
+     *             if the entry cannot be rewritten
+     */
+    public Entry refresh(final Entry entry,
+            final List<Map.Entry<String, String>> headers,
+            final long requestMillis, final long responseMillis)
+            throws IOException
+    {
+        Map<String, Map.Entry<String, String>> updated = new LinkedHashMap<>();
+        List<Map.Entry<String, String>> merged = new ArrayList<>();
+        for (Map.Entry<String, String> header : headers)
+        {
+            String name = header.getKey().toLowerCase(Locale.ROOT);
+            if (!"content-length".equals(name))
+            {
+                updated.put(name, header);
+            }
+        }
+        for (Map.Entry<String, String> header : entry.headers)
+        {
+            if (!updated.containsKey(
+                    header.getKey().toLowerCase(Locale.ROOT)))
+            {
+                merged.add(header);
+            }
+        }
+        merged.addAll(updated.values());
+
+        Entry refreshed = new Entry(entry.key, entry.protocol, entry.status,
+                entry.reason, merged, requestMillis, responseMillis,
+                entry.body);
+        if (isStorable(refreshed.status, merged))
+        {
+            commit(refreshed, null);
+        }
+        else
+        {
+            invalidate(entry.key);
+        }
+        return refreshed;
+    }
+
+
+    /**
+     * Removes the entry for a key, as when an unsafe request changes its
+     * resource
+     *
+     * @param key
+     *            the entry key
+     */
+    public void invalidate(final String key)
+    {
+        String stem = stem(key);
+        Entry entry;
+        synchronized (this)
+        {
+            Long size = entries.remove(stem);
+            if (size == null)
+            {
+                return;
+            }
+            bytes -= size;
+            entry = read(dir.resolve(stem + CONST_HEAD));
+            delete(dir.resolve(stem + CONST_HEAD));
+        }
+        if (entry != null)
+        {
+            delete(entry.body);
+        }
+    }
+
+
+    /**
+     * Writes an entry's head and holds it, evicting as need be
+     *
+     * @param entry
+     *            the entry
+     * @param replaced
+     *            the body file it replaces, if any
+     */
+    private void commit(final Entry entry, final @Nullable Path replaced)
+            throws IOException
+    {
+        String stem = stem(entry.key);
+        Path head = dir.resolve(stem + CONST_HEAD);
+        Path temp = dir.resolve(stem + "-" + sequence.incrementAndGet()
+                + CONST_TEMP);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp))))
+        {
+            entry.write(out);
+        }
+
+        synchronized (this)
+        {
+            Files.move(temp, head, StandardCopyOption.REPLACE_EXISTING);
+            Long previous = entries.remove(stem);
+            if (previous != null)
+            {
+                bytes -= previous;
+            }
+            long size = size(head) + size(entry.body);
+            entries.put(stem, size);
+            bytes += size;
+            evict();
+        }
+        if (replaced != null && !replaced.equals(entry.body))
+        {
+            delete(replaced);
+        }
+    }
+
+
+    /**
+     * Evicts the least recently used entries until within the bound
+     */
+    private synchronized void evict()
+    {
+        Iterator<Map.Entry<String, Long>> eldest =
+                entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext())
+        {
+            Map.Entry<String, Long> evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.getValue();
+            Path head = dir.resolve(evicted.getKey() + CONST_HEAD);
+            Entry entry = read(head);
+            delete(head);
+            if (entry != null)
+            {
+                delete(entry.body);
+            }
+        }
+    }
+
+
+    /**
+     * May the response be stored?
+     *
+     * @param status
+     *            the response status
+     * @param headers
+     *            the response headers
+     * @return true if storable
+     */
+    static boolean isStorable(final int status,
+            final List<Map.Entry<String, String>> headers)
+    {
+        Map<String, String> control = cacheControl(headers);
+        String vary = header(headers, "Vary");
+        if (control.containsKey("no-store")
+                || (vary != null && vary.trim().equals("*")))
+        {
+            return false;
+        }
+        return control.containsKey("max-age")
+                || control.containsKey("public")
+                || header(headers, "Expires") != null
+                || CACHEABLE_BY_DEFAULT.contains(status);
+    }
+
+
+    /**
+     * Returns the value of the first header of a name
+     *
+     * @param headers
+     *            the headers
+     * @param name
+     *            the header name
+     * @return the value, or null if there is no such header
+     */
+    @SuppressWarnings("null")
+    public static @Nullable String header(
+            final List<Map.Entry<String, String>> headers, final String name)
+    {
+        for (Map.Entry<String, String> header : headers)
+        {
+            if (header.getKey().equalsIgnoreCase(name))
+            {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Parses the {@code Cache-Control} directives
+     */
+    private static Map<String, String> cacheControl(
+            final List<Map.Entry<String, String>> headers)
+    {
+        Map<String, String> directives = new LinkedHashMap<>();
+        for (Map.Entry<String, String> header : headers)
+        {
+            if (header.getKey().equalsIgnoreCase("Cache-Control"))
+            {
+                for (String directive : header.getValue().split(","))
+                {
+                    String[] parts = directive.trim().split("=", 2);
+                    directives.put(parts[0].trim().toLowerCase(Locale.ROOT),
+                            parts.length > 1
+                                    ? parts[1].trim().replace("\"", "")
+                                    : "");
+                }
+            }
+        }
+        return directives;
+    }
+
+
+    /**
+     * Parses an HTTP date
+     *
+     * @return the date in millis, or null if missing or invalid
+     */
+    private static @Nullable Long date(final @Nullable String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        try
+        {
+            return ZonedDateTime
+                    .parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+        }
+        catch (DateTimeParseException e)
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * Parses delta seconds into millis
+     */
+    private static long seconds(final @Nullable String value)
+    {
+        try
+        {
+            return value == null ? 0
+                    : TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+
+    /**
+     * Reads an entry's head
+     */
+    private static @Nullable Entry read(final Path head)
+    {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(head))))
+        {
+            return Entry.read(in, head.getParent());
+        }
+        catch (IOException e)
+        {
+            LOG.debug(CONST_ERR_READ, head, e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Returns the file stem of a key, a hash of it
+     */
+    @SuppressWarnings("null")
+    private static String stem(final String key)
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++)
+            {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Returns the file stem of a head
+     */
+    private static String stem(final Path head)
+    {
+        String name = head.getFileName().toString();
+        return name.substring(0, name.length() - CONST_HEAD.length());
+    }
+
+
+    private static long size(final Path file)
+    {
+        try
+        {
+            return Files.size(file);
+        }
+        catch (IOException e)
+        {
+            return 0;
+        }
+    }
+
+
+    @SuppressWarnings("null")
+    private static FileTime lastModified(final Path file)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(file);
+        }
+        catch (IOException e)
+        {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+
+    private static void delete(final Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e)
+        {
+            LOG.warn(CONST_ERR_DELETE, file, e);
+        }
+    }
+
+
+    /**
+     * Configures the shared cache from the system properties
+     */
+    @SuppressWarnings("null")
+    private static HttpCache configure()
+    {
+        String dir = System.getProperty("posterer.cache.dir");
+        HttpCache cache = new HttpCache(dir != null ? Paths.get(dir)
+                : Paths.get(System.getProperty("user.home"), ".posterer",
+                        "cache"),
+                DEFAULT_BYTES);
+        cache.setEnabled(Boolean.getBoolean("posterer.cache"));
+        return cache;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("%1$d entries, %2$d of %3$d bytes in %4$s",
+                entries.size(), bytes, maxBytes, dir);
+    }
+
+    /**
+     * A cached response
+     */
+    public static final class Entry
+    {
+        private final String key;
+        private final String protocol;
+        private final int status;
+        private final String reason;
+        private final List<Map.Entry<String, String>> headers;
+        private final long requestMillis;
+        private final long responseMillis;
+        private final Path body;
+
+
+        Entry(final String key, final String protocol, final int status,
+                final String reason,
+                final List<Map.Entry<String, String>> headers,
+                final long requestMillis, final long responseMillis,
+                final Path body)
+        {
+            this.key = key;
+            this.protocol = protocol;
+            this.status = status;
+            this.reason = reason;
+            this.headers = Collections.unmodifiableList(headers);
+            this.requestMillis = requestMillis;
+            this.responseMillis = responseMillis;
+            this.body = body;
+        }
+
+
+        /**
+         * @return the response protocol
+         */
+        public String getProtocol()
+        {
+            return protocol;
+        }
+
+
+        /**
+         * @return the response status code
+         */
+        public int getStatus()
+        {
+            return status;
+        }
+
+
+        /**
+         * @return the response reason phrase
+         */
+        public String getReason()
+        {
+            return reason;
+        }
+
+
+        /**
+         * @return the response headers
+         */
+        public List<Map.Entry<String, String>> getHeaders()
+        {
+            return headers;
+        }
+
+
+        /**
+         * @return the {@code ETag} validator, if any
+         */
+        public @Nullable String getETag()
+        {
+            return header(headers, "ETag");
+        }
+
+
+        /**
+         * @return the {@code Last-Modified} validator, if any
+         */
+        public @Nullable String getLastModified()
+        {
+            return header(headers, "Last-Modified");
+        }
+
+
+        /**
+         * Opens the body, as received
+         *
+         * @return the body
+         * @throws IOException
+         *             if the body cannot be read
+         */
+        @SuppressWarnings("null")
+        public InputStream openBody() throws IOException
+        {
+            return Files.newInputStream(body);
+        }
+
+
+        /**
+         * @return the size of the body as received
+         */
+        public long getBodyBytes()
+        {
+            return size(body);
+        }
+
+
+        /**
+         * Returns how long the response stays fresh
+         *
+         * @return the freshness lifetime in millis, zero if it must always
+         *         be revalidated
+         */
+        public long getLifetimeMillis()
+        {
+            Map<String, String> control = cacheControl(headers);
+            if (control.containsKey("no-cache"))
+            {
+                return 0;
+            }
+            if (control.containsKey("max-age"))
+            {
+                return seconds(control.get("max-age"));
+            }
+            Long date = date(header(headers, "Date"));
+            long served = date == null ? responseMillis : date;
+            String expires = header(headers, "Expires");
+            if (expires != null)
+            {
+                Long expiry = date(expires);
+                return expiry == null ? 0 : Math.max(0, expiry - served);
+            }
+            Long modified = date(getLastModified());
+            if (modified != null && CACHEABLE_BY_DEFAULT.contains(status))
+            {
+                return Math.min(HEURISTIC_MAX_MILLIS,
+                        Math.max(0, served - modified) / HEURISTIC_FRACTION);
+            }
+            return 0;
+        }
+
+
+        /**
+         * Returns the age of the response, as RFC 7234 reckons it
+         *
+         * @param nowMillis
+         *            the time now
+         * @return the current age in millis
+         */
+        public long getAgeMillis(final long nowMillis)
+        {
+            Long date = date(header(headers, "Date"));
+            long apparent = date == null ? 0
+                    : Math.max(0, responseMillis - date);
+            long corrected = seconds(header(headers, "Age"))
+                    + (responseMillis - requestMillis);
+            return Math.max(apparent, corrected)
+                    + Math.max(0, nowMillis - responseMillis);
+        }
+
+
+        /**
+         * Is the response fresh, to be served without revalidating?
+         *
+         * @param nowMillis
+         *            the time now
+         * @return true if fresh
+         */
+        public boolean isFresh(final long nowMillis)
+        {
+            return getLifetimeMillis() > getAgeMillis(nowMillis);
+        }
+
+
+        /**
+         * Writes the head
+         */
+        void write(final DataOutputStream out) throws IOException
+        {
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeUTF(protocol);
+            out.writeInt(status);
+            out.writeUTF(reason);
+            out.writeLong(requestMillis);
+            out.writeLong(responseMillis);
+            out.writeUTF(body.getFileName().toString());
+            out.writeInt(headers.size());
+            for (Map.Entry<String, String> header : headers)
+            {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+        }
+
+
+        /**
+         * Reads a head
+         */
+        static Entry read(final DataInputStream in, final Path dir)
+                throws IOException
+        {
+            if (in.readInt() != VERSION)
+            {
+                throw new IOException("Unknown cache entry version");
+            }
+            String key = in.readUTF();
+            String protocol = in.readUTF();
+            int status = in.readInt();
+            String reason = in.readUTF();
+            long requestMillis = in.readLong();
+            long responseMillis = in.readLong();
+            Path body = dir.resolve(in.readUTF());
+            int count = in.readInt();
+            List<Map.Entry<String, String>> headers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                headers.add(new AbstractMap.SimpleImmutableEntry<>(
+                        in.readUTF(), in.readUTF()));
+            }
+            return new Entry(key, protocol, status, reason, headers,
+                    requestMillis, responseMillis, body);
+        }
+    }
+
+    /**
+     * A response being stored, its body written as it is read
+     */
+    public final class Store extends OutputStream
+    {
+        private final Entry entry;
+
+        private final OutputStream out;
+
+        private boolean closed;
+
+
+        Store(final Entry entry) throws IOException
+        {
+            this.entry = entry;
+            out = new BufferedOutputStream(Files.newOutputStream(entry.body));
+        }
+
+
+        @Override
+        public void write(final int b) throws IOException
+        {
+            out.write(b);
+        }
+
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+
+        /**
+         * Holds the entry, once its body has been written in full,
+         * replacing any entry for its key
+         *
+         * @throws IOException
+         *             if the entry cannot be written
+         */
+        public void commit() throws IOException
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            out.close();
+            if (size(entry.body) > maxBytes)
+            /*
+             * Would evict everything, itself included
+             */
+            {
+                delete(entry.body);
+                return;
+            }
+            Entry replaced = lookup(entry.key);
+            HttpCache.this.commit(entry,
+                    replaced == null ? null : replaced.body);
+        }
+
+
+        /**
+         * Drops the entry, as when its body could not be read in full
+         */
+        public void abort()
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            try
+            {
+                out.close();
+            }
+            catch (IOException e)
+            {
+                // Deleted regardless
+            }
+            delete(entry.body);
+        }
+
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Closing without committing drops the entry.
+         *
+         * @see java.io.OutputStream#close()
+         */
+        @Override
+        public void close()
+        {
+            abort();
+        }
+    }
+}
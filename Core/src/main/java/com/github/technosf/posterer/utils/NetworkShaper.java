@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.ShapingProfile;
+import com.github.technosf.posterer.models.impl.ShapingProfileBean;
+
+/**
+ * Simulates constrained network links on the client side, by the
+ * {@code ShapingProfile} applied to each route.
+ * <p>
+ * Connections to a shaped route are made over a socket that adds the
+ * profile's latency and jitter on connecting and on each turn from sending
+ * to receiving, paces each direction to its bandwidth, and resets its share
+ * of connections part way through their response. Latency past a connect or
+ * read timeout times out as it would on the wire, so timeouts can be measured
+ * against a loopback server.
+ * <p>
+ * A route is matched by {@code host:port}, then by host, then by {@code *}.
+ * No route is shaped until a profile is applied.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class NetworkShaper
+{
+    /**
+     * The shared shaper
+     */
+    private static final NetworkShaper INSTANCE = new NetworkShaper();
+
+    /**
+     * The profiles applied, by route, replaced whole on change
+     */
+    private volatile Map<String, ShapingProfile> routes =
+            Collections.emptyMap();
+
+    private final LongAdder shaped = new LongAdder();
+
+    private final LongAdder resets = new LongAdder();
+
+
+    /**
+     * Returns the shared shaper
+     *
+     * @return the shared shaper
+     */
+    public static NetworkShaper getInstance()
+    {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Applies a profile to its route, in place of any applied to it before
+     *
+     * @param profile
+     *            the profile
+     */
+    public synchronized void apply(final ShapingProfile profile)
+    {
+        ShapingProfileBean bean = new ShapingProfileBean(profile);
+        if (!bean.isActionable())
+        {
+            throw new IllegalArgumentException(bean.toString());
+        }
+        Map<String, ShapingProfile> applied = new HashMap<>(routes);
+        applied.put(bean.getRoute(), bean);
+        routes = applied;
+    }
+
+
+    /**
+     * Applies the named profiles from those saved
+     *
+     * @param saved
+     *            the saved profiles
+     * @param names
+     *            the comma separated names of the profiles to apply
+     * @return the names not found among the saved profiles
+     */
+    public List<String> apply(final Collection<ShapingProfile> saved,
+            final String names)
+    {
+        List<String> unknown = new ArrayList<>();
+        for (String name : names.split(","))
+        {
+            String wanted = name.trim();
+            if (wanted.isEmpty())
+            {
+                continue;
+            }
+            ShapingProfile found = null;
+            for (ShapingProfile profile : saved)
+            {
+                if (wanted.equals(profile.getName()))
+                {
+                    found = profile;
+                }
+            }
+            if (found == null)
+            {
+                unknown.add(wanted);
+            }
+            else
+            {
+                apply(found);
+            }
+        }
+        return unknown;
+    }
+
+
+    /**
+     * Stops shaping every route
+     */
+    public synchronized void clear()
+    {
+        routes = Collections.emptyMap();
+    }
+
+
+    /**
+     * @return is any route shaped?
+     */
+    public boolean isEnabled()
+    {
+        return !routes.isEmpty();
+    }
+
+
+    /**
+     * @return the profiles applied
+     */
+    public List<ShapingProfile> getProfiles()
+    {
+        return new ArrayList<>(routes.values());
+    }
+
+
+    /**
+     * Returns the profile applied to a route
+     *
+     * @param host
+     *            the host
+     * @param port
+     *            the port
+     * @return the profile, or null if the route is not shaped
+     */
+    public @Nullable ShapingProfile lookup(final String host, final int port)
+    {
+        Map<String, ShapingProfile> applied = routes;
+        if (applied.isEmpty())
+        {
+            return null;
+        }
+        String name = host.toLowerCase(Locale.ROOT);
+        ShapingProfile profile = applied.get(name + ":" + port);
+        if (profile == null)
+        {
+            profile = applied.get(name);
+        }
+        if (profile == null)
+        {
+            profile = applied.get(ShapingProfileBean.ANY_ROUTE);
+        }
+        return profile;
+    }
+
+
+    /**
+     * Creates an unconnected socket shaped by a profile
+     *
+     * @param profile
+     *            the profile
+     * @return the socket
+     */
+    public Socket createSocket(final ShapingProfile profile)
+    {
+        shaped.increment();
+        return new ShapedSocket(this, profile);
+    }
+
+
+    /**
+     * Counts a connection reset
+     */
+    void reset()
+    {
+        resets.increment();
+    }
+
+
+    /**
+     * @return the shaped connections created
+     */
+    public long getShapedConnections()
+    {
+        return shaped.sum();
+    }
+
+
+    /**
+     * @return the connections reset
+     */
+    public long getResets()
+    {
+        return resets.sum();
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code ResponseBufferManager} accounts for the response bodies held in memory
+ * by all live {@code ResponseModel}s against a single byte budget.
+ * <p>
+ * When the budget is exceeded the least recently read bodies are spilled to
+ * temporary files, and are transparently reloaded the next time they are read.
+ * Bodies whose owner has been garbage collected are released, and their spill
+ * files deleted, as the manager is next used.
+ * <p>
+ * The default budget is taken from the {@code posterer.response.budget} system
+ * property, in bytes.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ResponseBufferManager
+{
+    /**
+     * Default budget in bytes, overridden by the
+     * {@code posterer.response.budget} system property
+     */
+    public static final long DEFAULT_BUDGET =
+            Long.getLong("posterer.response.budget", 32L * 1024 * 1024);
+
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ResponseBufferManager.class);
+
+    /* Messages */
+    private static final String CONST_ERR_SPILL =
+            "Cannot spill response body to disk, keeping it in memory";
+    private static final String CONST_ERR_RELOAD =
+            "Cannot reload spilled response body from: {}";
+
+    private static final String CONST_SPILL_PREFIX = "posterer-";
+    private static final String CONST_SPILL_SUFFIX = ".body";
+
+    /**
+     * The shared manager
+     */
+    private static final ResponseBufferManager INSTANCE =
+            new ResponseBufferManager(DEFAULT_BUDGET);
+
+    /**
+     * Owners that have been collected
+     */
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    /**
+     * Bodies held in memory, least recently read first
+     */
+    private final Map<Buffer, Boolean> resident =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * All buffers not yet released
+     */
+    private final Set<Buffer> live = new HashSet<>();
+
+    /**
+     * Budget in bytes
+     */
+    private long budget;
+
+    /**
+     * Bytes held in memory
+     */
+    private long held;
+
+    /**
+     * Count of spills to disk
+     */
+    private long spills;
+
+    /**
+     * Count of reloads from disk
+     */
+    private long reloads;
+
+
+    /**
+     * Returns the shared {@code ResponseBufferManager}
+     *
+     * @return the shared manager
+     */
+    public static ResponseBufferManager getInstance()
+    {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Creates a {@code ResponseBufferManager} with the given budget
+     *
+     * @param budget
+     *            the budget in bytes
+     */
+    public ResponseBufferManager(final long budget)
+    {
+        this.budget = Math.max(0, budget);
+    }
+
+
+    /**
+     * Hands the body to the manager, to be held for as long as the owner is
+     * reachable or until released.
+     *
+     * @param owner
+     *            the object whose lifetime bounds that of the body
+     * @param body
+     *            the body
+     * @return the buffer holding the body
+     */
+    public synchronized Buffer register(final Object owner, final String body)
+    {
+        expunge();
+        Buffer buffer = new Buffer(owner, body, collected);
+        live.add(buffer);
+        resident.put(buffer, Boolean.TRUE);
+        held += buffer.bytes;
+        trim(buffer);
+        return buffer;
+    }
+
+
+    /**
+     * Returns the budget in bytes
+     *
+     * @return the budget
+     */
+    public synchronized long getBudget()
+    {
+        return budget;
+    }
+
+
+    /**
+     * Sets the budget, spilling bodies if the held bytes now exceed it
+     *
+     * @param budget
+     *            the budget in bytes
+     */
+    public synchronized void setBudget(final long budget)
+    {
+        this.budget = Math.max(0, budget);
+        expunge();
+        trim(null);
+    }
+
+
+    /**
+     * Returns the bytes held in memory
+     *
+     * @return the held bytes
+     */
+    public synchronized long getHeld()
+    {
+        expunge();
+        return held;
+    }
+
+
+    /**
+     * Returns the number of buffers not yet released
+     *
+     * @return the live buffer count
+     */
+    public synchronized int getLiveCount()
+    {
+        expunge();
+        return live.size();
+    }
+
+
+    /**
+     * Returns the number of bodies spilled to disk
+     *
+     * @return the spill count
+     */
+    public synchronized long getSpillCount()
+    {
+        return spills;
+    }
+
+
+    /**
+     * Returns the number of bodies reloaded from disk
+     *
+     * @return the reload count
+     */
+    public synchronized long getReloadCount()
+    {
+        return reloads;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public synchronized String toString()
+    {
+        return String.format(
+                "Held %1$d of %2$d bytes in %3$d buffers, %4$d spills, %5$d reloads",
+                held, budget, live.size(), spills, reloads);
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Reads the buffer, reloading it from disk if it was spilled
+     *
+     * @param buffer
+     *            the buffer
+     * @return the body
+     */
+    synchronized String read(final Buffer buffer)
+    {
+        expunge();
+
+        String body = buffer.body;
+        if (body != null)
+        {
+            resident.get(buffer); // Touch
+            return body;
+        }
+
+        Path spill = buffer.spill;
+        if (buffer.released || spill == null)
+        {
+            return "";
+        }
+
+        try
+        {
+            body = new String(Files.readAllBytes(spill),
+                    StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            LOG.error(CONST_ERR_RELOAD, spill, e);
+            return "";
+        }
+
+        reloads++;
+        delete(spill);
+        buffer.spill = null;
+        buffer.body = body;
+        resident.put(buffer, Boolean.TRUE);
+        held += buffer.bytes;
+        trim(buffer);
+        return body;
+    }
+
+
+    /**
+     * Releases the buffer, dropping its body and any spill file
+     *
+     * @param buffer
+     *            the buffer
+     */
+    synchronized void release(final Buffer buffer)
+    {
+        if (buffer.released)
+        {
+            return;
+        }
+
+        buffer.released = true;
+        live.remove(buffer);
+        if (resident.remove(buffer) != null)
+        {
+            held -= buffer.bytes;
+        }
+        buffer.body = null;
+
+        Path spill = buffer.spill;
+        if (spill != null)
+        {
+            delete(spill);
+            buffer.spill = null;
+        }
+    }
+
+
+    /**
+     * Releases the buffers whose owners have been collected
+     */
+    private void expunge()
+    {
+        Reference<? extends Object> reference;
+        while ((reference = collected.poll()) != null)
+        {
+            release((Buffer) reference);
+        }
+    }
+
+
+    /**
+     * Spills the least recently read bodies until within budget
+     *
+     * @param keep
+     *            the buffer being read, spilled only if it alone is over budget
+     */
+    private void trim(final @Nullable Buffer keep)
+    {
+        Iterator<Buffer> i = resident.keySet().iterator();
+        while (held > budget && i.hasNext())
+        {
+            Buffer buffer = i.next();
+            if (buffer == keep)
+            {
+                continue;
+            }
+            if (spill(buffer))
+            {
+                i.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Writes the body to a temporary file and drops it from memory
+     *
+     * @param buffer
+     *            the buffer to spill
+     * @return true if spilled
+     */
+    @SuppressWarnings("null")
+    private boolean spill(final Buffer buffer)
+    {
+        String body = buffer.body;
+        if (body == null)
+        {
+            return true;
+        }
+
+        try
+        {
+            Path spill = Files.createTempFile(CONST_SPILL_PREFIX,
+                    CONST_SPILL_SUFFIX);
+            spill.toFile().deleteOnExit();
+            Files.write(spill, body.getBytes(StandardCharsets.UTF_8));
+            buffer.spill = spill;
+        }
+        catch (IOException e)
+        {
+            LOG.warn(CONST_ERR_SPILL, e);
+            return false;
+        }
+
+        buffer.body = null;
+        held -= buffer.bytes;
+        spills++;
+        return true;
+    }
+
+
+    /**
+     * Deletes the spill file quietly
+     *
+     * @param spill
+     *            the file
+     */
+    private static void delete(final Path spill)
+    {
+        try
+        {
+            Files.deleteIfExists(spill);
+        }
+        catch (IOException e)
+        {
+            LOG.debug("Cannot delete spill file: {}", spill, e);
+        }
+    }
+
+    /**
+     * A body held on behalf of an owner, in memory or spilled to disk
+     *
+     * @author technosf
+     * @since 0.0.1
+     * @version 0.0.1
+     */
+    public final class Buffer
+            extends WeakReference<Object>
+    {
+        /**
+         * Size of the body in memory, as two bytes per char
+         */
+        private final long bytes;
+
+        /**
+         * The body, when held in memory
+         */
+        private @Nullable String body;
+
+        /**
+         * The spill file, when spilled
+         */
+        private @Nullable Path spill;
+
+        /**
+         * Has this buffer been released?
+         */
+        private boolean released;
+
+
+        /**
+         * Creates a buffer for the owner's body
+         */
+        private Buffer(final Object owner, final String body,
+                final ReferenceQueue<Object> queue)
+        {
+            super(owner, queue);
+            this.body = body;
+            this.bytes = 2L * body.length();
+        }
+
+
+        /**
+         * Returns the body, reloading it if spilled
+         *
+         * @return the body
+         */
+        public String get()
+        {
+            return read(this);
+        }
+
+
+        /**
+         * Returns the in memory size of the body
+         *
+         * @return the size in bytes
+         */
+        public long size()
+        {
+            return bytes;
+        }
+
+
+        /**
+         * Is the body currently on disk?
+         *
+         * @return true if spilled
+         */
+        public boolean isSpilled()
+        {
+            synchronized (ResponseBufferManager.this)
+            {
+                return spill != null;
+            }
+        }
+
+
+        /**
+         * Releases the body and any spill file
+         */
+        public void release()
+        {
+            ResponseBufferManager.this.release(this);
+        }
+    }
+}
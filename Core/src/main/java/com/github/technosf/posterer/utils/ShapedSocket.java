@@ -0,0 +1,360 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.ShapingProfile;
+
+/**
+ * A plain socket shaped by a {@code ShapingProfile}
+ * <p>
+ * The round trip latency is added on connecting, and on the first read after
+ * a write, that being when a reply is waited on. Each direction is paced to
+ * the bandwidth, in reads and writes of no more than a fiftieth of a second's
+ * worth. A connection drawn for reset is reset part way through the first
+ * piece of response it reads.
+ * <p>
+ * Being a plain socket, TLS is layered on it as on any other.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+final class ShapedSocket extends Socket
+{
+    private static final String CONST_ERR_CONNECT = "connect timed out";
+    private static final String CONST_ERR_READ = "Read timed out";
+    private static final String CONST_ERR_RESET = "Connection reset";
+
+    /**
+     * Pieces paced per second
+     */
+    private static final int PIECES = 50;
+
+    private final NetworkShaper shaper;
+
+    private final ShapingProfile profile;
+
+    /**
+     * Bandwidth each way, unlimited if zero
+     */
+    private final long bytesPerSecond;
+
+    /**
+     * Is the connection to be reset?
+     */
+    private final boolean doomed;
+
+    /**
+     * Has anything been written since the last read?
+     */
+    private volatile boolean sent;
+
+    private @Nullable InputStream shapedIn;
+
+    private @Nullable OutputStream shapedOut;
+
+
+    /**
+     * Creates an unconnected socket
+     *
+     * @param shaper
+     *            the shaper counting resets
+     * @param profile
+     *            the profile to shape by
+     */
+    ShapedSocket(final NetworkShaper shaper, final ShapingProfile profile)
+    {
+        this.shaper = shaper;
+        this.profile = profile;
+        this.bytesPerSecond = profile.getKbps() * 125L;
+        this.doomed = ThreadLocalRandom.current().nextDouble()
+                * 100 < profile.getResetPercent();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits the round trip first, timing out should it pass the timeout.
+     *
+     * @see java.net.Socket#connect(java.net.SocketAddress, int)
+     */
+    @Override
+    public void connect(final SocketAddress endpoint, final int timeout)
+            throws IOException
+    {
+        long delay = delay();
+        if (timeout > 0 && delay >= timeout)
+        {
+            sleep(TimeUnit.MILLISECONDS.toNanos(timeout));
+            throw new SocketTimeoutException(CONST_ERR_CONNECT);
+        }
+        sleep(TimeUnit.MILLISECONDS.toNanos(delay));
+        super.connect(endpoint, timeout > 0 ? (int) (timeout - delay) : 0);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.net.Socket#getInputStream()
+     */
+    @Override
+    public synchronized InputStream getInputStream() throws IOException
+    {
+        InputStream shaped = shapedIn;
+        if (shaped == null)
+        {
+            shaped = shapedIn = new ShapedInputStream(super.getInputStream());
+        }
+        return shaped;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.net.Socket#getOutputStream()
+     */
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException
+    {
+        OutputStream shaped = shapedOut;
+        if (shaped == null)
+        {
+            shaped = shapedOut = new ShapedOutputStream(super.getOutputStream());
+        }
+        return shaped;
+    }
+
+
+    /**
+     * Returns the round trip latency, with jitter, in millis
+     */
+    private long delay()
+    {
+        int jitter = profile.getJitterMillis();
+        return Math.max(0, profile.getLatencyMillis() + (jitter == 0 ? 0
+                : ThreadLocalRandom.current().nextInt(-jitter, jitter + 1)));
+    }
+
+
+    /**
+     * Returns the most bytes to move in one piece
+     */
+    private int piece(final int len)
+    {
+        return bytesPerSecond == 0 ? len
+                : (int) Math.min(len, Math.max(1, bytesPerSecond / PIECES));
+    }
+
+
+    /**
+     * Resets the connection, as a peer or middlebox would
+     */
+    private SocketException resetConnection() throws IOException
+    {
+        shaper.reset();
+        setSoLinger(true, 0);
+        close();
+        return new SocketException(CONST_ERR_RESET);
+    }
+
+
+    /**
+     * Sleeps, reporting interruption as I/O interrupted
+     */
+    private static void sleep(final long nanos) throws InterruptedIOException
+    {
+        if (nanos <= 0)
+        {
+            return;
+        }
+        try
+        {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ie = new InterruptedIOException();
+            ie.initCause(e);
+            throw ie;
+        }
+    }
+
+    /**
+     * Paces bytes to the bandwidth, as a bucket without burst
+     */
+    private final class Pacer
+    {
+        /**
+         * When the bytes moved so far are due, in {@code System.nanoTime()}
+         */
+        private long due = System.nanoTime();
+
+
+        /**
+         * Waits until bytes just moved are due
+         */
+        void pace(final int bytes) throws InterruptedIOException
+        {
+            if (bytesPerSecond == 0)
+            {
+                return;
+            }
+            long now = System.nanoTime();
+            due = Math.max(due, now)
+                    + TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+            sleep(due - now);
+        }
+    }
+
+    /**
+     * The shaped input
+     */
+    private final class ShapedInputStream extends FilterInputStream
+    {
+        private final Pacer pacer = new Pacer();
+
+        private long read;
+
+        /**
+         * Bytes read before the connection is reset, not yet drawn if negative
+         */
+        private long resetAfter = -1;
+
+
+        ShapedInputStream(final InputStream in)
+        {
+            super(in);
+        }
+
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (sent)
+            /*
+             * Waiting on a reply
+             */
+            {
+                sent = false;
+                long delay = delay();
+                int timeout = getSoTimeout();
+                if (timeout > 0 && delay >= timeout)
+                {
+                    sleep(TimeUnit.MILLISECONDS.toNanos(timeout));
+                    sent = true;
+                    throw new SocketTimeoutException(CONST_ERR_READ);
+                }
+                sleep(TimeUnit.MILLISECONDS.toNanos(delay));
+            }
+
+            if (resetAfter >= 0 && read >= resetAfter)
+            {
+                throw resetConnection();
+            }
+
+            int count = in.read(b, off, piece(len));
+            if (count > 0 && doomed)
+            /*
+             * Cut the connection part way through the piece
+             */
+            {
+                if (resetAfter < 0)
+                {
+                    resetAfter =
+                            read + ThreadLocalRandom.current().nextInt(count);
+                }
+                count = (int) Math.min(count, resetAfter - read);
+                if (count == 0)
+                {
+                    throw resetConnection();
+                }
+            }
+            if (count > 0)
+            {
+                read += count;
+                pacer.pace(count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * The shaped output
+     */
+    private final class ShapedOutputStream extends FilterOutputStream
+    {
+        private final Pacer pacer = new Pacer();
+
+
+        ShapedOutputStream(final OutputStream out)
+        {
+            super(out);
+        }
+
+
+        @Override
+        public void write(final int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException
+        {
+            int written = 0;
+            while (written < len)
+            {
+                int count = piece(len - written);
+                out.write(b, off + written, count);
+                written += count;
+                pacer.pace(count);
+            }
+            sent = true;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Text with {@code ${name}} variables, compiled once into segments to be
+ * rendered many times.
+ * <p>
+ * Compiling splits the text into UTF-8 literals between the variables. A
+ * template is bound to the columns of its values, resolving each variable to
+ * a column index, after which rendering is a linear write of literals and
+ * values into a reusable {@code Output}, with no parsing, lookups or
+ * formatting. {@code $${} renders as a literal {@code ${}, and an unclosed
+ * {@code ${} is literal text.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class Template
+{
+    private static final String CONST_ERR_UNBOUND = "No value for ${%1$s}";
+
+    private final String text;
+
+    /**
+     * Literals before, between and after the variables, one more than the
+     * variables
+     */
+    private final byte[][] literals;
+
+    /**
+     * Variable names, in order of appearance
+     */
+    private final String[] names;
+
+    /**
+     * Does the template render to its text?
+     */
+    private final boolean constant;
+
+    /**
+     * Values of a render, by column
+     */
+    public interface Values
+    {
+        /**
+         * Writes a column's value
+         *
+         * @param column
+         *            the column index
+         * @param out
+         *            where to write the value
+         */
+        void writeTo(int column, Output out);
+    }
+
+
+    /**
+     * Compiles a template
+     *
+     * @param text
+     *            the text
+     * @return the template
+     */
+    public static Template compile(final String text)
+    {
+        List<byte[]> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length())
+        {
+            int open = text.indexOf("${", i);
+            int close = open < 0 ? -1 : text.indexOf('}', open + 2);
+            if (close < 0)
+            {
+                literal.append(text, i, text.length());
+                break;
+            }
+            if (open > 0 && text.charAt(open - 1) == '$')
+            /*
+             * Escaped: keep one dollar and the braces as text
+             */
+            {
+                literal.append(text, i, open - 1).append("${");
+                i = open + 2;
+                continue;
+            }
+            literal.append(text, i, open);
+            literals.add(literal.toString().getBytes(StandardCharsets.UTF_8));
+            literal.setLength(0);
+            names.add(text.substring(open + 2, close).trim());
+            i = close + 1;
+        }
+        literals.add(literal.toString().getBytes(StandardCharsets.UTF_8));
+        return new Template(text, literals.toArray(new byte[0][]),
+                names.toArray(new String[0]),
+                names.isEmpty() && text.equals(literal.toString()));
+    }
+
+
+    private Template(final String text, final byte[][] literals,
+            final String[] names, final boolean constant)
+    {
+        this.text = text;
+        this.literals = literals;
+        this.names = names;
+        this.constant = constant;
+    }
+
+
+    /**
+     * @return the text the template was compiled from
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+
+    /**
+     * @return does the template render to its text, with no variables or
+     *         escapes?
+     */
+    public boolean isConstant()
+    {
+        return constant;
+    }
+
+
+    /**
+     * @return the variable names, in order of appearance
+     */
+    @SuppressWarnings("null")
+    public List<String> getVariables()
+    {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+
+    /**
+     * Binds the variables to the columns of the values
+     *
+     * @param columns
+     *            the column names, in index order
+     * @return the bound template
+     * @throws IllegalArgumentException
+     *             if a variable has no column
+     */
+    @SuppressWarnings("null")
+    public Bound bind(final List<String> columns)
+    {
+        int[] indexes = new int[names.length];
+        for (int v = 0; v < names.length; v++)
+        {
+            indexes[v] = columns.indexOf(names[v]);
+            if (indexes[v] < 0)
+            {
+                throw new IllegalArgumentException(
+                        String.format(CONST_ERR_UNBOUND, names[v]));
+            }
+        }
+        return new Bound(indexes);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return text;
+    }
+
+    /**
+     * A template with its variables resolved to columns
+     */
+    public final class Bound
+    {
+        private final int[] columns;
+
+
+        Bound(final int[] columns)
+        {
+            this.columns = columns;
+        }
+
+
+        /**
+         * Renders the template, appending to the output
+         *
+         * @param values
+         *            the values
+         * @param out
+         *            the output
+         */
+        public void render(final Values values, final Output out)
+        {
+            out.write(literals[0], 0, literals[0].length);
+            for (int v = 0; v < columns.length; v++)
+            {
+                values.writeTo(columns[v], out);
+                out.write(literals[v + 1], 0, literals[v + 1].length);
+            }
+        }
+
+
+        /**
+         * @return the template bound
+         */
+        public Template getTemplate()
+        {
+            return Template.this;
+        }
+    }
+
+    /**
+     * A reusable, growing byte buffer that templates render into
+     */
+    public static final class Output
+    {
+        private byte[] bytes;
+
+        private int length;
+
+
+        /**
+         * Creates an output
+         *
+         * @param capacity
+         *            the initial capacity
+         */
+        public Output(final int capacity)
+        {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+
+        /**
+         * Empties the output, keeping its capacity
+         */
+        public void reset()
+        {
+            length = 0;
+        }
+
+
+        /**
+         * Appends bytes
+         *
+         * @param source
+         *            the bytes
+         * @param offset
+         *            where in the bytes to start
+         * @param count
+         *            the number of bytes
+         */
+        public void write(final byte[] source, final int offset,
+                final int count)
+        {
+            if (length + count > bytes.length)
+            {
+                bytes = Arrays.copyOf(bytes,
+                        Math.max(length + count, bytes.length * 2));
+            }
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+
+        /**
+         * Appends a byte
+         *
+         * @param b
+         *            the byte
+         */
+        public void write(final int b)
+        {
+            if (length == bytes.length)
+            {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) b;
+        }
+
+
+        /**
+         * @return the number of bytes written
+         */
+        public int length()
+        {
+            return length;
+        }
+
+
+        /**
+         * Returns the bytes written, valid until the next write or reset
+         *
+         * @return the backing array, holding the bytes from zero to the
+         *         length
+         */
+        public byte[] array()
+        {
+            return bytes;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The bytes written, decoded as UTF-8
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel tracking the deadlines of many concurrent requests on a
+ * single thread.
+ * <p>
+ * Scheduling and cancelling are O(1) and lock free: new and cancelled
+ * timeouts are queued and folded into the wheel by the timer thread at each
+ * tick. A timeout lands in the bucket for its tick modulo the wheel size,
+ * with the number of whole turns of the wheel still to wait, so a wheel of a
+ * few hundred buckets covers any deadline. Deadlines are honoured to within a
+ * tick.
+ * <p>
+ * Expiry tasks run on the timer thread and must be quick, such as aborting a
+ * request.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class TimingWheel
+{
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(TimingWheel.class);
+
+    /**
+     * Most new timeouts folded into the wheel per tick, so a burst cannot
+     * stall expiry
+     */
+    private static final int TRANSFER_MAX = 100_000;
+
+    private static final int ST_PENDING = 0, ST_CANCELLED = 1,
+            ST_EXPIRED = 2;
+
+    /**
+     * The shared wheel, tick and size overridden by the
+     * {@code posterer.wheel.tick} (millis) and {@code posterer.wheel.size}
+     * system properties
+     */
+    private static final TimingWheel INSTANCE =
+            new TimingWheel(Integer.getInteger("posterer.wheel.tick", 10),
+                    Integer.getInteger("posterer.wheel.size", 512));
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * When the wheel started, the origin of the ticks
+     */
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Ticks elapsed, only touched by the timer thread
+     */
+    private long tick;
+
+    @Nullable
+    private Thread thread;
+
+    private volatile boolean stopped;
+
+
+    /**
+     * Returns the shared wheel
+     *
+     * @return the shared wheel
+     */
+    public static TimingWheel getInstance()
+    {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Creates a wheel. The timer thread starts with the first timeout.
+     *
+     * @param tickMillis
+     *            the tick duration, the resolution of deadlines
+     * @param size
+     *            the number of buckets, rounded up to a power of two
+     */
+    public TimingWheel(final long tickMillis, final int size)
+    {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int buckets = Integer.highestOneBit(Math.max(2, size) - 1) << 1;
+        this.wheel = new Bucket[buckets];
+        for (int i = 0; i < buckets; i++)
+        {
+            wheel[i] = new Bucket();
+        }
+        this.mask = buckets - 1;
+    }
+
+
+    /**
+     * Schedules a task to run once the delay has passed
+     *
+     * @param task
+     *            the task, run on the timer thread
+     * @param delay
+     *            the delay
+     * @param unit
+     *            the delay unit
+     * @return the timeout, to cancel
+     */
+    public Timeout schedule(final Runnable task, final long delay,
+            final TimeUnit unit)
+    {
+        start();
+        Timeout timeout = new Timeout(task,
+                System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+
+    /**
+     * Returns the number of timeouts neither expired nor cancelled
+     *
+     * @return the pending count
+     */
+    public int getPending()
+    {
+        return pending.get();
+    }
+
+
+    /**
+     * Stops the timer thread. Pending timeouts never expire.
+     */
+    public synchronized void stop()
+    {
+        stopped = true;
+        Thread timer = thread;
+        if (timer != null)
+        {
+            LockSupport.unpark(timer);
+        }
+    }
+
+
+    /* ---------------- Timer thread ------------------ */
+
+    /**
+     * Starts the timer thread if not yet started
+     */
+    private void start()
+    {
+        if (thread != null)
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            if (thread == null && !stopped)
+            {
+                Thread timer = new Thread(this::run, "posterer-timing-wheel");
+                timer.setDaemon(true);
+                timer.start();
+                thread = timer;
+            }
+        }
+    }
+
+
+    /**
+     * Ticks until stopped
+     */
+    private void run()
+    {
+        while (!stopped)
+        {
+            long sleep = startNanos + (tick + 1) * tickNanos
+                    - System.nanoTime();
+            if (sleep > 0)
+            {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+
+            transferCancelled();
+            transferAdded();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+
+    /**
+     * Places newly scheduled timeouts in their buckets
+     */
+    private void transferAdded()
+    {
+        for (int i = 0; i < TRANSFER_MAX; i++)
+        {
+            Timeout timeout = added.poll();
+            if (timeout == null)
+            {
+                return;
+            }
+            if (timeout.state.get() != ST_PENDING)
+            {
+                continue;
+            }
+
+            long due = Math.max(tick,
+                    (timeout.deadline - startNanos + tickNanos - 1)
+                            / tickNanos);
+            timeout.rounds = (due - tick) / wheel.length;
+            wheel[(int) (due & mask)].add(timeout);
+        }
+    }
+
+
+    /**
+     * Unlinks cancelled timeouts from their buckets
+     */
+    private void transferCancelled()
+    {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null)
+        {
+            Bucket bucket = timeout.bucket;
+            if (bucket != null)
+            {
+                bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * A scheduled task that can be cancelled
+     */
+    public final class Timeout
+    {
+        private final Runnable task;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(ST_PENDING);
+
+        /* Bucket links, only touched by the timer thread */
+        long rounds;
+
+        @Nullable
+        Timeout next, previous;
+
+        @Nullable
+        Bucket bucket;
+
+
+        Timeout(final Runnable task, final long deadline)
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+
+        /**
+         * Cancels the timeout if it has not yet expired
+         *
+         * @return true if cancelled by this call
+         */
+        public boolean cancel()
+        {
+            if (!state.compareAndSet(ST_PENDING, ST_CANCELLED))
+            {
+                return false;
+            }
+            pending.decrementAndGet();
+            cancelled.add(this);
+            return true;
+        }
+
+
+        /**
+         * @return true if cancelled
+         */
+        public boolean isCancelled()
+        {
+            return state.get() == ST_CANCELLED;
+        }
+
+
+        /**
+         * @return true if the task has been run
+         */
+        public boolean isExpired()
+        {
+            return state.get() == ST_EXPIRED;
+        }
+
+
+        /**
+         * Runs the task unless cancelled
+         */
+        void expire()
+        {
+            if (!state.compareAndSet(ST_PENDING, ST_EXPIRED))
+            {
+                return;
+            }
+            pending.decrementAndGet();
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException e)
+            {
+                LOG.warn("Timeout task failed", e);
+            }
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts, only touched by the timer thread
+     */
+    private static final class Bucket
+    {
+        @Nullable
+        private Timeout head, tail;
+
+
+        void add(final Timeout timeout)
+        {
+            timeout.bucket = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null)
+            {
+                head = timeout;
+            }
+            else
+            {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+
+        void remove(final Timeout timeout)
+        {
+            Timeout next = timeout.next, previous = timeout.previous;
+            if (previous == null)
+            {
+                head = next;
+            }
+            else
+            {
+                previous.next = next;
+            }
+            if (next == null)
+            {
+                tail = previous;
+            }
+            else
+            {
+                next.previous = previous;
+            }
+            timeout.next = timeout.previous = null;
+            timeout.bucket = null;
+        }
+
+
+        /**
+         * Expires the timeouts due this turn, counting down the rest
+         */
+        void expire()
+        {
+            Timeout timeout = head;
+            while (timeout != null)
+            {
+                Timeout next = timeout.next;
+                if (timeout.rounds <= 0)
+                {
+                    remove(timeout);
+                    timeout.expire();
+                }
+                else
+                {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models.impl.base;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.impl.RequestBean;
+import com.github.technosf.posterer.utils.Auditor;
+
+/**
+ * AbstractDownloadModel unit tests, against a body held in memory
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class AbstractDownloadModelTest
+{
+    private static final Request GET =
+            new RequestBean("http://a.example/export", "", "GET", "", "",
+                    false);
+
+    private static final byte[] BODY = new byte[(int) (4.5
+            * AbstractDownloadModel.MIN_SEGMENT)];
+
+    static
+    {
+        new Random(48).nextBytes(BODY);
+    }
+
+
+    @Test
+    public void segmentsWrittenInPlace() throws Exception
+    {
+        Path file = Files.createTempDirectory("download").resolve("body");
+        AtomicLong progressed = new AtomicLong();
+        StubDownload download = new StubDownload(file, 8, true, -1);
+        download.setProgress((received, length) -> progressed.set(received));
+
+        assertEquals(download.call().longValue(), BODY.length);
+        assertEquals(download.getSegments(), 4);
+        assertEquals(download.getStatusCode(), 206);
+        assertEquals(progressed.get(), BODY.length);
+        assertEquals(Files.readAllBytes(file), BODY);
+        assertFalse(Files.exists(
+                file.resolveSibling("body" + AbstractDownloadModel.PART)));
+    }
+
+
+    @Test
+    public void failedDownloadResumed() throws Exception
+    {
+        Path file = Files.createTempDirectory("download").resolve("body");
+        StubDownload failing =
+                new StubDownload(file, 4, true, BODY.length / 2);
+        try
+        {
+            failing.call();
+            fail("Segment should have failed");
+        }
+        catch (IOException e)
+        {
+            assertTrue(Files.exists(
+                    file.resolveSibling("body" + AbstractDownloadModel.PART)));
+        }
+
+        StubDownload resumed = new StubDownload(file, 4, true, -1);
+        assertEquals(resumed.call().longValue(), BODY.length);
+        assertTrue(resumed.getResumed() > 0);
+        assertEquals(resumed.served.get(), BODY.length - resumed.getResumed());
+        assertEquals(Files.readAllBytes(file), BODY);
+    }
+
+
+    @Test
+    public void unrangedDownloadedWhole() throws Exception
+    {
+        Path file = Files.createTempDirectory("download").resolve("body");
+        Files.write(file, new byte[BODY.length * 2]);
+        StubDownload download = new StubDownload(file, 4, false, -1);
+
+        assertEquals(download.call().longValue(), BODY.length);
+        assertEquals(download.getSegments(), 1);
+        assertEquals(download.getStatusCode(), 200);
+        assertEquals(Files.readAllBytes(file), BODY);
+    }
+
+    /**
+     * Serves the body from memory, failing part way through the ranges that
+     * start at or just past a given byte, if any
+     */
+    private static final class StubDownload extends AbstractDownloadModel
+    {
+        private final boolean ranges;
+
+        private final long failAt;
+
+        final AtomicLong served = new AtomicLong();
+
+
+        StubDownload(final Path file, final int segments,
+                final boolean ranges, final long failAt)
+        {
+            super(0, new Auditor(), GET, file, segments);
+            this.ranges = ranges;
+            this.failAt = failAt;
+        }
+
+
+        @Override
+        protected Probe probe()
+        {
+            return new Probe(200, BODY.length, ranges,
+                    ranges ? "\"v1\"" : "", "");
+        }
+
+
+        @Override
+        protected Transfer open(final long from, final long to,
+                final String validator)
+        {
+            int start = (int) from;
+            int end = to < 0 ? BODY.length - 1 : (int) to;
+            InputStream body =
+                    new ByteArrayInputStream(BODY, start, end - start + 1);
+            if (failAt >= 0 && from < failAt + 10_000 && failAt <= end)
+            {
+                body = new SequenceInputStream(
+                        new ByteArrayInputStream(BODY, start, 1000),
+                        new InputStream()
+                        {
+                            @Override
+                            public int read() throws IOException
+                            {
+                                throw new IOException("Connection reset");
+                            }
+                        });
+            }
+            InputStream counted = body;
+            return new Transfer()
+            {
+                @Override
+                public int getStatus()
+                {
+                    return to < 0 ? 200 : 206;
+                }
+
+
+                @Override
+                public InputStream getBody()
+                {
+                    return new InputStream()
+                    {
+                        @Override
+                        public int read() throws IOException
+                        {
+                            int read = counted.read();
+                            served.addAndGet(read < 0 ? 0 : 1);
+                            return read;
+                        }
+
+
+                        @Override
+                        public int read(final byte[] b, final int off,
+                                final int len) throws IOException
+                        {
+                            int read = counted.read(b, off, len);
+                            served.addAndGet(Math.max(0, read));
+                            return read;
+                        }
+                    };
+                }
+
+
+                @Override
+                public void close()
+                {
+                    // Nothing held
+                }
+            };
+        }
+
+
+        @Override
+        protected void prepareClient()
+        {
+            // Nothing to prepare
+        }
+
+
+        @Override
+        protected void closeClient()
+        {
+            // Nothing to close
+        }
+
+
+        @Override
+        public boolean neededClientAuth()
+        {
+            return false;
+        }
+    }
+}
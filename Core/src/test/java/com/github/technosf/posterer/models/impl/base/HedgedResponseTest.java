@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models.impl.base;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.DownloadModel;
+import com.github.technosf.posterer.models.HedgePolicy;
+import com.github.technosf.posterer.models.HedgeStats;
+import com.github.technosf.posterer.models.Proxy;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.KeyStoreBean;
+import com.github.technosf.posterer.models.impl.RequestBean;
+import com.github.technosf.posterer.utils.Auditor;
+
+/**
+ * HedgedResponse unit tests, hedging through {@code AbstractRequestModel}
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class HedgedResponseTest
+{
+    private static final Request GET =
+            new RequestBean("http://a.example/", "", "GET", "", "", false);
+
+    private static final Request POST = new RequestBean("http://a.example/",
+            "{}", "POST", "", "application/json", false);
+
+
+    @Test
+    public void slowRequestHedged() throws Exception
+    {
+        StubRequestModel model = new StubRequestModel();
+        model.setCoalescing(false);
+        model.setHedging(HedgePolicy.parse("p90:10"));
+        prime(model, GET);
+
+        model.stalls.add(2000L); // The first attempt stalls, its hedge not
+        ResponseModel view = model.doRequest(GET);
+        long start = System.nanoTime();
+        ((Callable<?>) view).call();
+
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        assertEquals(view.getStatusCode(), 200);
+        assertTrue(view.getStatus().startsWith("Hedged after"));
+
+        List<StubResponse> sent = model.responses;
+        StubResponse stalled = sent.get(sent.size() - 2);
+        assertTrue(stalled.isCancelled());
+        assertFalse(sent.get(sent.size() - 1).isCancelled());
+
+        HedgeStats stats = model.getHedgeStats();
+        assertEquals(stats.getHedged(), 1);
+        assertEquals(stats.getWins(), 1);
+    }
+
+
+    @Test
+    public void onlyIdempotentWithinBudgetHedged() throws Exception
+    {
+        StubRequestModel model = new StubRequestModel();
+        model.setHedging(HedgePolicy.parse("p50:0"));
+        prime(model, GET);
+        model.delayMillis.set(100);
+        ((Callable<?>) model.doRequest(GET)).call();
+        assertEquals(model.getHedgeStats().getHedged(), 0);
+
+        model.setHedging(POST, HedgePolicy.parse("p50:100"));
+        assertEquals(model.getHedging(GET).getBudgetPercent(), 0.0);
+        model.delayMillis.set(5);
+        prime(model, POST);
+        int sent = model.responses.size();
+        model.delayMillis.set(100);
+        ((Callable<?>) model.doRequest(POST)).call();
+        assertEquals(model.responses.size(), sent + 1);
+        assertEquals(model.getHedgeStats().getHedged(), 0);
+    }
+
+
+    /**
+     * Fires enough quick requests to take a percentile from
+     */
+    private static void prime(final StubRequestModel model,
+            final Request request) throws Exception
+    {
+        model.delayMillis.set(5);
+        for (int i = 0; i < HedgedResponse.MIN_SAMPLES; i++)
+        {
+            ((Callable<?>) model.doRequest(request)).call();
+        }
+    }
+
+    /**
+     * Creates responses that take as long as set, or stall, keeping those
+     * created
+     */
+    private static final class StubRequestModel
+            extends AbstractRequestModel<StubResponse>
+    {
+        final AtomicLong delayMillis = new AtomicLong();
+
+        final Queue<Long> stalls = new ConcurrentLinkedQueue<>();
+
+        final List<StubResponse> responses = new CopyOnWriteArrayList<>();
+
+
+        @Override
+        protected StubResponse createRequest(int requestId, Auditor auditor,
+                int timeout, Request request)
+        {
+            Long stall = stalls.poll();
+            StubResponse response = new StubResponse(requestId, auditor,
+                    request, stall != null ? stall : delayMillis.get());
+            responses.add(response);
+            return response;
+        }
+
+
+        @Override
+        protected StubResponse createRequest(int requestId, Auditor auditor,
+                int timeout, Request request, Proxy proxy)
+        {
+            return createRequest(requestId, auditor, timeout, request);
+        }
+
+
+        @Override
+        protected StubResponse createRequest(int requestId, Auditor auditor,
+                int timeout, Request request, KeyStoreBean keyStoreBean,
+                String alias)
+        {
+            return createRequest(requestId, auditor, timeout, request);
+        }
+
+
+        @Override
+        protected StubResponse createRequest(int requestId, Auditor auditor,
+                int timeout, Request request, Proxy proxy,
+                KeyStoreBean keyStoreBean, String alias)
+        {
+            return createRequest(requestId, auditor, timeout, request);
+        }
+
+
+        @Override
+        public DownloadModel download(Request request, Path file, int segments)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A response that takes a while
+     */
+    private static final class StubResponse
+            extends AbstractResponseModelTask<Long>
+    {
+        private final long delayMillis;
+
+        private boolean processed;
+
+
+        StubResponse(final int requestId, final Auditor auditor,
+                final Request request, final long delayMillis)
+        {
+            super(requestId, auditor, 0, request);
+            this.delayMillis = delayMillis;
+        }
+
+
+        @Override
+        protected void prepareClient()
+        {
+            // Nothing to prepare
+        }
+
+
+        @Override
+        protected Long getReponse(final Auditor auditor) throws Exception
+        {
+            Thread.sleep(delayMillis);
+            return delayMillis;
+        }
+
+
+        @Override
+        protected synchronized void processResponse()
+        {
+            if (!processed && getValue() != null)
+            {
+                responseBody = "slept " + getValue();
+                bufferBody();
+                processed = true;
+            }
+        }
+
+
+        @Override
+        protected boolean isResponseProcessed()
+        {
+            return processed;
+        }
+
+
+        @Override
+        protected void closeClient()
+        {
+            // Nothing to close
+        }
+
+
+        @Override
+        public int getStatusCode()
+        {
+            processResponse();
+            return processed ? 200 : 0;
+        }
+
+
+        @Override
+        public String getStatus()
+        {
+            return auditor.toString();
+        }
+
+
+        @Override
+        public boolean neededClientAuth()
+        {
+            return false;
+        }
+    }
+}
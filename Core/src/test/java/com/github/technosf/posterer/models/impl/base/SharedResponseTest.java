@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.models.impl.base;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.DownloadModel;
+import com.github.technosf.posterer.models.Proxy;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.KeyStoreBean;
+import com.github.technosf.posterer.models.impl.RequestBean;
+import com.github.technosf.posterer.utils.Auditor;
+
+/**
+ * SharedResponse unit tests, coalescing through {@code AbstractRequestModel}
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class SharedResponseTest
+{
+    private static final int CALLERS = 6;
+
+
+    @Test
+    public void identicalGetsShareOneCall() throws Exception
+    {
+        StubRequestModel model = new StubRequestModel();
+        List<ResponseModel> views = fire(model,
+                new RequestBean("http://a.example/", "", "GET", "", "", false));
+
+        assertEquals(model.calls.get(), 1);
+        Set<Integer> ids = new HashSet<>();
+        for (ResponseModel view : views)
+        {
+            assertEquals(view.getStatusCode(), 200);
+            assertEquals(view.getBody(), "body 1");
+            ids.add(view.getReferenceId());
+        }
+        assertEquals(ids.size(), CALLERS);
+    }
+
+
+    @Test
+    public void postsAndDisabledNotShared() throws Exception
+    {
+        StubRequestModel model = new StubRequestModel();
+        fire(model, new RequestBean("http://a.example/", "{}", "POST", "",
+                "application/json", false));
+        assertEquals(model.calls.get(), CALLERS);
+
+        model.setCoalescing(false);
+        fire(model,
+                new RequestBean("http://a.example/", "", "GET", "", "", false));
+        assertEquals(model.calls.get(), 2 * CALLERS);
+    }
+
+
+    @Test
+    public void cancelledMemberStopsWaiting() throws Exception
+    {
+        StubRequestModel model = new StubRequestModel();
+        Request request =
+                new RequestBean("http://a.example/", "", "GET", "", "", false);
+        ResponseModel leader = model.doRequest(request);
+        ResponseModel member = model.doRequest(request);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            Future<?> led = executor.submit((Callable<?>) leader);
+            Thread.sleep(50);
+            Future<?> joined = executor.submit((Callable<?>) member);
+            Thread.sleep(50);
+            member.cancel();
+            try
+            {
+                joined.get();
+                fail("Member not cancelled");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof CancellationException);
+            }
+            assertFalse(led.isDone());
+            led.get();
+            assertEquals(leader.getStatusCode(), 200);
+            assertEquals(model.calls.get(), 1);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void cancelledLeaderStopsWaiting() throws Exception
+    {
+        StubRequestModel model = new StubRequestModel();
+        Request request =
+                new RequestBean("http://a.example/", "", "GET", "", "", false);
+        ResponseModel leader = model.doRequest(request);
+        ResponseModel member = model.doRequest(request);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            Future<?> led = executor.submit((Callable<?>) leader);
+            Thread.sleep(50);
+            Future<?> joined = executor.submit((Callable<?>) member);
+            Thread.sleep(50);
+            leader.cancel();
+            try
+            {
+                led.get(100, TimeUnit.MILLISECONDS);
+                fail("Leader not cancelled");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof CancellationException);
+            }
+            assertFalse(joined.isDone());
+            joined.get();
+            assertEquals(member.getStatusCode(), 200);
+            assertEquals(member.getBody(), "body 1");
+            assertFalse(member.isCancelled());
+            assertEquals(model.calls.get(), 1);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Fires the request from many threads at once
+     */
+    private static List<ResponseModel> fire(final StubRequestModel model,
+            final Request request) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try
+        {
+            List<ResponseModel> views = new ArrayList<>();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++)
+            {
+                ResponseModel view = model.doRequest(request);
+                views.add(view);
+                futures.add(executor.submit((Callable<?>) view));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+            return views;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates responses that take a while, counting those called
+     */
+    private static final class StubRequestModel
+            extends AbstractRequestModel<StubResponse>
+    {
+        final AtomicInteger calls = new AtomicInteger();
+
+
+        @Override
+        protected StubResponse createRequest(int requestId, Auditor auditor,
+                int timeout, Request request)
+        {
+            return new StubResponse(requestId, auditor, request, calls);
+        }
+
+
+        @Override
+        protected StubResponse createRequest(int requestId, Auditor auditor,
+                int timeout, Request request, Proxy proxy)
+        {
+            return createRequest(requestId, auditor, timeout, request);
+        }
+
+
+        @Override
+        protected StubResponse createRequest(int requestId, Auditor auditor,
+                int timeout, Request request, KeyStoreBean keyStoreBean,
+                String alias)
+        {
+            return createRequest(requestId, auditor, timeout, request);
+        }
+
+
+        @Override
+        protected StubResponse createRequest(int requestId, Auditor auditor,
+                int timeout, Request request, Proxy proxy,
+                KeyStoreBean keyStoreBean, String alias)
+        {
+            return createRequest(requestId, auditor, timeout, request);
+        }
+
+
+        @Override
+        public DownloadModel download(Request request, Path file, int segments)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A response that takes 200ms
+     */
+    private static final class StubResponse
+            extends AbstractResponseModelTask<Integer>
+    {
+        private final AtomicInteger calls;
+
+        private boolean processed;
+
+
+        StubResponse(final int requestId, final Auditor auditor,
+                final Request request, final AtomicInteger calls)
+        {
+            super(requestId, auditor, 0, request);
+            this.calls = calls;
+        }
+
+
+        @Override
+        protected void prepareClient()
+        {
+            // Nothing to prepare
+        }
+
+
+        @Override
+        protected Integer getReponse(final Auditor auditor) throws Exception
+        {
+            int call = calls.incrementAndGet();
+            Thread.sleep(200);
+            return call;
+        }
+
+
+        @Override
+        protected synchronized void processResponse()
+        {
+            Integer call = getValue();
+            if (!processed && call != null)
+            {
+                responseBody = "body " + call;
+                bufferBody();
+                processed = true;
+            }
+        }
+
+
+        @Override
+        protected boolean isResponseProcessed()
+        {
+            return processed;
+        }
+
+
+        @Override
+        protected void closeClient()
+        {
+            // Nothing to close
+        }
+
+
+        @Override
+        public int getStatusCode()
+        {
+            return processed ? 200 : 0;
+        }
+
+
+        @Override
+        public String getStatus()
+        {
+            return auditor.toString();
+        }
+
+
+        @Override
+        public boolean neededClientAuth()
+        {
+            return false;
+        }
+    }
+}
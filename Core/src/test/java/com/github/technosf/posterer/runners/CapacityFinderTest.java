@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.impl.RequestBean;
+
+/**
+ * CapacityFinder unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class CapacityFinderTest
+{
+    private static final double KNEE = 100;
+
+
+    @Test
+    public void searchStopsAtRelativePrecision() throws InterruptedException
+    {
+        CapacityFinder finder =
+                new CapacityFinder(new KneeGenerator(), 10_000, 0.01);
+        finder.setStartRate(10);
+        finder.setProbeMillis(1000);
+        List<CapacityFinder.Probe> probed = new ArrayList<>();
+
+        CapacityFinder.Result result = finder.find(
+                new RequestBean("http://knee.example/", "", "GET", "", "",
+                        false),
+                probed::add);
+
+        /*
+         * Passes to 100, fails at 110, then 105 is within 5% of the failure
+         */
+        assertEquals(result.getKnee().getRate(), 100.0);
+        assertEquals(result.getBreach().getRate(), 105.0);
+        assertEquals(result.getCurve().size(), 12);
+        assertEquals(probed.get(11).getPhase(), CapacityFinder.Phase.SEARCH);
+    }
+
+    /**
+     * Generator whose latency breaks the objective past the knee, without
+     * sending anything
+     */
+    private static class KneeGenerator
+            extends LoadGenerator
+    {
+        KneeGenerator()
+        {
+            super(() -> null, 1, 1);
+        }
+
+
+        @Override
+        public LoadStats run(final Request request,
+                final ArrivalSchedule schedule, final long durationMillis,
+                final Reporter reporter)
+        {
+            double rate = schedule.getRate(0);
+            LoadStats stats = new LoadStats();
+            for (long i = Math.round(rate * durationMillis / 1000); i > 0; i--)
+            {
+                stats.record(200, rate <= KNEE ? 1_000 : 50_000);
+            }
+            return stats;
+        }
+    }
+}
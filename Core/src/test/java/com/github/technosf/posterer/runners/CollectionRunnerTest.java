@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.impl.RequestBean;
+
+/**
+ * CollectionRunner unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class CollectionRunnerTest
+{
+    @Test
+    public void perHostBound() throws InterruptedException
+    {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            requests.add(new RequestBean("http://a.example/" + i, "", "GET",
+                    "", "", false));
+            requests.add(new RequestBean("http://b.example/" + i, "", "GET",
+                    "", "", false));
+        }
+
+        StubRequestModel model =
+                new StubRequestModel().sleep(5).status("b.example", 404);
+        AtomicInteger heard = new AtomicInteger();
+        RunSummary summary = new CollectionRunner(model, 3, 16)
+                .run(requests, (request, response, error) -> heard
+                        .incrementAndGet());
+
+        assertEquals(heard.get(), 40);
+        assertEquals(summary.getCount(), 40);
+        assertEquals(summary.getFailures(), 20); // b.example returns 404
+        assertEquals((int) summary.getStatusCounts().get(200), 20);
+        assertTrue(model.peak.get("a.example").get() <= 3);
+        assertTrue(model.peak.get("b.example").get() <= 3);
+    }
+
+
+    @Test
+    public void cancelStopsRun() throws InterruptedException
+    {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            requests.add(new RequestBean("http://hang.example/" + i, "", "GET",
+                    "", "", false));
+        }
+
+        CollectionRunner runner = new CollectionRunner(
+                new StubRequestModel().hang("hang.example"), 4, 16);
+        new Thread(() -> {
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            runner.cancel();
+        }).start();
+
+        long start = System.nanoTime();
+        RunSummary summary = runner.run(requests, (r, s, e) -> {
+        });
+
+        assertTrue(System.nanoTime() - start < 2_000_000_000L);
+        assertEquals(summary.getSkipped(), 100);
+        assertEquals(summary.getCount(), 0);
+    }
+
+
+    @Test
+    public void prewarmEachHost() throws InterruptedException
+    {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            requests.add(new RequestBean("http://a.example/" + i, "", "GET",
+                    "", "", false));
+        }
+        requests.add(new RequestBean("http://b.example/", "", "GET", "", "",
+                false));
+
+        CollectionRunner runner =
+                new CollectionRunner(new StubRequestModel().sleep(5), 3, 16);
+        runner.setPrewarm(true);
+        RunSummary summary = runner.run(requests, (r, s, e) -> {
+        });
+
+        Map<String, Integer> warmed = new HashMap<>();
+        summary.getWarmups().forEach(
+                w -> warmed.put(w.getRoute(), w.getRequested()));
+        assertEquals(warmed.size(), 2);
+        assertEquals((int) warmed.get("http://a.example/0"), 3);
+        assertEquals((int) warmed.get("http://b.example/"), 1);
+        assertTrue(summary.toString().contains("warmed 4/4 connections"));
+    }
+
+
+    @Test
+    public void summaryPercentiles()
+    {
+        RunSummary summary = new RunSummary();
+        for (int i = 1; i <= 100; i++)
+        {
+            summary.record(200, i);
+        }
+        summary.record(RunSummary.STATUS_ERROR, 0);
+
+        assertEquals(summary.getLatencyPercentile(50), 50);
+        assertEquals(summary.getLatencyPercentile(100), 100);
+        assertEquals(summary.getFailures(), 1);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.impl.RequestBean;
+
+/**
+ * Feeder and RequestTemplate unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class FeederTest
+{
+    @Test
+    public void csv() throws IOException
+    {
+        Feeder feeder = feeder("id,name,note\r\n"
+                + "1,plain,\r\n"
+                + "2,\"quoted, \"\"twice\"\"\",\"two\nlines\"\n"
+                + "\n"
+                + "3,short\n", Feeder.Format.CSV, false);
+        Feeder.Row row = new Feeder.Row();
+
+        assertEquals(feeder.getColumns(), Arrays.asList("id", "name", "note"));
+        assertTrue(feeder.next(row));
+        assertEquals(row.get(1), "plain");
+        assertEquals(row.get(2), "");
+        assertTrue(feeder.next(row));
+        assertEquals(row.get(1), "quoted, \"twice\"");
+        assertEquals(row.get(2), "two\nlines");
+        assertTrue(feeder.next(row));
+        assertEquals(row.get(0), "3");
+        assertEquals(row.get(2), "");
+        assertFalse(feeder.next(row));
+    }
+
+
+    @Test
+    public void jsonLines() throws IOException
+    {
+        Feeder feeder = feeder("{\"id\": 1, \"name\": \"caf\\u00e9\", \"ok\": true}\n"
+                + "{\"name\":\"tab\\there \\ud83d\\ude00\",\"extra\":\"x\",\"id\":null}\n",
+                Feeder.Format.JSONL, true);
+        Feeder.Row row = new Feeder.Row();
+
+        assertEquals(feeder.getColumns(), Arrays.asList("id", "name", "ok"));
+        assertTrue(feeder.next(row));
+        assertEquals(row.get(0), "1");
+        assertEquals(row.get(1), "café");
+        assertEquals(row.get(2), "true");
+        assertTrue(feeder.next(row));
+        assertEquals(row.get(0), "");
+        assertEquals(row.get(1), "tab\there 😀");
+        assertEquals(row.get(2), "");
+
+        /*
+         * Circular: starts over
+         */
+        assertTrue(feeder.next(row));
+        assertEquals(row.get(0), "1");
+    }
+
+
+    @Test
+    public void renderRequest() throws IOException
+    {
+        Feeder feeder = feeder("user,qty\nalice,3\n", Feeder.Format.CSV,
+                false);
+        Feeder.Row row = new Feeder.Row();
+        RequestTemplate template = new RequestTemplate(new RequestBean(
+                "http://load.example/${user}", "<qty>${qty}</qty>", "POST",
+                "", "text/xml", false));
+        assertFalse(template.isConstant());
+
+        assertTrue(feeder.next(row));
+        Request request = template.bind(feeder.getColumns()).render(row);
+        assertEquals(request.getEndpoint(), "http://load.example/alice");
+        assertEquals(request.getPayload(), "<qty>3</qty>");
+        assertEquals(request.getMethod(), "POST");
+        assertEquals(request.getContentType(), "text/xml");
+    }
+
+
+    @Test
+    public void batches() throws IOException
+    {
+        Feeder feeder = feeder("id,name\n1,a\n2,a much longer name\n3,c\n"
+                + "4,d\n5,e\n", Feeder.Format.CSV, false);
+        Feeder.Batch first = new Feeder.Batch(feeder, 2);
+        Feeder.Batch second = new Feeder.Batch(feeder, 2);
+        Feeder.Row row = new Feeder.Row();
+
+        assertEquals(first.getColumns(), Arrays.asList("id", "name"));
+        assertTrue(first.next(row));
+        assertEquals(row.get(0), "1");
+        assertTrue(second.next(row));
+        assertEquals(row.get(0), "3");
+        assertTrue(first.next(row));
+        assertEquals(row.get(1), "a much longer name");
+        assertTrue(first.next(row));
+        assertEquals(row.get(0), "5");
+        assertEquals(row.get(1), "e");
+        assertTrue(second.next(row));
+        assertEquals(row.get(0), "4");
+
+        /*
+         * Each row is taken once
+         */
+        assertFalse(first.next(row));
+        assertFalse(second.next(row));
+    }
+
+
+    /* ------------------ Helpers -------------------- */
+
+    private static Feeder feeder(final String text, final Feeder.Format format,
+            final boolean circular) throws IOException
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return new Feeder(() -> new ByteArrayInputStream(bytes), format,
+                circular, "test");
+    }
+}
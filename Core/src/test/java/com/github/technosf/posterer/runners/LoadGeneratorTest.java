@@ -0,0 +1,310 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.impl.RequestBean;
+
+/**
+ * LoadGenerator, ArrivalSchedule, LatencyHistogram, CapacityFinder and
+ * Scenario unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class LoadGeneratorTest
+{
+    private final Request request =
+            new RequestBean("http://load.example/", "", "GET", "", "", false);
+
+
+    @Test
+    public void histogramBuckets()
+    {
+        for (long value : new long[] { 0, 1, 63, 64, 65, 127, 128, 1000,
+                123_456, 10_000_000_000L, Long.MAX_VALUE })
+        {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.upper(index) >= value);
+            assertTrue(index == 0
+                    || LatencyHistogram.upper(index - 1) < value);
+        }
+    }
+
+
+    @Test
+    public void histogramPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.record(i * 10);
+        }
+
+        assertEquals(histogram.getCount(), 1000);
+        assertEquals(histogram.getMin(), 10);
+        assertEquals(histogram.getMax(), 10_000);
+        assertEquals(histogram.getPercentile(100), 10_000);
+        assertEquals(histogram.getMean(), 5005);
+        assertWithin(histogram.getPercentile(50), 5000);
+        assertWithin(histogram.getPercentile(99), 9900);
+    }
+
+
+    @Test
+    public void histogramMerge()
+    {
+        LatencyHistogram low = new LatencyHistogram();
+        LatencyHistogram high = new LatencyHistogram();
+        for (int i = 0; i < 100; i++)
+        {
+            low.record(100);
+            high.record(100_000);
+        }
+        low.merge(high);
+
+        assertEquals(low.getCount(), 200);
+        assertEquals(low.getMin(), 100);
+        assertEquals(low.getMax(), 100_000);
+        assertWithin(low.getPercentile(50), 100);
+        assertWithin(low.getPercentile(51), 100_000);
+    }
+
+
+    @Test
+    public void histogramsReadTogether()
+    {
+        LatencyHistogram one = new LatencyHistogram();
+        LatencyHistogram two = new LatencyHistogram();
+        LatencyHistogram merged = new LatencyHistogram();
+        for (int i = 1; i <= 500; i++)
+        {
+            one.record(i * 7);
+            two.record(i * 1_301);
+        }
+        merged.merge(one);
+        merged.merge(two);
+
+        for (double percentile : new double[] { 1, 25, 50, 90, 99, 100 })
+        {
+            assertEquals(one.getPercentile(percentile, two),
+                    merged.getPercentile(percentile));
+        }
+        assertEquals(one.getMeanAbove(5_000, two), merged.getMeanAbove(5_000));
+        assertEquals(one.getCount(), 500); // Neither is changed
+    }
+
+
+    @Test
+    public void shardsFireTheirShare() throws InterruptedException
+    {
+        List<StubRequestModel> models = new CopyOnWriteArrayList<>();
+        AtomicLong reported = new AtomicLong();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        LoadGenerator generator = new LoadGenerator(() -> {
+            StubRequestModel model = new StubRequestModel(threads);
+            models.add(model);
+            return model;
+        }, 4, 10);
+        generator.setReportMillis(10);
+        LoadStats total = generator.run(request, 1003, 0,
+                (interval, sofar, elapsed) -> {
+                    reported.addAndGet(interval.getCount());
+                    assertEquals(sofar.getCount(), reported.get());
+                });
+
+        assertEquals(models.size(), 4);
+        assertEquals(models.get(0).warmed.get(), 3);
+        assertEquals(models.get(1).warmed.get(), 3);
+        assertEquals(models.get(2).warmed.get(), 2);
+        assertEquals(models.get(3).warmed.get(), 2);
+        assertEquals(threads.size(), 10);
+        assertEquals(total.getCount(), 1003);
+        assertEquals(reported.get(), 1003);
+        assertEquals((long) total.getStatusCounts().get(200), 1003);
+        assertEquals(total.getFailures(), 0);
+    }
+
+
+    @Test
+    public void durationBoundsRun() throws InterruptedException
+    {
+        long start = System.nanoTime();
+        LoadStats total = new LoadGenerator(
+                () -> new StubRequestModel(), 2,
+                4).run(request, 0, 200, (i, t, e) -> {
+                });
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(millis >= 200 && millis < 2000);
+        assertTrue(total.getCount() > 0);
+    }
+
+
+    @Test
+    public void constantArrivalsStaggered()
+    {
+        ArrivalSchedule schedule = ArrivalSchedule.constant(1000);
+        ArrivalSchedule.Arrivals first = schedule.shard(0, 2);
+        ArrivalSchedule.Arrivals second = schedule.shard(1, 2);
+
+        assertEquals(first.next(), 0);
+        assertEquals(second.next(), 1_000_000);
+        assertEquals(first.next(), 2_000_000);
+        assertEquals(second.next(), 3_000_000);
+    }
+
+
+    @Test
+    public void rampSteps()
+    {
+        ArrivalSchedule schedule = ArrivalSchedule.ramp(100, 300, 3, 1000);
+
+        assertEquals(schedule.getDurationMillis(), 3000);
+        assertEquals(schedule.getRate(0), 100.0);
+        assertEquals(schedule.getRate(1500), 200.0);
+        assertEquals(schedule.getRate(5000), 300.0);
+    }
+
+
+    @Test
+    public void poissonMeanRate()
+    {
+        ArrivalSchedule.Arrivals arrivals =
+                ArrivalSchedule.poisson(1000, 42).shard(0, 1);
+        long last = 0;
+        for (int i = 0; i < 10_000; i++)
+        {
+            long next = arrivals.next();
+            assertTrue(next >= last);
+            last = next;
+        }
+        assertTrue(Math.abs(last - 10_000_000_000L) < 500_000_000L);
+    }
+
+
+    @Test
+    public void openRunPaces() throws InterruptedException
+    {
+        long start = System.nanoTime();
+        LoadStats total = new LoadGenerator(
+                () -> new StubRequestModel(), 2,
+                4).run(request, ArrivalSchedule.constant(200), 500,
+                        (i, t, e) -> {
+                        });
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(millis >= 495 && millis < 2000);
+        assertEquals(total.getCount(), 100);
+    }
+
+
+    @Test
+    public void capacityBracketsKnee() throws InterruptedException
+    {
+        /*
+         * Two workers of 5ms responses top out below 400/s, and a probe
+         * passes at up to 5% short of its rate
+         */
+        LoadGenerator generator = new LoadGenerator(
+                () -> new StubRequestModel().sleep(5), 1,
+                2);
+        generator.run(request, 200, 0, (interval, sofar, elapsed) -> {
+            // Warm up, so that a cold start does not fail the first probe
+        });
+        CapacityFinder finder = new CapacityFinder(generator, 50_000, 0.01);
+        finder.setStartRate(100);
+        finder.setProbeMillis(250);
+        finder.setPrecision(0.1);
+        AtomicInteger probes = new AtomicInteger();
+        CapacityFinder.Result result =
+                finder.find(request, probe -> probes.incrementAndGet());
+
+        CapacityFinder.Probe knee = result.getKnee();
+        CapacityFinder.Probe breach = result.getBreach();
+        assertTrue(knee != null && breach != null, result.toString());
+        assertTrue(knee.getRate() >= 100 && knee.getRate() < 420,
+                result.toString());
+        assertTrue(breach.getRate() > knee.getRate());
+        assertTrue(breach.getRate() - knee.getRate() <= 0.1
+                * breach.getRate());
+        assertEquals(result.getCurve().size(), probes.get());
+    }
+
+
+    @Test
+    public void virtualUsersTakenInVisitOrder()
+    {
+        VirtualUsers users = new VirtualUsers(100_000, 42, 0, 1_000_000_000L);
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++)
+        {
+            int user = users.take();
+            assertTrue(users.getVisitAt(user) >= last);
+            last = users.getVisitAt(user);
+            users.release(user, last + 2_000_000_000L);
+        }
+        assertTrue(last < 1_000_000_000L);
+    }
+
+
+    @Test
+    public void scenarioMixByWeight() throws InterruptedException
+    {
+        Request soap = new RequestBean("http://load.example/soap", "<x/>",
+                "POST", "", "text/xml", false);
+        Scenario scenario = new Scenario(Arrays.asList(
+                new Scenario.Step("get", request, 3, ThinkTime.parse("fixed:2")),
+                new Scenario.Step("soap", soap, 1,
+                        ThinkTime.parse("uniform:1-3"))));
+        assertEquals(scenario.pick(0), 0);
+        assertEquals(scenario.pick(0.74), 0);
+        assertEquals(scenario.pick(0.76), 1);
+
+        LoadStats total = new LoadGenerator(
+                () -> new StubRequestModel(), 2,
+                4).run(scenario, 50, 300, (i, t, e) -> {
+                });
+
+        long gets = total.getSteps().get("get").getCount();
+        long soaps = total.getSteps().get("soap").getCount();
+        assertEquals(gets + soaps, total.getCount());
+        assertTrue(soaps > 100, total.toString());
+        assertTrue(gets > 2 * soaps && gets < 4 * soaps, total.toString());
+    }
+
+
+    /* ------------------ Helpers -------------------- */
+
+    private static void assertWithin(final long actual, final long expected)
+    {
+        assertTrue(Math.abs(actual - expected) <= expected / 32 + 1,
+                actual + " not within 3% of " + expected);
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.runners;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.technosf.posterer.models.DownloadModel;
+import com.github.technosf.posterer.models.Proxy;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.RequestModel;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.KeyStoreBean;
+import com.github.technosf.posterer.models.impl.WarmupBean;
+
+/**
+ * Request model for the runner tests, whose responses return at once or after
+ * a sleep, noting the thread each ran on and the peak concurrency per host.
+ * <p>
+ * Responses are 200 unless a status is set for their host, and those for a
+ * hanging host wait until cancelled.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+class StubRequestModel
+        implements RequestModel
+{
+    /**
+     * Connections pre-warmed
+     */
+    final AtomicInteger warmed = new AtomicInteger();
+
+    /**
+     * Peak concurrency seen per host
+     */
+    final Map<String, AtomicInteger> peak = new ConcurrentHashMap<>();
+
+    /**
+     * Ids of the threads responses were called on
+     */
+    final Set<String> threads;
+
+    private final Map<String, AtomicInteger> current =
+            new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> statuses = new ConcurrentHashMap<>();
+
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private volatile long sleepMillis;
+
+    private volatile String hangHost;
+
+
+    StubRequestModel()
+    {
+        this(ConcurrentHashMap.newKeySet());
+    }
+
+
+    /**
+     * @param threads
+     *            where to note response threads, shared between models
+     */
+    StubRequestModel(final Set<String> threads)
+    {
+        this.threads = threads;
+    }
+
+
+    /**
+     * Has each response sleep before returning
+     *
+     * @param millis
+     *            the sleep
+     * @return this model
+     */
+    StubRequestModel sleep(final long millis)
+    {
+        sleepMillis = millis;
+        return this;
+    }
+
+
+    /**
+     * Has responses for the host wait until cancelled
+     *
+     * @param host
+     *            the host
+     * @return this model
+     */
+    StubRequestModel hang(final String host)
+    {
+        hangHost = host;
+        return this;
+    }
+
+
+    /**
+     * Sets the status of responses for the host
+     *
+     * @param host
+     *            the host
+     * @param status
+     *            the status code
+     * @return this model
+     */
+    StubRequestModel status(final String host, final int status)
+    {
+        statuses.put(host, status);
+        return this;
+    }
+
+
+    @Override
+    public ResponseModel doRequest(final Request request)
+    {
+        return new StubResponseModel(ids.incrementAndGet(), request);
+    }
+
+
+    @Override
+    public ResponseModel doRequest(Request request, Proxy proxy)
+    {
+        return doRequest(request);
+    }
+
+
+    @Override
+    public ResponseModel doRequest(Request request,
+            KeyStoreBean keyStoreBean, String alias)
+    {
+        return doRequest(request);
+    }
+
+
+    @Override
+    public ResponseModel doRequest(Request request, Proxy proxy,
+            KeyStoreBean keyStoreBean, String alias)
+    {
+        return doRequest(request);
+    }
+
+
+    @Override
+    public DownloadModel download(Request request, Path file, int segments)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+
+    @Override
+    public void setTimeout(int timeout)
+    {
+    }
+
+
+    @Override
+    public int getTimeout()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public WarmupBean prewarm(Request request, int connections)
+    {
+        warmed.addAndGet(connections);
+        return new WarmupBean(request.getEndpoint(), connections,
+                connections, 1, 1, null);
+    }
+
+    /**
+     * Response model that returns once called, as its request model directs
+     */
+    private class StubResponseModel
+            implements ResponseModel, Callable<Object>
+    {
+        private final int id;
+
+        private final Request request;
+
+        private final String host;
+
+        private volatile boolean cancelled;
+
+
+        StubResponseModel(final int id, final Request request)
+        {
+            this.id = id;
+            this.request = request;
+            this.host = request.getUri().getHost();
+        }
+
+
+        @Override
+        public Object call() throws Exception
+        {
+            threads.add(Long.toString(Thread.currentThread().getId()));
+            if (host.equals(hangHost))
+            /*
+             * Hang until cancelled
+             */
+            {
+                while (!cancelled)
+                {
+                    Thread.sleep(1);
+                }
+                throw new CancellationException();
+            }
+
+            AtomicInteger now =
+                    current.computeIfAbsent(host, h -> new AtomicInteger());
+            peak.computeIfAbsent(host, h -> new AtomicInteger())
+                    .accumulateAndGet(now.incrementAndGet(), Math::max);
+            try
+            {
+                if (sleepMillis > 0)
+                {
+                    Thread.sleep(sleepMillis);
+                }
+            }
+            finally
+            {
+                now.decrementAndGet();
+            }
+            return this;
+        }
+
+
+        @Override
+        public int getReferenceId()
+        {
+            return id;
+        }
+
+
+        @Override
+        public Request getRequest()
+        {
+            return request;
+        }
+
+
+        @Override
+        public boolean isComplete()
+        {
+            return true;
+        }
+
+
+        @Override
+        public long getElaspedTimeMilli()
+        {
+            return sleepMillis;
+        }
+
+
+        @Override
+        public int getStatusCode()
+        {
+            return statuses.getOrDefault(host, 200);
+        }
+
+
+        @Override
+        public String getStatus()
+        {
+            return "";
+        }
+
+
+        @Override
+        public String getResponse()
+        {
+            return "";
+        }
+
+
+        @Override
+        public String getHeaders()
+        {
+            return "";
+        }
+
+
+        @Override
+        public String getBody()
+        {
+            return "";
+        }
+
+
+        @Override
+        public long getWireBytes()
+        {
+            return 0;
+        }
+
+
+        @Override
+        public long getDecodedBytes()
+        {
+            return 0;
+        }
+
+
+        @Override
+        public String getProtocol()
+        {
+            return "http/1.1";
+        }
+
+
+        @Override
+        public int getStreamId()
+        {
+            return 0;
+        }
+
+
+        @Override
+        public boolean neededClientAuth()
+        {
+            return false;
+        }
+
+
+        @Override
+        public boolean cancel()
+        {
+            cancelled = true;
+            return true;
+        }
+
+
+        @Override
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.ConsumptionPolicy;
+
+/**
+ * BodyConsumer unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class BodyConsumerTest
+{
+    private static final byte[] BODY = new byte[100_000];
+
+    static
+    {
+        for (int i = 0; i < BODY.length; i++)
+        {
+            BODY[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+
+    @Test
+    public void digest() throws IOException
+    {
+        CRC32 crc = new CRC32();
+        crc.update(BODY);
+
+        BodyConsumer read = new BodyConsumer(ConsumptionPolicy.DIGEST);
+        assertEquals(read.consume(new ByteArrayInputStream(BODY)),
+                BODY.length);
+        assertEquals(read.getDigest(),
+                String.format("%08x", crc.getValue()));
+        assertEquals(read.getBody(StandardCharsets.US_ASCII), "");
+
+        BodyConsumer pushed = new BodyConsumer(ConsumptionPolicy.DIGEST);
+        pushed.update(ByteBuffer.wrap(BODY, 0, 40_000));
+        ByteBuffer direct = ByteBuffer.allocateDirect(60_000);
+        direct.put(BODY, 40_000, 60_000);
+        direct.flip();
+        pushed.update(direct);
+        assertEquals(pushed.getBytes(), BODY.length);
+        assertEquals(pushed.getDigest(), read.getDigest());
+    }
+
+
+    @Test
+    public void prefix() throws IOException
+    {
+        BodyConsumer consumer =
+                new BodyConsumer(ConsumptionPolicy.parse("prefix:30"));
+        consumer.update(BODY, 0, 10);
+        consumer.consume(new ByteArrayInputStream(BODY, 10, 5000));
+        assertEquals(consumer.getBytes(), 5010);
+        assertEquals(consumer.getDigest(), "");
+        assertEquals(consumer.getBody(StandardCharsets.US_ASCII), new String(
+                Arrays.copyOf(BODY, 30), StandardCharsets.US_ASCII));
+
+        BodyConsumer discard = new BodyConsumer(ConsumptionPolicy.DISCARD);
+        discard.consume(new ByteArrayInputStream(BODY));
+        assertEquals(discard.getBytes(), BODY.length);
+        assertEquals(discard.getBody(StandardCharsets.US_ASCII), "");
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void badPolicy()
+    {
+        ConsumptionPolicy.parse("prefix:lots");
+    }
+}
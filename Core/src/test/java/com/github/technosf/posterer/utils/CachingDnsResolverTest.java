@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * CachingDnsResolver unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class CachingDnsResolverTest
+{
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    /**
+     * Resolves everything to loopback, slowly, except hosts named bad
+     */
+    private final CachingDnsResolver.Lookup counting = host -> {
+        lookups.incrementAndGet();
+        try
+        {
+            Thread.sleep(50);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (host.startsWith("bad"))
+        {
+            throw new UnknownHostException(host);
+        }
+        return new InetAddress[] { InetAddress.getLoopbackAddress() };
+    };
+
+
+    @Test
+    public void caches() throws UnknownHostException
+    {
+        lookups.set(0);
+        CachingDnsResolver resolver =
+                new CachingDnsResolver(counting, 1, 1, TimeUnit.MINUTES);
+
+        assertFalse(resolver.isCached("a.example"));
+        resolver.resolve("a.example");
+        resolver.resolve("A.Example");
+        assertTrue(resolver.isCached("a.example"));
+        assertEquals(lookups.get(), 1);
+        assertEquals(resolver.getHits(), 1);
+        assertEquals(resolver.getMisses(), 1);
+
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                resolver.resolve("bad.example");
+                fail("Resolved a bad host");
+            }
+            catch (UnknownHostException e)
+            {
+                assertEquals(e.getMessage(), "bad.example");
+            }
+        }
+        assertEquals(lookups.get(), 2);
+    }
+
+
+    @Test
+    public void expires() throws UnknownHostException, InterruptedException
+    {
+        lookups.set(0);
+        CachingDnsResolver resolver = new CachingDnsResolver(counting, 10, 10,
+                TimeUnit.MILLISECONDS);
+
+        resolver.resolve("a.example");
+        Thread.sleep(20);
+        assertFalse(resolver.isCached("a.example"));
+        resolver.resolve("a.example");
+        assertEquals(lookups.get(), 2);
+    }
+
+
+    @Test
+    public void preResolveShares() throws InterruptedException,
+            UnknownHostException
+    {
+        lookups.set(0);
+        CachingDnsResolver resolver =
+                new CachingDnsResolver(counting, 1, 1, TimeUnit.MINUTES);
+
+        resolver.preResolve(Arrays.asList("p.example", "p.example", "q.example"));
+        Thread.sleep(10);
+        resolver.resolve("p.example");
+        resolver.resolve("q.example");
+        assertEquals(lookups.get(), 2);
+    }
+
+
+    @Test
+    public void hostsFile() throws IOException
+    {
+        Path hosts = Files.createTempFile("posterer", ".hosts");
+        try
+        {
+            Files.write(hosts, Arrays.asList("# test hosts",
+                    "10.1.2.3  svc.test alias.test  # comment", ""),
+                    StandardCharsets.UTF_8);
+            CachingDnsResolver.Lookup lookup = CachingDnsResolver.hosts(hosts,
+                    CachingDnsResolver.stub(InetAddress.getLoopbackAddress()));
+
+            InetAddress[] addresses = lookup.lookup("ALIAS.test");
+            assertEquals(addresses.length, 1);
+            assertEquals(addresses[0].getHostAddress(), "10.1.2.3");
+            assertTrue(lookup.lookup("other.test")[0].isLoopbackAddress());
+        }
+        finally
+        {
+            Files.delete(hosts);
+        }
+    }
+}
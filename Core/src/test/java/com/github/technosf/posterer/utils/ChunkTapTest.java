@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.BodyChunk;
+
+/**
+ * ChunkTap unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ChunkTapTest
+{
+    private static final String TEXT = "naïve café €5";
+
+
+    @Test
+    public void splitCharacterCarried()
+    {
+        List<BodyChunk> chunks = new ArrayList<>();
+        long start = System.nanoTime();
+        ChunkTap tap = new ChunkTap(chunks::add, StandardCharsets.UTF_8,
+                start, start);
+
+        byte[] body = TEXT.getBytes(StandardCharsets.UTF_8);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < body.length; i += 3)
+        {
+            ByteBuffer piece =
+                    ByteBuffer.wrap(body, i, Math.min(3, body.length - i));
+            tap.tap(piece);
+            assertEquals(piece.position(), i, "Piece left as it was");
+        }
+        int bytes = 0;
+        long at = 0;
+        for (BodyChunk chunk : chunks)
+        {
+            text.append(chunk.getText());
+            bytes += chunk.getBytes();
+            assertTrue(chunk.getAtMicros() >= at);
+            assertTrue(chunk.getGapMicros() >= 0);
+            at = chunk.getAtMicros();
+        }
+
+        assertEquals(chunks.size(), (body.length + 2) / 3);
+        assertEquals(chunks.get(chunks.size() - 1).getIndex(),
+                chunks.size() - 1);
+        assertEquals(bytes, body.length);
+        assertEquals(text.toString(), TEXT);
+    }
+
+
+    @Test
+    public void streamTapped() throws IOException
+    {
+        List<BodyChunk> chunks = new ArrayList<>();
+        long start = System.nanoTime();
+        ChunkTap tap = new ChunkTap(chunks::add, StandardCharsets.UTF_8,
+                start, start);
+
+        InputStream in = tap.wrap(new ByteArrayInputStream(
+                TEXT.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(IOUtils.toString(in, StandardCharsets.UTF_8), TEXT);
+
+        StringBuilder text = new StringBuilder();
+        chunks.forEach(chunk -> text.append(chunk.getText()));
+        assertEquals(text.toString(), TEXT);
+    }
+}
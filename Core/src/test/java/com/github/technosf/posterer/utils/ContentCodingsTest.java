@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+/**
+ * ContentCodings unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ContentCodingsTest
+{
+    private static final String BODY =
+            "{\"compressible\":\"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\"}";
+
+
+    @Test
+    public void acceptEncoding()
+    {
+        assertTrue(ContentCodings.ACCEPT_ENCODING.startsWith("gzip, deflate"));
+        assertEquals(ContentCodings.ACCEPT_ENCODING.endsWith(", br"),
+                ContentCodings.isBrotliAvailable());
+    }
+
+
+    @Test
+    public void gzip() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes))
+        {
+            out.write(BODY.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(decode(" GZIP", bytes.toByteArray()), BODY);
+    }
+
+
+    @Test
+    public void deflate() throws IOException
+    {
+        assertEquals(decode("deflate", deflate(false)), BODY);
+        assertEquals(decode("deflate", deflate(true)), BODY);
+    }
+
+
+    @Test
+    public void identity() throws IOException
+    {
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        assertEquals(decode(null, body), BODY);
+        assertEquals(decode("identity", body), BODY);
+        assertEquals(decode("deflate", new byte[0]), "");
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    private static String decode(final String coding, final byte[] encoded)
+            throws IOException
+    {
+        try (InputStream in = ContentCodings.decode(coding,
+                new ByteArrayInputStream(encoded)))
+        {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+
+    /**
+     * Deflates the body, zlib wrapped or raw
+     */
+    private static byte[] deflate(final boolean raw) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(bytes,
+                new Deflater(Deflater.DEFAULT_COMPRESSION, raw)))
+        {
+            out.write(BODY.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+/**
+ * HttpCache unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class HttpCacheTest
+{
+    private static final long NOW = 1_500_000_000_000L;
+
+
+    @Test
+    public void freshness() throws IOException
+    {
+        HttpCache cache = new HttpCache(Files.createTempDirectory("cache"),
+                1 << 20);
+
+        HttpCache.Entry maxAge =
+                put(cache, "a", "body", "Cache-Control", "max-age=60");
+        assertTrue(maxAge.isFresh(NOW + 59_000));
+        assertFalse(maxAge.isFresh(NOW + 60_000));
+
+        HttpCache.Entry expires = put(cache, "b", "body", "Date", date(NOW),
+                "Expires", date(NOW + 10_000));
+        assertEquals(expires.getLifetimeMillis(), 10_000);
+
+        HttpCache.Entry heuristic = put(cache, "c", "body", "Date", date(NOW),
+                "Last-Modified", date(NOW - 100_000));
+        assertEquals(heuristic.getLifetimeMillis(), 10_000);
+
+        HttpCache.Entry noCache = put(cache, "d", "body", "Cache-Control",
+                "no-cache, max-age=60", "ETag", "\"1\"");
+        assertFalse(noCache.isFresh(NOW));
+
+        assertNull(cache.store("e", "HTTP/1.1", 200, "OK",
+                headers("Cache-Control", "no-store"), NOW, NOW));
+        assertNull(cache.store("e", "HTTP/1.1", 200, "OK",
+                headers("Vary", "*"), NOW, NOW));
+        assertNull(cache.store("e", "HTTP/1.1", 201, "Created",
+                headers(), NOW, NOW));
+    }
+
+
+    @Test
+    public void revalidationKeepsBody() throws IOException
+    {
+        HttpCache cache = new HttpCache(Files.createTempDirectory("cache"),
+                1 << 20);
+        HttpCache.Entry stale = put(cache, "a", "stored body", "ETag", "\"1\"",
+                "Cache-Control", "max-age=0", "Content-Length", "11");
+        assertFalse(stale.isFresh(NOW));
+
+        HttpCache.Entry refreshed = cache.refresh(stale,
+                headers("Cache-Control", "max-age=60", "Content-Length", "0"),
+                NOW + 1000, NOW + 1000);
+        assertTrue(refreshed.isFresh(NOW + 2000));
+        assertEquals(HttpCache.header(refreshed.getHeaders(), "ETag"), "\"1\"");
+        assertEquals(HttpCache.header(refreshed.getHeaders(), "Content-Length"),
+                "11");
+
+        HttpCache.Entry held = cache.lookup("a");
+        assertNotNull(held);
+        try (InputStream body = held.openBody())
+        {
+            assertEquals(IOUtils.toString(body, "UTF-8"), "stored body");
+        }
+    }
+
+
+    @Test
+    public void leastRecentlyUsedEvicted() throws IOException
+    {
+        Path dir = Files.createTempDirectory("cache");
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        String body = new String(chars);
+
+        HttpCache cache = new HttpCache(dir, 3500);
+        put(cache, "a", body, "Cache-Control", "max-age=60");
+        put(cache, "b", body, "Cache-Control", "max-age=60");
+        put(cache, "c", body, "Cache-Control", "max-age=60");
+        assertNotNull(cache.lookup("a"));
+        put(cache, "d", body, "Cache-Control", "max-age=60");
+
+        assertNull(cache.lookup("b"));
+        assertNotNull(cache.lookup("a"));
+        assertTrue(cache.getBytes() <= 3500);
+
+        HttpCache reopened = new HttpCache(dir, 3500);
+        assertEquals(reopened.size(), cache.size());
+        assertNotNull(reopened.lookup("d"));
+
+        reopened.invalidate("d");
+        assertNull(reopened.lookup("d"));
+    }
+
+
+    /**
+     * Stores a 200 response
+     */
+    private static HttpCache.Entry put(final HttpCache cache, final String key,
+            final String body, final String... headers) throws IOException
+    {
+        HttpCache.Store store = cache.store(key, "HTTP/1.1", 200, "OK",
+                headers(headers), NOW, NOW);
+        assertNotNull(store);
+        store.write(body.getBytes("UTF-8"));
+        store.commit();
+        HttpCache.Entry entry = cache.lookup(key);
+        assertNotNull(entry);
+        return entry;
+    }
+
+
+    private static List<Map.Entry<String, String>> headers(
+            final String... namesAndValues)
+    {
+        List<Map.Entry<String, String>> headers = new ArrayList<>();
+        for (int i = 0; i < namesAndValues.length; i += 2)
+        {
+            headers.add(new AbstractMap.SimpleImmutableEntry<>(
+                    namesAndValues[i], namesAndValues[i + 1]));
+        }
+        return headers;
+    }
+
+
+    private static String date(final long millis)
+    {
+        return DateTimeFormatter.RFC_1123_DATE_TIME
+                .format(Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.impl.ShapingProfileBean;
+
+/**
+ * NetworkShaper unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class NetworkShaperTest
+{
+    private static final int BODY = 4000;
+
+
+    @Test
+    public void routeLookup()
+    {
+        NetworkShaper shaper = new NetworkShaper();
+        assertNull(shaper.lookup("localhost", 80));
+
+        shaper.apply(ShapingProfileBean.parse("name=any,latency=10"));
+        shaper.apply(ShapingProfileBean.parse("name=host,route=LocalHost"));
+        shaper.apply(ShapingProfileBean
+                .parse("name=port,route=localhost:8080,kbps=64"));
+
+        assertEquals(shaper.lookup("localhost", 8080).getName(), "port");
+        assertEquals(shaper.lookup("LOCALHOST", 80).getName(), "host");
+        assertEquals(shaper.lookup("example.com", 80).getName(), "any");
+
+        shaper.clear();
+        assertNull(shaper.lookup("localhost", 8080));
+    }
+
+
+    @Test
+    public void latencyAndBandwidth() throws IOException
+    {
+        NetworkShaper shaper = new NetworkShaper();
+        try (ServerSocket server = serve(BODY))
+        {
+            long start = System.nanoTime();
+            try (Socket socket = shaper.createSocket(ShapingProfileBean
+                    .parse("name=slow,latency=100,kbps=160")))
+            {
+                socket.connect(server.getLocalSocketAddress(), 5000);
+                OutputStream out = socket.getOutputStream();
+                out.write('?');
+                out.flush();
+                assertEquals(IOUtils.toByteArray(socket.getInputStream()).length,
+                        BODY);
+            }
+            long millis = TimeUnit.NANOSECONDS
+                    .toMillis(System.nanoTime() - start);
+            /*
+             * Two round trips, and 4000 bytes at 20000 bytes a second
+             */
+            assertTrue(millis >= 350, Long.toString(millis));
+            assertEquals(shaper.getShapedConnections(), 1);
+        }
+    }
+
+
+    @Test
+    public void reset() throws IOException
+    {
+        NetworkShaper shaper = new NetworkShaper();
+        try (ServerSocket server = serve(BODY);
+                Socket socket = shaper.createSocket(
+                        ShapingProfileBean.parse("name=lossy,reset=100")))
+        {
+            socket.connect(server.getLocalSocketAddress(), 5000);
+            socket.getOutputStream().write('?');
+            try
+            {
+                IOUtils.toByteArray(socket.getInputStream());
+                fail("Connection not reset");
+            }
+            catch (SocketException e)
+            {
+                assertTrue(socket.isClosed());
+                assertEquals(shaper.getResets(), 1);
+            }
+        }
+    }
+
+
+    /**
+     * Serves one connection a body once a byte is read
+     */
+    private static ServerSocket serve(final int size) throws IOException
+    {
+        ServerSocket server = new ServerSocket(0, 1,
+                InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try (Socket peer = server.accept())
+            {
+                InputStream in = peer.getInputStream();
+                in.read();
+                peer.getOutputStream().write(new byte[size]);
+                peer.shutdownOutput();
+                in.read();
+            }
+            catch (IOException e)
+            {
+                // Peer gone
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+}
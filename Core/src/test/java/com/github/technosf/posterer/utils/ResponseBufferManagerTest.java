@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.commons.lang3.StringUtils;
+import org.testng.annotations.Test;
+
+/**
+ * ResponseBufferManager unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ResponseBufferManagerTest
+{
+    private static final String BODY_A = StringUtils.repeat('a', 100);
+    private static final String BODY_B = StringUtils.repeat('b', 100);
+    private static final String BODY_C = StringUtils.repeat('c', 100);
+
+
+    @Test
+    public void withinBudget()
+    {
+        ResponseBufferManager manager = new ResponseBufferManager(1000);
+        Object owner = new Object();
+
+        ResponseBufferManager.Buffer a = manager.register(owner, BODY_A);
+
+        assertFalse(a.isSpilled());
+        assertEquals(a.size(), 200);
+        assertEquals(manager.getHeld(), 200);
+        assertEquals(a.get(), BODY_A);
+        assertEquals(manager.getSpillCount(), 0);
+    }
+
+
+    @Test
+    public void spillLeastRecentlyRead()
+    {
+        ResponseBufferManager manager = new ResponseBufferManager(450);
+        Object owner = new Object();
+
+        ResponseBufferManager.Buffer a = manager.register(owner, BODY_A);
+        ResponseBufferManager.Buffer b = manager.register(owner, BODY_B);
+        a.get(); // b is now least recently read
+        ResponseBufferManager.Buffer c = manager.register(owner, BODY_C);
+
+        assertFalse(a.isSpilled());
+        assertTrue(b.isSpilled());
+        assertFalse(c.isSpilled());
+        assertEquals(manager.getHeld(), 400);
+
+        assertEquals(b.get(), BODY_B); // Reloads, spilling a
+        assertFalse(b.isSpilled());
+        assertTrue(a.isSpilled());
+        assertEquals(manager.getReloadCount(), 1);
+        assertEquals(manager.getHeld(), 400);
+    }
+
+
+    @Test
+    public void release()
+    {
+        ResponseBufferManager manager = new ResponseBufferManager(250);
+        Object owner = new Object();
+
+        ResponseBufferManager.Buffer a = manager.register(owner, BODY_A);
+        ResponseBufferManager.Buffer b = manager.register(owner, BODY_B);
+        assertTrue(a.isSpilled());
+
+        a.release();
+        b.release();
+
+        assertFalse(a.isSpilled());
+        assertEquals(a.get(), "");
+        assertEquals(manager.getHeld(), 0);
+        assertEquals(manager.getLiveCount(), 0);
+    }
+
+
+    @Test
+    public void setBudget()
+    {
+        ResponseBufferManager manager = new ResponseBufferManager(1000);
+        Object owner = new Object();
+
+        ResponseBufferManager.Buffer a = manager.register(owner, BODY_A);
+        ResponseBufferManager.Buffer b = manager.register(owner, BODY_B);
+
+        manager.setBudget(0);
+
+        assertTrue(a.isSpilled());
+        assertTrue(b.isSpilled());
+        assertEquals(manager.getHeld(), 0);
+        assertEquals(b.get(), BODY_B);
+    }
+}
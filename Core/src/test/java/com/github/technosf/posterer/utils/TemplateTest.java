@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.annotations.Test;
+
+/**
+ * Template unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class TemplateTest
+{
+    /**
+     * Values of column n are "vn"
+     */
+    private static final Template.Values VALUES = (column, out) -> {
+        byte[] value = ("v" + column).getBytes(StandardCharsets.UTF_8);
+        out.write(value, 0, value.length);
+    };
+
+
+    @Test
+    public void render()
+    {
+        Template template = Template.compile("{\"id\":${id},\"name\":\"${ name }\"}");
+        assertFalse(template.isConstant());
+        assertEquals(template.getVariables(), Arrays.asList("id", "name"));
+
+        Template.Output out = new Template.Output(4);
+        template.bind(Arrays.asList("name", "x", "id")).render(VALUES, out);
+        assertEquals(out.toString(), "{\"id\":v2,\"name\":\"v0\"}");
+
+        out.reset();
+        template.bind(Arrays.asList("id", "name")).render(VALUES, out);
+        assertEquals(out.toString(), "{\"id\":v0,\"name\":\"v1\"}");
+    }
+
+
+    @Test
+    public void literals()
+    {
+        Template plain = Template.compile("café ${open");
+        assertTrue(plain.isConstant());
+
+        Template escaped = Template.compile("$${x} ${y}");
+        assertFalse(escaped.isConstant());
+        Template.Output out = new Template.Output(16);
+        escaped.bind(Collections.singletonList("y")).render(VALUES, out);
+        assertEquals(out.toString(), "${x} v0");
+
+        out.reset();
+        plain.bind(Collections.emptyList()).render(VALUES, out);
+        assertEquals(out.toString(), "café ${open");
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unbound()
+    {
+        Template.compile("${missing}").bind(Arrays.asList("present"));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+/**
+ * TimingWheel unit tests
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class TimingWheelTest
+{
+    /**
+     * Small wheel so that deadlines wrap around it several times
+     */
+    private final TimingWheel wheel = new TimingWheel(5, 8);
+
+
+    @AfterClass
+    public void stop()
+    {
+        wheel.stop();
+    }
+
+
+    @Test
+    public void expiresNoEarlier() throws InterruptedException
+    {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        TimingWheel.Timeout timeout =
+                wheel.schedule(fired::countDown, 120, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+                .toNanos(120));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+
+    @Test
+    public void cancelled() throws InterruptedException
+    {
+        AtomicInteger fired = new AtomicInteger();
+        TimingWheel.Timeout timeout =
+                wheel.schedule(fired::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+
+        Thread.sleep(100);
+        assertEquals(fired.get(), 0);
+        assertTrue(timeout.isCancelled());
+    }
+
+
+    @Test
+    public void many() throws InterruptedException
+    {
+        int count = 10_000;
+        CountDownLatch fired = new CountDownLatch(count / 2);
+        AtomicInteger cancelledFired = new AtomicInteger();
+        for (int i = 0; i < count; i++)
+        {
+            if (i % 2 == 0)
+            {
+                wheel.schedule(fired::countDown, i % 200,
+                        TimeUnit.MILLISECONDS);
+            }
+            else
+            {
+                wheel.schedule(cancelledFired::incrementAndGet, i % 200,
+                        TimeUnit.MILLISECONDS).cancel();
+            }
+        }
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(cancelledFired.get(), 0);
+        assertEquals(wheel.getPending(), 0);
+    }
+}
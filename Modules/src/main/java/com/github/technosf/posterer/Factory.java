@@ -18,12 +18,18 @@ import static com.google.inject.Guice.createInjector;
 import com.github.technosf.posterer.models.Properties;
 import com.github.technosf.posterer.models.RequestModel;
 import com.github.technosf.posterer.modules.commons.CommonsModule;
+import com.github.technosf.posterer.modules.commons.transport.CommonsRequestModelImpl;
+import com.github.technosf.posterer.modules.jetty.transport.Http2RequestModelImpl;
+import com.github.technosf.posterer.modules.nio.transport.NioRequestModelImpl;
 import com.google.inject.Injector;
 import com.google.inject.Module;
 
 /**
  * The Module Factory produces concrete classes for specific interfaces from a
  * particular implementation
+ * <p>
+ * The transport is HTTP/1.1 unless chosen otherwise, by name or by the
+ * {@code posterer.transport} system property.
  * 
  * @author technosf
  * @since 0.0.1
@@ -31,6 +37,22 @@ import com.google.inject.Module;
  */
 public class Factory
 {
+    /**
+     * The Commons HTTP/1.1 transport
+     */
+    public static final String TRANSPORT_HTTP1 = "http1";
+
+    /**
+     * The Jetty HTTP/2 transport
+     */
+    public static final String TRANSPORT_H2 = "h2";
+
+    /**
+     * The NIO HTTP/1.1 load transport
+     */
+    public static final String TRANSPORT_LOAD = "load";
+
+    private static final String CONST_ERR_TRANSPORT = "Unknown transport: %1$s";
 
     /**
      * A Guice Injector for the properties and request module implementation
@@ -45,11 +67,51 @@ public class Factory
      */
     public Factory(String props_prefix)
     {
-        Module module = new CommonsModule(props_prefix);
+        this(props_prefix,
+                System.getProperty("posterer.transport", TRANSPORT_HTTP1));
+    }
+
+
+    /**
+     * Instantiate a factory with a particular implementation and transport
+     * 
+     * @param props_prefix
+     * @param transport
+     *            the transport name, {@code http1}, {@code h2} or {@code load}
+     * @throws IllegalArgumentException
+     *             if the transport is unknown
+     */
+    public Factory(String props_prefix, String transport)
+    {
+        Module module = new CommonsModule(props_prefix, transport(transport));
         injector = createInjector(module);
     }
 
 
+    /**
+     * Returns the request model implementing a transport
+     * 
+     * @param transport
+     *            the transport name
+     * @return the request model class
+     */
+    private static Class<? extends RequestModel> transport(String transport)
+    {
+        switch (transport)
+        {
+            case TRANSPORT_HTTP1:
+                return CommonsRequestModelImpl.class;
+            case TRANSPORT_H2:
+                return Http2RequestModelImpl.class;
+            case TRANSPORT_LOAD:
+                return NioRequestModelImpl.class;
+            default:
+                throw new IllegalArgumentException(
+                        String.format(CONST_ERR_TRANSPORT, transport));
+        }
+    }
+
+
     /**
      * Returns the properties
      * 
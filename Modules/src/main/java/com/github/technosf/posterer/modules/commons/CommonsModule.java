@@ -24,6 +24,9 @@ import com.google.inject.name.Names;
 /**
  * Guice module to inject Apache Commons HTTP transports
  * and also the Commons Configurator for properties storage.
+ * <p>
+ * Another transport can be injected in place of the Commons HTTP transport,
+ * keeping the Commons properties storage.
  * 
  * @author technosf
  * @since 0.0.1
@@ -33,6 +36,8 @@ public class CommonsModule extends AbstractModule
 {
     private final String prefix;
 
+    private final Class<? extends RequestModel> transport;
+
 
     /**
      * Creates the {@code Module}, setting the prefix for properties
@@ -41,8 +46,25 @@ public class CommonsModule extends AbstractModule
      *            the prefix to use on properties in the {@code PropertiesModel}
      */
     public CommonsModule(String prefix)
+    {
+        this(prefix, CommonsRequestModelImpl.class);
+    }
+
+
+    /**
+     * Creates the {@code Module}, setting the prefix for properties and the
+     * transport
+     * 
+     * @param prefix
+     *            the prefix to use on properties in the {@code PropertiesModel}
+     * @param transport
+     *            the {@code RequestModel} implementation to inject
+     */
+    public CommonsModule(String prefix,
+            Class<? extends RequestModel> transport)
     {
         this.prefix = prefix;
+        this.transport = transport;
     }
 
 
@@ -59,7 +81,7 @@ public class CommonsModule extends AbstractModule
                 .to(prefix);
         bind(Properties.class).to(CommonsConfiguratorPropertiesImpl.class)
                 .in(Singleton.class);
-        bind(RequestModel.class).to(CommonsRequestModelImpl.class);
+        bind(RequestModel.class).to(transport);
     }
 
 }
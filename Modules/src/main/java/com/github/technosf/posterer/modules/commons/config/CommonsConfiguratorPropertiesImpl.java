@@ -35,8 +35,10 @@ import com.github.technosf.posterer.models.Actionable;
 import com.github.technosf.posterer.models.Properties;
 import com.github.technosf.posterer.models.Proxy;
 import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.ShapingProfile;
 import com.github.technosf.posterer.models.impl.ProxyBean;
 import com.github.technosf.posterer.models.impl.RequestBean;
+import com.github.technosf.posterer.models.impl.ShapingProfileBean;
 import com.github.technosf.posterer.models.impl.base.AbstractPropertiesModel;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -86,6 +88,17 @@ public final class CommonsConfiguratorPropertiesImpl
     private final static String PROP_PROXIES_PROXY_ID_QUERY =
             PROP_PROXIES_PROXY + "[@id='%1$s']";
 
+    /**
+     * Shaping profile properties prefix
+     */
+    private final static String PROP_SHAPING = "shaping";
+    private final static String PROP_SHAPING_PROFILE =
+            PROP_SHAPING + "/profile";
+    private final static String PROP_SHAPING_PROFILE_ID =
+            PROP_SHAPING_PROFILE + "@id";
+    private final static String PROP_SHAPING_PROFILE_ID_QUERY =
+            PROP_SHAPING_PROFILE + "[@id='%1$s']";
+
     /**
      * KeyStore properties prefix
      */
@@ -162,6 +175,7 @@ public final class CommonsConfiguratorPropertiesImpl
          */
         initializeRequestSet();
         initializeProxySet();
+        initializeShapingSet();
         initializeKeyStoreSet();
         if (isDirty())
             save();
@@ -213,6 +227,7 @@ public final class CommonsConfiguratorPropertiesImpl
                 property.addProperty("security", pdi.getSecurity());
                 property.addProperty("contentType", pdi.getContentType());
                 property.addProperty("base64", pdi.getBase64());
+                property.addProperty("gzip", pdi.getGzip());
                 dirty();
             }
         }
@@ -252,6 +267,53 @@ public final class CommonsConfiguratorPropertiesImpl
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.Properties#addData(com.github.technosf.posterer.models.ShapingProfile)
+     */
+    @Override
+    public boolean addData(final @Nullable ShapingProfile profile)
+    {
+        if (profile == null)
+        {
+            return false;
+        }
+
+        ShapingProfileBean pdi = new ShapingProfileBean(profile);
+        if (!pdi.isActionable())
+        {
+            return false;
+        }
+
+        ShapingProfileBean replaced = put(pdi);
+        if (pdi.equals(replaced))
+        /*
+         * Already stored as is
+         */
+        {
+            return false;
+        }
+        else if (replaced != null)
+        {
+            config.clearTree(String.format(PROP_SHAPING_PROFILE_ID_QUERY,
+                    replaced.hashCode()));
+        }
+
+        config.addProperty(PROP_SHAPING_PROFILE_ID, pdi.hashCode());
+        HierarchicalConfiguration<ImmutableNode> property =
+                getShapingProfile(pdi.hashCode());
+        property.addProperty("name", pdi.getName());
+        property.addProperty("route", pdi.getRoute());
+        property.addProperty("latency", pdi.getLatencyMillis());
+        property.addProperty("jitter", pdi.getJitterMillis());
+        property.addProperty("kbps", pdi.getKbps());
+        property.addProperty("reset", pdi.getResetPercent());
+        dirty();
+        return true;
+    }
+
+
     /* ---------------------------------------------------------------- 
      * 
      * AbstractProperties methods
@@ -359,6 +421,22 @@ public final class CommonsConfiguratorPropertiesImpl
     }
 
 
+    /**
+     * Returns the Subnode config for the given shaping profile id
+     * 
+     * @param id
+     *            the profile id
+     * @return the Subnode config holding the profile if any
+     */
+    @SuppressWarnings("null")
+    private HierarchicalConfiguration<ImmutableNode> getShapingProfile(
+            final int id)
+    {
+        return config.configurationAt(
+                String.format(PROP_SHAPING_PROFILE_ID_QUERY, id), true);
+    }
+
+
     /**
      * Load saved requests into current session
      * <p>
@@ -384,7 +462,8 @@ public final class CommonsConfiguratorPropertiesImpl
                             requestNode.getString("method"),
                             requestNode.getString("security"),
                             requestNode.getString("contentType"),
-                            requestNode.getBoolean("base64", false));
+                            requestNode.getBoolean("base64", false),
+                            requestNode.getBoolean("gzip", false));
 
             if (actionable(request, requestNodeId, requestNode, c))
             {
@@ -442,6 +521,53 @@ public final class CommonsConfiguratorPropertiesImpl
     } // private void initializeProxySet()
 
 
+    /**
+     * Load saved shaping profiles into current session
+     * <p>
+     * Of profiles saved under the same name, the last is kept.
+     */
+    private void initializeShapingSet()
+    {
+        for (HierarchicalConfiguration<ImmutableNode> c : config
+                .configurationsAt(PROP_SHAPING_PROFILE))
+        /*
+         * Deserialize each stored profile into a ShapingProfileBean
+         */
+        {
+            int profileNodeId =
+                    Integer.parseInt((String) c.getProperty("@id"));
+            HierarchicalConfiguration<ImmutableNode> profileNode =
+                    getShapingProfile(profileNodeId);
+
+            ShapingProfileBean profile = new ShapingProfileBean(
+                    profileNode.getString("name"),
+                    profileNode.getString("route"),
+                    profileNode.getInt("latency", 0),
+                    profileNode.getInt("jitter", 0),
+                    profileNode.getInt("kbps", 0),
+                    profileNode.getDouble("reset", 0));
+
+            if (actionable(profile, profileNodeId, profileNode, c))
+            {
+                ShapingProfileBean replaced = put(profile);
+                if (replaced != null)
+                {
+                    config.clearTree(String.format(
+                            PROP_SHAPING_PROFILE_ID_QUERY,
+                            replaced.hashCode()));
+                    dirty();
+                }
+            }
+            else
+            {
+                dirty();
+            }
+
+        } // for (HierarchicalConfiguration c : config
+
+    } // private void initializeShapingSet()
+
+
     /**
      * Load saved proxies into current session
      */
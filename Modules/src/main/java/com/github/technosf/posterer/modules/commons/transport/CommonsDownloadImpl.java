@@ -0,0 +1,350 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.commons.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import org.apache.commons.io.input.NullInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.impl.base.AbstractDownloadModel;
+import com.github.technosf.posterer.utils.Auditor;
+
+/**
+ * Apache Commons implementation of {@code DownloadModel}
+ * <p>
+ * The body is probed with a {@code HEAD}, and each segment fetched with a
+ * ranged {@code GET} over a connection of its own, leased from the shared pool
+ * where the request has no custom security. Bodies are asked for without a
+ * content coding, so that the ranges are of the bytes written.
+ * <p>
+ * A segment read to its end hands its connection back to the pool; one given
+ * up on, or aborted, has its connection shut down rather than drained.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class CommonsDownloadImpl extends AbstractDownloadModel
+{
+    private static final String CONST_ERR_NULL_CLIENT = "Client is null";
+    private static final String CONST_ERR_NO_URI = "Request has no URI";
+
+    /**
+     * The range unit accepted
+     */
+    private static final String BYTES = "bytes";
+
+    /**
+     * the Http Client builder
+     */
+    private final HttpClientBuilder clientBuilder;
+
+    /**
+     * the Http Client
+     */
+    private @Nullable CloseableHttpClient client;
+
+    /**
+     * Function that determines if client auth is needed
+     */
+    private final BooleanSupplier neededClientAuth;
+
+    /**
+     * The requests in flight, aborted should the download be stopped
+     */
+    private final Set<HttpRequestBase> inFlight =
+            ConcurrentHashMap.newKeySet();
+
+
+    /**
+     * Creates a new {@code CommonsDownloadImpl} of the given request
+     *
+     * @param requestId
+     *            the request reference id
+     * @param auditor
+     *            the call auditor
+     * @param clientBuilder
+     *            the client builder, as configured for the request
+     * @param request
+     *            the request, downloaded as a {@code GET}
+     * @param file
+     *            the file to download into
+     * @param segments
+     *            the most segments to fetch in parallel
+     * @param neededClientAuth
+     *            function that determines if client auth was needed
+     */
+    public CommonsDownloadImpl(final int requestId, final Auditor auditor,
+            final HttpClientBuilder clientBuilder, final Request request,
+            final Path file, final int segments,
+            final BooleanSupplier neededClientAuth)
+    {
+        super(requestId, auditor, request, file, segments);
+        this.clientBuilder = clientBuilder;
+        this.neededClientAuth = neededClientAuth;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A builder without the shared pool gets a pool of its own, large enough
+     * for every segment.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#prepareClient()
+     */
+    @Override
+    protected void prepareClient()
+    {
+        client = clientBuilder.disableContentCompression()
+                .setMaxConnPerRoute(getMaxSegments())
+                .setMaxConnTotal(getMaxSegments())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(
+                                CommonsResponseModelTaskImpl.CONNECT_MILLIS)
+                        .setSocketTimeout(
+                                CommonsResponseModelTaskImpl.READ_MILLIS)
+                        .setConnectionRequestTimeout(
+                                CommonsResponseModelTaskImpl.LEASE_MILLIS)
+                        .build())
+                .build();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractDownloadModel#probe()
+     */
+    @Override
+    protected Probe probe() throws IOException
+    {
+        HttpHead head = new HttpHead(uri());
+        try (CloseableHttpResponse response = execute(head))
+        {
+            long length = -1;
+            Header contentLength =
+                    response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+            if (contentLength != null && response
+                    .getFirstHeader(HttpHeaders.CONTENT_ENCODING) == null)
+            /*
+             * The length of the bytes to be written
+             */
+            {
+                try
+                {
+                    length = Long.parseLong(contentLength.getValue().trim());
+                }
+                catch (NumberFormatException e)
+                /*
+                 * Length not known
+                 */
+                {
+                    length = -1;
+                }
+            }
+
+            Header acceptRanges =
+                    response.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+            boolean ranges = acceptRanges != null && acceptRanges.getValue()
+                    .toLowerCase(Locale.ROOT).contains(BYTES);
+
+            String validator = "";
+            Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+            Header modified =
+                    response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+            if (etag != null && !etag.getValue().startsWith("W/"))
+            {
+                validator = etag.getValue();
+            }
+            else if (modified != null)
+            {
+                validator = modified.getValue();
+            }
+
+            int status = response.getStatusLine().getStatusCode();
+            return new Probe(status, status == 200 ? length : -1,
+                    status == 200 && ranges, validator,
+                    CommonsResponseModelTaskImpl
+                            .prettyPrintHeaders(response.getAllHeaders()));
+        }
+        finally
+        {
+            inFlight.remove(head);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractDownloadModel#open(long,
+     *      long, java.lang.String)
+     */
+    @Override
+    protected Transfer open(final long from, final long to,
+            final String validator) throws IOException
+    {
+        HttpGet get = new HttpGet(uri());
+        if (to >= 0)
+        {
+            get.setHeader(HttpHeaders.RANGE, BYTES + "=" + from + "-" + to);
+            if (!validator.isEmpty())
+            {
+                get.setHeader(HttpHeaders.IF_RANGE, validator);
+            }
+        }
+
+        CloseableHttpResponse response;
+        try
+        {
+            response = execute(get);
+        }
+        catch (IOException e)
+        {
+            inFlight.remove(get);
+            throw e;
+        }
+
+        return new Transfer()
+        {
+            @Override
+            public int getStatus()
+            {
+                return response.getStatusLine().getStatusCode();
+            }
+
+
+            @Override
+            public InputStream getBody() throws IOException
+            {
+                HttpEntity entity = response.getEntity();
+                return entity == null ? new NullInputStream(0)
+                        : entity.getContent();
+            }
+
+
+            @Override
+            public void close()
+            {
+                inFlight.remove(get);
+                /*
+                 * Releases a connection read to its end, shuts down any other
+                 */
+                HttpClientUtils.closeQuietly(response);
+            }
+        };
+    }
+
+
+    /**
+     * Executes a request, keeping it to abort
+     */
+    @SuppressWarnings("null")
+    private CloseableHttpResponse execute(final HttpRequestBase request)
+            throws IOException
+    {
+        CloseableHttpClient httpClient = client;
+        if (httpClient == null)
+        {
+            throw new ClientProtocolException(CONST_ERR_NULL_CLIENT);
+        }
+        inFlight.add(request);
+        if (isCancelled())
+        {
+            request.abort();
+        }
+        return httpClient.execute(request);
+    }
+
+
+    /**
+     * Returns the request URI
+     */
+    private URI uri() throws IOException
+    {
+        URI uri = getRequest().getUri();
+        if (uri == null)
+        {
+            throw new ClientProtocolException(CONST_ERR_NO_URI);
+        }
+        return uri;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Aborts the requests in flight, unblocking their reads.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractDownloadModel#abort()
+     */
+    @Override
+    protected void abort()
+    {
+        super.abort();
+        for (HttpRequestBase request : inFlight)
+        {
+            request.abort();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#closeClient()
+     */
+    @Override
+    protected void closeClient()
+    {
+        /*
+         * Closing the client leaves a shared connection pool open
+         */
+        HttpClientUtils.closeQuietly(client);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#neededClientAuth()
+     */
+    @Override
+    public boolean neededClientAuth()
+    {
+        return neededClientAuth.getAsBoolean();
+    }
+}
@@ -14,26 +14,54 @@ package com.github.technosf.posterer.modules.commons.transport;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
 
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContexts;
 import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.github.technosf.posterer.models.DownloadModel;
+import com.github.technosf.posterer.models.Properties;
 import com.github.technosf.posterer.models.Proxy;
 import com.github.technosf.posterer.models.Request;
 import com.github.technosf.posterer.models.RequestModel;
 import com.github.technosf.posterer.models.impl.KeyStoreBean;
+import com.github.technosf.posterer.models.impl.WarmupBean;
 import com.github.technosf.posterer.models.impl.base.AbstractRequestModel;
 import com.github.technosf.posterer.modules.commons.transport.ssl.AuditingSSLSocketFactory;
 import com.github.technosf.posterer.utils.Auditor;
+import com.github.technosf.posterer.utils.CachingDnsResolver;
+import com.github.technosf.posterer.utils.NetworkShaper;
 import com.github.technosf.posterer.utils.ssl.PromiscuousHostnameVerifier;
+import com.google.inject.Inject;
 
 /**
  * Apache Commons implementation of {@RequestModel}
@@ -41,6 +69,17 @@ import com.github.technosf.posterer.utils.ssl.PromiscuousHostnameVerifier;
  * Create an Apache Commons HTTP call configuration and embeds it into
  * an Apache Commons HTTP implementation of a ResponseModelTask that
  * is ready to be fired off.
+ * <p>
+ * Host names are resolved through the shared {@code CachingDnsResolver}, and
+ * the hosts of saved requests are resolved in the background when the model
+ * is injected.
+ * <p>
+ * Connections are made through a {@code ShapingSocketFactory}, so that routes
+ * given a {@code ShapingProfile} are shaped. This holds for the shared pool
+ * and for the connection manager of each request with custom security or a
+ * proxy, whose proxy hop is shaped as the proxy's own route. The saved
+ * profiles named by the {@code posterer.shaping} system property are applied
+ * when the model is injected.
  * 
  * @author technosf
  * @since 0.0.1
@@ -58,12 +97,15 @@ public class CommonsRequestModelImpl
     {
         final HttpClientBuilder builder;
         final BooleanSupplier neededClientAuth;
+        final @Nullable CachingDnsResolver resolver;
 
 
         CallConfigBean(HttpClientBuilder builder,
-                @Nullable BooleanSupplier neededClientAuth)
+                @Nullable BooleanSupplier neededClientAuth,
+                @Nullable CachingDnsResolver resolver)
         {
             this.builder = builder;
+            this.resolver = resolver;
             if (neededClientAuth == null)
             {
                 this.neededClientAuth = new BooleanSupplier()
@@ -85,6 +127,13 @@ public class CommonsRequestModelImpl
 
     /* ------------------------------------------------ */
 
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CommonsRequestModelImpl.class);
+
     private static final String CONST_ERR_SSL_KEY = "SSL :: Key exception";
     private static final String CONST_ERR_SSL_ALGO = "SSL :: Algo exception";
     private static final String CONST_ERR_SSL_STORE =
@@ -93,10 +142,225 @@ public class CommonsRequestModelImpl
     private static final String CONST_ERR_SSL_CERT =
             "SSL :: Certificate exception";
     private static final String CONST_ERR_SSL_IO = "SSL :: IO exception";
+    private static final String CONST_WARM_NO_HOST = "No host to warm";
+    private static final String CONST_WARM_NOT_POOLED =
+            "Custom security is not pooled";
+    private static final String CONST_ERR_NO_PROFILE =
+            "No saved shaping profile: {}";
+
+    /**
+     * System property naming the saved shaping profiles to apply
+     */
+    private static final String PROP_SHAPING = "posterer.shaping";
+
+    /**
+     * How long pre-warmed connections are kept idle in the pool, in seconds,
+     * overridden by the {@code posterer.prewarm.keepalive} system property
+     */
+    private static final int PREWARM_KEEPALIVE =
+            Integer.getInteger("posterer.prewarm.keepalive", 60);
+
+    /**
+     * The resolver, caching host lookups across requests
+     */
+    private static final CachingDnsResolver RESOLVER =
+            CachingDnsResolver.getInstance();
+
+    /**
+     * The resolver as seen by the client
+     */
+    private static final DnsResolver DNS = RESOLVER::resolve;
+
+    /**
+     * Connection pool shared by requests without custom security, so that
+     * consecutive and concurrent requests to a host reuse connections.
+     * <p>
+     * Requests with custom security or a proxy audit their own socket
+     * factory, so they keep a shaped connection manager per call.
+     */
+    private static final PoolingHttpClientConnectionManager POOL =
+            new PoolingHttpClientConnectionManager(
+                    RegistryBuilder.<ConnectionSocketFactory> create()
+                            .register("http", new ShapingSocketFactory(
+                                    PlainConnectionSocketFactory
+                                            .getSocketFactory()))
+                            .register("https", new ShapingSocketFactory(
+                                    SSLConnectionSocketFactory
+                                            .getSocketFactory()))
+                            .build(),
+                    DNS);
+
+    static
+    {
+        POOL.setMaxTotal(Integer.getInteger("posterer.pool.total", 200));
+        POOL.setDefaultMaxPerRoute(
+                Integer.getInteger("posterer.pool.route", 20));
+    }
 
 
     /* ------------------------------------------------ */
 
+    /**
+     * Injection point for <b>Guice</b>: resolves the hosts of the saved
+     * requests in the background, so that the first request to each finds its
+     * host cached
+     * 
+     * @param properties
+     *            the properties holding the saved requests
+     */
+    @Inject
+    public void preResolve(final Properties properties)
+    {
+        RESOLVER.preResolve(properties.getRequests().stream()
+                .map(Request::getUri)
+                .filter(Objects::nonNull)
+                .map(URI::getHost)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+    }
+
+
+    /**
+     * Injection point for <b>Guice</b>: applies the saved shaping profiles
+     * named by the {@code posterer.shaping} system property
+     * 
+     * @param properties
+     *            the properties holding the saved profiles
+     */
+    @Inject
+    public void shape(final Properties properties)
+    {
+        String names = System.getProperty(PROP_SHAPING, "");
+        if (!names.trim().isEmpty())
+        {
+            for (String unknown : NetworkShaper.getInstance()
+                    .apply(properties.getShapingProfiles(), names))
+            {
+                LOG.warn(CONST_ERR_NO_PROFILE, unknown);
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only requests without custom security use the shared pool, so only
+     * their routes are warmed. Connections are leased together, up to the
+     * per route bound, so that each is a distinct connection, then opened one
+     * after another and released back to the pool idle.
+     *
+     * @see com.github.technosf.posterer.models.RequestModel#prewarm(com.github.technosf.posterer.models.Request,
+     *      int)
+     */
+    @SuppressWarnings("null")
+    @Override
+    public WarmupBean prewarm(final Request request, final int connections)
+    {
+        URI uri = request.getUri();
+        if (uri == null || uri.getHost() == null)
+        {
+            return WarmupBean.skipped(request.getEndpoint(),
+                    CONST_WARM_NO_HOST);
+        }
+        if (!request.getSecurity().isEmpty())
+        {
+            return WarmupBean.skipped(request.getEndpoint(),
+                    CONST_WARM_NOT_POOLED);
+        }
+
+        HttpHost host = URIUtils.extractHost(uri);
+        List<HttpClientConnection> leased = new ArrayList<>();
+        HttpClientContext context = HttpClientContext.create();
+        long start = System.nanoTime();
+        long slowest = 0;
+        int opened = 0;
+        String error = null;
+        String route = request.getEndpoint();
+        try
+        {
+            HttpHost target = new HttpHost(host.getHostName(),
+                    DefaultSchemePortResolver.INSTANCE.resolve(host),
+                    host.getSchemeName());
+            route = target.toURI();
+            HttpRoute httpRoute = new HttpRoute(target, null,
+                    "https".equalsIgnoreCase(target.getSchemeName()));
+
+            int wanted = Math.min(connections, POOL.getMaxPerRoute(httpRoute));
+            for (int i = 0; i < wanted; i++)
+            {
+                HttpClientConnection connection =
+                        POOL.requestConnection(httpRoute, null).get(
+                                CommonsResponseModelTaskImpl.LEASE_MILLIS,
+                                TimeUnit.MILLISECONDS);
+                leased.add(connection);
+            }
+
+            for (HttpClientConnection connection : leased)
+            {
+                if (!connection.isOpen())
+                {
+                    long connect = System.nanoTime();
+                    POOL.connect(connection, httpRoute,
+                            CommonsResponseModelTaskImpl.CONNECT_MILLIS,
+                            context);
+                    POOL.routeComplete(connection, httpRoute, context);
+                    slowest = Math.max(slowest, System.nanoTime() - connect);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            error = e.toString();
+        }
+        catch (IOException | ExecutionException e)
+        {
+            error = e.toString();
+        }
+        finally
+        {
+            for (HttpClientConnection connection : leased)
+            {
+                opened += connection.isOpen() ? 1 : 0;
+                POOL.releaseConnection(connection, null, PREWARM_KEEPALIVE,
+                        TimeUnit.SECONDS);
+            }
+        }
+
+        WarmupBean warmup = new WarmupBean(route, connections, opened,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                TimeUnit.NANOSECONDS.toMillis(slowest), error);
+        LOG.debug("{}", warmup);
+        return warmup;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Requests without custom security fetch their segments over the shared
+     * pool, so take no more segments than it leases to a route.
+     *
+     * @see com.github.technosf.posterer.models.RequestModel#download(com.github.technosf.posterer.models.Request,
+     *      java.nio.file.Path, int)
+     */
+    @Override
+    public DownloadModel download(final Request request, final Path file,
+            final int segments)
+    {
+        Auditor auditor = new Auditor();
+        CallConfigBean callconfig =
+                createCallConfig(auditor, request.getSecurity());
+        return new CommonsDownloadImpl(requestId.incrementAndGet(), auditor,
+                callconfig.builder, request, file,
+                request.getSecurity().isEmpty()
+                        ? Math.min(segments, POOL.getDefaultMaxPerRoute())
+                        : segments,
+                callconfig.neededClientAuth);
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -113,7 +377,8 @@ public class CommonsRequestModelImpl
         return new CommonsResponseModelTaskImpl(requestId, auditor,
                 callconfig.builder,
                 timeout,
-                request, callconfig.neededClientAuth);
+                request, callconfig.neededClientAuth, callconfig.resolver,
+                "");
     }
 
 
@@ -139,7 +404,8 @@ public class CommonsRequestModelImpl
         return new CommonsResponseModelTaskImpl(requestId, auditor,
                 callconfig.builder,
                 timeout,
-                request, callconfig.neededClientAuth);
+                request, callconfig.neededClientAuth, callconfig.resolver,
+                partition(proxy, null, null));
     }
 
 
@@ -167,7 +433,8 @@ public class CommonsRequestModelImpl
         return new CommonsResponseModelTaskImpl(requestId, auditor,
                 callconfig.builder,
                 timeout,
-                request, callconfig.neededClientAuth);
+                request, callconfig.neededClientAuth, callconfig.resolver,
+                partition(null, keyStoreBean, alias));
     }
 
 
@@ -197,7 +464,46 @@ public class CommonsRequestModelImpl
         return new CommonsResponseModelTaskImpl(requestId, auditor,
                 callconfig.builder,
                 timeout,
-                request, callconfig.neededClientAuth);
+                request, callconfig.neededClientAuth, callconfig.resolver,
+                partition(proxy, keyStoreBean, alias));
+    }
+
+
+    /**
+     * Describes the proxy and client identity a request is made with, so
+     * that the responses cached for one are not served to another
+     *
+     * @param proxy
+     *            the proxy, if any
+     * @param keyStoreBean
+     *            the client key store, if any
+     * @param alias
+     *            the client key alias, if any
+     * @return the cache partition
+     */
+    @SuppressWarnings("null")
+    private static String partition(final @Nullable Proxy proxy,
+            final @Nullable KeyStoreBean keyStoreBean,
+            final @Nullable String alias)
+    {
+        StringBuilder partition = new StringBuilder();
+        if (proxy != null && !proxy.toString().isEmpty())
+        {
+            partition.append("proxy=").append(proxy.getProxyHost())
+                    .append(':').append(proxy.getProxyPort());
+            if (!proxy.getProxyUser().isEmpty())
+            {
+                partition.append(',').append(proxy.getProxyUser());
+            }
+        }
+        if (keyStoreBean != null)
+        {
+            partition.append(partition.length() == 0 ? "" : " ")
+                    .append("cert=")
+                    .append(keyStoreBean.getFile().getAbsolutePath())
+                    .append('#').append(alias);
+        }
+        return partition.toString();
     }
 
 
@@ -212,7 +518,7 @@ public class CommonsRequestModelImpl
             final String ssl)
     {
         BooleanSupplier neededClientAuth = null;
-        HttpClientBuilder builder = HttpClients.custom();
+        HttpClientBuilder builder = HttpClients.custom().setDnsResolver(DNS);
 
         if (!ssl.isEmpty())
         /*
@@ -225,7 +531,15 @@ public class CommonsRequestModelImpl
             neededClientAuth =
                     buildInSSL(auditor, builder, ssl);
         }
-        return new CallConfigBean(builder, neededClientAuth);
+        else
+        /*
+         * Use the shared pool
+         */
+        {
+            builder.setConnectionManager(POOL)
+                    .setConnectionManagerShared(true);
+        }
+        return new CallConfigBean(builder, neededClientAuth, RESOLVER);
     }
 
 
@@ -242,7 +556,7 @@ public class CommonsRequestModelImpl
             final Proxy proxy)
     {
         BooleanSupplier neededClientAuth = null;
-        HttpClientBuilder builder = HttpClients.custom();
+        HttpClientBuilder builder = HttpClients.custom().setDnsResolver(DNS);
 
         if (!ssl.isEmpty() || !proxy.toString().isEmpty())
         /*
@@ -256,8 +570,17 @@ public class CommonsRequestModelImpl
                     buildInSSL(auditor, builder, ssl);
             buildInProxy(auditor, builder, proxy);
         } // custom builder
+        else
+        /*
+         * Use the shared pool
+         */
+        {
+            builder.setConnectionManager(POOL)
+                    .setConnectionManagerShared(true);
+        }
 
-        return new CallConfigBean(builder, neededClientAuth);
+        return new CallConfigBean(builder, neededClientAuth,
+                proxy.toString().isEmpty() ? RESOLVER : null);
     }
 
 
@@ -274,7 +597,7 @@ public class CommonsRequestModelImpl
             final String alias)
     {
         BooleanSupplier neededClientAuth = null;
-        HttpClientBuilder builder = HttpClients.custom();
+        HttpClientBuilder builder = HttpClients.custom().setDnsResolver(DNS);
 
         if (!ssl.isEmpty())
         /*
@@ -288,8 +611,16 @@ public class CommonsRequestModelImpl
                     buildInSSL(auditor, builder, ssl,
                             keyStoreBean, alias);
         } // custom builder
+        else
+        /*
+         * Use the shared pool
+         */
+        {
+            builder.setConnectionManager(POOL)
+                    .setConnectionManagerShared(true);
+        }
 
-        return new CallConfigBean(builder, neededClientAuth);
+        return new CallConfigBean(builder, neededClientAuth, RESOLVER);
     }
 
 
@@ -307,7 +638,7 @@ public class CommonsRequestModelImpl
             final String alias)
     {
         BooleanSupplier neededClientAuth = null;
-        HttpClientBuilder builder = HttpClients.custom();
+        HttpClientBuilder builder = HttpClients.custom().setDnsResolver(DNS);
 
         if (!ssl.isEmpty() || !proxy.toString().isEmpty())
         /*
@@ -321,8 +652,17 @@ public class CommonsRequestModelImpl
                     builder, ssl, keyStoreBean, alias);
             buildInProxy(auditor, builder, proxy);
         } // custom builder
+        else
+        /*
+         * Use the shared pool
+         */
+        {
+            builder.setConnectionManager(POOL)
+                    .setConnectionManagerShared(true);
+        }
 
-        return new CallConfigBean(builder, neededClientAuth);
+        return new CallConfigBean(builder, neededClientAuth,
+                proxy.toString().isEmpty() ? RESOLVER : null);
     }
 
 
@@ -366,15 +706,12 @@ public class CommonsRequestModelImpl
             final String ssl, final KeyStoreBean keyStoreBean,
             final String alias)
     {
-
-        builder.setSSLHostnameVerifier(
-                new PromiscuousHostnameVerifier(auditor));
         try
         {
             AuditingSSLSocketFactory auditingSSLSocketFactory =
                     new AuditingSSLSocketFactory(auditor, ssl, keyStoreBean,
                             alias);
-            builder.setSSLSocketFactory(auditingSSLSocketFactory);
+            buildInShaping(builder, auditingSSLSocketFactory);
             return auditingSSLSocketFactory.getNeededClientAuthSupplier();
         }
         catch (KeyManagementException | UnrecoverableKeyException e)
@@ -407,6 +744,9 @@ public class CommonsRequestModelImpl
             auditor.append(true, CONST_ERR_SSL_IO).append(false,
                     "\t%1$s", e.getMessage());
         }
+        buildInShaping(builder,
+                new SSLConnectionSocketFactory(SSLContexts.createDefault(),
+                        new PromiscuousHostnameVerifier(auditor)));
         return null;
     }
 
@@ -423,13 +763,11 @@ public class CommonsRequestModelImpl
             HttpClientBuilder builder,
             final String ssl)
     {
-        builder.setSSLHostnameVerifier(
-                new PromiscuousHostnameVerifier(auditor));
         try
         {
             AuditingSSLSocketFactory auditingSSLSocketFactory =
                     new AuditingSSLSocketFactory(auditor, ssl);
-            builder.setSSLSocketFactory(auditingSSLSocketFactory);
+            buildInShaping(builder, auditingSSLSocketFactory);
             return auditingSSLSocketFactory.getNeededClientAuthSupplier();
         }
         catch (KeyManagementException | UnrecoverableKeyException e)
@@ -462,8 +800,34 @@ public class CommonsRequestModelImpl
             auditor.append(true, CONST_ERR_SSL_IO).append(false,
                     "\t%1$s", e.getMessage());
         }
-
+        buildInShaping(builder,
+                new SSLConnectionSocketFactory(SSLContexts.createDefault(),
+                        new PromiscuousHostnameVerifier(auditor)));
         return null;
     }
 
+
+    /**
+     * Gives the builder a connection manager of its own, shaping both its
+     * plain connections and those made by the given TLS socket factory
+     * 
+     * @param builder
+     *            the builder to configure
+     * @param sslSocketFactory
+     *            the TLS socket factory
+     */
+    private static void buildInShaping(final HttpClientBuilder builder,
+            final ConnectionSocketFactory sslSocketFactory)
+    {
+        builder.setConnectionManager(new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory> create()
+                        .register("http", new ShapingSocketFactory(
+                                PlainConnectionSocketFactory
+                                        .getSocketFactory()))
+                        .register("https",
+                                new ShapingSocketFactory(sslSocketFactory))
+                        .build(),
+                DNS));
+    }
+
 }
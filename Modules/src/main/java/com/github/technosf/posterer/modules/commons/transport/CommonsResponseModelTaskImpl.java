@@ -13,14 +13,30 @@
 package com.github.technosf.posterer.modules.commons.transport;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BooleanSupplier;
 
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.http.Consts;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
-import org.apache.http.ParseException;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
@@ -33,10 +49,12 @@ import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
 import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,11 +63,27 @@ import com.github.technosf.posterer.models.Request;
 import com.github.technosf.posterer.models.ResponseModel;
 import com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask;
 import com.github.technosf.posterer.utils.Auditor;
+import com.github.technosf.posterer.utils.CachingDnsResolver;
+import com.github.technosf.posterer.utils.ContentCodings;
+import com.github.technosf.posterer.utils.HttpCache;
 
 /**
  * Apache Commons implementation of {@ResponsetModel}
  * <p>
  * Uses Commons HTTP frameworks to make HTTP requests and process responses.
+ * <p>
+ * Each phase of the call is bounded: connecting, waiting between socket reads
+ * and leasing a pooled connection each time out at the lesser of their own
+ * limit and the total timeout, and the total deadline aborts the request.
+ * <p>
+ * Responses are decompressed here rather than by the client, so that the body
+ * can be counted both as received on the wire and once decoded. Payloads are
+ * gzip compressed when the request asks for it.
+ * <p>
+ * When the {@code HttpCache} is enabled, GETs are served from it while fresh
+ * and revalidated with conditional requests once stale; storable responses
+ * are written to it as their bodies are read, and unsafe requests invalidate
+ * what it holds for their URI.
  * 
  * @author technosf
  * @since 0.0.1
@@ -71,6 +105,34 @@ public final class CommonsResponseModelTaskImpl
     private static final String CONST_ERR_NO_REPONSE =
             "Can't get response body";
     private static final String CONST_ERR_UNKNOWN_METHOD = "Unknow method: {}";
+    private static final String CONST_DNS = "DNS %1$s: %2$s in %3$dus (%4$s)";
+    private static final String CONST_CACHE_HIT = "Cache hit, age %1$ds";
+    private static final String CONST_CACHE_REVALIDATE =
+            "Cache entry stale, revalidating";
+    private static final String CONST_CACHE_REVALIDATED =
+            "Cache entry revalidated";
+    private static final String CONST_ERR_CACHE = "Cannot use cache entry: {}";
+
+    /**
+     * Connect timeout in millis, overridden by the
+     * {@code posterer.timeout.connect} system property
+     */
+    public static final int CONNECT_MILLIS =
+            Integer.getInteger("posterer.timeout.connect", 10_000);
+
+    /**
+     * Socket read timeout in millis, overridden by the
+     * {@code posterer.timeout.read} system property
+     */
+    public static final int READ_MILLIS =
+            Integer.getInteger("posterer.timeout.read", 60_000);
+
+    /**
+     * Pool lease timeout in millis, overridden by the
+     * {@code posterer.timeout.lease} system property
+     */
+    static final int LEASE_MILLIS =
+            Integer.getInteger("posterer.timeout.lease", 5_000);
 
     /**
      * CRLF
@@ -90,7 +152,7 @@ public final class CommonsResponseModelTaskImpl
     /**
      * The Http Request
      */
-    private @Nullable HttpUriRequest httpUriRequest;
+    private volatile @Nullable HttpUriRequest httpUriRequest;
 
     /**
      * has the response been processed?
@@ -102,9 +164,26 @@ public final class CommonsResponseModelTaskImpl
      */
     private final BooleanSupplier neededClientAuth;
 
+    /**
+     * Resolver for the target host, null if it is not resolved locally
+     */
+    private final @Nullable CachingDnsResolver resolver;
 
     /**
-     * Creates a new {@code CommonsResponseModelTaskImpl} for the given request
+     * The proxy and client identity the request is made with, keeping their
+     * cache entries apart, empty if neither
+     */
+    private final String cachePartition;
+
+    /**
+     * The cache entry being written as the body is read
+     */
+    private HttpCache.@Nullable Store cacheStore;
+
+
+    /**
+     * Creates a new {@code CommonsResponseModelTaskImpl} for the given request,
+     * leaving the client to resolve the target host
      * 
      * @param requestId
      *            the request reference id
@@ -118,10 +197,41 @@ public final class CommonsResponseModelTaskImpl
     public CommonsResponseModelTaskImpl(final int requestId, Auditor auditor,
             final HttpClientBuilder clientBuilder, final int timeout,
             final Request request, BooleanSupplier neededClientAuth)
+    {
+        this(requestId, auditor, clientBuilder, timeout, request,
+                neededClientAuth, null, "");
+    }
+
+
+    /**
+     * Creates a new {@code CommonsResponseModelTaskImpl} for the given request
+     * 
+     * @param requestId
+     *            the request reference id
+     * @param timeout
+     *            connection timeout
+     * @param request
+     *            the request
+     * @param preStatus
+     *            Status provided by calling class
+     * @param resolver
+     *            resolver for the target host, null if the host is not
+     *            resolved locally, as behind a proxy
+     * @param cachePartition
+     *            the proxy and client identity the request is made with,
+     *            empty if neither
+     */
+    public CommonsResponseModelTaskImpl(final int requestId, Auditor auditor,
+            final HttpClientBuilder clientBuilder, final int timeout,
+            final Request request, BooleanSupplier neededClientAuth,
+            final @Nullable CachingDnsResolver resolver,
+            final String cachePartition)
     {
         super(requestId, auditor, timeout, request);
         this.clientBuilder = clientBuilder;
         this.neededClientAuth = neededClientAuth;
+        this.resolver = resolver;
+        this.cachePartition = cachePartition;
     }
 
 
@@ -134,13 +244,24 @@ public final class CommonsResponseModelTaskImpl
     protected void prepareClient()
     {
         // Create the client that will manage the connection
-        client = clientBuilder.build();
+        client = clientBuilder.disableContentCompression()
+                .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(phase(CONNECT_MILLIS))
+                .setSocketTimeout(phase(READ_MILLIS))
+                .setConnectionRequestTimeout(phase(LEASE_MILLIS))
+                .build()).build();
 
         //Create the request
         HttpUriRequest newHttpUriRequest =
                 createRequest(getRequest().getUri(),
                         getRequest().getMethod());
 
+        if (newHttpUriRequest != null)
+        {
+            newHttpUriRequest.setHeader(HttpHeaders.ACCEPT_ENCODING,
+                    ContentCodings.ACCEPT_ENCODING);
+        }
+
         if (newHttpUriRequest != null
                 && !getRequest().getPayload().isEmpty()
                 && HttpEntityEnclosingRequestBase.class
@@ -152,8 +273,12 @@ public final class CommonsResponseModelTaskImpl
         {
             ContentType ct = ContentType.create(getRequest().getContentType(),
                     Consts.UTF_8);
-            StringEntity payload =
+            HttpEntity payload =
                     new StringEntity(getRequest().getPayload(), ct);
+            if (getRequest().getGzip())
+            {
+                payload = new GzipCompressingEntity(payload);
+            }
             ((HttpEntityEnclosingRequestBase) newHttpUriRequest)
                     .setEntity(payload);
             LOG.debug("Creating payload with MIME type: {}", ct.getMimeType());
@@ -180,6 +305,13 @@ public final class CommonsResponseModelTaskImpl
          * Execute the request
          */
         {
+            HttpCache cache = HttpCache.getInstance();
+            if (cache.isEnabled() && httpUriRequest != null
+                    && getRequest().getUri() != null)
+            {
+                return cached(cache, client, httpUriRequest);
+            }
+            resolve();
             return client.execute(httpUriRequest);
         }
 
@@ -196,7 +328,291 @@ public final class CommonsResponseModelTaskImpl
     @Override
     protected void closeClient()
     {
+        dropCacheStore();
         HttpClientUtils.closeQuietly(getValue());
+        /*
+         * Closing the client leaves a shared connection pool open
+         */
+        HttpClientUtils.closeQuietly(client);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Aborting the request unblocks the connect, lease or read in progress and
+     * shuts its connection down. A response already returned is closed,
+     * releasing its connection.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#abort()
+     */
+    @Override
+    protected void abort()
+    {
+        HttpUriRequest request = httpUriRequest;
+        if (request != null)
+        {
+            request.abort();
+        }
+        HttpClientUtils.closeQuietly(getValue());
+        dropCacheStore();
+    }
+
+
+    /**
+     * Drops the cache entry being written, unless it was committed
+     */
+    private synchronized void dropCacheStore()
+    {
+        HttpCache.Store store = cacheStore;
+        if (store != null)
+        {
+            store.abort();
+            cacheStore = null;
+        }
+    }
+
+
+    /**
+     * Executes the request through the cache: GETs are served from a fresh
+     * entry, revalidate a stale one, or may be stored; other methods
+     * invalidate the entry for their URI once they succeed.
+     * 
+     * @param cache
+     *            the cache
+     * @param client
+     *            the client
+     * @param request
+     *            the request
+     * @return the response
+     * @throws IOException
+     *             if the request fails
+     */
+    @SuppressWarnings("null")
+    private HttpResponse cached(final HttpCache cache,
+            final CloseableHttpClient client, final HttpUriRequest request)
+            throws IOException
+    {
+        String key = "GET " + getRequest().getUri()
+                + (getRequest().getSecurity().isEmpty() ? ""
+                        : " " + getRequest().getSecurity())
+                + (cachePartition.isEmpty() ? "" : " " + cachePartition);
+
+        if (!HttpGet.METHOD_NAME.equals(request.getMethod()))
+        {
+            resolve();
+            HttpResponse fetched = client.execute(request);
+            if (!HttpHead.METHOD_NAME.equals(request.getMethod())
+                    && !HttpOptions.METHOD_NAME.equals(request.getMethod())
+                    && !HttpTrace.METHOD_NAME.equals(request.getMethod())
+                    && fetched.getStatusLine().getStatusCode() < 400)
+            /*
+             * Unsafe methods change the resource
+             */
+            {
+                cache.invalidate(key);
+            }
+            return fetched;
+        }
+
+        HttpCache.Entry entry = cache.lookup(key);
+        if (entry != null && entry.isFresh(System.currentTimeMillis()))
+        {
+            try
+            {
+                HttpResponse hit = fromCache(entry);
+                cacheStatus = CacheStatus.HIT;
+                auditor.append(true, CONST_CACHE_HIT, TimeUnit.MILLISECONDS
+                        .toSeconds(entry.getAgeMillis(
+                                System.currentTimeMillis())));
+                return hit;
+            }
+            catch (IOException e)
+            {
+                LOG.debug(CONST_ERR_CACHE, key, e);
+                entry = null;
+            }
+        }
+
+        if (entry != null)
+        /*
+         * Stale, so ask the origin whether it still holds
+         */
+        {
+            String etag = entry.getETag();
+            String modified = entry.getLastModified();
+            if (etag != null)
+            {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+            }
+            if (modified != null)
+            {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, modified);
+            }
+            auditor.append(true, CONST_CACHE_REVALIDATE);
+        }
+
+        resolve();
+        long requestMillis = System.currentTimeMillis();
+        HttpResponse fetched = client.execute(request);
+        long responseMillis = System.currentTimeMillis();
+        List<Map.Entry<String, String>> headers =
+                headers(fetched.getAllHeaders());
+        int status = fetched.getStatusLine().getStatusCode();
+
+        if (entry != null && status == HttpStatus.SC_NOT_MODIFIED)
+        {
+            HttpClientUtils.closeQuietly(fetched);
+            try
+            {
+                HttpResponse revalidated = fromCache(cache.refresh(entry,
+                        headers, requestMillis, responseMillis));
+                cacheStatus = CacheStatus.REVALIDATED;
+                auditor.append(true, CONST_CACHE_REVALIDATED);
+                return revalidated;
+            }
+            catch (IOException e)
+            /*
+             * The entry went missing, so fetch it afresh
+             */
+            {
+                LOG.debug(CONST_ERR_CACHE, key, e);
+                cache.invalidate(key);
+                request.removeHeaders(HttpHeaders.IF_NONE_MATCH);
+                request.removeHeaders(HttpHeaders.IF_MODIFIED_SINCE);
+                requestMillis = System.currentTimeMillis();
+                fetched = client.execute(request);
+                responseMillis = System.currentTimeMillis();
+                headers = headers(fetched.getAllHeaders());
+                status = fetched.getStatusLine().getStatusCode();
+            }
+        }
+
+        cacheStatus = CacheStatus.MISS;
+        if (fetched.getEntity() != null)
+        {
+            cacheStore = cache.store(key,
+                    fetched.getProtocolVersion().toString(), status,
+                    fetched.getStatusLine().getReasonPhrase() == null ? ""
+                            : fetched.getStatusLine().getReasonPhrase(),
+                    headers, requestMillis, responseMillis);
+        }
+        if (cacheStore == null)
+        {
+            cache.invalidate(key);
+        }
+        return fetched;
+    }
+
+
+    /**
+     * Builds a response from a cache entry, its body read from the cache as
+     * it was received
+     * 
+     * @param entry
+     *            the cache entry
+     * @return the response
+     * @throws IOException
+     *             if the body cannot be read
+     */
+    @SuppressWarnings("null")
+    private static HttpResponse fromCache(final HttpCache.Entry entry)
+            throws IOException
+    {
+        ProtocolVersion version = HttpVersion.HTTP_1_1;
+        String[] parts = entry.getProtocol().split("[/.]");
+        if (parts.length == 3)
+        {
+            try
+            {
+                version = new ProtocolVersion(parts[0],
+                        Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            }
+            catch (NumberFormatException e)
+            {
+                // Taken as HTTP/1.1
+            }
+        }
+
+        BasicHttpResponse cached = new BasicHttpResponse(new BasicStatusLine(
+                version, entry.getStatus(), entry.getReason()));
+        for (Map.Entry<String, String> header : entry.getHeaders())
+        {
+            cached.addHeader(header.getKey(), header.getValue());
+        }
+        cached.setHeader(HttpHeaders.AGE, Long.toString(TimeUnit.MILLISECONDS
+                .toSeconds(entry.getAgeMillis(System.currentTimeMillis()))));
+
+        InputStreamEntity entity = new InputStreamEntity(entry.openBody(),
+                entry.getBodyBytes());
+        entity.setContentType(cached.getFirstHeader(HttpHeaders.CONTENT_TYPE));
+        entity.setContentEncoding(
+                cached.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+        cached.setEntity(entity);
+        return cached;
+    }
+
+
+    /**
+     * Lists headers by name and value
+     * 
+     * @param headers
+     *            the headers
+     * @return the header names and values
+     */
+    @SuppressWarnings("null")
+    private static List<Map.Entry<String, String>> headers(
+            final Header[] headers)
+    {
+        List<Map.Entry<String, String>> list = new ArrayList<>();
+        for (Header header : headers)
+        {
+            list.add(new AbstractMap.SimpleImmutableEntry<>(header.getName(),
+                    header.getValue()));
+        }
+        return list;
+    }
+
+
+    /**
+     * Resolves the target host ahead of connecting, auditing how long it took
+     * and whether it was cached. The connection then finds the host cached.
+     * 
+     * @throws IOException
+     *             if the host cannot be resolved
+     */
+    private void resolve() throws IOException
+    {
+        CachingDnsResolver dns = resolver;
+        URI uri = getRequest().getUri();
+        String host = uri == null ? null : uri.getHost();
+        if (dns != null && host != null)
+        {
+            boolean cached = dns.isCached(host);
+            long start = System.nanoTime();
+            InetAddress[] addresses = dns.resolve(host);
+            auditor.append(true, CONST_DNS, host,
+                    addresses[0].getHostAddress(),
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start),
+                    cached ? "cached" : "resolved");
+        }
+    }
+
+
+    /**
+     * Bounds a phase timeout by the total timeout
+     * 
+     * @param millis
+     *            the phase timeout
+     * @return the timeout to apply, in millis
+     */
+    private int phase(final int millis)
+    {
+        if (timeout <= 0)
+        {
+            return millis;
+        }
+        return (int) Math.min(millis, TimeUnit.SECONDS.toMillis(timeout));
     }
 
 
@@ -253,10 +669,12 @@ public final class CommonsResponseModelTaskImpl
         if (!isResponseProcessed)
         {
             HttpResponse httpResponse = getValue();
-            if (httpResponse != null)
+            if (httpResponse != null && !isCancelled())
             {
                 auditor.postscript(false,
                         httpResponse.getStatusLine().toString());
+                protocol = httpResponse.getProtocolVersion().toString()
+                        .toLowerCase(Locale.ROOT);
                 // headers = Arrays.toString(response.getAllHeaders());
                 responseHeaders =
                         prettyPrintHeaders(httpResponse.getAllHeaders());
@@ -264,10 +682,10 @@ public final class CommonsResponseModelTaskImpl
                 {
                     try
                     {
-                        responseBody =
-                                EntityUtils.toString(httpResponse.getEntity());
+                        responseBody = readBody(httpResponse.getEntity());
+                        bufferBody();
                     }
-                    catch (ParseException | IOException e)
+                    catch (IOException e)
                     {
                         LOG.error(CONST_ERR_NO_REPONSE, e);
                     }
@@ -280,6 +698,50 @@ public final class CommonsResponseModelTaskImpl
     }
 
 
+    /**
+     * Reads the entity, decoding its content coding, and counts its bytes
+     * both as received and as decoded
+     * 
+     * @param entity
+     *            the response entity
+     * @return the decoded body, as much as is kept
+     * @throws IOException
+     *             if the body cannot be read or decoded
+     */
+    private String readBody(final HttpEntity entity) throws IOException
+    {
+        Header coding = entity.getContentEncoding();
+        Charset charset = ContentType.getOrDefault(entity).getCharset();
+        if (charset == null)
+        {
+            charset = Consts.ISO_8859_1;
+        }
+
+        HttpCache.Store store = cacheStore;
+        try (CountingInputStream wire = new CountingInputStream(
+                store == null ? entity.getContent()
+                        : new TeeInputStream(entity.getContent(), store));
+                CountingInputStream decoded = new CountingInputStream(
+                        ContentCodings.decode(
+                                coding == null ? null : coding.getValue(),
+                                wire)))
+        {
+            String body = consume(decoded, charset);
+            wireBytes = wire.getByteCount();
+            decodedBytes = decoded.getByteCount();
+            if (store != null)
+            /*
+             * The body was read in full, so may be served again
+             */
+            {
+                store.commit();
+                cacheStore = null;
+            }
+            return body;
+        }
+    }
+
+
     /**
      * Pretty print header array
      * 
@@ -287,7 +749,7 @@ public final class CommonsResponseModelTaskImpl
      * @return nicely formatted headers
      */
     @SuppressWarnings("null")
-    private String prettyPrintHeaders(final Header[] headers)
+    static String prettyPrintHeaders(final Header[] headers)
     {
         StringBuilder sb = new StringBuilder();
         for (Header header : headers)
@@ -317,6 +779,24 @@ public final class CommonsResponseModelTaskImpl
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatusCode()
+     */
+    @Override
+    public int getStatusCode()
+    {
+        processResponse();
+        HttpResponse httpResponse = response;
+        if (httpResponse != null)
+        {
+            return httpResponse.getStatusLine().getStatusCode();
+        }
+        return 0;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.commons.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+import com.github.technosf.posterer.models.ShapingProfile;
+import com.github.technosf.posterer.utils.NetworkShaper;
+
+/**
+ * Connection socket factory that shapes the connections of the routes the
+ * {@code NetworkShaper} has a profile for, wrapping the plain factory, the
+ * {@code AuditingSSLSocketFactory} or any other.
+ * <p>
+ * A shaped connection is made over a shaped plain socket, with TLS layered on
+ * it by a layered factory, so that the handshake is shaped too. Connections
+ * to other routes are left to the factory wrapped.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ShapingSocketFactory
+        implements LayeredConnectionSocketFactory
+{
+    private static final String CONST_ERR_NOT_LAYERED =
+            "Socket factory cannot layer: %1$s";
+
+    private final ConnectionSocketFactory factory;
+
+    private final NetworkShaper shaper;
+
+
+    /**
+     * Wraps a factory with the shared shaper
+     *
+     * @param factory
+     *            the factory wrapped
+     */
+    public ShapingSocketFactory(final ConnectionSocketFactory factory)
+    {
+        this(factory, NetworkShaper.getInstance());
+    }
+
+
+    /**
+     * Wraps a factory
+     *
+     * @param factory
+     *            the factory wrapped
+     * @param shaper
+     *            the shaper
+     */
+    public ShapingSocketFactory(final ConnectionSocketFactory factory,
+            final NetworkShaper shaper)
+    {
+        this.factory = factory;
+        this.shaper = shaper;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The route is not yet known, so the wrapped factory's socket is created,
+     * and replaced on connecting should the route be shaped.
+     *
+     * @see org.apache.http.conn.socket.ConnectionSocketFactory#createSocket(org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public Socket createSocket(final HttpContext context) throws IOException
+    {
+        return factory.createSocket(context);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.apache.http.conn.socket.ConnectionSocketFactory#connectSocket(int,
+     *      java.net.Socket, org.apache.http.HttpHost,
+     *      java.net.InetSocketAddress, java.net.InetSocketAddress,
+     *      org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public Socket connectSocket(final int connectTimeout, final Socket sock,
+            final HttpHost host, final InetSocketAddress remoteAddress,
+            final InetSocketAddress localAddress, final HttpContext context)
+            throws IOException
+    {
+        ShapingProfile profile =
+                shaper.lookup(host.getHostName(), remoteAddress.getPort());
+        if (profile == null)
+        /*
+         * Not shaped
+         */
+        {
+            return factory.connectSocket(connectTimeout, sock, host,
+                    remoteAddress, localAddress, context);
+        }
+
+        if (sock != null)
+        {
+            sock.close();
+        }
+        Socket shaped = PlainConnectionSocketFactory.getSocketFactory()
+                .connectSocket(connectTimeout, shaper.createSocket(profile),
+                        host, remoteAddress, localAddress, context);
+        if (factory instanceof LayeredConnectionSocketFactory)
+        /*
+         * Layer TLS over the shaped connection
+         */
+        {
+            try
+            {
+                return ((LayeredConnectionSocketFactory) factory)
+                        .createLayeredSocket(shaped, host.getHostName(),
+                                remoteAddress.getPort(), context);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                shaped.close();
+                throw e;
+            }
+        }
+        return shaped;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.apache.http.conn.socket.LayeredConnectionSocketFactory#createLayeredSocket(java.net.Socket,
+     *      java.lang.String, int, org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public Socket createLayeredSocket(final Socket socket, final String target,
+            final int port, final HttpContext context) throws IOException
+    {
+        if (!(factory instanceof LayeredConnectionSocketFactory))
+        {
+            throw new IOException(
+                    String.format(CONST_ERR_NOT_LAYERED, factory));
+        }
+        return ((LayeredConnectionSocketFactory) factory)
+                .createLayeredSocket(socket, target, port, context);
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.jetty.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.frames.GoAwayFrame;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.posterer.models.DownloadModel;
+import com.github.technosf.posterer.models.Properties;
+import com.github.technosf.posterer.models.Proxy;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.RequestModel;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.KeyStoreBean;
+import com.github.technosf.posterer.models.impl.base.AbstractRequestModel;
+import com.github.technosf.posterer.modules.commons.transport.CommonsRequestModelImpl;
+import com.github.technosf.posterer.modules.commons.transport.CommonsResponseModelTaskImpl;
+import com.github.technosf.posterer.utils.Auditor;
+import com.github.technosf.posterer.utils.CachingDnsResolver;
+import com.google.inject.Inject;
+
+/**
+ * Jetty HTTP/2 implementation of {@RequestModel}
+ * <p>
+ * Holds one HTTP/2 session per origin and security configuration, and
+ * multiplexes every request to the origin over it as a stream, so that
+ * concurrency to a host is bounded by the streams the server allows rather
+ * than by connections. Sessions are opened on first use and reopened once
+ * closed.
+ * <p>
+ * {@code https} endpoints negotiate {@code h2} over TLS with ALPN, and fail
+ * if the server does not speak it. {@code http} endpoints speak {@code h2c}
+ * with prior knowledge, as HTTP/2 test servers on loopback do.
+ * <p>
+ * HTTP/2 is not tunnelled through proxies, so proxied requests are made by
+ * the Commons transport over HTTP/1.1.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class Http2RequestModelImpl
+        extends AbstractRequestModel<Http2ResponseModelTaskImpl>
+        implements RequestModel
+{
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(Http2RequestModelImpl.class);
+
+    /* Messages */
+    private static final String CONST_ERR_START = "Cannot start HTTP/2 client";
+    private static final String CONST_ERR_NO_HOST = "No host to connect to";
+    private static final String CONST_ERR_CONNECT =
+            "HTTP/2 connect to %1$s timed out";
+    private static final String CONST_SESSION = "HTTP/2 %1$s session to %2$s";
+    private static final String CONST_PROXIED =
+            "Proxied requests are made over HTTP/1.1";
+
+    /**
+     * ALPN protocol identifiers
+     */
+    private static final String PROTOCOL_H2 = "h2";
+    private static final String PROTOCOL_H2C = "h2c";
+
+    /**
+     * The resolver, caching host lookups across requests
+     */
+    private static final CachingDnsResolver RESOLVER =
+            CachingDnsResolver.getInstance();
+
+    /**
+     * Sessions by origin and security configuration
+     */
+    private static final Map<String, Promise.Completable<Session>> SESSIONS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * TLS configurations by security configuration
+     */
+    private static final Map<String, SslContextFactory> SSL =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The client, shared by all sessions, started on first use
+     */
+    private static @Nullable HTTP2Client client;
+
+    /**
+     * The transport for proxied requests and downloads
+     */
+    private final CommonsRequestModelImpl proxied =
+            new CommonsRequestModelImpl();
+
+
+    /**
+     * Injection point for <b>Guice</b>: resolves the hosts of the saved
+     * requests in the background
+     *
+     * @param properties
+     *            the properties holding the saved requests
+     */
+    @Inject
+    public void preResolve(final Properties properties)
+    {
+        proxied.preResolve(properties);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Requests through a proxy are made by the Commons transport.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#doRequest(com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.Proxy)
+     */
+    @Override
+    public ResponseModel doRequest(final Request request, final Proxy proxy)
+    {
+        if (proxy.toString().isEmpty())
+        {
+            return doRequest(request);
+        }
+        LOG.debug(CONST_PROXIED);
+        proxied.setTimeout(getTimeout());
+        return proxied.doRequest(request, proxy);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Requests through a proxy are made by the Commons transport.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#doRequest(com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.Proxy,
+     *      com.github.technosf.posterer.models.impl.KeyStoreBean,
+     *      java.lang.String)
+     */
+    @Override
+    public ResponseModel doRequest(final Request request, final Proxy proxy,
+            final KeyStoreBean keyStoreBean, final String alias)
+    {
+        if (proxy.toString().isEmpty())
+        {
+            return doRequest(request, keyStoreBean, alias);
+        }
+        LOG.debug(CONST_PROXIED);
+        proxied.setTimeout(getTimeout());
+        return proxied.doRequest(request, proxy, keyStoreBean, alias);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Ranges are fetched over connections of their own, so downloads are made
+     * by the Commons transport over HTTP/1.1.
+     *
+     * @see com.github.technosf.posterer.models.RequestModel#download(com.github.technosf.posterer.models.Request,
+     *      java.nio.file.Path, int)
+     */
+    @Override
+    public DownloadModel download(final Request request, final Path file,
+            final int segments)
+    {
+        proxied.setTimeout(getTimeout());
+        return proxied.download(request, file, segments);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#createRequest(int,
+     *      com.github.technosf.posterer.utils.Auditor, int,
+     *      com.github.technosf.posterer.models.Request)
+     */
+    @Override
+    protected Http2ResponseModelTaskImpl createRequest(final int requestId,
+            final Auditor auditor, final int timeout, final Request request)
+    {
+        return createRequest(requestId, auditor, timeout, request, null, "");
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only reached without a proxy.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#createRequest(int,
+     *      com.github.technosf.posterer.utils.Auditor, int,
+     *      com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.Proxy)
+     */
+    @Override
+    protected Http2ResponseModelTaskImpl createRequest(final int requestId,
+            final Auditor auditor, final int timeout, final Request request,
+            final Proxy proxy)
+    {
+        return createRequest(requestId, auditor, timeout, request);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#createRequest(int,
+     *      com.github.technosf.posterer.utils.Auditor, int,
+     *      com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.impl.KeyStoreBean,
+     *      java.lang.String)
+     */
+    @Override
+    protected Http2ResponseModelTaskImpl createRequest(final int requestId,
+            final Auditor auditor, final int timeout, final Request request,
+            final @Nullable KeyStoreBean keyStoreBean, final String alias)
+    {
+        URI uri = request.getUri();
+        boolean secure = uri != null && "https".equalsIgnoreCase(uri.getScheme());
+        String security = request.getSecurity();
+        return new Http2ResponseModelTaskImpl(requestId, auditor,
+                a -> session(a, uri, security, keyStoreBean, alias),
+                secure ? PROTOCOL_H2 : PROTOCOL_H2C, timeout, request);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only reached without a proxy.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#createRequest(int,
+     *      com.github.technosf.posterer.utils.Auditor, int,
+     *      com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.Proxy,
+     *      com.github.technosf.posterer.models.impl.KeyStoreBean,
+     *      java.lang.String)
+     */
+    @Override
+    protected Http2ResponseModelTaskImpl createRequest(final int requestId,
+            final Auditor auditor, final int timeout, final Request request,
+            final Proxy proxy, final KeyStoreBean keyStoreBean,
+            final String alias)
+    {
+        return createRequest(requestId, auditor, timeout, request,
+                keyStoreBean, alias);
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Returns the open session for the origin and security configuration,
+     * connecting if there is none. Concurrent callers share the connect.
+     *
+     * @param auditor
+     *            the call auditor
+     * @param uri
+     *            the request endpoint
+     * @param security
+     *            the TLS protocol, the default if empty
+     * @param keyStoreBean
+     *            the client certificate store, if any
+     * @param alias
+     *            the client certificate alias
+     * @return the session
+     * @throws IOException
+     *             if the session cannot be opened
+     * @throws InterruptedException
+     *             if interrupted while connecting
+     */
+    @SuppressWarnings("null")
+    private static Session session(final Auditor auditor,
+            final @Nullable URI uri, final String security,
+            final @Nullable KeyStoreBean keyStoreBean, final String alias)
+            throws IOException, InterruptedException
+    {
+        if (uri == null || uri.getHost() == null)
+        {
+            throw new IOException(CONST_ERR_NO_HOST);
+        }
+
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() < 0 ? (secure ? 443 : 80) : uri.getPort();
+        String origin = uri.getScheme().toLowerCase() + "://"
+                + uri.getHost().toLowerCase() + ":" + port;
+        String key = origin + " " + sslKey(security, keyStoreBean, alias);
+
+        Promise.Completable<Session> connecting = new Promise.Completable<>();
+        Promise.Completable<Session> existing;
+        while ((existing = SESSIONS.putIfAbsent(key, connecting)) != null
+                && isStale(existing))
+        /*
+         * Replace a closed or failed session
+         */
+        {
+            SESSIONS.remove(key, existing);
+        }
+
+        Promise.Completable<Session> session =
+                existing == null ? connecting : existing;
+        if (existing == null)
+        {
+            connect(uri.getHost(), port, secure
+                    ? ssl(security, keyStoreBean, alias) : null, key,
+                    connecting);
+        }
+        auditor.append(true, CONST_SESSION,
+                existing == null ? "new" : "shared", origin);
+
+        try
+        {
+            return session.get(CommonsResponseModelTaskImpl.CONNECT_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause
+                    : new IOException(cause);
+        }
+        catch (TimeoutException e)
+        {
+            throw new IOException(String.format(CONST_ERR_CONNECT, origin),
+                    e);
+        }
+    }
+
+
+    /**
+     * Is the session closed, or failed to open?
+     */
+    private static boolean isStale(final Promise.Completable<Session> session)
+    {
+        return session.isDone() && (session.isCompletedExceptionally()
+                || session.getNow(null).isClosed());
+    }
+
+
+    /**
+     * Connects a session, resolving the host through the shared resolver, and
+     * forgets it once it closes
+     */
+    private static void connect(final String host, final int port,
+            final @Nullable SslContextFactory ssl, final String key,
+            final Promise.Completable<Session> session)
+    {
+        InetSocketAddress address;
+        try
+        {
+            InetAddress[] addresses = RESOLVER.resolve(host);
+            address = new InetSocketAddress(addresses[0], port);
+        }
+        catch (IOException e)
+        {
+            session.failed(e);
+            return;
+        }
+
+        Session.Listener listener = new Session.Listener.Adapter()
+        {
+            @Override
+            public void onClose(final Session closed, final GoAwayFrame frame)
+            {
+                SESSIONS.remove(key, session);
+            }
+
+
+            @Override
+            public void onFailure(final Session failed, final Throwable x)
+            {
+                SESSIONS.remove(key, session);
+            }
+        };
+
+        HTTP2Client http2 = client();
+        if (ssl == null)
+        {
+            http2.connect(address, listener, session);
+        }
+        else
+        {
+            http2.connect(ssl, address, listener, session);
+        }
+    }
+
+
+    /**
+     * Returns the TLS configuration for the security settings, creating it
+     * if need be.
+     * <p>
+     * As with the Commons transport, the default configuration verifies the
+     * server while custom configurations trust it.
+     */
+    @SuppressWarnings("null")
+    private static SslContextFactory ssl(final String security,
+            final @Nullable KeyStoreBean keyStoreBean, final String alias)
+            throws IOException
+    {
+        try
+        {
+            return SSL.computeIfAbsent(sslKey(security, keyStoreBean, alias),
+                    k -> {
+                        SslContextFactory factory = security.isEmpty()
+                                ? new SslContextFactory.Client()
+                                : new SslContextFactory.Client(true);
+                        if (!security.isEmpty())
+                        {
+                            factory.setEndpointIdentificationAlgorithm(null);
+                            factory.setProtocol(security);
+                        }
+                        if (keyStoreBean != null)
+                        {
+                            factory.setKeyStore(keyStoreBean.getKeyStore());
+                            factory.setKeyStorePassword(
+                                    keyStoreBean.getPassword());
+                            factory.setCertAlias(alias);
+                        }
+                        try
+                        {
+                            factory.start();
+                        }
+                        catch (Exception e)
+                        {
+                            throw new IllegalStateException(e);
+                        }
+                        return factory;
+                    });
+        }
+        catch (IllegalStateException e)
+        {
+            throw new IOException(e.getCause());
+        }
+    }
+
+
+    /**
+     * Returns the key of a security configuration
+     */
+    private static String sslKey(final String security,
+            final @Nullable KeyStoreBean keyStoreBean, final String alias)
+    {
+        return keyStoreBean == null ? security
+                : security + " " + keyStoreBean.getFileName() + " " + alias;
+    }
+
+
+    /**
+     * Returns the client, starting it on first use with daemon threads
+     */
+    private static synchronized HTTP2Client client()
+    {
+        HTTP2Client http2 = client;
+        if (http2 == null)
+        {
+            QueuedThreadPool executor = new QueuedThreadPool();
+            executor.setName("posterer-h2");
+            executor.setDaemon(true);
+
+            http2 = new HTTP2Client();
+            http2.setExecutor(executor);
+            http2.setScheduler(new ScheduledExecutorScheduler(
+                    "posterer-h2-scheduler", true));
+            http2.setConnectTimeout(CommonsResponseModelTaskImpl.CONNECT_MILLIS);
+            try
+            {
+                http2.start();
+            }
+            catch (Exception e)
+            {
+                LOG.error(CONST_ERR_START, e);
+                throw new IllegalStateException(CONST_ERR_START, e);
+            }
+            client = http2;
+        }
+        return http2;
+    }
+}
@@ -0,0 +1,704 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.jetty.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask;
+import com.github.technosf.posterer.modules.commons.transport.CommonsResponseModelTaskImpl;
+import com.github.technosf.posterer.utils.Auditor;
+import com.github.technosf.posterer.utils.BodyConsumer;
+import com.github.technosf.posterer.utils.ChunkTap;
+import com.github.technosf.posterer.utils.ContentCodings;
+
+/**
+ * Jetty HTTP/2 implementation of {@ResponsetModel}
+ * <p>
+ * Each exchange is a stream on the HTTP/2 session the request model holds
+ * for the origin, so concurrent requests to an origin share one connection.
+ * The stream id is recorded, along with the protocol the session speaks.
+ * <p>
+ * Opening the stream is bounded by the connect timeout, and the stream by the
+ * read timeout between frames; the total deadline resets the stream, leaving
+ * the session to the other streams.
+ * <p>
+ * Bodies are collected as they arrive, to be decoded once complete, unless
+ * they need no decoding and are not kept in full, in which case each frame is
+ * consumed as it arrives and not collected. Frames of a body that needs no
+ * decoding are tapped for any chunk listener as they arrive.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class Http2ResponseModelTaskImpl
+        extends AbstractResponseModelTask<MetaData.Response>
+        implements ResponseModel
+{
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG = LoggerFactory
+            .getLogger(Http2ResponseModelTaskImpl.class);
+
+    /* Messages */
+    private static final String CONST_ERR_NO_REPONSE =
+            "Can't get response body";
+    private static final String CONST_ERR_NO_URI = "No endpoint";
+    private static final String CONST_ERR_RESET = "Stream reset: %1$s";
+    private static final String CONST_ERR_IDLE = "Stream idle for %1$dms";
+    private static final String CONST_ERR_ABORTED = "Stream aborted";
+    private static final String CONST_ERR_NO_HEADERS =
+            "Stream ended without a response";
+    private static final String CONST_STREAM = "Stream %1$d opened on %2$s";
+    private static final String CONST_STATUS = "HTTP/2.0 %1$d";
+
+    /**
+     * Methods that carry a payload, as for the Commons transport
+     */
+    private static final Set<String> PAYLOAD_METHODS =
+            new HashSet<>(Arrays.asList("POST", "PUT", "PATCH"));
+
+    /**
+     * CRLF
+     */
+    private static final String CRLF = "\r\n";
+
+    /**
+     * Supplier of the session for the origin
+     */
+    @FunctionalInterface
+    public interface SessionSource
+    {
+        /**
+         * Returns an open session to the request origin, connecting if need
+         * be
+         *
+         * @param auditor
+         *            the call auditor
+         * @return the session
+         * @throws IOException
+         *             if the session cannot be opened
+         * @throws InterruptedException
+         *             if interrupted while connecting
+         */
+        Session get(Auditor auditor) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Source of the session
+     */
+    private final SessionSource sessions;
+
+    /**
+     * The request headers
+     */
+    private MetaData.@Nullable Request metaData;
+
+    /**
+     * The request payload, encoded, if there is one
+     */
+    private byte @Nullable [] payload;
+
+    /**
+     * The exchange, completed by the end of the response stream
+     */
+    private final CompletableFuture<MetaData.Response> exchange =
+            new CompletableFuture<>();
+
+    /**
+     * The stream carrying the exchange, once open
+     */
+    private volatile @Nullable Stream stream;
+
+    /**
+     * The response headers, once received
+     */
+    private volatile MetaData.@Nullable Response responseMetaData;
+
+    /**
+     * The response body as received
+     */
+    private final ByteArrayOutputStream wire = new ByteArrayOutputStream();
+
+    /**
+     * The consumer of the body frames as they arrive, if not collected
+     */
+    private @Nullable BodyConsumer streamed;
+
+    /**
+     * The tap on the body frames as they arrive, if listened to
+     */
+    private @Nullable ChunkTap pushed;
+
+    /**
+     * has the response been processed?
+     */
+    private boolean isResponseProcessed = false;
+
+
+    /**
+     * Creates a new {@code Http2ResponseModelTaskImpl} for the given request
+     *
+     * @param requestId
+     *            the request reference id
+     * @param auditor
+     *            the call auditor
+     * @param sessions
+     *            source of the session for the request origin
+     * @param protocol
+     *            the protocol the session speaks
+     * @param timeout
+     *            the total deadline in seconds
+     * @param request
+     *            the request
+     */
+    public Http2ResponseModelTaskImpl(final int requestId,
+            final Auditor auditor, final SessionSource sessions,
+            final String protocol, final int timeout, final Request request)
+    {
+        super(requestId, auditor, timeout, request);
+        this.sessions = sessions;
+        this.protocol = protocol;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#prepareClient()
+     */
+    @Override
+    protected void prepareClient()
+    {
+        URI uri = getRequest().getUri();
+        if (uri == null)
+        {
+            return;
+        }
+
+        HttpFields fields = new HttpFields();
+        fields.put(HttpHeader.ACCEPT_ENCODING, ContentCodings.ACCEPT_ENCODING);
+
+        if (!getRequest().getPayload().isEmpty()
+                && PAYLOAD_METHODS.contains(getRequest().getMethod()))
+        /*
+         * If there is a payload and the request can carry a payload,
+         * encode the payload, compressing if asked
+         */
+        {
+            byte[] bytes =
+                    getRequest().getPayload().getBytes(StandardCharsets.UTF_8);
+            fields.put(HttpHeader.CONTENT_TYPE,
+                    getRequest().getContentType() + "; charset=UTF-8");
+            if (getRequest().getGzip())
+            {
+                bytes = gzip(bytes);
+                fields.put(HttpHeader.CONTENT_ENCODING, "gzip");
+            }
+            fields.putLongField(HttpHeader.CONTENT_LENGTH, bytes.length);
+            payload = bytes;
+        }
+
+        metaData = new MetaData.Request(getRequest().getMethod(),
+                new HttpURI(uri), HttpVersion.HTTP_2, fields);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#getReponse(com.github.technosf.posterer.utils.Auditor)
+     */
+    @SuppressWarnings("null")
+    @Override
+    protected MetaData.Response getReponse(final Auditor auditor)
+            throws IOException, InterruptedException, TimeoutException
+    {
+        this.auditor = auditor;
+
+        MetaData.Request request = metaData;
+        if (request == null)
+        {
+            throw new IOException(CONST_ERR_NO_URI);
+        }
+
+        Session session = sessions.get(auditor);
+
+        byte[] body = payload;
+        Promise.Completable<Stream> opened = new Promise.Completable<>();
+        session.newStream(new HeadersFrame(request, null, body == null),
+                opened, new Listener());
+
+        Stream open = await(opened, phase(
+                CommonsResponseModelTaskImpl.CONNECT_MILLIS));
+        stream = open;
+        streamId = open.getId();
+        open.setIdleTimeout(phase(CommonsResponseModelTaskImpl.READ_MILLIS));
+        auditor.append(true, CONST_STREAM, streamId, protocol);
+
+        if (isCancelled() || exchange.isDone())
+        /*
+         * Aborted while opening
+         */
+        {
+            abort();
+        }
+        else if (body != null)
+        {
+            open.data(new DataFrame(open.getId(), ByteBuffer.wrap(body), true),
+                    Callback.NOOP);
+        }
+
+        return await(exchange, 0);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The session is shared, so there is nothing to close.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#closeClient()
+     */
+    @Override
+    protected void closeClient()
+    {
+        // Session outlives the exchange
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Fails the exchange, releasing the waiting thread, and resets the stream
+     * if it is open. The session is left to its other streams.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#abort()
+     */
+    @Override
+    protected void abort()
+    {
+        exchange.completeExceptionally(new IOException(CONST_ERR_ABORTED));
+        Stream open = stream;
+        if (open != null && !open.isClosed())
+        {
+            open.reset(new ResetFrame(open.getId(),
+                    ErrorCode.CANCEL_STREAM_ERROR.code), Callback.NOOP);
+        }
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.github.technosf.posterer.models.AbstractResponseModelTask#processResponse()
+     */
+    @SuppressWarnings("null")
+    @Override
+    protected synchronized void processResponse()
+    {
+        if (!isResponseProcessed)
+        {
+            MetaData.Response http2Response = getValue();
+            if (http2Response != null && !isCancelled())
+            {
+                auditor.postscript(false,
+                        String.format(CONST_STATUS, http2Response.getStatus()));
+                responseHeaders = prettyPrintHeaders(http2Response.getFields());
+                try
+                {
+                    responseBody = readBody(http2Response.getFields());
+                    bufferBody();
+                }
+                catch (IOException e)
+                {
+                    LOG.error(CONST_ERR_NO_REPONSE, e);
+                }
+            }
+            closeClient();
+            isResponseProcessed = true;
+            response = http2Response;
+        }
+    }
+
+
+    /**
+     * Decodes the body received, and counts its bytes both as received and
+     * as decoded
+     *
+     * @param fields
+     *            the response headers
+     * @return the decoded body, as much as is kept
+     * @throws IOException
+     *             if the body cannot be decoded
+     */
+    private String readBody(final HttpFields fields) throws IOException
+    {
+        Charset charset = charset(fields);
+
+        byte[] received;
+        synchronized (wire)
+        {
+            BodyConsumer consumer = streamed;
+            if (consumer != null)
+            {
+                wireBytes = decodedBytes = consumer.getBytes();
+                return consumed(consumer, charset);
+            }
+            received = wire.toByteArray();
+        }
+
+        try (CountingInputStream decoded = new CountingInputStream(
+                ContentCodings.decode(
+                        fields.get(HttpHeader.CONTENT_ENCODING),
+                        new ByteArrayInputStream(received))))
+        {
+            String body = consume(decoded, charset);
+            wireBytes = received.length;
+            decodedBytes = decoded.getByteCount();
+            return body;
+        }
+    }
+
+
+    /**
+     * Returns the body charset the headers give, or ISO-8859-1
+     *
+     * @param fields
+     *            the response headers
+     * @return the charset
+     */
+    private static Charset charset(final HttpFields fields)
+    {
+        String charsetName = MimeTypes.getCharsetFromContentType(
+                fields.get(HttpHeader.CONTENT_TYPE));
+        return charsetName == null ? StandardCharsets.ISO_8859_1
+                : Charset.forName(charsetName);
+    }
+
+
+    /**
+     * Pretty print headers
+     *
+     * @param fields
+     * @return nicely formatted headers
+     */
+    @SuppressWarnings("null")
+    private static String prettyPrintHeaders(final HttpFields fields)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (HttpField field : fields)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(CRLF);
+            }
+            sb.append(field.getName())
+                    .append("=")
+                    .append(field.getValue());
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Waits for a future, unwrapping its failure
+     *
+     * @param future
+     *            the future
+     * @param millis
+     *            how long to wait, forever if not positive
+     * @return the future value
+     */
+    private static <V> V await(final CompletableFuture<V> future,
+            final int millis)
+            throws IOException, InterruptedException, TimeoutException
+    {
+        try
+        {
+            return millis > 0 ? future.get(millis, TimeUnit.MILLISECONDS)
+                    : future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof TimeoutException)
+            {
+                throw (TimeoutException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+
+    /**
+     * Bounds a phase timeout by the total timeout
+     *
+     * @param millis
+     *            the phase timeout
+     * @return the timeout to apply, in millis
+     */
+    private int phase(final int millis)
+    {
+        if (timeout <= 0)
+        {
+            return millis;
+        }
+        return (int) Math.min(millis, TimeUnit.SECONDS.toMillis(timeout));
+    }
+
+
+    /**
+     * Gzips the payload
+     */
+    private static byte[] gzip(final byte[] bytes)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out))
+        {
+            gzip.write(bytes);
+        }
+        catch (IOException e)
+        /*
+         * Not from memory
+         */
+        {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#isResponseProcessed()
+     */
+    @Override
+    protected boolean isResponseProcessed()
+    {
+        return isResponseProcessed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatusCode()
+     */
+    @Override
+    public int getStatusCode()
+    {
+        processResponse();
+        MetaData.Response http2Response = response;
+        if (http2Response != null)
+        {
+            return http2Response.getStatus();
+        }
+        return 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatus()
+     */
+    @Override
+    public String getStatus()
+    {
+        return auditor.toString();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Client authentication is not tracked on shared sessions.
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#neededClientAuth()
+     */
+    @Override
+    public boolean neededClientAuth()
+    {
+        return false;
+    }
+
+    /**
+     * Collects the response frames of the stream into the exchange
+     */
+    private final class Listener extends Stream.Listener.Adapter
+    {
+        @Override
+        public void onHeaders(final Stream stream, final HeadersFrame frame)
+        {
+            MetaData metaData = frame.getMetaData();
+            if (metaData.isResponse()
+                    && ((MetaData.Response) metaData).getStatus() >= 200)
+            /*
+             * Final response headers, not interim or trailers
+             */
+            {
+                responseMetaData = (MetaData.Response) metaData;
+                firstByte();
+                String coding = metaData.getFields()
+                        .get(HttpHeader.CONTENT_ENCODING);
+                boolean identity = coding == null
+                        || "identity".equalsIgnoreCase(coding.trim());
+                /*
+                 * Nothing to decode - tap frames as they arrive
+                 */
+                ChunkTap tap =
+                        identity ? tap(charset(metaData.getFields())) : null;
+                synchronized (wire)
+                {
+                    pushed = tap;
+                    if (identity && !consumption.isFull())
+                    /*
+                     * Nothing to decode - consume frames as they arrive
+                     */
+                    {
+                        streamed = new BodyConsumer(consumption);
+                    }
+                }
+            }
+            if (frame.isEndStream())
+            {
+                complete();
+            }
+        }
+
+
+        @Override
+        public void onData(final Stream stream, final DataFrame frame,
+                final Callback callback)
+        {
+            ByteBuffer data = frame.getData();
+            synchronized (wire)
+            {
+                ChunkTap tap = pushed;
+                if (tap != null)
+                {
+                    tap.tap(data);
+                }
+                BodyConsumer consumer = streamed;
+                if (consumer != null)
+                {
+                    consumer.update(data);
+                }
+                while (data.hasRemaining())
+                {
+                    wire.write(data.get());
+                }
+            }
+            callback.succeeded();
+            if (frame.isEndStream())
+            {
+                complete();
+            }
+        }
+
+
+        @Override
+        public void onReset(final Stream stream, final ResetFrame frame)
+        {
+            exchange.completeExceptionally(new IOException(String.format(
+                    CONST_ERR_RESET,
+                    ErrorCode.toString(frame.getError(), null))));
+        }
+
+
+        @Override
+        public boolean onIdleTimeout(final Stream stream, final Throwable x)
+        {
+            exchange.completeExceptionally(new SocketTimeoutException(
+                    String.format(CONST_ERR_IDLE, stream.getIdleTimeout())));
+            return true;
+        }
+
+
+        @Override
+        public void onFailure(final Stream stream, final int error,
+                final String reason, final Throwable failure,
+                final Callback callback)
+        {
+            exchange.completeExceptionally(new IOException(
+                    ErrorCode.toString(error, reason), failure));
+            callback.succeeded();
+        }
+
+
+        /**
+         * The stream has ended
+         */
+        @SuppressWarnings("null")
+        private void complete()
+        {
+            MetaData.Response received = responseMetaData;
+            if (received == null)
+            {
+                exchange.completeExceptionally(
+                        new IOException(CONST_ERR_NO_HEADERS));
+            }
+            else
+            {
+                exchange.complete(received);
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.nio.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.technosf.posterer.models.Request;
+
+/**
+ * A request serialized once into the bytes sent on the wire, so that firing
+ * it again costs no formatting or allocation.
+ * <p>
+ * The bytes are held in a read-only direct buffer; each connection sends
+ * them through its own view of the buffer.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class CompiledRequest
+{
+    private static final String CONST_ERR_NO_HOST = "No host in %1$s";
+
+    /**
+     * Methods that carry a payload, as for the Commons transport
+     */
+    private static final Set<String> PAYLOAD_METHODS =
+            new HashSet<>(Arrays.asList("POST", "PUT", "PATCH"));
+
+    /**
+     * Methods that may be sent again without changing the outcome
+     */
+    private static final Set<String> IDEMPOTENT_METHODS =
+            new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE",
+                    "PUT", "DELETE"));
+
+    private static final String CRLF = "\r\n";
+
+    /* The source, to check a cached compilation against */
+    private final String method;
+    private final String endpoint;
+    private final String contentType;
+    private final String payload;
+    private final boolean gzip;
+
+    private final String host;
+
+    private final int port;
+
+    private final ByteBuffer bytes;
+
+
+    /**
+     * Compiles a request
+     *
+     * @param request
+     *            the request, with an {@code http} endpoint
+     * @throws IOException
+     *             if the request has no host
+     */
+    @SuppressWarnings("null")
+    public CompiledRequest(final Request request) throws IOException
+    {
+        method = request.getMethod();
+        endpoint = request.getEndpoint();
+        contentType = request.getContentType();
+        payload = request.getPayload();
+        gzip = Boolean.TRUE.equals(request.getGzip());
+
+        URI uri = request.getUri();
+        if (uri == null || uri.getHost() == null)
+        {
+            throw new IOException(String.format(CONST_ERR_NO_HOST, endpoint));
+        }
+        host = uri.getHost();
+        port = uri.getPort() < 0 ? 80 : uri.getPort();
+
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty()
+                ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null)
+        {
+            path += "?" + uri.getRawQuery();
+        }
+
+        StringBuilder head = new StringBuilder(256)
+                .append(method).append(' ').append(path).append(" HTTP/1.1")
+                .append(CRLF)
+                .append("Host: ").append(host)
+                .append(uri.getPort() < 0 ? "" : ":" + port).append(CRLF);
+
+        byte[] body = new byte[0];
+        if (PAYLOAD_METHODS.contains(method))
+        {
+            body = payload.getBytes(StandardCharsets.UTF_8);
+            if (body.length > 0)
+            {
+                head.append("Content-Type: ").append(contentType)
+                        .append("; charset=UTF-8").append(CRLF);
+                if (gzip)
+                {
+                    body = gzip(body);
+                    head.append("Content-Encoding: gzip").append(CRLF);
+                }
+            }
+            head.append("Content-Length: ").append(body.length).append(CRLF);
+        }
+        head.append(CRLF);
+
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer =
+                ByteBuffer.allocateDirect(headBytes.length + body.length);
+        buffer.put(headBytes).put(body).flip();
+        bytes = buffer.asReadOnlyBuffer();
+    }
+
+
+    /**
+     * Is this the compilation of the request?
+     *
+     * @param request
+     *            the request
+     * @return true if the request compiles to these bytes
+     */
+    public boolean matches(final Request request)
+    {
+        return method.equals(request.getMethod())
+                && endpoint.equals(request.getEndpoint())
+                && contentType.equals(request.getContentType())
+                && payload.equals(request.getPayload())
+                && gzip == Boolean.TRUE.equals(request.getGzip());
+    }
+
+
+    /**
+     * @return the host to connect to
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+
+    /**
+     * @return the port to connect to
+     */
+    public int getPort()
+    {
+        return port;
+    }
+
+
+    /**
+     * @return is the response to this request bodiless?
+     */
+    public boolean isHead()
+    {
+        return "HEAD".equals(method);
+    }
+
+
+    /**
+     * @return can this request be sent again without changing the outcome?
+     */
+    public boolean isIdempotent()
+    {
+        return IDEMPOTENT_METHODS.contains(method);
+    }
+
+
+    /**
+     * Returns a view of the bytes to send, for a connection to reuse
+     *
+     * @return a new view of the request bytes
+     */
+    @SuppressWarnings("null")
+    ByteBuffer view()
+    {
+        return bytes.duplicate();
+    }
+
+
+    /**
+     * @return the number of bytes sent
+     */
+    public int size()
+    {
+        return bytes.capacity();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return Objects.toString(method) + " " + endpoint + " (" + size()
+                + " bytes)";
+    }
+
+
+    /**
+     * Gzips the payload
+     */
+    private static byte[] gzip(final byte[] bytes) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out))
+        {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
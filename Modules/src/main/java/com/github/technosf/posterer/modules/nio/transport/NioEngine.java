@@ -0,0 +1,882 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.nio.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A minimal HTTP/1.1 client engine for load generation.
+ * <p>
+ * Each selector thread drives its own connections, kept alive and reused
+ * most recent first. Requests are sent from their precompiled bytes, and of
+ * the response only the status line and the body framing - content length,
+ * chunks or connection close - are parsed. Bodies are discarded, or hashed.
+ * Each connection reuses its buffers, so steady state exchanges allocate
+ * little beyond the exchange itself.
+ * <p>
+ * A request that fails on a kept-alive connection before any response is
+ * received is retried once on a new connection, as the server may have
+ * closed the connection while it was idle. Requests that are not idempotent
+ * are retried only if they were not sent in full, as the server may already
+ * have acted on them.
+ * <p>
+ * The shared engine is configured by system properties:
+ * {@code posterer.nio.selectors} selector threads, one per core by default,
+ * {@code posterer.nio.buffer} bytes of read buffer per connection, and
+ * {@code posterer.nio.hash} to hash bodies.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class NioEngine
+{
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG = LoggerFactory.getLogger(NioEngine.class);
+
+    private static final String CONST_ERR_LOOP = "Selector loop failed";
+    private static final String CONST_ERR_STATUS = "Bad status line";
+    private static final String CONST_ERR_LINE = "Header line too long";
+    private static final String CONST_ERR_CHUNK = "Bad chunk framing";
+    private static final String CONST_ERR_CLOSED =
+            "Connection closed before the response completed";
+
+    /**
+     * Longest header or chunk size line
+     */
+    private static final int MAX_LINE = 8192;
+
+    /* Parse states */
+    private static final int STATUS = 0;
+    private static final int HEADERS = 1;
+    private static final int BODY = 2;
+    private static final int CHUNK_SIZE = 3;
+    private static final int CHUNK_DATA = 4;
+    private static final int CHUNK_END = 5;
+    private static final int TRAILERS = 6;
+    private static final int UNTIL_CLOSE = 7;
+
+    /* Headers that frame the body, lower case */
+    private static final byte[] CONTENT_LENGTH = bytes("content-length:");
+    private static final byte[] TRANSFER_ENCODING =
+            bytes("transfer-encoding:");
+    private static final byte[] CONNECTION = bytes("connection:");
+    private static final byte[] CHUNKED = bytes("chunked");
+    private static final byte[] CLOSE = bytes("close");
+
+    private final Loop[] loops;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final boolean hash;
+
+    private final int bufferSize;
+
+    private final LongAdder connections = new LongAdder();
+
+
+    /**
+     * Returns the shared engine, started on first use
+     *
+     * @return the shared engine
+     */
+    public static NioEngine getInstance()
+    {
+        return Holder.INSTANCE;
+    }
+
+
+    /**
+     * Creates and starts an engine
+     *
+     * @param selectors
+     *            the selector threads
+     * @param bufferSize
+     *            the read buffer per connection
+     * @param hash
+     *            hash bodies, rather than discard them
+     * @throws IOException
+     *             if a selector cannot be opened
+     */
+    public NioEngine(final int selectors, final int bufferSize,
+            final boolean hash) throws IOException
+    {
+        this.hash = hash;
+        this.bufferSize = bufferSize;
+        loops = new Loop[Math.max(1, selectors)];
+        for (int i = 0; i < loops.length; i++)
+        {
+            loops[i] = new Loop();
+            Thread thread = new Thread(loops[i], "posterer-nio-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+
+    /**
+     * Sends the exchange's request on a kept-alive or new connection. The
+     * exchange completes once its response has been read, or fails.
+     *
+     * @param exchange
+     *            the exchange
+     */
+    public void submit(final NioExchange exchange)
+    {
+        Loop loop = loops[(next.getAndIncrement() & Integer.MAX_VALUE)
+                % loops.length];
+        exchange.loop = loop;
+        loop.submitted.add(exchange);
+        loop.selector.wakeup();
+    }
+
+
+    /**
+     * Closes the connection carrying the exchange, if it is still in flight
+     *
+     * @param exchange
+     *            the exchange
+     */
+    public void cancel(final NioExchange exchange)
+    {
+        Loop loop = exchange.loop;
+        if (loop != null)
+        {
+            loop.cancelled.add(exchange);
+            loop.selector.wakeup();
+        }
+    }
+
+
+    /**
+     * @return the number of connections opened
+     */
+    public long getConnections()
+    {
+        return connections.sum();
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    private static byte[] bytes(final String ascii)
+    {
+        return ascii.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+
+    /**
+     * Does the line start with the lower case prefix, ignoring case?
+     */
+    private static boolean startsWith(final byte[] line, final int length,
+            final byte[] prefix)
+    {
+        if (length < prefix.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if ((line[i] | 0x20) != prefix[i] && line[i] != prefix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Does the line contain the lower case token, ignoring case?
+     */
+    private static boolean contains(final byte[] line, final int from,
+            final int length, final byte[] token)
+    {
+        outer: for (int i = from; i <= length - token.length; i++)
+        {
+            for (int j = 0; j < token.length; j++)
+            {
+                if ((line[i + j] | 0x20) != token[j])
+                {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Parses the decimal value of a header
+     */
+    private static long decimal(final byte[] line, final int from,
+            final int length)
+    {
+        long value = -1;
+        for (int i = from; i < length; i++)
+        {
+            int digit = line[i] - '0';
+            if (digit >= 0 && digit <= 9)
+            {
+                value = (value < 0 ? 0 : value * 10) + digit;
+            }
+            else if (value >= 0)
+            {
+                break;
+            }
+        }
+        return value;
+    }
+
+
+    /**
+     * Parses a chunk size line
+     */
+    private static long hex(final byte[] line, final int length)
+            throws IOException
+    {
+        long value = 0;
+        int i = 0;
+        for (; i < length; i++)
+        {
+            int digit = Character.digit(line[i], 16);
+            if (digit < 0)
+            {
+                break;
+            }
+            value = value * 16 + digit;
+        }
+        if (i == 0)
+        {
+            throw new IOException(CONST_ERR_CHUNK);
+        }
+        return value;
+    }
+
+    /**
+     * Lazy holder of the shared engine
+     */
+    private static final class Holder
+    {
+        static final NioEngine INSTANCE = create();
+
+
+        private static NioEngine create()
+        {
+            try
+            {
+                return new NioEngine(
+                        Integer.getInteger("posterer.nio.selectors",
+                                Runtime.getRuntime().availableProcessors()),
+                        Integer.getInteger("posterer.nio.buffer", 16 * 1024),
+                        Boolean.getBoolean("posterer.nio.hash"));
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * A selector thread and the connections it drives
+     */
+    final class Loop implements Runnable
+    {
+        final Selector selector;
+
+        final Queue<NioExchange> submitted = new ConcurrentLinkedQueue<>();
+
+        final Queue<NioExchange> cancelled = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Kept-alive connections by address, touched only by this thread
+         */
+        private final Map<InetSocketAddress, ArrayDeque<Connection>> idle =
+                new HashMap<>();
+
+
+        Loop() throws IOException
+        {
+            selector = Selector.open();
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Runnable#run()
+         */
+        @SuppressWarnings("null")
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                try
+                {
+                    selector.select();
+
+                    NioExchange exchange;
+                    while ((exchange = submitted.poll()) != null)
+                    {
+                        start(exchange);
+                    }
+                    while ((exchange = cancelled.poll()) != null)
+                    {
+                        Connection connection =
+                                (Connection) exchange.connection;
+                        if (connection != null
+                                && connection.exchange == exchange)
+                        {
+                            connection.close();
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys =
+                            selector.selectedKeys().iterator();
+                    while (keys.hasNext())
+                    {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ((Connection) key.attachment()).ready(key);
+                    }
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    LOG.error(CONST_ERR_LOOP, e);
+                }
+            }
+        }
+
+
+        /**
+         * Sends the exchange on an idle connection to its address, or a new
+         * one
+         */
+        void start(final NioExchange exchange)
+        {
+            if (exchange.isDone())
+            /*
+             * Aborted while queued
+             */
+            {
+                return;
+            }
+
+            ArrayDeque<Connection> pool = idle.get(exchange.address);
+            Connection connection = pool == null ? null : pool.pollLast();
+            try
+            {
+                if (connection == null)
+                {
+                    connection = new Connection(this, exchange.address);
+                }
+                connection.send(exchange);
+            }
+            catch (IOException e)
+            {
+                if (connection != null)
+                {
+                    connection.close();
+                }
+                exchange.completeExceptionally(e);
+            }
+        }
+
+
+        /**
+         * Parks a connection for reuse
+         */
+        void park(final Connection connection)
+        {
+            idle.computeIfAbsent(connection.address, a -> new ArrayDeque<>())
+                    .addLast(connection);
+        }
+
+
+        /**
+         * Forgets a parked connection
+         */
+        void unpark(final Connection connection)
+        {
+            ArrayDeque<Connection> pool = idle.get(connection.address);
+            if (pool != null)
+            {
+                pool.remove(connection);
+            }
+        }
+    }
+
+    /**
+     * A connection and the state of the response being read on it
+     */
+    private final class Connection
+    {
+        final Loop loop;
+
+        final InetSocketAddress address;
+
+        final SocketChannel channel;
+
+        final SelectionKey key;
+
+        final ByteBuffer in = ByteBuffer.allocateDirect(bufferSize);
+
+        final byte[] line = new byte[MAX_LINE];
+
+        final CRC32 crc = new CRC32();
+
+        @Nullable
+        ByteBuffer out;
+
+        @Nullable
+        CompiledRequest sent;
+
+        @Nullable
+        NioExchange exchange;
+
+        boolean connected;
+
+        int requests;
+
+        /* Response state */
+        int state;
+        int lineLength;
+        int status;
+        long contentLength;
+        boolean chunked;
+        boolean closing;
+        long remaining;
+        long body;
+        boolean received;
+
+
+        Connection(final Loop loop, final InetSocketAddress address)
+                throws IOException
+        {
+            this.loop = loop;
+            this.address = address;
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connected = channel.connect(address);
+            key = channel.register(loop.selector, 0, this);
+            connections.increment();
+        }
+
+
+        /**
+         * Sends the request of the exchange
+         */
+        @SuppressWarnings("null")
+        void send(final NioExchange sending) throws IOException
+        {
+            exchange = sending;
+            sending.connection = this;
+            sending.reused = requests > 0;
+
+            if (sent == sending.request)
+            {
+                out.clear();
+            }
+            else
+            {
+                out = sending.request.view();
+                sent = sending.request;
+            }
+
+            state = STATUS;
+            lineLength = 0;
+            body = 0;
+            received = false;
+            closing = false;
+            crc.reset();
+
+            if (connected)
+            {
+                write();
+            }
+            else
+            {
+                key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        }
+
+
+        /**
+         * Handles the channel being ready
+         */
+        void ready(final SelectionKey ready)
+        {
+            try
+            {
+                if (ready.isConnectable())
+                {
+                    channel.finishConnect();
+                    connected = true;
+                    write();
+                }
+                else if (ready.isWritable())
+                {
+                    write();
+                }
+                else if (ready.isReadable())
+                {
+                    read();
+                }
+            }
+            catch (IOException e)
+            {
+                failed(e);
+            }
+            catch (RuntimeException e)
+            {
+                failed(new IOException(e));
+            }
+        }
+
+
+        @SuppressWarnings("null")
+        private void write() throws IOException
+        {
+            channel.write(out);
+            key.interestOps(out.hasRemaining() ? SelectionKey.OP_WRITE
+                    : SelectionKey.OP_READ);
+        }
+
+
+        private void read() throws IOException
+        {
+            int read = channel.read(in);
+            if (exchange == null)
+            /*
+             * Idle connection closed or spoke out of turn
+             */
+            {
+                close();
+                return;
+            }
+            if (read < 0)
+            {
+                if (state == UNTIL_CLOSE)
+                {
+                    complete(false);
+                }
+                else
+                {
+                    failed(new EOFException(CONST_ERR_CLOSED));
+                }
+                return;
+            }
+
+            received |= read > 0;
+            in.flip();
+            boolean done = parse();
+            boolean leftover = in.hasRemaining();
+            in.clear();
+            if (done)
+            {
+                complete(!leftover && !closing);
+            }
+        }
+
+
+        /**
+         * Parses what has been read
+         *
+         * @return true once the response is complete
+         */
+        private boolean parse() throws IOException
+        {
+            while (in.hasRemaining())
+            {
+                switch (state)
+                {
+                    case BODY:
+                    case CHUNK_DATA:
+                        int n = (int) Math.min(remaining, in.remaining());
+                        consume(n);
+                        remaining -= n;
+                        if (remaining == 0)
+                        {
+                            if (state == BODY)
+                            {
+                                return true;
+                            }
+                            state = CHUNK_END;
+                        }
+                        break;
+                    case UNTIL_CLOSE:
+                        consume(in.remaining());
+                        break;
+                    default:
+                        if (!line())
+                        {
+                            return false;
+                        }
+                        boolean done = handleLine();
+                        lineLength = 0;
+                        if (done)
+                        {
+                            return true;
+                        }
+                }
+            }
+            return false;
+        }
+
+
+        /**
+         * Counts, and hashes, body bytes
+         */
+        private void consume(final int n)
+        {
+            if (hash)
+            {
+                int limit = in.limit();
+                in.limit(in.position() + n);
+                crc.update(in);
+                in.limit(limit);
+            }
+            else
+            {
+                in.position(in.position() + n);
+            }
+            body += n;
+        }
+
+
+        /**
+         * Reads up to the end of a line
+         *
+         * @return true if a whole line has been read
+         */
+        private boolean line() throws IOException
+        {
+            while (in.hasRemaining())
+            {
+                byte b = in.get();
+                if (b == '\n')
+                {
+                    if (lineLength > 0 && line[lineLength - 1] == '\r')
+                    {
+                        lineLength--;
+                    }
+                    return true;
+                }
+                if (lineLength == MAX_LINE)
+                {
+                    throw new IOException(CONST_ERR_LINE);
+                }
+                line[lineLength++] = b;
+            }
+            return false;
+        }
+
+
+        /**
+         * Handles a status, header, chunk size or trailer line
+         *
+         * @return true once the response is complete
+         */
+        @SuppressWarnings("null")
+        private boolean handleLine() throws IOException
+        {
+            switch (state)
+            {
+                case STATUS:
+                    if (lineLength < 12 || line[0] != 'H' || line[8] != ' ')
+                    {
+                        throw new IOException(CONST_ERR_STATUS);
+                    }
+                    status = (int) decimal(line, 9, 12);
+                    closing = line[7] == '0';
+                    contentLength = -1;
+                    chunked = false;
+                    state = HEADERS;
+                    return false;
+                case HEADERS:
+                    if (lineLength > 0)
+                    {
+                        header();
+                        return false;
+                    }
+                    if (status < 200)
+                    /*
+                     * Interim response, the real one follows
+                     */
+                    {
+                        state = STATUS;
+                        return false;
+                    }
+                    if (exchange.request.isHead() || status == 204
+                            || status == 304)
+                    {
+                        return true;
+                    }
+                    if (chunked)
+                    {
+                        state = CHUNK_SIZE;
+                        return false;
+                    }
+                    if (contentLength >= 0)
+                    {
+                        state = BODY;
+                        remaining = contentLength;
+                        return contentLength == 0;
+                    }
+                    state = UNTIL_CLOSE;
+                    closing = true;
+                    return false;
+                case CHUNK_SIZE:
+                    remaining = hex(line, lineLength);
+                    state = remaining == 0 ? TRAILERS : CHUNK_DATA;
+                    return false;
+                case CHUNK_END:
+                    if (lineLength != 0)
+                    {
+                        throw new IOException(CONST_ERR_CHUNK);
+                    }
+                    state = CHUNK_SIZE;
+                    return false;
+                default:
+                    /*
+                     * Trailers, ignored up to the empty line
+                     */
+                    return lineLength == 0;
+            }
+        }
+
+
+        /**
+         * Notes the headers that frame the body
+         */
+        private void header()
+        {
+            if (startsWith(line, lineLength, CONTENT_LENGTH))
+            {
+                contentLength =
+                        decimal(line, CONTENT_LENGTH.length, lineLength);
+            }
+            else if (startsWith(line, lineLength, TRANSFER_ENCODING))
+            {
+                chunked = contains(line, TRANSFER_ENCODING.length,
+                        lineLength, CHUNKED);
+            }
+            else if (startsWith(line, lineLength, CONNECTION))
+            {
+                closing = contains(line, CONNECTION.length, lineLength,
+                        CLOSE);
+            }
+        }
+
+
+        /**
+         * Completes the exchange, parking the connection if it can be reused
+         */
+        @SuppressWarnings("null")
+        private void complete(final boolean keepAlive)
+        {
+            NioExchange done = exchange;
+            exchange = null;
+            requests++;
+
+            done.status = status;
+            done.bodyBytes = body;
+            done.crc = hash ? crc.getValue() : -1;
+
+            if (keepAlive)
+            {
+                loop.park(this);
+            }
+            else
+            {
+                close();
+            }
+            done.complete(done);
+        }
+
+
+        /**
+         * Fails the exchange, or retries it on a new connection if this
+         * kept-alive connection failed before any response, and the request
+         * is idempotent or was not sent in full
+         */
+        private void failed(final IOException e)
+        {
+            NioExchange failed = exchange;
+            ByteBuffer sending = out;
+            boolean unsent = sending != null && sending.hasRemaining();
+            close();
+            if (failed == null)
+            {
+                return;
+            }
+            if (!received && requests > 0 && !failed.retried
+                    && (unsent || failed.request.isIdempotent()))
+            {
+                failed.retried = true;
+                loop.start(failed);
+            }
+            else
+            {
+                failed.completeExceptionally(e);
+            }
+        }
+
+
+        /**
+         * Closes the connection
+         */
+        void close()
+        {
+            exchange = null;
+            loop.unpark(this);
+            key.cancel();
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                LOG.debug("Close failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.nio.transport;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * One request and response on the {@code NioEngine}, completed with itself
+ * once the response has been read.
+ * <p>
+ * Only the status and the body framing are parsed; the body is counted, and
+ * hashed if the engine hashes bodies, but not kept.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class NioExchange extends CompletableFuture<NioExchange>
+{
+    final CompiledRequest request;
+
+    final InetSocketAddress address;
+
+    /* Set by the engine */
+    @Nullable
+    NioEngine.Loop loop;
+
+    @Nullable
+    Object connection;
+
+    boolean retried;
+
+    int status;
+
+    long bodyBytes;
+
+    long crc = -1;
+
+    boolean reused;
+
+
+    /**
+     * Creates an exchange
+     *
+     * @param request
+     *            the request to send
+     * @param address
+     *            the resolved address to send it to
+     */
+    public NioExchange(final CompiledRequest request,
+            final InetSocketAddress address)
+    {
+        this.request = request;
+        this.address = address;
+    }
+
+
+    /**
+     * @return the request
+     */
+    public CompiledRequest getRequest()
+    {
+        return request;
+    }
+
+
+    /**
+     * @return the response status code
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+
+    /**
+     * @return the body bytes received, excluding chunk framing
+     */
+    public long getBodyBytes()
+    {
+        return bodyBytes;
+    }
+
+
+    /**
+     * @return the CRC-32 of the body, or -1 if bodies are not hashed
+     */
+    public long getCrc()
+    {
+        return crc;
+    }
+
+
+    /**
+     * @return was the exchange made on a kept-alive connection?
+     */
+    public boolean isReused()
+    {
+        return reused;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.util.concurrent.CompletableFuture#toString()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        return String.format("HTTP/1.1 %1$d, %2$d body bytes%3$s%4$s", status,
+                bodyBytes,
+                crc < 0 ? "" : String.format(", crc32 %1$08x", crc),
+                reused ? ", kept alive" : "");
+    }
+}
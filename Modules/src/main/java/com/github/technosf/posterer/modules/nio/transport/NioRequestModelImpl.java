@@ -0,0 +1,313 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.nio.transport;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.posterer.models.DownloadModel;
+import com.github.technosf.posterer.models.Properties;
+import com.github.technosf.posterer.models.Proxy;
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.RequestModel;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.KeyStoreBean;
+import com.github.technosf.posterer.models.impl.base.AbstractRequestModel;
+import com.github.technosf.posterer.modules.commons.transport.CommonsRequestModelImpl;
+import com.github.technosf.posterer.utils.Auditor;
+import com.github.technosf.posterer.utils.CachingDnsResolver;
+import com.google.inject.Inject;
+
+/**
+ * NIO load implementation of {@RequestModel}
+ * <p>
+ * Made for firing the same requests many times over: each request is
+ * compiled once into the bytes sent and cached, and exchanges are made by
+ * the shared {@code NioEngine} over kept-alive connections, reading only the
+ * status and body size of responses.
+ * <p>
+ * Only plain {@code http} is spoken. Requests to other schemes, and through
+ * proxies, are made by the Commons transport.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class NioRequestModelImpl
+        extends AbstractRequestModel<NioResponseModelTaskImpl>
+        implements RequestModel
+{
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(NioRequestModelImpl.class);
+
+    private static final String CONST_FALLBACK =
+            "Request to %1$s made by the Commons transport";
+
+    /**
+     * Bound on the compiled requests cached
+     */
+    private static final int COMPILED_MAX = 1024;
+
+    /**
+     * Compiled requests, checked against the request when reused as requests
+     * are mutable
+     */
+    private static final Map<Request, CompiledRequest> COMPILED =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The transport for requests the engine does not speak
+     */
+    private final CommonsRequestModelImpl fallback =
+            new CommonsRequestModelImpl();
+
+
+    /**
+     * Injection point for <b>Guice</b>: resolves the hosts of the saved
+     * requests in the background
+     *
+     * @param properties
+     *            the properties holding the saved requests
+     */
+    @Inject
+    public void preResolve(final Properties properties)
+    {
+        fallback.preResolve(properties);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#doRequest(com.github.technosf.posterer.models.Request)
+     */
+    @Override
+    public ResponseModel doRequest(final Request request)
+    {
+        if (isPlainHttp(request))
+        {
+            return super.doRequest(request);
+        }
+        return fallback(request).doRequest(request);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#doRequest(com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.Proxy)
+     */
+    @Override
+    public ResponseModel doRequest(final Request request, final Proxy proxy)
+    {
+        if (proxy.toString().isEmpty())
+        {
+            return doRequest(request);
+        }
+        return fallback(request).doRequest(request, proxy);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Client certificates need TLS, so these requests are made by the
+     * Commons transport.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#doRequest(com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.impl.KeyStoreBean,
+     *      java.lang.String)
+     */
+    @Override
+    public ResponseModel doRequest(final Request request,
+            final KeyStoreBean keyStoreBean, final String alias)
+    {
+        return fallback(request).doRequest(request, keyStoreBean, alias);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Client certificates need TLS, so these requests are made by the
+     * Commons transport.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#doRequest(com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.Proxy,
+     *      com.github.technosf.posterer.models.impl.KeyStoreBean,
+     *      java.lang.String)
+     */
+    @Override
+    public ResponseModel doRequest(final Request request, final Proxy proxy,
+            final KeyStoreBean keyStoreBean, final String alias)
+    {
+        return fallback(request).doRequest(request, proxy, keyStoreBean,
+                alias);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#createRequest(int,
+     *      com.github.technosf.posterer.utils.Auditor, int,
+     *      com.github.technosf.posterer.models.Request)
+     */
+    @Override
+    protected NioResponseModelTaskImpl createRequest(final int requestId,
+            final Auditor auditor, final int timeout, final Request request)
+    {
+        return new NioResponseModelTaskImpl(requestId, auditor,
+                NioRequestModelImpl::compile, NioEngine.getInstance(),
+                CachingDnsResolver.getInstance(), timeout, request);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only reached without a proxy.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#createRequest(int,
+     *      com.github.technosf.posterer.utils.Auditor, int,
+     *      com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.Proxy)
+     */
+    @Override
+    protected NioResponseModelTaskImpl createRequest(final int requestId,
+            final Auditor auditor, final int timeout, final Request request,
+            final Proxy proxy)
+    {
+        return createRequest(requestId, auditor, timeout, request);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Never reached, as client certificates go to the Commons transport.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#createRequest(int,
+     *      com.github.technosf.posterer.utils.Auditor, int,
+     *      com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.impl.KeyStoreBean,
+     *      java.lang.String)
+     */
+    @Override
+    protected NioResponseModelTaskImpl createRequest(final int requestId,
+            final Auditor auditor, final int timeout, final Request request,
+            final @Nullable KeyStoreBean keyStoreBean, final String alias)
+    {
+        return createRequest(requestId, auditor, timeout, request);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Never reached, as client certificates go to the Commons transport.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractRequestModel#createRequest(int,
+     *      com.github.technosf.posterer.utils.Auditor, int,
+     *      com.github.technosf.posterer.models.Request,
+     *      com.github.technosf.posterer.models.Proxy,
+     *      com.github.technosf.posterer.models.impl.KeyStoreBean,
+     *      java.lang.String)
+     */
+    @Override
+    protected NioResponseModelTaskImpl createRequest(final int requestId,
+            final Auditor auditor, final int timeout, final Request request,
+            final Proxy proxy, final KeyStoreBean keyStoreBean,
+            final String alias)
+    {
+        return createRequest(requestId, auditor, timeout, request);
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    /**
+     * Returns the compiled request, compiling it if it has not been or has
+     * changed since
+     *
+     * @param request
+     *            the request
+     * @return the compiled request
+     * @throws IOException
+     *             if the request cannot be compiled
+     */
+    static CompiledRequest compile(final Request request) throws IOException
+    {
+        CompiledRequest compiled = COMPILED.get(request);
+        if (compiled == null || !compiled.matches(request))
+        {
+            if (COMPILED.size() >= COMPILED_MAX)
+            {
+                COMPILED.clear();
+            }
+            compiled = new CompiledRequest(request);
+            COMPILED.put(request, compiled);
+        }
+        return compiled;
+    }
+
+
+    /**
+     * Is the request to a plain {@code http} endpoint?
+     */
+    private static boolean isPlainHttp(final Request request)
+    {
+        URI uri = request.getUri();
+        return uri != null && "http".equalsIgnoreCase(uri.getScheme());
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Downloads are made by the Commons transport.
+     *
+     * @see com.github.technosf.posterer.models.RequestModel#download(com.github.technosf.posterer.models.Request,
+     *      java.nio.file.Path, int)
+     */
+    @Override
+    public DownloadModel download(final Request request, final Path file,
+            final int segments)
+    {
+        return fallback(request).download(request, file, segments);
+    }
+
+
+    /**
+     * Returns the Commons transport, with this model's timeout
+     */
+    private CommonsRequestModelImpl fallback(final Request request)
+    {
+        LOG.debug(String.format(CONST_FALLBACK, request.getEndpoint()));
+        fallback.setTimeout(getTimeout());
+        return fallback;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.nio.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.posterer.models.Request;
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask;
+import com.github.technosf.posterer.modules.commons.transport.CommonsResponseModelTaskImpl;
+import com.github.technosf.posterer.utils.Auditor;
+import com.github.technosf.posterer.utils.CachingDnsResolver;
+
+/**
+ * NIO load implementation of {@ResponsetModel}
+ * <p>
+ * The exchange is made by the {@code NioEngine}, which keeps only the status
+ * and the size of the body, so the response has no headers or body to show.
+ * The postscript carries the status, the body size and its hash, if hashed.
+ * Whatever the {@code ConsumptionPolicy}, the body is discarded; a digesting
+ * policy reports the engine's hash as the digest, when the engine hashes.
+ * <p>
+ * The engine does not time connections out, so the exchange is abandoned,
+ * and its connection closed, if it takes longer than the Commons transport
+ * allows to connect and read.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class NioResponseModelTaskImpl
+        extends AbstractResponseModelTask<NioExchange>
+        implements ResponseModel
+{
+    /* Messages */
+    private static final String CONST_ERR_ABORTED = "Exchange aborted";
+    private static final String CONST_ERR_TIMEOUT =
+            "No response within %1$dms";
+
+    /**
+     * The longest wait for an exchange, as the Commons transport allows to
+     * connect and to read
+     */
+    private static final int EXCHANGE_MILLIS =
+            CommonsResponseModelTaskImpl.CONNECT_MILLIS
+                    + CommonsResponseModelTaskImpl.READ_MILLIS;
+
+    /**
+     * Compiler of requests into the bytes sent
+     */
+    @FunctionalInterface
+    public interface Compiler
+    {
+        /**
+         * Returns the compiled request
+         *
+         * @param request
+         *            the request
+         * @return the compiled request
+         * @throws IOException
+         *             if the request cannot be compiled
+         */
+        CompiledRequest compile(Request request) throws IOException;
+    }
+
+    private final Compiler compiler;
+
+    private final NioEngine engine;
+
+    private final CachingDnsResolver resolver;
+
+    /**
+     * The exchange, once submitted
+     */
+    private volatile @Nullable NioExchange exchange;
+
+    /**
+     * Aborted before the exchange was submitted?
+     */
+    private volatile boolean aborted;
+
+    /**
+     * has the response been processed?
+     */
+    private boolean isResponseProcessed = false;
+
+
+    /**
+     * Creates a new {@code NioResponseModelTaskImpl} for the given request
+     *
+     * @param requestId
+     *            the request reference id
+     * @param auditor
+     *            the call auditor
+     * @param compiler
+     *            the request compiler
+     * @param engine
+     *            the engine making the exchange
+     * @param resolver
+     *            the host resolver
+     * @param timeout
+     *            the total deadline in seconds
+     * @param request
+     *            the request
+     */
+    public NioResponseModelTaskImpl(final int requestId,
+            final Auditor auditor, final Compiler compiler,
+            final NioEngine engine, final CachingDnsResolver resolver,
+            final int timeout, final Request request)
+    {
+        super(requestId, auditor, timeout, request);
+        this.compiler = compiler;
+        this.engine = engine;
+        this.resolver = resolver;
+        protocol = "http/1.1";
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The request is compiled when sent.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#prepareClient()
+     */
+    @Override
+    protected void prepareClient()
+    {
+        // Compiled requests are cached by the request model
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#getReponse(com.github.technosf.posterer.utils.Auditor)
+     */
+    @SuppressWarnings("null")
+    @Override
+    protected NioExchange getReponse(final Auditor auditor)
+            throws IOException, InterruptedException
+    {
+        this.auditor = auditor;
+
+        CompiledRequest compiled = compiler.compile(getRequest());
+        NioExchange submitted = new NioExchange(compiled,
+                new InetSocketAddress(resolver.resolve(compiled.getHost())[0],
+                        compiled.getPort()));
+        exchange = submitted;
+        if (aborted)
+        {
+            throw new IOException(CONST_ERR_ABORTED);
+        }
+        engine.submit(submitted);
+
+        try
+        {
+            return submitted.get(EXCHANGE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause
+                    : new IOException(cause);
+        }
+        catch (TimeoutException e)
+        {
+            abort();
+            throw new SocketTimeoutException(
+                    String.format(CONST_ERR_TIMEOUT, EXCHANGE_MILLIS));
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Connections are held by the engine, so there is nothing to close.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#closeClient()
+     */
+    @Override
+    protected void closeClient()
+    {
+        // Connections outlive the exchange
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Fails the exchange, releasing the waiting thread, and has the engine
+     * close its connection.
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#abort()
+     */
+    @Override
+    protected void abort()
+    {
+        aborted = true;
+        NioExchange submitted = exchange;
+        if (submitted != null
+                && submitted.completeExceptionally(
+                        new IOException(CONST_ERR_ABORTED)))
+        {
+            engine.cancel(submitted);
+        }
+    }
+
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.github.technosf.posterer.models.AbstractResponseModelTask#processResponse()
+     */
+    @SuppressWarnings("null")
+    @Override
+    protected synchronized void processResponse()
+    {
+        if (!isResponseProcessed)
+        {
+            NioExchange received = getValue();
+            if (received != null && !isCancelled())
+            {
+                auditor.postscript(false, received.toString());
+                wireBytes = decodedBytes = received.getBodyBytes();
+                if (consumption.isDigest() && received.getCrc() >= 0)
+                {
+                    digest = String.format("%1$08x", received.getCrc());
+                }
+            }
+            isResponseProcessed = true;
+            response = received;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.impl.base.AbstractResponseModelTask#isResponseProcessed()
+     */
+    @Override
+    protected boolean isResponseProcessed()
+    {
+        return isResponseProcessed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatusCode()
+     */
+    @Override
+    public int getStatusCode()
+    {
+        processResponse();
+        NioExchange received = response;
+        if (received != null)
+        {
+            return received.getStatus();
+        }
+        return 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#getStatus()
+     */
+    @Override
+    public String getStatus()
+    {
+        return auditor.toString();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only plain {@code http} is spoken.
+     *
+     * @see com.github.technosf.posterer.models.ResponseModel#neededClientAuth()
+     */
+    @Override
+    public boolean neededClientAuth()
+    {
+        return false;
+    }
+}
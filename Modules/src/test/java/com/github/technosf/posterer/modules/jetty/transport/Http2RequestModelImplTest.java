@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.jetty.transport;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.server.RawHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.ResponseModel;
+import com.github.technosf.posterer.models.impl.RequestBean;
+
+/**
+ * Exchanges with a local {@code h2c} server, over one session
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class Http2RequestModelImplTest
+{
+    private static final String BODY =
+            "The quick brown fox jumps over the lazy dog";
+
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    private final Http2RequestModelImpl classUnderTest =
+            new Http2RequestModelImpl();
+
+    private Server server;
+
+    private String origin;
+
+
+    @BeforeClass
+    public void beforeClass() throws Exception
+    {
+        ServerSessionListener listener = new ServerSessionListener.Adapter()
+        {
+            @Override
+            public void onAccept(final Session session)
+            {
+                sessions.incrementAndGet();
+            }
+
+
+            @Override
+            public Stream.Listener onNewStream(final Stream stream,
+                    final HeadersFrame frame)
+            {
+                MetaData.Request request = (MetaData.Request) frame.getMetaData();
+                if ("/reset".equals(request.getURI().getPath()))
+                {
+                    stream.reset(new ResetFrame(stream.getId(),
+                            ErrorCode.REFUSED_STREAM_ERROR.code),
+                            Callback.NOOP);
+                    return null;
+                }
+
+                MetaData.Response response = new MetaData.Response(
+                        HttpVersion.HTTP_2, 200, new HttpFields());
+                stream.headers(
+                        new HeadersFrame(stream.getId(), response, null, false),
+                        new Callback()
+                        {
+                            @Override
+                            public void succeeded()
+                            {
+                                stream.data(new DataFrame(stream.getId(),
+                                        ByteBuffer.wrap(BODY.getBytes(
+                                                StandardCharsets.US_ASCII)),
+                                        true), Callback.NOOP);
+                            }
+                        });
+                return null;
+            }
+        };
+
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server,
+                new RawHTTP2ServerConnectionFactory(new HttpConfiguration(),
+                        listener));
+        connector.setHost("127.0.0.1");
+        server.addConnector(connector);
+        server.start();
+        origin = "http://127.0.0.1:" + connector.getLocalPort();
+        classUnderTest.setTimeout(10);
+    }
+
+
+    @AfterClass
+    public void afterClass() throws Exception
+    {
+        server.stop();
+    }
+
+
+    /* ------------------ Tests -------------------- */
+
+    @Test
+    public void roundTrip() throws Exception
+    {
+        ResponseModel response = fire("/round");
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getBody(), BODY);
+        assertEquals(response.getProtocol(), "h2c");
+        assertTrue(response.getStreamId() > 0);
+    }
+
+
+    @Test(dependsOnMethods = "roundTrip")
+    public void sessionReused() throws Exception
+    {
+        ResponseModel first = fire("/first");
+        ResponseModel second = fire("/second");
+
+        assertEquals(second.getBody(), BODY);
+        assertTrue(second.getStreamId() > first.getStreamId());
+        assertEquals(sessions.get(), 1);
+    }
+
+
+    @Test(dependsOnMethods = "sessionReused")
+    public void streamReset() throws Exception
+    {
+        try
+        {
+            fire("/reset");
+            fail("Reset stream answered");
+        }
+        catch (Exception e)
+        {
+            assertTrue(String.valueOf(e.getMessage()).contains("Stream reset"),
+                    e.toString());
+        }
+
+        /*
+         * The session outlives the stream
+         */
+        assertEquals(fire("/after").getBody(), BODY);
+        assertEquals(sessions.get(), 1);
+    }
+
+
+    /* ------------------ Helpers -------------------- */
+
+    /**
+     * Fires a GET to the path, returning once the response is complete
+     */
+    private ResponseModel fire(final String path) throws Exception
+    {
+        ResponseModel response = classUnderTest.doRequest(
+                new RequestBean(origin + path, "", "GET", "", "", false));
+        ((Callable<?>) response).call();
+        return response;
+    }
+}
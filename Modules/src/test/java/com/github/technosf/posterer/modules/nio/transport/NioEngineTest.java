@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.modules.nio.transport;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.impl.RequestBean;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exchanges with a local server, over kept-alive connections
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings({ "null", "restriction" })
+public class NioEngineTest
+{
+    private static final byte[] BODY =
+            "The quick brown fox jumps over the lazy dog"
+                    .getBytes(StandardCharsets.US_ASCII);
+
+    private HttpServer server;
+
+    private InetSocketAddress address;
+
+    private NioEngine engine;
+
+
+    @BeforeClass
+    public void beforeClass() throws IOException
+    {
+        server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/length", exchange -> {
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(BODY);
+            }
+        });
+        server.createContext("/chunked", exchange -> {
+            exchange.sendResponseHeaders(201, 0);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(BODY, 0, 10);
+                out.flush();
+                out.write(BODY, 10, BODY.length - 10);
+            }
+        });
+        server.createContext("/empty", exchange -> {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                server.getAddress().getPort());
+        engine = new NioEngine(1, 16, true);
+    }
+
+
+    @AfterClass
+    public void afterClass()
+    {
+        server.stop(0);
+    }
+
+
+    @Test
+    public void contentLength() throws Exception
+    {
+        NioExchange exchange = exchange("GET", "/length");
+        assertEquals(exchange.getStatus(), 200);
+        assertEquals(exchange.getBodyBytes(), BODY.length);
+        assertEquals(exchange.getCrc(), crc());
+    }
+
+
+    @Test
+    public void chunked() throws Exception
+    {
+        NioExchange exchange = exchange("GET", "/chunked");
+        assertEquals(exchange.getStatus(), 201);
+        assertEquals(exchange.getBodyBytes(), BODY.length);
+        assertEquals(exchange.getCrc(), crc());
+    }
+
+
+    @Test
+    public void noBody() throws Exception
+    {
+        assertEquals(exchange("GET", "/empty").getStatus(), 204);
+        NioExchange head = exchange("HEAD", "/length");
+        assertEquals(head.getStatus(), 200);
+        assertEquals(head.getBodyBytes(), 0);
+    }
+
+
+    @Test(dependsOnMethods = { "contentLength", "chunked", "noBody" })
+    public void keepAlive() throws Exception
+    {
+        /*
+         * The server may close after the earlier HEAD
+         */
+        exchange("GET", "/length");
+        long opened = engine.getConnections();
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(exchange("GET", i % 2 == 0 ? "/length" : "/chunked")
+                    .isReused());
+        }
+        assertEquals(engine.getConnections(), opened);
+    }
+
+
+    @Test(dependsOnMethods = "keepAlive")
+    public void cancel() throws Exception
+    {
+        NioExchange exchange = new NioExchange(compile("GET", "/length"),
+                address);
+        exchange.cancel(true);
+        engine.submit(exchange);
+        assertTrue(exchange.isCancelled());
+        assertFalse(exchange("GET", "/length").getBodyBytes() == 0);
+    }
+
+
+    @Test
+    public void retryIdempotentOnly() throws Exception
+    {
+        AtomicInteger received = new AtomicInteger();
+        try (ServerSocket dropping = new ServerSocket(0, 8,
+                InetAddress.getLoopbackAddress()))
+        {
+            serveOneThenDrop(dropping, received);
+            InetSocketAddress to = new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(),
+                    dropping.getLocalPort());
+            NioEngine dropped = new NioEngine(1, 16, false);
+
+            /*
+             * A GET dropped on a reused connection is sent again
+             */
+            assertEquals(exchange(dropped, to, "GET", "/warm").getStatus(),
+                    200);
+            assertEquals(exchange(dropped, to, "GET", "/again").getStatus(),
+                    200);
+            assertEquals(received.get(), 3);
+
+            /*
+             * A POST sent in full on the connection kept from the retry is not
+             */
+            try
+            {
+                exchange(dropped, to, "POST", "/once");
+                fail("POST retried");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            assertEquals(received.get(), 4);
+        }
+    }
+
+
+    /* ------------------ Helpers -------------------- */
+
+    /**
+     * Answers the first request on each connection, keeping it alive, and
+     * drops the connection on reading the second
+     */
+    private static void serveOneThenDrop(final ServerSocket listening,
+            final AtomicInteger received)
+    {
+        Thread acceptor = new Thread(() -> {
+            while (!listening.isClosed())
+            {
+                try (Socket accepted = listening.accept())
+                {
+                    InputStream in = accepted.getInputStream();
+                    readRequest(in);
+                    received.incrementAndGet();
+                    accepted.getOutputStream().write(
+                            "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n"
+                                    .getBytes(StandardCharsets.US_ASCII));
+                    if (readRequest(in))
+                    {
+                        received.incrementAndGet();
+                    }
+                }
+                catch (IOException e)
+                {
+                    // Closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+
+    /**
+     * Reads a request head and its content, returning whether there was one
+     */
+    private static boolean readRequest(final InputStream in)
+            throws IOException
+    {
+        StringBuilder head = new StringBuilder();
+        int b;
+        while (head.indexOf("\r\n\r\n") < 0 && (b = in.read()) >= 0)
+        {
+            head.append((char) b);
+        }
+        int at = head.toString().toLowerCase().indexOf("content-length:");
+        if (at >= 0)
+        {
+            long length = Long.parseLong(head.substring(at + 15,
+                    head.indexOf("\r", at)).trim());
+            for (; length > 0 && in.read() >= 0; length--)
+            {
+                // Discard the content
+            }
+        }
+        return head.length() > 0;
+    }
+
+
+    private NioExchange exchange(final NioEngine using,
+            final InetSocketAddress to, final String method,
+            final String path) throws Exception
+    {
+        NioExchange exchange = new NioExchange(compile(method, path), to);
+        using.submit(exchange);
+        return exchange.get(5, TimeUnit.SECONDS);
+    }
+
+
+    private NioExchange exchange(final String method, final String path)
+            throws Exception
+    {
+        NioExchange exchange = new NioExchange(compile(method, path), address);
+        engine.submit(exchange);
+        return exchange.get(5, TimeUnit.SECONDS);
+    }
+
+
+    private CompiledRequest compile(final String method, final String path)
+            throws IOException
+    {
+        return new CompiledRequest(new RequestBean(
+                "http://localhost:" + address.getPort() + path, "", method, "",
+                "text/plain", false));
+    }
+
+
+    private static long crc()
+    {
+        CRC32 crc = new CRC32();
+        crc.update(BODY);
+        return crc.getValue();
+    }
+}
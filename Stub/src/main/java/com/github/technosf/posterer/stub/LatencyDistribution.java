@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.stub;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of the latency the stub server adds before each response.
+ * <p>
+ * Distributions are given on the command line as {@code name:args} in millis:
+ * <ul>
+ * <li>{@code none}</li>
+ * <li>{@code fixed:5}</li>
+ * <li>{@code uniform:2-10}</li>
+ * <li>{@code exp:5} - exponential with the given mean</li>
+ * <li>{@code lognormal:5,0.5} - log-normal with the given median and
+ * sigma</li>
+ * </ul>
+ * The server delays on its selector clock, so latencies resolve to the
+ * millisecond.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@FunctionalInterface
+public interface LatencyDistribution
+{
+    /**
+     * No added latency
+     */
+    LatencyDistribution NONE = () -> 0;
+
+
+    /**
+     * Samples the next latency
+     *
+     * @return the latency in nanos
+     */
+    long nextNanos();
+
+
+    /**
+     * The same latency every time
+     *
+     * @param millis
+     *            the latency
+     * @return the distribution
+     */
+    static LatencyDistribution fixed(final double millis)
+    {
+        long nanos = nanos(millis);
+        return () -> nanos;
+    }
+
+
+    /**
+     * Latency uniformly distributed between the bounds
+     *
+     * @param minMillis
+     *            the lower bound
+     * @param maxMillis
+     *            the upper bound
+     * @return the distribution
+     */
+    static LatencyDistribution uniform(final double minMillis,
+            final double maxMillis)
+    {
+        long min = nanos(minMillis);
+        long max = Math.max(min + 1, nanos(maxMillis));
+        return () -> ThreadLocalRandom.current().nextLong(min, max);
+    }
+
+
+    /**
+     * Exponentially distributed latency
+     *
+     * @param meanMillis
+     *            the mean
+     * @return the distribution
+     */
+    static LatencyDistribution exponential(final double meanMillis)
+    {
+        double mean = nanos(meanMillis);
+        return () -> (long) (-mean
+                * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+
+
+    /**
+     * Log-normally distributed latency, a long right tail
+     *
+     * @param medianMillis
+     *            the median
+     * @param sigma
+     *            the shape, the standard deviation of the log
+     * @return the distribution
+     */
+    static LatencyDistribution logNormal(final double medianMillis,
+            final double sigma)
+    {
+        double mu = Math.log(Math.max(1, nanos(medianMillis)));
+        return () -> (long) Math.exp(
+                mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+
+    /**
+     * Parses a distribution specification
+     *
+     * @param spec
+     *            the specification, e.g. {@code exp:5}
+     * @return the distribution
+     * @throws IllegalArgumentException
+     *             if the specification is not understood
+     */
+    static LatencyDistribution parse(final String spec)
+    {
+        String[] parts = spec.trim().split(":", 2);
+        String args = parts.length > 1 ? parts[1] : "";
+        try
+        {
+            switch (parts[0])
+            {
+                case "none":
+                    return NONE;
+                case "fixed":
+                    return fixed(Double.parseDouble(args));
+                case "uniform":
+                    String[] range = args.split("-");
+                    return uniform(Double.parseDouble(range[0]),
+                            Double.parseDouble(range[1]));
+                case "exp":
+                    return exponential(Double.parseDouble(args));
+                case "lognormal":
+                    String[] shape = args.split(",");
+                    return logNormal(Double.parseDouble(shape[0]),
+                            Double.parseDouble(shape[1]));
+                default:
+                    break;
+            }
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+        {
+            throw new IllegalArgumentException(spec, e);
+        }
+        throw new IllegalArgumentException(spec);
+    }
+
+
+    /**
+     * Converts millis to nanos
+     */
+    static long nanos(final double millis)
+    {
+        return (long) (Math.max(0, millis) * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.stub;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.technosf.posterer.models.Request;
+
+/**
+ * Produces the response to a stub request.
+ * <p>
+ * Responders are called on the server's selector threads, so must be thread
+ * safe and must not block.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@FunctionalInterface
+public interface Responder
+{
+    /**
+     * Responds to a request
+     *
+     * @param request
+     *            the request, valid only for the duration of the call
+     * @return the response
+     */
+    StubResponse respond(StubRequest request);
+
+
+    /**
+     * Echoes each request, head and body, back as the response body
+     *
+     * @return the echo responder
+     */
+    static Responder echo()
+    {
+        return request -> {
+            byte[] body = new byte[request.getLength()];
+            request.copyTo(body, 0);
+            return StubResponse.of(200, "OK", "text/plain", body);
+        };
+    }
+
+
+    /**
+     * Responds to every request with the same body of the given size
+     *
+     * @param size
+     *            the body size in bytes
+     * @return the sized responder
+     */
+    static Responder sized(final int size)
+    {
+        byte[] body = new byte[Math.max(0, size)];
+        Arrays.fill(body, (byte) 'x');
+        StubResponse response =
+                StubResponse.of(200, "OK", "application/octet-stream", body);
+        return request -> response;
+    }
+
+
+    /**
+     * Responds with canned responses built from saved requests.
+     * <p>
+     * A request matching a saved request's method and path is answered with
+     * that request's payload and content type. Anything else is not found.
+     *
+     * @param saved
+     *            the saved requests
+     * @return the canned responder
+     */
+    static Responder canned(final List<Request> saved)
+    {
+        Map<String, StubResponse> responses = new HashMap<>();
+        for (Request request : saved)
+        {
+            if (request.getUri() == null)
+            {
+                continue;
+            }
+            String path = request.getUri().getRawPath();
+            responses.putIfAbsent(
+                    request.getMethod() + " "
+                            + (path == null || path.isEmpty() ? "/" : path),
+                    StubResponse.of(200, "OK",
+                            request.getContentType().isEmpty() ? "text/plain"
+                                    : request.getContentType(),
+                            request.getPayload()
+                                    .getBytes(StandardCharsets.UTF_8)));
+        }
+        return request -> responses.getOrDefault(
+                request.getMethod() + " " + request.getPath(),
+                StubResponse.NOT_FOUND);
+    }
+}
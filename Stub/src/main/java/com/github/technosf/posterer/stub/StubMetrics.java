@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.stub;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput counters for the stub server.
+ * <p>
+ * Counters are {@code LongAdder}s so the selector threads never contend on
+ * them. {@code tick} reports the rates since the previous tick.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class StubMetrics
+{
+    private static final String FORMAT_TICK =
+            "requests/s=%1$d in MB/s=%2$.1f out MB/s=%3$.1f open=%4$d requests=%5$d connections=%6$d";
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    private final LongAdder connections = new LongAdder();
+
+    private final LongAdder open = new LongAdder();
+
+    /* Values at the last tick */
+    private long tickNanos = System.nanoTime(), tickRequests, tickIn, tickOut;
+
+
+    void request()
+    {
+        requests.increment();
+    }
+
+
+    void read(final long bytes)
+    {
+        bytesIn.add(bytes);
+    }
+
+
+    void written(final long bytes)
+    {
+        bytesOut.add(bytes);
+    }
+
+
+    void opened()
+    {
+        connections.increment();
+        open.increment();
+    }
+
+
+    void closed()
+    {
+        open.decrement();
+    }
+
+
+    /**
+     * @return requests handled
+     */
+    public long getRequests()
+    {
+        return requests.sum();
+    }
+
+
+    /**
+     * @return bytes read
+     */
+    public long getBytesIn()
+    {
+        return bytesIn.sum();
+    }
+
+
+    /**
+     * @return bytes written
+     */
+    public long getBytesOut()
+    {
+        return bytesOut.sum();
+    }
+
+
+    /**
+     * @return connections accepted
+     */
+    public long getConnections()
+    {
+        return connections.sum();
+    }
+
+
+    /**
+     * @return connections open now
+     */
+    public long getOpen()
+    {
+        return open.sum();
+    }
+
+
+    /**
+     * Reports the rates since the last tick
+     *
+     * @return the rates
+     */
+    public synchronized String tick()
+    {
+        long now = System.nanoTime();
+        long reqs = getRequests(), in = getBytesIn(), out = getBytesOut();
+        double seconds = Math.max(1, now - tickNanos)
+                / (double) TimeUnit.SECONDS.toNanos(1);
+
+        String line = String.format(FORMAT_TICK,
+                (long) ((reqs - tickRequests) / seconds),
+                (in - tickIn) / seconds / (1 << 20),
+                (out - tickOut) / seconds / (1 << 20), getOpen(), reqs,
+                getConnections());
+
+        tickNanos = now;
+        tickRequests = reqs;
+        tickIn = in;
+        tickOut = out;
+        return line;
+    }
+}
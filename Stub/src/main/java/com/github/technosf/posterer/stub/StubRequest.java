@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.stub;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A request received by the stub server.
+ * <p>
+ * The request is a view onto the connection's read buffer and is only valid
+ * for the duration of the {@code Responder#respond} call it is passed to.
+ * Only the method and target are decoded up front; the head and body are
+ * copied out on demand so that responders that ignore them cost nothing.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class StubRequest
+{
+    private final String method;
+
+    private final String target;
+
+    private final byte[] buffer;
+
+    private final int headOffset, headLength, bodyOffset, bodyLength;
+
+
+    /**
+     * @param method
+     *            the request method
+     * @param target
+     *            the request target, path and query
+     * @param buffer
+     *            the buffer holding the request
+     * @param headOffset
+     *            start of the request line
+     * @param headLength
+     *            length of the request line and headers, including the
+     *            blank line
+     * @param bodyLength
+     *            length of the body that follows the head
+     */
+    StubRequest(final String method, final String target, final byte[] buffer,
+            final int headOffset, final int headLength, final int bodyLength)
+    {
+        this.method = method;
+        this.target = target;
+        this.buffer = buffer;
+        this.headOffset = headOffset;
+        this.headLength = headLength;
+        this.bodyOffset = headOffset + headLength;
+        this.bodyLength = bodyLength;
+    }
+
+
+    /**
+     * @return the request method
+     */
+    public String getMethod()
+    {
+        return method;
+    }
+
+
+    /**
+     * @return the request target, path and query
+     */
+    public String getTarget()
+    {
+        return target;
+    }
+
+
+    /**
+     * @return the request path, without the query
+     */
+    public String getPath()
+    {
+        int query = target.indexOf('?');
+        return query < 0 ? target : target.substring(0, query);
+    }
+
+
+    /**
+     * @return the request line and headers as received
+     */
+    public String getHead()
+    {
+        return new String(buffer, headOffset, headLength,
+                StandardCharsets.ISO_8859_1);
+    }
+
+
+    /**
+     * @return a copy of the request body
+     */
+    public byte[] getBody()
+    {
+        return Arrays.copyOfRange(buffer, bodyOffset, bodyOffset + bodyLength);
+    }
+
+
+    /**
+     * @return the length of the request body
+     */
+    public int getBodyLength()
+    {
+        return bodyLength;
+    }
+
+
+    /**
+     * Copies the request, head and body, into the destination
+     *
+     * @param destination
+     *            the destination array
+     * @param offset
+     *            where in the destination to copy to
+     * @return the number of bytes copied
+     */
+    public int copyTo(final byte[] destination, final int offset)
+    {
+        System.arraycopy(buffer, headOffset, destination, offset,
+                headLength + bodyLength);
+        return headLength + bodyLength;
+    }
+
+
+    /**
+     * @return the length of the whole request, head and body
+     */
+    public int getLength()
+    {
+        return headLength + bodyLength;
+    }
+}
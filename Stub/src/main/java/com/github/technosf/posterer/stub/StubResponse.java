@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.stub;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An encoded HTTP/1.1 response.
+ * <p>
+ * Responses are encoded once, status line, headers and body, so that canned
+ * responses can be served repeatedly without further work: each write wraps
+ * the same bytes in a fresh {@code ByteBuffer}.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class StubResponse
+{
+    private static final String FORMAT_HEAD =
+            "HTTP/1.1 %1$d %2$s\r\nServer: posterer-stub\r\nContent-Type: %3$s\r\nContent-Length: %4$d\r\n\r\n";
+
+    /**
+     * Sent when no canned response matches
+     */
+    public static final StubResponse NOT_FOUND =
+            text(404, "Not Found", "Not Found");
+
+    /**
+     * Sent when the request is larger than the server accepts
+     */
+    static final StubResponse TOO_LARGE =
+            text(413, "Payload Too Large", "Payload Too Large");
+
+    /**
+     * Sent when the request has no length the server understands
+     */
+    static final StubResponse LENGTH_REQUIRED =
+            text(411, "Length Required", "Length Required");
+
+    /**
+     * Sent when the request cannot be parsed
+     */
+    static final StubResponse BAD_REQUEST =
+            text(400, "Bad Request", "Bad Request");
+
+    private final byte[] encoded;
+
+
+    /**
+     * Encodes a response
+     *
+     * @param status
+     *            the status code
+     * @param reason
+     *            the reason phrase
+     * @param contentType
+     *            the body content type
+     * @param body
+     *            the body
+     * @return the response
+     */
+    public static StubResponse of(final int status, final String reason,
+            final String contentType, final byte[] body)
+    {
+        byte[] head = String.format(FORMAT_HEAD, status, reason, contentType,
+                body.length).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] encoded = new byte[head.length + body.length];
+        System.arraycopy(head, 0, encoded, 0, head.length);
+        System.arraycopy(body, 0, encoded, head.length, body.length);
+        return new StubResponse(encoded);
+    }
+
+
+    /**
+     * Encodes a plain text response
+     *
+     * @param status
+     *            the status code
+     * @param reason
+     *            the reason phrase
+     * @param body
+     *            the body
+     * @return the response
+     */
+    public static StubResponse text(final int status, final String reason,
+            final String body)
+    {
+        return of(status, reason, "text/plain; charset=UTF-8",
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    private StubResponse(final byte[] encoded)
+    {
+        this.encoded = encoded;
+    }
+
+
+    /**
+     * @return the encoded response, ready to write
+     */
+    ByteBuffer buffer()
+    {
+        return ByteBuffer.wrap(encoded);
+    }
+
+
+    /**
+     * @return the encoded length of the response
+     */
+    public int getLength()
+    {
+        return encoded.length;
+    }
+}
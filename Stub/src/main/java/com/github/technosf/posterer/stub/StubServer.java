@@ -0,0 +1,312 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.stub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.posterer.Factory;
+
+/**
+ * A local HTTP/1.1 stub server for benchmarking the client and the load
+ * engine without an external service.
+ * <p>
+ * An acceptor thread hands connections round robin to a fixed set of NIO
+ * selector workers, each serving its connections' keep-alive and pipelined
+ * requests in place. Responses come from a {@code Responder} - echo, a body
+ * of a given size, or canned from the saved requests - after a delay drawn
+ * from a {@code LatencyDistribution}. Throughput is counted in
+ * {@code StubMetrics}.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class StubServer
+        implements Closeable
+{
+    /**
+     * Default port, overridden by the {@code posterer.stub.port} system
+     * property
+     */
+    public static final int DEFAULT_PORT =
+            Integer.getInteger("posterer.stub.port", 8090);
+
+    /**
+     * Default number of selector workers, overridden by the
+     * {@code posterer.stub.workers} system property
+     */
+    public static final int DEFAULT_WORKERS = Integer.getInteger(
+            "posterer.stub.workers",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(StubServer.class);
+
+    private static final String CONST_USAGE = "Usage: posterer-stub [options] [echo | size <bytes> | canned]\n"
+            + "Modes:\n"
+            + "  echo                   Echo each request back, the default\n"
+            + "  size <bytes>           Respond with a body of the given size\n"
+            + "  canned                 Respond with the payloads of the saved requests\n"
+            + "Options:\n"
+            + "  --port <port>          Port to listen on, default 8090\n"
+            + "  --workers <n>          Selector threads, default one per processor\n"
+            + "  --latency <spec>       none, fixed:ms, uniform:min-max, exp:mean, lognormal:median,sigma\n"
+            + "  --prefix <prefix>      Properties prefix for canned mode, default \"main.\"\n"
+            + "  --report <seconds>     Throughput report interval, 0 for none, default 1";
+
+    private final InetSocketAddress address;
+
+    private final StubMetrics metrics = new StubMetrics();
+
+    private final StubWorker[] workers;
+
+    @Nullable
+    private ServerSocketChannel server;
+
+
+    /**
+     * Creates a server
+     *
+     * @param address
+     *            the address to listen on, port zero for any free port
+     * @param workers
+     *            the number of selector workers
+     * @param responder
+     *            produces the responses
+     * @param latency
+     *            the latency added to each response
+     * @throws IOException
+     *             if the workers' selectors cannot be opened
+     */
+    public StubServer(final InetSocketAddress address, final int workers,
+            final Responder responder, final LatencyDistribution latency)
+            throws IOException
+    {
+        this.address = address;
+        this.workers = new StubWorker[Math.max(1, workers)];
+        for (int i = 0; i < this.workers.length; i++)
+        {
+            this.workers[i] = new StubWorker(responder, latency, metrics);
+        }
+    }
+
+
+    /**
+     * Binds and starts serving
+     *
+     * @throws IOException
+     *             if the address cannot be bound
+     */
+    public synchronized void start() throws IOException
+    {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.socket().setReuseAddress(true);
+        channel.bind(address, 1024);
+        server = channel;
+
+        for (int i = 0; i < workers.length; i++)
+        {
+            daemon(workers[i], "posterer-stub-" + i).start();
+        }
+        daemon(() -> acceptLoop(channel), "posterer-stub-accept").start();
+
+        LOG.info("Stub server listening on {}", channel.getLocalAddress());
+    }
+
+
+    /**
+     * Returns the port listened on, useful when bound to port zero
+     *
+     * @return the port, or -1 if not started
+     */
+    public synchronized int getPort()
+    {
+        ServerSocketChannel channel = server;
+        return channel == null ? -1 : channel.socket().getLocalPort();
+    }
+
+
+    /**
+     * @return the throughput counters
+     */
+    public StubMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+
+    /**
+     * Stops accepting and closes all connections
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        ServerSocketChannel channel = server;
+        server = null;
+        if (channel != null)
+        {
+            channel.close();
+        }
+        for (StubWorker worker : workers)
+        {
+            worker.stop();
+        }
+    }
+
+
+    /**
+     * Accepts connections, handing them to the workers in turn
+     */
+    private void acceptLoop(final ServerSocketChannel channel)
+    {
+        int next = 0;
+        while (channel.isOpen())
+        {
+            try
+            {
+                SocketChannel accepted = channel.accept();
+                workers[next].accept(accepted);
+                next = (next + 1) % workers.length;
+            }
+            catch (ClosedChannelException e)
+            {
+                break;
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Accept failed", e);
+            }
+        }
+    }
+
+
+    private static Thread daemon(final Runnable runnable, final String name)
+    {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+
+    /**
+     * Runs the stub server from the command line until killed
+     *
+     * @param args
+     *            the command line
+     * @throws IOException
+     *             if the server cannot start
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    @SuppressWarnings("null")
+    public static void main(final String[] args)
+            throws IOException, InterruptedException
+    {
+        int port = DEFAULT_PORT, workers = DEFAULT_WORKERS, report = 1;
+        String prefix = "main.";
+        LatencyDistribution latency = LatencyDistribution.NONE;
+        String mode = "echo";
+        int size = 0;
+
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                switch (args[i])
+                {
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--workers":
+                        workers = Integer.parseInt(args[++i]);
+                        break;
+                    case "--latency":
+                        latency = LatencyDistribution.parse(args[++i]);
+                        break;
+                    case "--prefix":
+                        prefix = args[++i];
+                        break;
+                    case "--report":
+                        report = Integer.parseInt(args[++i]);
+                        break;
+                    case "echo":
+                    case "canned":
+                        mode = args[i];
+                        break;
+                    case "size":
+                        mode = args[i];
+                        size = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        System.err.println(CONST_USAGE);
+                        System.exit(2);
+                }
+            }
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e)
+        {
+            System.err.println(CONST_USAGE);
+            System.exit(2);
+        }
+
+        Responder responder;
+        switch (mode)
+        {
+            case "size":
+                responder = Responder.sized(size);
+                break;
+            case "canned":
+                responder = Responder.canned(
+                        new Factory(prefix).getProperties().getRequests());
+                break;
+            default:
+                responder = Responder.echo();
+        }
+
+        StubServer stub = new StubServer(new InetSocketAddress(port), workers,
+                responder, latency);
+        stub.start();
+        System.out.println("Stub server listening on port " + stub.getPort());
+
+        if (report > 0)
+        {
+            ScheduledExecutorService reporter =
+                    Executors.newSingleThreadScheduledExecutor(
+                            runnable -> daemon(runnable, "posterer-stub-report"));
+            reporter.scheduleAtFixedRate(
+                    () -> System.out.println(stub.getMetrics().tick()), report,
+                    report, TimeUnit.SECONDS);
+        }
+
+        Thread.currentThread().join();
+    }
+}
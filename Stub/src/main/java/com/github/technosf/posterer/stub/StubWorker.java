@@ -0,0 +1,799 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.stub;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A selector thread serving its share of the stub server's connections.
+ * <p>
+ * Each connection is read into a single growable buffer, parsed in place and
+ * answered in order, so keep-alive and pipelined requests are served without
+ * copying or per-request threads. Responses held back by the latency
+ * distribution wait on a timer queue that drives the selector timeout.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+final class StubWorker
+        implements Runnable
+{
+    /**
+     * Initial read buffer size, also the largest request head accepted
+     */
+    private static final int HEAD_MAX = 16 * 1024;
+
+    /**
+     * Largest request accepted, head and body, overridden by the
+     * {@code posterer.stub.request} system property
+     */
+    private static final int REQUEST_MAX =
+            Integer.getInteger("posterer.stub.request", 8 * 1024 * 1024);
+
+    /**
+     * Responses queued on a connection before reading from it pauses
+     */
+    private static final int BACKLOG_MAX = 1024;
+
+    /**
+     * Most buffers passed to one gathering write
+     */
+    private static final int GATHER_MAX = 64;
+
+    private static final byte[] CONTENT_LENGTH =
+            "content-length:".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] TRANSFER_ENCODING =
+            "transfer-encoding:".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CONNECTION =
+            "connection:".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CLOSE =
+            "close".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] KEEP_ALIVE =
+            "keep-alive".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] HTTP10 =
+            "HTTP/1.0".getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * Logger
+     */
+    @SuppressWarnings("null")
+    private static final Logger LOG =
+            LoggerFactory.getLogger(StubWorker.class);
+
+    private final Selector selector;
+
+    private final Responder responder;
+
+    private final LatencyDistribution latency;
+
+    private final StubMetrics metrics;
+
+    /**
+     * Connections accepted but not yet registered with the selector
+     */
+    private final Queue<SocketChannel> accepted =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * Responses held back by the latency distribution, earliest first
+     */
+    private final PriorityQueue<Delayed> delayed = new PriorityQueue<>();
+
+    /**
+     * Connections with responses released by the timer
+     */
+    private final List<Connection> released = new ArrayList<>();
+
+    private final ByteBuffer[] gather = new ByteBuffer[GATHER_MAX];
+
+    private long sequence;
+
+    private volatile boolean running = true;
+
+
+    /**
+     * @param responder
+     *            produces the responses
+     * @param latency
+     *            the latency added to each response
+     * @param metrics
+     *            the server metrics
+     * @throws IOException
+     *             if the selector cannot be opened
+     */
+    StubWorker(final Responder responder, final LatencyDistribution latency,
+            final StubMetrics metrics) throws IOException
+    {
+        this.selector = Selector.open();
+        this.responder = responder;
+        this.latency = latency;
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Hands a newly accepted connection to this worker
+     *
+     * @param channel
+     *            the connection
+     */
+    void accept(final SocketChannel channel)
+    {
+        accepted.add(channel);
+        selector.wakeup();
+    }
+
+
+    /**
+     * Stops the worker, closing its connections
+     */
+    void stop()
+    {
+        running = false;
+        selector.wakeup();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (running)
+            {
+                select();
+                register();
+
+                Iterator<SelectionKey> keys =
+                        selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isValid() && key.isReadable())
+                    {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable())
+                    {
+                        flush(connection);
+                    }
+                }
+
+                release();
+            }
+        }
+        catch (IOException | ClosedSelectorException e)
+        {
+            LOG.error("Stub worker failed", e);
+        }
+        finally
+        {
+            for (SelectionKey key : selector.keys())
+            {
+                close((Connection) key.attachment());
+            }
+            try
+            {
+                selector.close();
+            }
+            catch (IOException e)
+            {
+                LOG.debug("Selector close failed", e);
+            }
+        }
+    }
+
+
+    /* ---------------- Selector ------------------ */
+
+    /**
+     * Waits for readiness, or for the next delayed response to fall due
+     */
+    private void select() throws IOException
+    {
+        Delayed next = delayed.peek();
+        if (next == null)
+        {
+            selector.select();
+            return;
+        }
+
+        long wait = next.due - System.nanoTime();
+        if (wait <= 0)
+        {
+            selector.selectNow();
+        }
+        else
+        {
+            selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+        }
+    }
+
+
+    /**
+     * Registers accepted connections with the selector
+     */
+    private void register()
+    {
+        SocketChannel channel;
+        while ((channel = accepted.poll()) != null)
+        {
+            try
+            {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector,
+                        SelectionKey.OP_READ, connection);
+                metrics.opened();
+            }
+            catch (IOException e)
+            {
+                LOG.debug("Connection register failed", e);
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException ce)
+                {
+                    LOG.debug("Connection close failed", ce);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Releases delayed responses that have fallen due
+     */
+    private void release()
+    {
+        if (delayed.isEmpty())
+        {
+            return;
+        }
+
+        long now = System.nanoTime();
+        Delayed next;
+        while ((next = delayed.peek()) != null && next.due <= now)
+        {
+            delayed.poll();
+            Connection connection = next.connection;
+            connection.delayed--;
+            if (connection.open)
+            {
+                connection.out.add(next.response);
+                if (!connection.released)
+                {
+                    connection.released = true;
+                    released.add(connection);
+                }
+            }
+        }
+
+        for (Connection connection : released)
+        {
+            connection.released = false;
+            flush(connection);
+        }
+        released.clear();
+    }
+
+
+    /* ---------------- Connection ------------------ */
+
+    /**
+     * Reads what is available and answers the complete requests
+     */
+    private void read(final Connection connection)
+    {
+        int read;
+        try
+        {
+            ByteBuffer view = connection.view;
+            view.limit(view.capacity()).position(connection.length);
+            read = connection.channel.read(view);
+        }
+        catch (IOException e)
+        {
+            read = -1;
+        }
+
+        if (read < 0)
+        {
+            close(connection);
+            return;
+        }
+
+        metrics.read(read);
+        connection.length += read;
+        parse(connection);
+        flush(connection);
+    }
+
+
+    /**
+     * Parses and answers each complete request in the buffer, then compacts
+     * what remains to the front
+     */
+    private void parse(final Connection connection)
+    {
+        byte[] buffer = connection.buffer;
+        int length = connection.length;
+        int position = 0;
+
+        while (!connection.closing)
+        {
+            int headEnd = headEnd(buffer,
+                    Math.max(position, connection.scanned), length);
+            if (headEnd < 0)
+            /*
+             * Incomplete head - wait for more unless the head is too big
+             */
+            {
+                connection.scanned = Math.max(position, length - 3);
+                if (length - position >= HEAD_MAX)
+                {
+                    fail(connection, StubResponse.BAD_REQUEST);
+                }
+                break;
+            }
+
+            int lineEnd = indexOf(buffer, (byte) '\r', position, headEnd);
+            int methodEnd = indexOf(buffer, (byte) ' ', position, lineEnd);
+            int targetEnd = indexOf(buffer, (byte) ' ', methodEnd + 1, lineEnd);
+            if (methodEnd <= position || targetEnd <= methodEnd + 1)
+            {
+                fail(connection, StubResponse.BAD_REQUEST);
+                break;
+            }
+
+            boolean close = regionMatches(buffer, targetEnd + 1, lineEnd,
+                    HTTP10);
+            long contentLength = 0;
+            boolean chunked = false;
+
+            /*
+             * Scan the headers for the few that matter
+             */
+            for (int line = lineEnd + 2; line < headEnd - 2;)
+            {
+                int end = indexOf(buffer, (byte) '\r', line, headEnd);
+                if (regionMatches(buffer, line, end, CONTENT_LENGTH))
+                {
+                    contentLength =
+                            parseLong(buffer, line + CONTENT_LENGTH.length, end);
+                }
+                else if (regionMatches(buffer, line, end, TRANSFER_ENCODING))
+                {
+                    chunked = true;
+                }
+                else if (regionMatches(buffer, line, end, CONNECTION))
+                {
+                    int value = skipSpace(buffer, line + CONNECTION.length, end);
+                    if (regionMatches(buffer, value, end, CLOSE))
+                    {
+                        close = true;
+                    }
+                    else if (regionMatches(buffer, value, end, KEEP_ALIVE))
+                    {
+                        close = false;
+                    }
+                }
+                line = end + 2;
+            }
+
+            if (chunked || contentLength < 0)
+            {
+                fail(connection, StubResponse.LENGTH_REQUIRED);
+                break;
+            }
+
+            long total = headEnd - position + contentLength;
+            if (total > REQUEST_MAX)
+            {
+                fail(connection, StubResponse.TOO_LARGE);
+                break;
+            }
+
+            if (position + total > length)
+            /*
+             * Incomplete body - make room for it and wait for more
+             */
+            {
+                connection.scanned = position;
+                if (total > buffer.length)
+                {
+                    connection.grow((int) total);
+                }
+                break;
+            }
+
+            StubRequest request = new StubRequest(
+                    new String(buffer, position, methodEnd - position,
+                            StandardCharsets.ISO_8859_1),
+                    new String(buffer, methodEnd + 1,
+                            targetEnd - methodEnd - 1,
+                            StandardCharsets.ISO_8859_1),
+                    buffer, position, headEnd - position, (int) contentLength);
+            metrics.request();
+            respond(connection, responder.respond(request));
+
+            position += total;
+            connection.scanned = position;
+            connection.closing = close;
+        }
+
+        connection.compact(position);
+    }
+
+
+    /**
+     * Queues the response, delaying it if the latency distribution says so.
+     * Responses on a connection always leave in request order.
+     */
+    private void respond(final Connection connection,
+            final StubResponse response)
+    {
+        long delay = latency.nextNanos();
+        if (delay <= 0 && connection.delayed == 0)
+        {
+            connection.out.add(response.buffer());
+            return;
+        }
+
+        long due = Math.max(connection.due, System.nanoTime() + delay);
+        connection.due = due;
+        connection.delayed++;
+        delayed.add(new Delayed(due, sequence++, connection, response.buffer()));
+    }
+
+
+    /**
+     * Answers with an error and closes once it is written
+     */
+    private void fail(final Connection connection, final StubResponse response)
+    {
+        respond(connection, response);
+        connection.closing = true;
+    }
+
+
+    /**
+     * Writes as much queued output as the socket takes, then sets the
+     * interest ops from what is left
+     */
+    private void flush(final Connection connection)
+    {
+        if (!connection.open)
+        {
+            return;
+        }
+
+        ArrayDeque<ByteBuffer> out = connection.out;
+        try
+        {
+            while (!out.isEmpty())
+            {
+                int count = 0;
+                long remaining = 0;
+                for (ByteBuffer buffer : out)
+                {
+                    gather[count++] = buffer;
+                    remaining += buffer.remaining();
+                    if (count == GATHER_MAX)
+                    {
+                        break;
+                    }
+                }
+
+                long written = connection.channel.write(gather, 0, count);
+                metrics.written(written);
+                while (!out.isEmpty() && !out.peek().hasRemaining())
+                {
+                    out.poll();
+                }
+                if (written < remaining)
+                /*
+                 * Socket buffer full - wait to be writable
+                 */
+                {
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            close(connection);
+            return;
+        }
+        finally
+        {
+            Arrays.fill(gather, null);
+        }
+
+        if (out.isEmpty() && connection.closing && connection.delayed == 0)
+        {
+            close(connection);
+            return;
+        }
+
+        int ops = out.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+        if (!connection.closing && out.size() < BACKLOG_MAX)
+        {
+            ops |= SelectionKey.OP_READ;
+        }
+        SelectionKey key = connection.key;
+        if (key != null && key.isValid() && key.interestOps() != ops)
+        {
+            key.interestOps(ops);
+        }
+    }
+
+
+    /**
+     * Closes the connection
+     */
+    private void close(final @Nullable Connection connection)
+    {
+        if (connection == null || !connection.open)
+        {
+            return;
+        }
+
+        connection.open = false;
+        connection.out.clear();
+        metrics.closed();
+        try
+        {
+            connection.channel.close();
+        }
+        catch (IOException e)
+        {
+            LOG.debug("Connection close failed", e);
+        }
+    }
+
+
+    /* ---------------- Parsing ------------------ */
+
+    /**
+     * Returns the index just past the blank line ending the head, or -1
+     */
+    private static int headEnd(final byte[] buffer, final int from,
+            final int to)
+    {
+        for (int i = from; i + 3 < to; i++)
+        {
+            if (buffer[i + 3] == '\n' && buffer[i + 2] == '\r'
+                    && buffer[i + 1] == '\n' && buffer[i] == '\r')
+            {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Returns the index of the byte in the range, or the range end
+     */
+    private static int indexOf(final byte[] buffer, final byte b,
+            final int from, final int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (buffer[i] == b)
+            {
+                return i;
+            }
+        }
+        return to;
+    }
+
+
+    /**
+     * Does the range start with the lower case ASCII token, ignoring case?
+     */
+    private static boolean regionMatches(final byte[] buffer, final int from,
+            final int to, final byte[] token)
+    {
+        if (to - from < token.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++)
+        {
+            byte b = buffer[from + i];
+            if (b != token[i] && (b | 0x20) != token[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static int skipSpace(final byte[] buffer, final int from,
+            final int to)
+    {
+        int i = from;
+        while (i < to && (buffer[i] == ' ' || buffer[i] == '\t'))
+        {
+            i++;
+        }
+        return i;
+    }
+
+
+    /**
+     * Parses a header value as a non-negative long, -1 if it is not one
+     */
+    private static long parseLong(final byte[] buffer, final int from,
+            final int to)
+    {
+        int i = skipSpace(buffer, from, to);
+        if (i == to)
+        {
+            return -1;
+        }
+        long value = 0;
+        for (; i < to; i++)
+        {
+            byte b = buffer[i];
+            if (b == ' ' || b == '\t')
+            {
+                break;
+            }
+            if (b < '0' || b > '9' || value > Integer.MAX_VALUE)
+            {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * A connection's buffers and state
+     */
+    private static final class Connection
+    {
+        final SocketChannel channel;
+
+        @Nullable
+        SelectionKey key;
+
+        byte[] buffer = new byte[HEAD_MAX];
+
+        ByteBuffer view = ByteBuffer.wrap(buffer);
+
+        /**
+         * Bytes held in the buffer
+         */
+        int length;
+
+        /**
+         * How far the buffer has been scanned for the end of a head
+         */
+        int scanned;
+
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+
+        /**
+         * Responses waiting on the timer, and when the last falls due
+         */
+        int delayed;
+
+        long due;
+
+        boolean open = true, closing, released;
+
+
+        Connection(final SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+
+        /**
+         * Discards the bytes before the position
+         */
+        void compact(final int position)
+        {
+            if (position == 0)
+            {
+                return;
+            }
+            System.arraycopy(buffer, position, buffer, 0, length - position);
+            length -= position;
+            scanned = Math.max(0, scanned - position);
+        }
+
+
+        /**
+         * Grows the buffer to hold at least the given length
+         */
+        void grow(final int capacity)
+        {
+            int size = buffer.length;
+            while (size < capacity)
+            {
+                size *= 2;
+            }
+            buffer = Arrays.copyOf(buffer, size);
+            view = ByteBuffer.wrap(buffer);
+        }
+    }
+
+    /**
+     * A response held back until it falls due
+     */
+    private static final class Delayed
+            implements Comparable<Delayed>
+    {
+        final long due, sequence;
+
+        final Connection connection;
+
+        final ByteBuffer response;
+
+
+        Delayed(final long due, final long sequence,
+                final Connection connection, final ByteBuffer response)
+        {
+            this.due = due;
+            this.sequence = sequence;
+            this.connection = connection;
+            this.response = response;
+        }
+
+
+        @Override
+        public int compareTo(final Delayed other)
+        {
+            int compare = Long.compare(due - other.due, 0);
+            return compare != 0 ? compare
+                    : Long.compare(sequence, other.sequence);
+        }
+    }
+}
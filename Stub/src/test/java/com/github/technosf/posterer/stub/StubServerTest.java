@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.posterer.stub;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+import com.github.technosf.posterer.models.impl.RequestBean;
+
+/**
+ * StubServer tests against loopback
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class StubServerTest
+{
+    private static final String PIPELINED =
+            "GET /a HTTP/1.1\r\nHost: x\r\n\r\nGET /b HTTP/1.1\r\nHost: x\r\n\r\n";
+
+
+    @Test
+    public void echo() throws IOException
+    {
+        try (StubServer server = start(Responder.echo(),
+                LatencyDistribution.NONE))
+        {
+            HttpURLConnection connection = open(server, "/echo?x=1");
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream())
+            {
+                out.write("hello stub".getBytes(StandardCharsets.UTF_8));
+            }
+
+            assertEquals(connection.getResponseCode(), 200);
+            String body = IOUtils.toString(connection.getInputStream(),
+                    StandardCharsets.UTF_8);
+            assertTrue(body.startsWith("POST /echo?x=1 HTTP/1.1\r\n"));
+            assertTrue(body.endsWith("\r\n\r\nhello stub"));
+            assertEquals(server.getMetrics().getRequests(), 1);
+        }
+    }
+
+
+    @Test
+    public void sizedPipelined() throws IOException
+    {
+        try (StubServer server = start(Responder.sized(100),
+                LatencyDistribution.NONE);
+                Socket socket = new Socket("127.0.0.1", server.getPort()))
+        {
+            socket.getOutputStream()
+                    .write(PIPELINED.getBytes(StandardCharsets.ISO_8859_1));
+
+            int length = StubResponse.of(200, "OK",
+                    "application/octet-stream", new byte[100]).getLength();
+            String responses = read(socket.getInputStream(), 2 * length);
+            assertEquals(responses.split("HTTP/1.1 200 OK").length, 3);
+            assertEquals(server.getMetrics().getRequests(), 2);
+        }
+    }
+
+
+    @Test
+    public void canned() throws IOException
+    {
+        try (StubServer server = start(
+                Responder.canned(Arrays.asList(new RequestBean(
+                        "http://saved.example/canned", "{\"a\":1}", "GET",
+                        "", "application/json", false))),
+                LatencyDistribution.NONE))
+        {
+            HttpURLConnection found = open(server, "/canned");
+            assertEquals(found.getResponseCode(), 200);
+            assertEquals(found.getContentType(), "application/json");
+            assertEquals(IOUtils.toString(found.getInputStream(),
+                    StandardCharsets.UTF_8), "{\"a\":1}");
+
+            assertEquals(open(server, "/missing").getResponseCode(), 404);
+        }
+    }
+
+
+    @Test
+    public void latency() throws IOException
+    {
+        try (StubServer server =
+                start(Responder.sized(0), LatencyDistribution.parse("fixed:50")))
+        {
+            long start = System.nanoTime();
+            assertEquals(open(server, "/").getResponseCode(), 200);
+            assertTrue(System.nanoTime() - start >= 50_000_000L);
+        }
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void latencyParse()
+    {
+        assertTrue(LatencyDistribution.parse("uniform:2-10").nextNanos()
+                >= 2_000_000L);
+        assertTrue(LatencyDistribution.parse("lognormal:5,0.5")
+                .nextNanos() > 0);
+        LatencyDistribution.parse("poisson:5");
+    }
+
+
+    /* ---------------- Helpers ------------------ */
+
+    private static StubServer start(final Responder responder,
+            final LatencyDistribution latency) throws IOException
+    {
+        StubServer server = new StubServer(
+                new InetSocketAddress("127.0.0.1", 0), 2, responder, latency);
+        server.start();
+        return server;
+    }
+
+
+    private static HttpURLConnection open(final StubServer server,
+            final String path) throws IOException
+    {
+        return (HttpURLConnection) new URL(
+                "http://127.0.0.1:" + server.getPort() + path).openConnection();
+    }
+
+
+    /**
+     * Reads the given number of bytes
+     */
+    private static String read(final InputStream in, final int length)
+            throws IOException
+    {
+        byte[] buffer = new byte[length];
+        int received = 0;
+        while (received < length)
+        {
+            int read = in.read(buffer, received, length - received);
+            if (read < 0)
+            {
+                break;
+            }
+            received += read;
+        }
+        return new String(buffer, 0, received, StandardCharsets.ISO_8859_1);
+    }
+}